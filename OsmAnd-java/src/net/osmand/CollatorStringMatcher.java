@@ -1,9 +1,5 @@
 package net.osmand;
 
-import java.util.Locale;
-
-
-
 /**
  * Abstract collator matcher that basically supports subclasses with some collator
  * matching.
@@ -12,9 +8,18 @@ import java.util.Locale;
  */
 public class CollatorStringMatcher implements StringMatcher {
 
+	// candidates are folded into reused key, only parts (checked against many candidates) are cached
+	private static final ThreadLocal<SearchKey> CANDIDATE_KEY = new ThreadLocal<SearchKey>() {
+		@Override
+		protected SearchKey initialValue() {
+			return new SearchKey();
+		}
+	};
+
 	private final Collator collator;
 	private final StringMatcherMode mode;
 	private final String part;
+	private final SearchKey partKey;
 	
 	public static enum StringMatcherMode {
 		CHECK_ONLY_STARTS_WITH,
@@ -25,7 +30,8 @@ public class CollatorStringMatcher implements StringMatcher {
 
 	public CollatorStringMatcher(String part, StringMatcherMode mode) {
 		this.collator = OsmAndCollator.primaryCollator();
-		this.part = part.toLowerCase(Locale.getDefault());
+		this.part = NormalizedName.toLowerCase(part);
+		this.partKey = NormalizedName.get(this.part).getSearchKey();
 		this.mode = mode;
 	}
 
@@ -33,100 +39,100 @@ public class CollatorStringMatcher implements StringMatcher {
 		return collator;
 	}
 	
+	/**
+	 * @return folded query, it is calculated once per matcher 
+	 */
+	public SearchKey getSearchKey() {
+		return partKey;
+	}
+	
 	@Override
 	public boolean matches(String name) {
-		return cmatches(collator, name, part, mode);
+		return cmatches(candidateKey(name), partKey, mode);
 	}
 	
+	public boolean matches(SearchKey name) {
+		return cmatches(name, partKey, mode);
+	}
 	
+	/**
+	 * @deprecated collator is not used, use {@link #cmatches(String, String, StringMatcherMode)}
+	 */
+	@Deprecated
 	public static boolean cmatches(Collator collator, String base, String part, StringMatcherMode mode){
+		return cmatches(base, part, mode);
+	}
+	
+	/**
+	 * Strings are folded with {@link SearchKey} that is equivalent to comparison with primary collator.
+	 * Prefer {@link #cmatches(SearchKey, SearchKey, StringMatcherMode)} when the same part is checked
+	 * against many strings.
+	 */
+	public static boolean cmatches(String base, String part, StringMatcherMode mode){
+		return cmatches(candidateKey(base), NormalizedName.get(part).getSearchKey(), mode);
+	}
+	
+	public static boolean cmatches(SearchKey base, SearchKey part, StringMatcherMode mode){
 		switch (mode) {
 		case CHECK_CONTAINS:
-			return ccontains(collator, base, part); 
+			return base.contains(part); 
 		case CHECK_STARTS_FROM_SPACE:
-			return cstartsWith(collator, base, part, true, true);
+			return base.startsWith(part, true, true);
 		case CHECK_STARTS_FROM_SPACE_NOT_BEGINNING:
-			return cstartsWith(collator, base, part, false, true);
+			return base.startsWith(part, false, true);
 		case CHECK_ONLY_STARTS_WITH:
-			return cstartsWith(collator, base, part, true, false);
+			return base.startsWith(part, true, false);
 		}
 		return false;
 	}
 	
 	
+	/**
+	 * @deprecated collator is not used, use {@link #ccontains(String, String)}
+	 */
+	@Deprecated
+	public static boolean ccontains(Collator collator, String base, String part) {
+		return ccontains(base, part);
+	}
+
 	/**
 	 * Check if part contains in base
 	 *
-	 * @param collator Collator to use
 	 * @param part String to search
 	 * @param base String where to search
 	 * @return true if part is contained in base
 	 */
-	public static boolean ccontains(Collator collator, String base, String part) {
-		int pos = 0;
-		if (part.length() > 3) {
-			// improve searching by searching first 3 characters
-			pos = cindexOf(collator, pos, part.substring(0, 3), base);
-			if (pos == -1) {
-				return false;
-			}
-		}
-		pos = cindexOf(collator, pos, part, base);
-		if (pos == -1) {
-			return false;
-		}
-		return true;
+	public static boolean ccontains(String base, String part) {
+		return candidateKey(base).contains(NormalizedName.get(part).getSearchKey());
 	}
 
-	private static int cindexOf(Collator collator, int start, String part, String base) {
-		for (int pos = start; pos <= base.length() - part.length(); pos++) {
-			if (collator.equals(base.substring(pos, pos + part.length()), part)) {
-				return pos;
-			}
-		}
-		return -1;
+	/**
+	 * @deprecated collator is not used, use {@link #cstartsWith(String, String, boolean, boolean)}
+	 */
+	@Deprecated
+	public static boolean cstartsWith(Collator collator, String searchInParam, String theStart, 
+			boolean checkBeginning, boolean checkSpaces) {
+		return cstartsWith(searchInParam, theStart, checkBeginning, checkSpaces);
 	}
 
 	/**
 	 * Checks if string starts with another string.
 	 * Special check try to find as well in the middle of name
 	 * 
-	 * @param collator
 	 * @param searchIn
 	 * @param theStart
 	 * @return true if searchIn starts with token
 	 */
-	public static boolean cstartsWith(Collator collator, String searchInParam, String theStart, 
+	public static boolean cstartsWith(String searchInParam, String theStart, 
 			boolean checkBeginning, boolean checkSpaces) {
-		String searchIn = searchInParam.toLowerCase(Locale.getDefault());
-		int startLength = theStart.length();
-		int searchInLength = searchIn.length();
-		if (startLength == 0) {
-			return true;
-		}
-		if (startLength > searchInLength) {
-			return false;
-		}
-		// simulate starts with for collator
-		if (checkBeginning) {
-			boolean starts = collator.equals(searchIn.substring(0, startLength), theStart);
-			if (starts) {
-				return true;
-			}
-		}
-		if (checkSpaces) {
-			for (int i = 1; i <= searchInLength - startLength; i++) {
-				if (isSpace(searchIn.charAt(i - 1)) && !isSpace(searchIn.charAt(i))) {
-					if (collator.equals(searchIn.substring(i, i + startLength), theStart)) {
-						return true;
-					}
-				}
-			}
-		}
-		return false;
+		return candidateKey(searchInParam).startsWith(NormalizedName.get(theStart).getSearchKey(),
+				checkBeginning, checkSpaces);
 	}
-	
-	private static boolean isSpace(char c){
-		return !Character.isLetter(c) && !Character.isDigit(c);
+
+	/**
+	 * @return key of the current thread with folded string, valid until next call in the thread
+	 */
+	private static SearchKey candidateKey(String s) {
+		return CANDIDATE_KEY.get().set(s == null ? "" : s);
 	}
 }
@@ -0,0 +1,183 @@
+package net.osmand;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import net.osmand.util.Algorithms;
+import net.sf.junidecode.Junidecode;
+
+/**
+ * Normalized forms of a name (transliterated, lower case, folded search key, number split for
+ * natural sorting). Forms are calculated lazily and kept in shared bounded cache keyed by raw name,
+ * so names that are displayed, compared and searched many times are normalized once.
+ *
+ * Cache is split into segments (LRU each) to reduce lock contention between threads.
+ * Returned objects are immutable for users, {@link #getSearchKey()} must not be modified with set().
+ */
+public class NormalizedName {
+
+	private static final int SEGMENTS = 16;
+	private static volatile int segmentCapacity = 1024;
+	private static final Segment[] CACHE = new Segment[SEGMENTS];
+	static {
+		for (int i = 0; i < SEGMENTS; i++) {
+			CACHE[i] = new Segment();
+		}
+	}
+
+	/**
+	 * LRU part of the cache, counters are guarded by the segment lock
+	 */
+	private static class Segment extends LinkedHashMap<String, NormalizedName> {
+		private static final long serialVersionUID = 1L;
+		private long hits;
+		private long misses;
+
+		Segment() {
+			super(64, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, NormalizedName> eldest) {
+			return size() > segmentCapacity;
+		}
+	}
+
+	private final String name;
+	// forms are calculated lazily, concurrent calculation gives equal results
+	private String transliterated;
+	private String lowerCase;
+	private volatile SearchKey searchKey;
+	// number is written before prefix
+	private volatile String numberPrefix;
+	private int number;
+
+	private NormalizedName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return cached normalized name (null name is treated as empty string)
+	 */
+	public static NormalizedName get(String name) {
+		if (name == null) {
+			name = "";
+		}
+		Segment segment = CACHE[(name.hashCode() & 0x7fffffff) % SEGMENTS];
+		synchronized (segment) {
+			NormalizedName n = segment.get(name);
+			if (n != null) {
+				segment.hits++;
+				return n;
+			}
+			segment.misses++;
+			n = new NormalizedName(name);
+			segment.put(name, n);
+			return n;
+		}
+	}
+
+	public static String transliterate(String name) {
+		return get(name).getTransliterated();
+	}
+
+	public static String toLowerCase(String name) {
+		return get(name).getLowerCase();
+	}
+
+	/**
+	 * Total number of cached names is limited by capacity (approximately, it is split between segments)
+	 */
+	public static void setCapacity(int capacity) {
+		segmentCapacity = Math.max(1, capacity / SEGMENTS);
+	}
+
+	public static void clearCache() {
+		for (Segment segment : CACHE) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public static String getStatistics() {
+		int size = 0;
+		long hits = 0;
+		long misses = 0;
+		for (Segment segment : CACHE) {
+			synchronized (segment) {
+				size += segment.size();
+				hits += segment.hits;
+				misses += segment.misses;
+			}
+		}
+		return "Normalized names " + size + ", hits " + hits + ", misses " + misses;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTransliterated() {
+		String t = transliterated;
+		if (t == null) {
+			t = name.length() == 0 ? name : Junidecode.unidecode(name);
+			transliterated = t;
+		}
+		return t;
+	}
+
+	/**
+	 * @return lower case with default locale (as used by string matchers)
+	 */
+	public String getLowerCase() {
+		String l = lowerCase;
+		if (l == null) {
+			l = name.toLowerCase(Locale.getDefault());
+			lowerCase = l;
+		}
+		return l;
+	}
+
+	/**
+	 * @return folded key equivalent to primary collator comparison, should be used only for reading
+	 */
+	public SearchKey getSearchKey() {
+		SearchKey k = searchKey;
+		if (k == null) {
+			k = new SearchKey(name);
+			searchKey = k;
+		}
+		return k;
+	}
+
+	/**
+	 * @return part before first digit or whole name if it doesn't start with digit (for natural sorting)
+	 */
+	public String getNumberPrefix() {
+		String p = numberPrefix;
+		if (p == null) {
+			p = Algorithms.extractIntegerPrefix(name);
+			if (p.length() == 0) {
+				p = name;
+			}
+			number = Algorithms.extractIntegerNumber(name);
+			numberPrefix = p;
+		}
+		return p;
+	}
+
+	/**
+	 * @return first integer number found in name or 0
+	 */
+	public int getNumber() {
+		getNumberPrefix();
+		return number;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,256 @@
+package net.osmand;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalized representation of string used for name matching. Characters are folded
+ * to lower case without diacritics (compatibility decomposition), that corresponds to primary
+ * collator strength, so matching is a plain scan over char array without substring allocation
+ * and collator calls. Beginnings of words are marked while folding.
+ *
+ * Instance could be reused with {@link #set(String)}, it is not thread safe.
+ */
+public class SearchKey {
+
+	private static final char NOT_CALCULATED = 0;
+	private static final char IGNORABLE = '\uffff';
+	private static final char EXPANSION = '\ufffe';
+
+	// lazily calculated folding for BMP characters
+	private static final char[] FOLDING = new char[0x10000];
+	private static final Map<Character, String> EXPANSIONS = new ConcurrentHashMap<Character, String>();
+	private static final Map<Character, String> SPECIAL_FOLDING = new HashMap<Character, String>();
+	static {
+		SPECIAL_FOLDING.put('\u00df', "ss"); // sharp s
+		SPECIAL_FOLDING.put('\u00e6', "ae");
+		SPECIAL_FOLDING.put('\u0153', "oe");
+		SPECIAL_FOLDING.put('\u00f8', "o");
+		SPECIAL_FOLDING.put('\u0111', "d");
+		SPECIAL_FOLDING.put('\u00f0', "d");
+		SPECIAL_FOLDING.put('\u0142', "l");
+		SPECIAL_FOLDING.put('\u0127', "h");
+		SPECIAL_FOLDING.put('\u0131', "i"); // dotless i
+		SPECIAL_FOLDING.put('\u00fe', "th");
+	}
+
+	private String source = "";
+	private char[] chars = new char[16];
+	private boolean[] wordStarts = new boolean[16];
+	private int length;
+
+	public SearchKey() {
+	}
+
+	public SearchKey(String s) {
+		set(s);
+	}
+
+	public static SearchKey create(String s) {
+		return new SearchKey(s);
+	}
+
+	/**
+	 * Folds string into this key (buffers are reused)
+	 */
+	public SearchKey set(String s) {
+		source = s;
+		length = 0;
+		boolean prevSpace = true;
+		int len = s.length();
+		ensureCapacity(len);
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			char f = fold(c);
+			if (f == IGNORABLE) {
+				continue;
+			}
+			boolean space = isSpace(c);
+			boolean wordStart = prevSpace && !space;
+			prevSpace = space;
+			if (f == EXPANSION) {
+				String e = getExpansion(c);
+				ensureCapacity(length + e.length());
+				for (int j = 0; j < e.length(); j++) {
+					chars[length] = e.charAt(j);
+					wordStarts[length] = wordStart && j == 0;
+					length++;
+				}
+			} else {
+				ensureCapacity(length + 1);
+				chars[length] = f;
+				wordStarts[length] = wordStart;
+				length++;
+			}
+		}
+		return this;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public char charAt(int i) {
+		return chars[i];
+	}
+
+	public boolean isWordStart(int i) {
+		return wordStarts[i];
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	/**
+	 * @return true if part could be found at position pos
+	 */
+	public boolean regionMatches(int pos, SearchKey part) {
+		if (pos < 0 || pos + part.length > length) {
+			return false;
+		}
+		char[] p = part.chars;
+		for (int j = 0; j < part.length; j++) {
+			if (chars[pos + j] != p[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean startsWith(SearchKey part) {
+		return regionMatches(0, part);
+	}
+
+	/**
+	 * @param checkBeginning check beginning of the string
+	 * @param checkSpaces check beginnings of the words (except first word)
+	 */
+	public boolean startsWith(SearchKey part, boolean checkBeginning, boolean checkSpaces) {
+		if (part.length == 0) {
+			return true;
+		}
+		if (part.length > length) {
+			return false;
+		}
+		if (checkBeginning && regionMatches(0, part)) {
+			return true;
+		}
+		if (checkSpaces) {
+			char first = part.chars[0];
+			for (int i = 1; i <= length - part.length; i++) {
+				if (wordStarts[i] && chars[i] == first && regionMatches(i, part)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public int indexOf(SearchKey part, int start) {
+		if (part.length == 0) {
+			return start <= length ? start : -1;
+		}
+		char first = part.chars[0];
+		for (int i = Math.max(start, 0); i <= length - part.length; i++) {
+			if (chars[i] == first && regionMatches(i, part)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains(SearchKey part) {
+		return indexOf(part, 0) != -1;
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+
+	private void ensureCapacity(int len) {
+		if (chars.length < len) {
+			int nl = Math.max(len, chars.length * 2);
+			char[] nchars = new char[nl];
+			boolean[] nwordStarts = new boolean[nl];
+			System.arraycopy(chars, 0, nchars, 0, length);
+			System.arraycopy(wordStarts, 0, nwordStarts, 0, length);
+			chars = nchars;
+			wordStarts = nwordStarts;
+		}
+	}
+
+	static boolean isSpace(char c) {
+		return !Character.isLetter(c) && !Character.isDigit(c);
+	}
+
+	private static char fold(char c) {
+		if (c < 0x80) {
+			return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		char f = FOLDING[c];
+		if (f == NOT_CALCULATED) {
+			f = calculateFolding(c);
+		}
+		return f;
+	}
+
+	private static String getExpansion(char c) {
+		String e = EXPANSIONS.get(c);
+		if (e == null) {
+			// folding array is written without ordering, so expansion could be not visible yet
+			synchronized (SearchKey.class) {
+				e = EXPANSIONS.get(c);
+				if (e == null) {
+					calculateFolding(c);
+					e = EXPANSIONS.get(c);
+				}
+			}
+		}
+		return e;
+	}
+
+	private static synchronized char calculateFolding(char c) {
+		char f = foldCharacter(c);
+		FOLDING[c] = f;
+		return f;
+	}
+
+	private static char foldCharacter(char c) {
+		if (c >= '\ud800' && c <= '\udfff') {
+			// surrogates are compared as is
+			return c;
+		}
+		String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFKD);
+		StringBuilder sb = new StringBuilder(decomposed.length());
+		for (int i = 0; i < decomposed.length(); i++) {
+			char d = Character.toLowerCase(decomposed.charAt(i));
+			int type = Character.getType(d);
+			if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+					|| type == Character.COMBINING_SPACING_MARK) {
+				continue;
+			}
+			String special = SPECIAL_FOLDING.get(d);
+			if (special != null) {
+				sb.append(special);
+			} else {
+				sb.append(d);
+			}
+		}
+		if (sb.length() == 0) {
+			return IGNORABLE;
+		} else if (sb.length() == 1 && sb.charAt(0) != IGNORABLE && sb.charAt(0) != EXPANSION
+				&& sb.charAt(0) != NOT_CALCULATED) {
+			return sb.charAt(0);
+		}
+		EXPANSIONS.put(c, sb.toString());
+		return EXPANSION;
+	}
+}
@@ -0,0 +1,137 @@
+package net.osmand;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result matcher passing results from a search thread to a consumer in batches.
+ * Buffer is bounded: when consumer doesn't drain results fast enough, {@link #publish(Object)}
+ * blocks the search thread until space is available or the search is cancelled.
+ * Cancellation is propagated to the search through {@link #isCancelled()} (checked by SearchRequest).
+ *
+ * Published objects are not kept by the search request (publish returns false) unless keepResults is set.
+ */
+public class StreamingResultMatcher<T> implements ResultMatcher<T> {
+
+	public interface BatchListener<T> {
+		/**
+		 * Called from the search thread when new results are available after buffer was drained
+		 * or when search is finished. Listener should call {@link StreamingResultMatcher#drain()}
+		 * (usually from consumer thread).
+		 */
+		void batchReady(StreamingResultMatcher<T> matcher);
+	}
+
+	private final int capacity;
+	private final BatchListener<T> listener;
+	private final boolean keepResults;
+	private List<T> buffer = new ArrayList<T>();
+	private boolean notified = false;
+	private volatile boolean cancelled = false;
+	private volatile boolean finished = false;
+	private int published = 0;
+
+	public StreamingResultMatcher(int capacity, BatchListener<T> listener) {
+		this(capacity, listener, false);
+	}
+
+	public StreamingResultMatcher(int capacity, BatchListener<T> listener, boolean keepResults) {
+		this.capacity = Math.max(1, capacity);
+		this.listener = listener;
+		this.keepResults = keepResults;
+	}
+
+	@Override
+	public boolean publish(T object) {
+		boolean notify;
+		synchronized (this) {
+			while (buffer.size() >= capacity && !cancelled) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					cancelled = true;
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (cancelled) {
+				return false;
+			}
+			buffer.add(object);
+			published++;
+			notify = !notified;
+			notified = true;
+			notifyAll();
+		}
+		if (notify && listener != null) {
+			listener.batchReady(this);
+		}
+		return keepResults;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Stops the search: blocked producer is released and next check of {@link #isCancelled()} stops reading.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			cancelled = true;
+			buffer.clear();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Should be called by producer when search is completed
+	 */
+	public void finish() {
+		synchronized (this) {
+			finished = true;
+			notified = true;
+			notifyAll();
+		}
+		if (listener != null) {
+			listener.batchReady(this);
+		}
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public synchronized int getPublishedCount() {
+		return published;
+	}
+
+	/**
+	 * Returns all buffered results (possibly empty list) without blocking and releases the producer
+	 */
+	public List<T> drain() {
+		synchronized (this) {
+			List<T> res = buffer;
+			buffer = new ArrayList<T>();
+			notified = false;
+			notifyAll();
+			return res;
+		}
+	}
+
+	/**
+	 * Waits for results up to timeout (ms) and returns them, empty list means search is finished,
+	 * cancelled or timeout elapsed.
+	 */
+	public List<T> nextBatch(long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		synchronized (this) {
+			long left = timeout;
+			while (buffer.isEmpty() && !finished && !cancelled && left > 0) {
+				wait(left);
+				left = end - System.currentTimeMillis();
+			}
+			return drain();
+		}
+	}
+}
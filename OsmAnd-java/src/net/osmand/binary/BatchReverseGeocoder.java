@@ -0,0 +1,341 @@
+package net.osmand.binary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.GeocodingUtilities.GeocodingResult;
+import net.osmand.data.City;
+import net.osmand.data.LatLon;
+import net.osmand.data.Street;
+import net.osmand.router.RoutingContext;
+import net.osmand.util.MapUtils;
+import net.osmand.util.MetricsRegistry;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Reverse geocoding of many points (gpx track, favorites).
+ * Points are processed in spatial order (by tiles of {@link #GROUP_ZOOM}) so neighbour points
+ * share loaded routing tiles and streets. Streets found by name are kept in LRU cache of city blocks
+ * (streets of one city with their buildings once loaded), so neighbour points reuse the blocks of their cities
+ * and street block is read from file only once for all points near it.
+ *
+ * Not thread safe: readers of routing context and address readers should not be used concurrently.
+ */
+public class BatchReverseGeocoder {
+
+	private static final Log log = PlatformUtil.getLog(BatchReverseGeocoder.class);
+
+	public static final int GROUP_ZOOM = 14;
+	public static final int DEFAULT_CACHE_SIZE = 256;
+	// names of streets are small comparing to blocks, so more of them are kept
+	private static final int NAMES_PER_BLOCK = 4;
+
+	public static final String POINTS = "points";
+	public static final String POINT_TIME = "point_time_ms";
+	public static final String ROAD_SEARCH_TIME = "road_search_time_ms";
+	public static final String STREET_CACHE_HITS = "street_cache.hits";
+	public static final String STREET_CACHE_MISSES = "street_cache.misses";
+	public static final String STREET_CACHE_EVICTIONS = "street_cache.evictions";
+
+	/**
+	 * Streets of one city found by name, buildings of street are preloaded only once
+	 */
+	private static class CityBlock {
+		private final Map<List<String>, List<Street>> streets = new HashMap<List<String>, List<Street>>();
+		private final Map<Long, Street> streetsById = new HashMap<Long, Street>();
+		private final Set<Street> loadedStreets = new HashSet<Street>();
+
+		private Street addStreet(List<String> name, Street s) {
+			Street existing = s.getId() == null ? null : streetsById.get(s.getId());
+			if (existing == null) {
+				existing = s;
+				if (s.getId() != null) {
+					streetsById.put(s.getId(), s);
+				}
+			}
+			List<Street> list = streets.get(name);
+			if (list == null) {
+				list = new ArrayList<Street>();
+				streets.put(name, list);
+			}
+			list.add(existing);
+			return existing;
+		}
+	}
+
+	private final RoutingContext ctx;
+	private final BinaryMapIndexReader[] readers;
+	private final GeocodingUtilities utilities = new GeocodingUtilities();
+	private final MetricsRegistry metrics = new MetricsRegistry("geocoding");
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+	private final Map<String, CityBlock> blocksCache = new LinkedHashMap<String, CityBlock>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CityBlock> eldest) {
+			if (size() > cacheSize) {
+				metrics.inc(STREET_CACHE_EVICTIONS);
+				return true;
+			}
+			return false;
+		}
+	};
+	// keys of city blocks which contain streets with the name (empty if there are no such streets)
+	private final Map<String, List<String>> blocksByName = new LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+			return size() > cacheSize * NAMES_PER_BLOCK;
+		}
+	};
+	private long lastBatchTime;
+	private int lastBatchSize;
+
+	/**
+	 * @param ctx routing context used to find nearest named roads
+	 * @param readers files with address data (should contain routing data referenced by ctx)
+	 */
+	public BatchReverseGeocoder(RoutingContext ctx, BinaryMapIndexReader[] readers) {
+		this.ctx = ctx;
+		this.readers = readers;
+	}
+
+	/**
+	 * Maximum number of city blocks kept in cache
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public void clearCache() {
+		blocksCache.clear();
+		blocksByName.clear();
+	}
+
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return points per second geocoded by last batch
+	 */
+	public double getLastBatchThroughput() {
+		return lastBatchTime == 0 ? 0 : lastBatchSize * 1000d / lastBatchTime;
+	}
+
+	/**
+	 * @param matcher receives best result of each point in processing order (could be used as progress
+	 *        and to cancel), could be null
+	 * @return best result for each point in the input order (result without street and building if nothing found),
+	 *         points not processed due to cancel have null result
+	 */
+	public List<GeocodingResult> search(List<LatLon> points, ResultMatcher<GeocodingResult> matcher) throws IOException {
+		long start = System.currentTimeMillis();
+		GeocodingResult[] results = new GeocodingResult[points.size()];
+		Integer[] order = getSpatialOrder(points);
+		int processed = 0;
+		for (int i : order) {
+			if (matcher != null && matcher.isCancelled()) {
+				break;
+			}
+			long time = System.currentTimeMillis();
+			results[i] = search(points.get(i), matcher);
+			processed++;
+			metrics.inc(POINTS);
+			metrics.record(POINT_TIME, System.currentTimeMillis() - time);
+			if (matcher != null) {
+				matcher.publish(results[i]);
+			}
+		}
+		lastBatchTime = System.currentTimeMillis() - start;
+		lastBatchSize = processed;
+		log.info("Reverse geocoding of " + processed + " points took " + lastBatchTime + " ms ("
+				+ (int) getLastBatchThroughput() + " points/s), street cache hits "
+				+ metrics.counter(STREET_CACHE_HITS).get() + " misses " + metrics.counter(STREET_CACHE_MISSES).get());
+		return Arrays.asList(results);
+	}
+
+	private GeocodingResult search(LatLon point, ResultMatcher<GeocodingResult> matcher) throws IOException {
+		long time = System.currentTimeMillis();
+		List<GeocodingResult> roads = searchRoads(point);
+		metrics.record(ROAD_SEARCH_TIME, System.currentTimeMillis() - time);
+		List<GeocodingResult> complete = new ArrayList<GeocodingResult>();
+		double minBuildingDistance = 0;
+		for (GeocodingResult r : roads) {
+			if (matcher != null && matcher.isCancelled()) {
+				break;
+			}
+			BinaryMapIndexReader reader = getReader(r);
+			if (reader == null) {
+				complete.add(r);
+				continue;
+			}
+			List<CityBlock> blocks = new ArrayList<CityBlock>();
+			List<Street> streets = getStreets(r.streetName, reader, matcher, blocks);
+			Set<Street> loadedStreets = new HashSet<Street>();
+			for (CityBlock b : blocks) {
+				loadedStreets.addAll(b.loadedStreets);
+			}
+			List<GeocodingResult> justified = utilities.justifyReverseGeocodingSearch(r, reader, streets,
+					minBuildingDistance, loadedStreets);
+			for (Street s : loadedStreets) {
+				for (CityBlock b : blocks) {
+					if (b.streetsById.get(s.getId()) == s) {
+						b.loadedStreets.add(s);
+					}
+				}
+			}
+			if (!justified.isEmpty()) {
+				double md = justified.get(0).getDistance();
+				if (minBuildingDistance == 0) {
+					minBuildingDistance = md;
+				} else {
+					minBuildingDistance = Math.min(md, minBuildingDistance);
+				}
+				complete.addAll(justified);
+			}
+		}
+		if (complete.isEmpty()) {
+			GeocodingResult empty = new GeocodingResult();
+			empty.searchPoint = point;
+			return empty;
+		}
+		Collections.sort(complete, GeocodingUtilities.DISTANCE_COMPARATOR);
+		return complete.get(0);
+	}
+
+	/**
+	 * Named roads near the point sorted by distance
+	 */
+	protected List<GeocodingResult> searchRoads(LatLon point) throws IOException {
+		return utilities.reverseGeocodingSearch(ctx, point.getLatitude(), point.getLongitude());
+	}
+
+	private List<Street> getStreets(String streetName, BinaryMapIndexReader reader,
+			ResultMatcher<GeocodingResult> matcher, List<CityBlock> blocks) throws IOException {
+		String file = reader.getFile().getName();
+		List<String> name = utilities.prepareStreetName(streetName);
+		String nameKey = file + "\n" + name;
+		List<Street> streets = getCachedStreets(nameKey, name, blocks);
+		if (streets != null) {
+			metrics.inc(STREET_CACHE_HITS);
+			return streets;
+		}
+		metrics.inc(STREET_CACHE_MISSES);
+		blocks.clear();
+		List<Street> found = utilities.searchStreetsByName(streetName, reader, matcher);
+		if (matcher != null && matcher.isCancelled()) {
+			return found;
+		}
+		streets = new ArrayList<Street>();
+		List<String> keys = new ArrayList<String>();
+		for (Street s : found) {
+			String key = getBlockKey(file, s);
+			CityBlock block = blocksCache.get(key);
+			if (block == null) {
+				block = new CityBlock();
+				blocksCache.put(key, block);
+			}
+			if (!keys.contains(key)) {
+				keys.add(key);
+				blocks.add(block);
+				// streets of the name could be found again after the block was evicted once
+				block.streets.remove(name);
+			}
+			streets.add(block.addStreet(name, s));
+		}
+		blocksByName.put(nameKey, keys);
+		return streets;
+	}
+
+	private List<Street> getCachedStreets(String nameKey, List<String> name, List<CityBlock> blocks) {
+		List<String> keys = blocksByName.get(nameKey);
+		if (keys == null) {
+			return null;
+		}
+		List<Street> streets = new ArrayList<Street>();
+		for (String key : keys) {
+			CityBlock block = blocksCache.get(key);
+			List<Street> list = block == null ? null : block.streets.get(name);
+			if (list == null) {
+				// one of the blocks was evicted
+				blocks.clear();
+				return null;
+			}
+			blocks.add(block);
+			streets.addAll(list);
+		}
+		return streets;
+	}
+
+	private static String getBlockKey(String file, Street s) {
+		City c = s.getCity();
+		return file + "\n" + (c == null ? 0 : c.getFileOffset());
+	}
+
+	/**
+	 * File which contains routing region of the road
+	 */
+	protected BinaryMapIndexReader getReader(GeocodingResult r) {
+		for (BinaryMapIndexReader reader : readers) {
+			for (RouteRegion rb : reader.getRoutingIndexes()) {
+				if (r.regionFP == rb.getFilePointer() && r.regionLen == rb.getLength()) {
+					return reader;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Indexes of points ordered by tiles of {@link #GROUP_ZOOM} along Z-order curve
+	 */
+	static Integer[] getSpatialOrder(List<LatLon> points) {
+		Integer[] order = new Integer[points.size()];
+		final long[] codes = new long[points.size()];
+		int shift = 31 - GROUP_ZOOM;
+		for (int i = 0; i < order.length; i++) {
+			LatLon l = points.get(i);
+			int x = MapUtils.get31TileNumberX(l.getLongitude()) >>> shift;
+			int y = MapUtils.get31TileNumberY(l.getLatitude()) >>> shift;
+			codes[i] = interleave(x, y);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				long c1 = codes[o1];
+				long c2 = codes[o2];
+				if (c1 != c2) {
+					return c1 < c2 ? -1 : 1;
+				}
+				// keep input order inside tile
+				return o1 < o2 ? -1 : (o1 == o2 ? 0 : 1);
+			}
+		});
+		return order;
+	}
+
+	private static long interleave(int x, int y) {
+		long code = 0;
+		for (int i = 0; i < 31; i++) {
+			code |= ((long) ((x >>> i) & 1)) << (2 * i);
+			code |= ((long) ((y >>> i) & 1)) << (2 * i + 1);
+		}
+		return code;
+	}
+}
@@ -366,10 +366,8 @@ public class BinaryInspector {
 				String map;
 				
 				if (part instanceof MapIndex) {
-					ous.writeTag(OsmandOdb.OsmAndStructure.MAPINDEX_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
 					map = "Map";
 				} else if (part instanceof AddressRegion) {
-					ous.writeTag(OsmandOdb.OsmAndStructure.ADDRESSINDEX_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
 					map = "Address";
 					if (addressNames.contains(part.getName())) {
 						System.err.println("Error : going to merge 2 addresses with same names. Skip " + part.getName());
@@ -377,19 +375,15 @@ public class BinaryInspector {
 					}
 					addressNames.add(part.getName());
 				} else if (part instanceof TransportIndex) {
-					ous.writeTag(OsmandOdb.OsmAndStructure.TRANSPORTINDEX_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
 					map = "Transport";
 				} else if (part instanceof PoiRegion) {
-					ous.writeTag(OsmandOdb.OsmAndStructure.POIINDEX_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
 					map = "POI";
 				} else if (part instanceof RouteRegion) {
-					ous.writeTag(OsmandOdb.OsmAndStructure.ROUTINGINDEX_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
 					map = "Routing";
 				} else {
 					throw new UnsupportedOperationException();
 				}
-				writeInt(ous, part.getLength());
-				copyBinaryPart(ous, BUFFER_TO_READ, raf, part.getFilePointer(), part.getLength());
+				writePart(ous, BUFFER_TO_READ, raf, part);
 				System.out.println(MessageFormat.format("{2} part {0} is extracted {1} bytes",
 						new Object[]{part.getName(), part.getLength(), map}));
 				
@@ -405,6 +399,31 @@ public class BinaryInspector {
 	}
 
 
+	/**
+	 * Writes part of file (field tag, length and content of part copied from raf) to obf structure
+	 */
+	public static void writePart(CodedOutputStream ous, byte[] BUFFER, RandomAccessFile raf, BinaryIndexPart part)
+			throws IOException {
+		ous.writeTag(getPartFieldNumber(part), WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
+		writeInt(ous, part.getLength());
+		copyBinaryPart(ous, BUFFER, raf, part.getFilePointer(), part.getLength());
+	}
+
+	public static int getPartFieldNumber(BinaryIndexPart part) {
+		if (part instanceof MapIndex) {
+			return OsmandOdb.OsmAndStructure.MAPINDEX_FIELD_NUMBER;
+		} else if (part instanceof AddressRegion) {
+			return OsmandOdb.OsmAndStructure.ADDRESSINDEX_FIELD_NUMBER;
+		} else if (part instanceof TransportIndex) {
+			return OsmandOdb.OsmAndStructure.TRANSPORTINDEX_FIELD_NUMBER;
+		} else if (part instanceof PoiRegion) {
+			return OsmandOdb.OsmAndStructure.POIINDEX_FIELD_NUMBER;
+		} else if (part instanceof RouteRegion) {
+			return OsmandOdb.OsmAndStructure.ROUTINGINDEX_FIELD_NUMBER;
+		}
+		throw new UnsupportedOperationException();
+	}
+
 	public static void copyBinaryPart(CodedOutputStream ous, byte[] BUFFER, RandomAccessFile raf, long fp, int length)
 			throws IOException {
 		raf.seek(fp);
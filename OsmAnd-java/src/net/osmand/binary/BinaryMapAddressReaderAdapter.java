@@ -536,7 +536,7 @@ public class BinaryMapAddressReaderAdapter {
 				indexOffset = codedIS.getTotalBytesRead();
 				int oldLimit = codedIS.pushLimit(length);
 				// here offsets are sorted by distance
-				map.readIndexedStringTable(matcher.getCollator(), req.nameQuery, "", loffsets, 0);
+				map.readIndexedStringTable(matcher.getSearchKey(), loffsets);
 				codedIS.popLimit(oldLimit);
 				break;
 			case OsmAndAddressNameIndexData.ATOM_FIELD_NUMBER:
@@ -549,7 +549,7 @@ public class BinaryMapAddressReaderAdapter {
 
 				LOG.info("Searched address structure in " + (System.currentTimeMillis() - time) + "ms. Found " + loffsets.size()
 						+ " subtress");
-				for (int j = 0; j < loffsets.size(); j++) {
+				for (int j = 0; j < loffsets.size() && !req.isCancelled(); j++) {
 					int fp = indexOffset + loffsets.get(j);
 					codedIS.seek(fp);
 					int len = codedIS.readRawVarint32();
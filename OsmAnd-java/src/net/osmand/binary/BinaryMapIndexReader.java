@@ -32,17 +32,17 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
-import net.osmand.Collator;
 import net.osmand.CollatorStringMatcher;
 import net.osmand.CollatorStringMatcher.StringMatcherMode;
 import net.osmand.Location;
-import net.osmand.OsmAndCollator;
 import net.osmand.PlatformUtil;
 import net.osmand.ResultMatcher;
+import net.osmand.SearchKey;
 import net.osmand.StringMatcher;
 import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
 import net.osmand.binary.BinaryMapAddressReaderAdapter.CitiesBlock;
 import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiTypeBitmap;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
 import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
@@ -101,6 +101,8 @@ public class BinaryMapIndexReader {
 	private final BinaryMapPoiReaderAdapter poiAdapter;
 	private final BinaryMapAddressReaderAdapter addressAdapter;
 	private final BinaryMapRouteReaderAdapter routeAdapter;
+	// decoded name indexes reused by next queries
+	private final IndexedStringTableCache stringTableCache = new IndexedStringTableCache(this);
 	
 	private static String BASEMAP_NAME = "basemap";
 
@@ -424,19 +426,22 @@ public class BinaryMapIndexReader {
 			}
 		}
 		Iterator<Entry<TransportIndex, TIntArrayList> > it = groupPoints.entrySet().iterator();
-		if(it.hasNext()){
+		while(it.hasNext()){
 			Entry<TransportIndex, TIntArrayList> e = it.next();
 			TransportIndex ind = e.getKey();
 			TIntArrayList pointers = e.getValue();
 			pointers.sort();
 			TIntObjectHashMap<String> stringTable = new TIntObjectHashMap<String>();
+			// names are resolved only for routes of this index (with its string table)
+			List<TransportRoute> indexRoutes = new ArrayList<TransportRoute>(pointers.size());
 			for (int i = 0; i < pointers.size(); i++) {
 				int filePointer = pointers.get(i);
 				TransportRoute transportRoute = transportAdapter.getTransportRoute(filePointer, stringTable, false);
 				result.put(filePointer, transportRoute);
+				indexRoutes.add(transportRoute);
 			}
 			transportAdapter.initializeStringTable(ind, stringTable);
-			for(TransportRoute r : result.values(new TransportRoute[result.size()])){
+			for(TransportRoute r : indexRoutes){
 				transportAdapter.initializeNames(false, r, stringTable);
 			}
 		}
@@ -835,6 +840,7 @@ public class BinaryMapIndexReader {
 						int oldLimit = codedIS.pushLimit(tree.length);
 						searchMapTreeBounds(tree, index, req, foundSubtrees);
 						codedIS.popLimit(oldLimit);
+						req.publishLandOceanIndex(mapIndex);
 					}
 					
 					Collections.sort(foundSubtrees, new Comparator<MapTree>() {
@@ -902,6 +908,7 @@ public class BinaryMapIndexReader {
 					int oldLimit = codedIS.pushLimit(tree.length);
 					searchMapTreeBounds(tree, level, req, foundSubtrees);
 					codedIS.popLimit(oldLimit);
+					req.publishLandOceanIndex(mapIndex);
 				}
 				
 				Collections.sort(foundSubtrees, new Comparator<MapTree>() {
@@ -1301,18 +1308,18 @@ public class BinaryMapIndexReader {
 		if (query == null || query.length() == 0) {
 			throw new IllegalArgumentException();
 		}
-		Collator collator = OsmAndCollator.primaryCollator();
+		CollatorStringMatcher matcher = new CollatorStringMatcher(query, StringMatcherMode.CHECK_STARTS_FROM_SPACE);
 		for (PoiRegion poiIndex : poiIndexes) {
 			poiAdapter.initCategories(poiIndex);
 			for (int i = 0; i < poiIndex.categories.size(); i++) {
 				String cat = poiIndex.categories.get(i);
 				PoiCategory catType = poiIndex.categoriesType.get(i);
-				if (CollatorStringMatcher.cmatches(collator, cat, query, StringMatcherMode.CHECK_STARTS_FROM_SPACE)) {
+				if (matcher.matches(cat)) {
 					map.put(catType, null);
 				} else {
 					List<String> subcats = poiIndex.subcategories.get(i);
 					for (int j = 0; j < subcats.size(); j++) {
-						if (CollatorStringMatcher.cmatches(collator, subcats.get(j), query, StringMatcherMode.CHECK_STARTS_FROM_SPACE)) {
+						if (matcher.matches(subcats.get(j))) {
 							if (!map.containsKey(catType)) {
 								map.put(catType, new ArrayList<String>());
 							}
@@ -1347,6 +1354,24 @@ public class BinaryMapIndexReader {
 		return req.getSearchResults();
 	}
 	
+	/**
+	 * Searches k amenities closest to (req.x, req.y) inside request bounds, 
+	 * amenities are published in order of increasing distance.
+	 */
+	public List<Amenity> searchPoiNearest(SearchRequest<Amenity> req, int k) throws IOException {
+		req.numberOfVisitedObjects = 0;
+		req.numberOfAcceptedObjects = 0;
+		req.numberOfAcceptedSubtrees = 0;
+		req.numberOfReadSubtrees = 0;
+		for (PoiRegion poiIndex : poiIndexes) {
+			poiAdapter.initCategories(poiIndex);
+		}
+		poiAdapter.searchPoiNearest(poiIndexes, req, k);
+		log.info("Read " + req.numberOfReadSubtrees + " subtrees. Go through " + req.numberOfAcceptedSubtrees + " subtrees.");   //$NON-NLS-1$//$NON-NLS-2$//$NON-NLS-3$
+		log.info("Search nearest poi is done. Visit " + req.numberOfVisitedObjects + " objects. Read " + req.numberOfAcceptedObjects + " objects."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return req.getSearchResults();
+	}
+	
 	public List<Amenity> searchPoi(PoiRegion poiIndex, SearchRequest<Amenity> req) throws IOException {
 		req.numberOfVisitedObjects = 0;
 		req.numberOfAcceptedObjects = 0;
@@ -1491,6 +1516,14 @@ public class BinaryMapIndexReader {
 		return request;
 	}
 	
+	public static SearchRequest<Amenity> buildSearchPoiNearestRequest(int x, int y, int sleft, int sright, int stop,
+			int sbottom, SearchPoiTypeFilter poiTypeFilter, ResultMatcher<Amenity> matcher) {
+		SearchRequest<Amenity> request = buildSearchPoiRequest(sleft, sright, stop, sbottom, -1, poiTypeFilter, matcher);
+		request.x = x;
+		request.y = y;
+		return request;
+	}
+	
 	public static SearchRequest<RouteDataObject> buildSearchRouteRequest(int sleft, int sright, int stop, int sbottom,  
 			ResultMatcher<RouteDataObject> matcher){
 		SearchRequest<RouteDataObject> request = new SearchRequest<RouteDataObject>();
@@ -1596,6 +1629,7 @@ public class BinaryMapIndexReader {
 		private List<T> searchResults = new ArrayList<T>();
 		private boolean land = false;
 		private boolean ocean = false;
+		private MapIndex landOceanIndex = null;
 		
 		private ResultMatcher<T> resultMatcher;
 		
@@ -1622,6 +1656,8 @@ public class BinaryMapIndexReader {
 		SearchFilter searchFilter = null;
 		
 		SearchPoiTypeFilter poiTypeFilter = null;
+		// poi type filter compiled per region
+		Map<PoiRegion, PoiTypeBitmap> poiTypeBitmaps = null;
 		
 		// internal read information
 		TIntObjectHashMap<String> stringTable = null;
@@ -1645,6 +1681,22 @@ public class BinaryMapIndexReader {
 		protected SearchRequest(){
 		}
 		
+		public int getNumberOfVisitedObjects() {
+			return numberOfVisitedObjects;
+		}
+		
+		public int getNumberOfAcceptedObjects() {
+			return numberOfAcceptedObjects;
+		}
+		
+		public int getNumberOfReadSubtrees() {
+			return numberOfReadSubtrees;
+		}
+		
+		public int getNumberOfAcceptedSubtrees() {
+			return numberOfAcceptedSubtrees;
+		}
+		
 		public long getTileHashOnPath(double lat, double lon) {
 			long x = (int) MapUtils.getTileNumberX(SearchRequest.ZOOM_TO_SEARCH_POI, lon);
 			long y = (int) MapUtils.getTileNumberY(SearchRequest.ZOOM_TO_SEARCH_POI, lat);
@@ -1668,6 +1720,12 @@ public class BinaryMapIndexReader {
 			}
 		}
 		
+		protected void publishLandOceanIndex(MapIndex mapIndex){
+			if(landOceanIndex == null && (land || ocean)) {
+				landOceanIndex = mapIndex;
+			}
+		}
+		
 		public List<T> getSearchResults() {
 			return searchResults;
 		}
@@ -1697,6 +1755,13 @@ public class BinaryMapIndexReader {
 			return land;
 		}
 		
+		/**
+		 * @return map index of the first found land or ocean tile (its encoding rules are used to draw land and ocean)
+		 */
+		public MapIndex getLandOceanIndex() {
+			return landOceanIndex;
+		}
+		
 		public boolean intersects(int l, int t, int r, int b){
 			return r >= left && l <= right && t <= bottom && b >= top;
 		}
@@ -1732,6 +1797,7 @@ public class BinaryMapIndexReader {
 			cacheTypes.clear();
 			land = false;
 			ocean = false;
+			landOceanIndex = null;
 			numberOfVisitedObjects = 0;
 			numberOfAcceptedObjects = 0;
 			numberOfReadSubtrees = 0;
@@ -2187,64 +2253,19 @@ public class BinaryMapIndexReader {
 		
 	}
 
-	int readIndexedStringTable(Collator instance, String query, String prefix, TIntArrayList list, int charMatches) throws IOException {
-		String key = null;
-		while(true){
-			int t = codedIS.readTag();
-			int tag = WireFormat.getTagFieldNumber(t);
-			switch (tag) {
-			case 0:
-				return charMatches;
-			case OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER :
-				key = codedIS.readString();
-				if(prefix.length() > 0){
-					key = prefix + key;
-				}
-				// check query is part of key (the best matching)
-				if(CollatorStringMatcher.cmatches(instance, key, query, StringMatcherMode.CHECK_ONLY_STARTS_WITH)){
-					if(query.length() >= charMatches){
-						if(query.length() > charMatches){
-							charMatches = query.length();
-							list.clear();
-						}
-					} else {
-						key = null;
-					}
-					// check key is part of query
-				} else if (CollatorStringMatcher.cmatches(instance, query, key, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
-					if (key.length() >= charMatches) {
-						if (key.length() > charMatches) {
-							charMatches = key.length();
-							list.clear();
-						}
-					} else {
-						key = null;
-					}
-				} else {
-					key = null;
-				}
-				break;
-			case OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER :
-				int val = readInt();
-				if (key != null) {
-					list.add(val);
-				}
-				break;
-			case OsmandOdb.IndexedStringTable.SUBTABLES_FIELD_NUMBER :
-				int len = codedIS.readRawVarint32();
-				int oldLim = codedIS.pushLimit(len);
-				if (key != null) {
-					charMatches = readIndexedStringTable(instance, query, key, list, charMatches);
-				} else {
-					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
-				}
-				codedIS.popLimit(oldLim);
-				break;
-			default:
-				skipUnknownField(t);
-				break;
-			}
-		}
+	/**
+	 * Stream should be positioned at the beginning of indexed string table with pushed limit.
+	 * @param query folded query, see {@link CollatorStringMatcher#getSearchKey()}
+	 */
+	int readIndexedStringTable(SearchKey query, TIntArrayList list) throws IOException {
+		return stringTableCache.search(query, list);
+	}
+	
+	/**
+	 * Releases decoded name indexes 
+	 */
+	public void clearNameIndexCache() {
+		stringTableCache.clear();
 	}
 	
 	private static void testAddressSearchByName(BinaryMapIndexReader reader) throws IOException {
@@ -8,17 +8,22 @@ import gnu.trove.set.hash.TLongHashSet;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 
-import net.osmand.Collator;
 import net.osmand.CollatorStringMatcher;
 import net.osmand.CollatorStringMatcher.StringMatcherMode;
 import net.osmand.Location;
 import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.SearchKey;
+import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.binary.OsmandOdb.OsmAndPoiNameIndex.OsmAndPoiNameIndexData;
 import net.osmand.data.Amenity;
@@ -26,6 +31,7 @@ import net.osmand.data.Amenity.AmenityRoutePoint;
 import net.osmand.data.LatLon;
 import net.osmand.osm.MapPoiTypes;
 import net.osmand.osm.PoiCategory;
+import net.osmand.util.LongIntMap;
 import net.osmand.util.MapUtils;
 
 import org.apache.commons.logging.Log;
@@ -102,6 +108,10 @@ public class BinaryMapPoiReaderAdapter {
 	
 	private CodedInputStream codedIS;
 	private final BinaryMapIndexReader map;
+	// files merged with live updates have several poi parts from the newest one: object is read only
+	// from the first part which has its id (index of part by id, null until parts are read)
+	private LongIntMap firstPartById;
+	private boolean readingParts;
 
 	private MapPoiTypes poiTypes;
 	
@@ -268,6 +278,59 @@ public class BinaryMapPoiReaderAdapter {
 			readPoiIndex(region, true);
 			codedIS.popLimit(oldLimit);
 		}
+		if (firstPartById == null && !readingParts && map.getPoiIndexes().size() > 1) {
+			readPartVersions();
+		}
+	}
+
+	/**
+	 * Reads ids of all parts except the last one (base file part of merged file is not needed)
+	 */
+	private void readPartVersions() throws IOException {
+		readingParts = true;
+		try {
+			final LongIntMap parts = new LongIntMap();
+			List<PoiRegion> regions = map.getPoiIndexes();
+			for (int i = 0; i < regions.size() - 1; i++) {
+				final int part = i;
+				PoiRegion region = regions.get(i);
+				initCategories(region);
+				SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+						Integer.MAX_VALUE, -1, null, new ResultMatcher<Amenity>() {
+
+							@Override
+							public boolean publish(Amenity object) {
+								if (object.getId() != null && !parts.containsKey(object.getId())) {
+									parts.put(object.getId(), part);
+								}
+								return false;
+							}
+
+							@Override
+							public boolean isCancelled() {
+								return false;
+							}
+						});
+				codedIS.seek(region.filePointer);
+				int oldLimit = codedIS.pushLimit(region.length);
+				searchPoiIndex(req.left, req.right, req.top, req.bottom, req, region);
+				codedIS.popLimit(oldLimit);
+			}
+			firstPartById = parts;
+		} finally {
+			readingParts = false;
+		}
+	}
+
+	private boolean isLatestVersion(Amenity am, PoiRegion region) {
+		if (firstPartById == null) {
+			return true;
+		}
+		if (LiveUpdatesOverlay.OSMAND_CHANGE_DELETE.equals(am.getAdditionalInfo(LiveUpdatesOverlay.OSMAND_CHANGE_TAG))) {
+			return false;
+		}
+		int part = am.getId() == null ? LongIntMap.NO_ENTRY : firstPartById.get(am.getId());
+		return part == LongIntMap.NO_ENTRY || part == map.getPoiIndexes().indexOf(region);
 	}
 	
 	protected void searchPoiByName( PoiRegion region, SearchRequest<Amenity> req) throws IOException {
@@ -290,7 +353,7 @@ public class BinaryMapPoiReaderAdapter {
 				int length = readInt();
 				int oldLimit = codedIS.pushLimit(length);
 				// here offsets are sorted by distance
-				offsets = readPoiNameIndex(matcher.getCollator(), query, req);
+				offsets = readPoiNameIndex(matcher.getSearchKey(), req);
 				codedIS.popLimit(oldLimit);
 				break;
 			case OsmandOdb.OsmAndPoiIndex.POIDATA_FIELD_NUMBER :
@@ -346,7 +409,7 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 	
-	private TIntLongHashMap readPoiNameIndex(Collator instance, String query, SearchRequest<Amenity> req) throws IOException {
+	private TIntLongHashMap readPoiNameIndex(SearchKey query, SearchRequest<Amenity> req) throws IOException {
 		TIntLongHashMap offsets = new TIntLongHashMap();
 		TIntArrayList dataOffsets = null;
 		int offset = 0;
@@ -361,7 +424,7 @@ public class BinaryMapPoiReaderAdapter {
 				int oldLimit = codedIS.pushLimit(length);
 				dataOffsets = new TIntArrayList();
 				offset = codedIS.getTotalBytesRead();
-				map.readIndexedStringTable(instance, query, "", dataOffsets, 0);
+				map.readIndexedStringTable(query, dataOffsets);
 				codedIS.popLimit(oldLimit);
 				break; }
 			case OsmandOdb.OsmAndPoiNameIndex.DATA_FIELD_NUMBER : {
@@ -397,6 +460,10 @@ public class BinaryMapPoiReaderAdapter {
 			case 0:
 				return;
 			case OsmAndPoiNameIndexData.ATOMS_FIELD_NUMBER :
+				if (req.isCancelled()) {
+					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+					return;
+				}
 				int len = codedIS.readRawVarint32();
 				int oldLim = codedIS.pushLimit(len);
 				readPoiNameIndexDataAtom(offsets, req);
@@ -514,6 +581,220 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 	
+	private static class NearestSearchItem {
+		static final int SUBTREE = 0;
+		static final int DATA = 1;
+		static final int AMENITY = 2;
+
+		final int type;
+		final double dist;
+		PoiRegion region;
+		int offset;
+		int length;
+		int x;
+		int y;
+		int zoom;
+		Amenity amenity;
+
+		NearestSearchItem(int type, double dist) {
+			this.type = type;
+			this.dist = dist;
+		}
+	}
+
+	/**
+	 * Visits box tree of regions best first: boxes are read in order of increasing distance from (req.x, req.y),
+	 * so amenities are published in order of distance and search stops when k amenities are closer than any
+	 * box that is not read yet. Boxes are filtered by categories before data is read.
+	 */
+	protected void searchPoiNearest(List<PoiRegion> regions, SearchRequest<Amenity> req, int k) throws IOException {
+		PriorityQueue<NearestSearchItem> queue = new PriorityQueue<NearestSearchItem>(64,
+				new Comparator<NearestSearchItem>() {
+					@Override
+					public int compare(NearestSearchItem o1, NearestSearchItem o2) {
+						return Double.compare(o1.dist, o2.dist);
+					}
+				});
+		for (PoiRegion region : regions) {
+			codedIS.seek(region.filePointer);
+			int oldLimit = codedIS.pushLimit(region.length);
+			readNearestRoots(region, queue);
+			codedIS.popLimit(oldLimit);
+		}
+		int found = 0;
+		while (!queue.isEmpty() && found < k && !req.isCancelled()) {
+			NearestSearchItem item = queue.poll();
+			if (item.type == NearestSearchItem.AMENITY) {
+				if (req.publish(item.amenity)) {
+					found++;
+				}
+			} else if (item.type == NearestSearchItem.SUBTREE) {
+				codedIS.seek(item.offset);
+				int oldLimit = codedIS.pushLimit(item.length);
+				readNearestBox(item, req, queue);
+				codedIS.popLimit(oldLimit);
+			} else {
+				codedIS.seek(item.offset);
+				int len = readInt();
+				int oldLimit = codedIS.pushLimit(len);
+				readNearestData(item.region, req, queue);
+				codedIS.popLimit(oldLimit);
+			}
+		}
+	}
+
+	private void readNearestRoots(PoiRegion region, PriorityQueue<NearestSearchItem> queue) throws IOException {
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiIndex.BOXES_FIELD_NUMBER:
+				int length = readInt();
+				NearestSearchItem root = new NearestSearchItem(NearestSearchItem.SUBTREE, 0);
+				root.region = region;
+				root.offset = codedIS.getTotalBytesRead();
+				root.length = length;
+				queue.add(root);
+				codedIS.skipRawBytes(length);
+				break;
+			case OsmandOdb.OsmAndPoiIndex.POIDATA_FIELD_NUMBER:
+				codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+				return;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readNearestBox(NearestSearchItem parent, SearchRequest<Amenity> req,
+			PriorityQueue<NearestSearchItem> queue) throws IOException {
+		req.numberOfReadSubtrees++;
+		boolean checkBox = true;
+		int zoom = parent.zoom;
+		int dx = parent.x;
+		int dy = parent.y;
+		double dist = parent.dist;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiBox.ZOOM_FIELD_NUMBER:
+				zoom = codedIS.readUInt32() + parent.zoom;
+				break;
+			case OsmandOdb.OsmAndPoiBox.LEFT_FIELD_NUMBER:
+				dx = codedIS.readSInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBox.TOP_FIELD_NUMBER:
+				dy = codedIS.readSInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBox.CATEGORIES_FIELD_NUMBER:
+				if (req.poiTypeFilter == null) {
+					skipUnknownField(t);
+				} else {
+					int length = codedIS.readRawVarint32();
+					int oldLimit = codedIS.pushLimit(length);
+					boolean check = checkCategories(req, parent.region);
+					codedIS.popLimit(oldLimit);
+					if (!check) {
+						codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+						return;
+					}
+				}
+				break;
+			case OsmandOdb.OsmAndPoiBox.SUBBOXES_FIELD_NUMBER:
+			case OsmandOdb.OsmAndPoiBox.SHIFTTODATA_FIELD_NUMBER: {
+				int x = dx + (parent.x << (zoom - parent.zoom));
+				int y = dy + (parent.y << (zoom - parent.zoom));
+				if (checkBox) {
+					int xL = x << (31 - zoom);
+					int xR = ((x + 1) << (31 - zoom)) - 1;
+					int yT = y << (31 - zoom);
+					int yB = ((y + 1) << (31 - zoom)) - 1;
+					if (req.left > xR || xL > req.right || req.bottom < yT || yB < req.top) {
+						codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+						return;
+					}
+					req.numberOfAcceptedSubtrees++;
+					dist = Math.max(parent.dist, distToBox(req.x, req.y, xL, xR, yT, yB));
+					checkBox = false;
+				}
+				if (tag == OsmandOdb.OsmAndPoiBox.SUBBOXES_FIELD_NUMBER) {
+					NearestSearchItem sub = new NearestSearchItem(NearestSearchItem.SUBTREE, dist);
+					sub.region = parent.region;
+					sub.length = readInt();
+					sub.offset = codedIS.getTotalBytesRead();
+					sub.x = x;
+					sub.y = y;
+					sub.zoom = zoom;
+					queue.add(sub);
+					codedIS.skipRawBytes(sub.length);
+				} else {
+					NearestSearchItem data = new NearestSearchItem(NearestSearchItem.DATA, dist);
+					data.region = parent.region;
+					data.offset = readInt() + parent.region.filePointer;
+					queue.add(data);
+				}
+			}
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private void readNearestData(PoiRegion region, SearchRequest<Amenity> req, PriorityQueue<NearestSearchItem> queue)
+			throws IOException {
+		int x = 0;
+		int y = 0;
+		int zoom = 0;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return;
+			case OsmandOdb.OsmAndPoiBoxData.X_FIELD_NUMBER:
+				x = codedIS.readUInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBoxData.ZOOM_FIELD_NUMBER:
+				zoom = codedIS.readUInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBoxData.Y_FIELD_NUMBER:
+				y = codedIS.readUInt32();
+				break;
+			case OsmandOdb.OsmAndPoiBoxData.POIDATA_FIELD_NUMBER:
+				int len = codedIS.readRawVarint32();
+				int oldLim = codedIS.pushLimit(len);
+				Amenity am = readPoiPoint(req.left, req.right, req.top, req.bottom, x, y, zoom, req, region, true);
+				codedIS.popLimit(oldLim);
+				if (am != null) {
+					LatLon l = am.getLocation();
+					NearestSearchItem item = new NearestSearchItem(NearestSearchItem.AMENITY, distToBox(req.x, req.y,
+							MapUtils.get31TileNumberX(l.getLongitude()), MapUtils.get31TileNumberX(l.getLongitude()),
+							MapUtils.get31TileNumberY(l.getLatitude()), MapUtils.get31TileNumberY(l.getLatitude())));
+					item.amenity = am;
+					queue.add(item);
+				}
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	private static double distToBox(int x, int y, int left, int right, int top, int bottom) {
+		int cx = Math.max(left, Math.min(right, x));
+		int cy = Math.max(top, Math.min(bottom, y));
+		return MapUtils.squareRootDist31(x, y, cx, cy);
+	}
+
 	private void readPoiData(CollatorStringMatcher matcher, SearchRequest<Amenity> req, PoiRegion region) throws IOException {
 		int x = 0;
 		int y = 0;
@@ -542,11 +823,11 @@ public class BinaryMapPoiReaderAdapter {
 				Amenity am = readPoiPoint(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, x, y, zoom, req, region, false);
 				codedIS.popLimit(oldLim);
 				if (am != null) {
-					boolean matches = matcher.matches(am.getName().toLowerCase()) || 
-							matcher.matches(am.getEnName(true).toLowerCase());
+					boolean matches = matcher.matches(am.getName()) || 
+							matcher.matches(am.getEnName(true));
 					if (!matches) {
 						for(String s : am.getAllNames()) {
-							matches = matcher.matches(s.toLowerCase());
+							matches = matcher.matches(s);
 							if(matches) {
 								break;
 							}
@@ -669,6 +950,9 @@ public class BinaryMapPoiReaderAdapter {
 			}
 			switch (tag) {
 			case 0:
+				if (!isLatestVersion(am, region)) {
+					return null;
+				}
 				req.numberOfAcceptedObjects++;
 				if (req.radius > 0) {
 					LatLon loc = am.getLocation();
@@ -728,16 +1012,16 @@ public class BinaryMapPoiReaderAdapter {
 				int cat = codedIS.readUInt32();
 				int subcatId = cat >> SHIFT_BITS_CATEGORY;
 				int catId = cat & CATEGORY_MASK;
-				PoiCategory type = poiTypes.getOtherPoiCategory();
-				String subtype = "";
-				if (catId < region.categoriesType.size()) {
-					type = region.categoriesType.get(catId);
-					List<String> subcats = region.subcategories.get(catId);
-					if (subcatId < subcats.size()) {
-						subtype = subcats.get(subcatId);
+				if (req.poiTypeFilter == null || getTypeBitmap(req, region).accept(catId, subcatId)) {
+					PoiCategory type = poiTypes.getOtherPoiCategory();
+					String subtype = "";
+					if (catId < region.categoriesType.size()) {
+						type = region.categoriesType.get(catId);
+						List<String> subcats = region.subcategories.get(catId);
+						if (subcatId < subcats.size()) {
+							subtype = subcats.get(subcatId);
+						}
 					}
-				}
-				if (req.poiTypeFilter == null || req.poiTypeFilter.accept(type, subtype)) {
 					if (amenityType == null) {
 						amenityType = type;
 						am.setSubType(subtype);
@@ -776,8 +1060,60 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 	
+	/**
+	 * Type filter compiled for categories of one region: 
+	 * accept is called once for each category and subcategory of region instead of each object.
+	 */
+	static class PoiTypeBitmap {
+		// start index of category in bitset, last index of category is reserved for empty subcategory
+		private final int[] offsets;
+		private final BitSet bits = new BitSet();
+		private final boolean acceptOther;
+
+		PoiTypeBitmap(SearchPoiTypeFilter filter, PoiRegion region, PoiCategory otherCategory) {
+			int size = region.categoriesType.size();
+			offsets = new int[size + 1];
+			int ind = 0;
+			for (int i = 0; i < size; i++) {
+				offsets[i] = ind;
+				PoiCategory type = region.categoriesType.get(i);
+				List<String> subcats = region.subcategories.get(i);
+				for (int j = 0; j < subcats.size(); j++) {
+					if (filter.accept(type, subcats.get(j))) {
+						bits.set(ind + j);
+					}
+				}
+				if (filter.accept(type, "")) {
+					bits.set(ind + subcats.size());
+				}
+				ind += subcats.size() + 1;
+			}
+			offsets[size] = ind;
+			acceptOther = filter.accept(otherCategory, "");
+		}
+
+		boolean accept(int catId, int subcatId) {
+			if (catId >= offsets.length - 1) {
+				return acceptOther;
+			}
+			int subcats = offsets[catId + 1] - offsets[catId] - 1;
+			return bits.get(offsets[catId] + Math.min(subcatId, subcats));
+		}
+	}
+
+	private PoiTypeBitmap getTypeBitmap(SearchRequest<Amenity> req, PoiRegion region) {
+		if (req.poiTypeBitmaps == null) {
+			req.poiTypeBitmaps = new HashMap<PoiRegion, PoiTypeBitmap>();
+		}
+		PoiTypeBitmap bitmap = req.poiTypeBitmaps.get(region);
+		if (bitmap == null) {
+			bitmap = new PoiTypeBitmap(req.poiTypeFilter, region, poiTypes.getOtherPoiCategory());
+			req.poiTypeBitmaps.put(region, bitmap);
+		}
+		return bitmap;
+	}
+
 	private boolean checkCategories(SearchRequest<Amenity> req, PoiRegion region) throws IOException {
-		StringBuilder subType = new StringBuilder();
 		while(true){
 			int t = codedIS.readTag();
 			int tag = WireFormat.getTagFieldNumber(t);
@@ -796,19 +1132,10 @@ public class BinaryMapPoiReaderAdapter {
 //				}
 //				break;
 			case OsmandOdb.OsmAndPoiCategories.CATEGORIES_FIELD_NUMBER:
-				PoiCategory type = poiTypes.getOtherPoiCategory();
-				String subcat = "";
 				int cat = codedIS.readUInt32();
 				int subcatId = cat >> SHIFT_BITS_CATEGORY;
 				int catId = cat & CATEGORY_MASK;
-				if(catId < region.categoriesType.size()){
-					type = region.categoriesType.get(catId);
-					List<String> subcats = region.subcategories.get(catId);
-					if(subcatId < subcats.size()){
-						subcat =  subcats.get(subcatId);
-					}
-				}
-				if(req.poiTypeFilter.accept(type, subcat)){
+				if(getTypeBitmap(req, region).accept(catId, subcatId)){
 					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
 					return true;
 				}
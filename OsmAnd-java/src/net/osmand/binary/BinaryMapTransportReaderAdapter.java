@@ -7,10 +7,10 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
+import net.osmand.NormalizedName;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.data.TransportStop;
 import net.osmand.util.MapUtils;
-import net.sf.junidecode.Junidecode;
 
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.WireFormat;
@@ -350,7 +350,7 @@ public class BinaryMapTransportReaderAdapter {
 			dataObject.setEnName(stringTable.get(dataObject.getEnName(false).charAt(0)));
 		}
 		if(dataObject.getName().length() > 0 && dataObject.getName("en").length() == 0){
-			dataObject.setEnName(Junidecode.unidecode(dataObject.getName()));
+			dataObject.setEnName(NormalizedName.transliterate(dataObject.getName()));
 		}
 		
 		if(dataObject.getOperator().length() > 0){
@@ -443,7 +443,7 @@ public class BinaryMapTransportReaderAdapter {
 			case 0:
 				dataObject.setReferencesToRoutes(req.cacheTypes.toArray());
 				if(dataObject.getName("en").length() == 0){
-					dataObject.setEnName(Junidecode.unidecode(dataObject.getName()));
+					dataObject.setEnName(NormalizedName.transliterate(dataObject.getName()));
 				}
 				return dataObject;
 			case OsmandOdb.TransportStop.ROUTES_FIELD_NUMBER :
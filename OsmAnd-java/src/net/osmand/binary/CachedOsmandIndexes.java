@@ -1,10 +1,20 @@
 package net.osmand.binary;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import net.osmand.PlatformUtil;
 import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
@@ -30,28 +40,77 @@ import net.osmand.util.MapUtils;
 
 import org.apache.commons.logging.Log;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Cache of file headers. Cache file starts with a directory of fixed size slots (file name, size, date, offset
+ * and length of entry), entries are serialized {@link FileIndex} messages placed after the directory.
+ * Only the directory is read on start (file is memory mapped), entries are decoded when the file is opened.
+ * Entries of new files are appended to the end and a slot is written for them, so the rest of the file
+ * is not rewritten. Whole file is rewritten only when the directory is full or it has too many outdated entries.
+ * Methods could be called from several threads.
+ */
 public class CachedOsmandIndexes {
 	
-	private OsmAndStoredIndex storedIndex;
-	private OsmAndStoredIndex.Builder storedIndexBuilder;
+	private static final int MAGIC = 0x4f414943; // OAIC
+	private static final int HEADER_SIZE = 32;
+	// size (8), date (8), offset (8), length (4), name length (2), name
+	private static final int SLOT_SIZE = 128;
+	private static final int MAX_NAME_LENGTH = SLOT_SIZE - 30;
+	private static final int MIN_CAPACITY = 64;
+	// version of protobuf cache (used by native library)
+	private static final int STORED_INDEX_VERSION = 2;
+	
+	public static final int VERSION = 3;
+	
+	private static class Entry {
+		final String name;
+		final long size;
+		final long date;
+		int slot = -1;
+		long offset;
+		int length;
+		// null if entry is not decoded yet
+		FileIndex index;
+		boolean used;
+		
+		Entry(String name, long size, long date) {
+			this.name = name;
+			this.size = size;
+			this.date = date;
+		}
+	}
+	
+	// entries by file name and size
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	// entries not written to the file
+	private final List<Entry> newEntries = new ArrayList<Entry>();
+	private ByteBuffer mapped;
+	private int capacity;
+	private int slots;
+	private long dataEnd;
+	private boolean fileValid = false;
 	private Log log = PlatformUtil.getLog(CachedOsmandIndexes.class);
-	private boolean hasChanged = true;
 	
-	public static final int VERSION = 2;
+	private static String getKey(String fileName, long size) {
+		return fileName + "/" + size; //$NON-NLS-1$
+	}
 
 	public void addToCache(BinaryMapIndexReader reader, File f) {
-		hasChanged = true;
-		if(storedIndexBuilder == null) {
-			storedIndexBuilder = OsmandIndex.OsmAndStoredIndex.newBuilder();
-			storedIndexBuilder.setVersion(VERSION);
-			storedIndexBuilder.setDateCreated(System.currentTimeMillis());
-			if(storedIndex != null) {
-				for(FileIndex ex : storedIndex.getFileIndexList()) {
-					storedIndexBuilder.addFileIndex(ex);
-				}
-			}
+		addToCache(createFileIndex(reader, f));
+	}
+	
+	void addToCache(FileIndex fileIndex) {
+		Entry e = new Entry(fileIndex.getFileName(), fileIndex.getSize(), fileIndex.getDateModified());
+		e.index = fileIndex;
+		e.used = true;
+		synchronized (this) {
+			entries.put(getKey(e.name, e.size), e);
+			newEntries.add(e);
 		}
-		
+	}
+
+	private FileIndex createFileIndex(BinaryMapIndexReader reader, File f) {
 		FileIndex.Builder fileIndex = OsmandIndex.FileIndex.newBuilder();
 		long d = reader.getDateCreated();
 		fileIndex.setDateModified(d== 0?f.lastModified() : d);
@@ -152,8 +211,7 @@ public class CachedOsmandIndexes {
 			fileIndex.addRoutingIndex(routing);
 		}
 		
-		storedIndexBuilder.addFileIndex(fileIndex);
-		
+		return fileIndex.build();
 	}
 
 	private void addRouteSubregion(RoutingPart.Builder routing, RouteSubregion sub, boolean base) {
@@ -172,16 +230,25 @@ public class CachedOsmandIndexes {
 	public BinaryMapIndexReader getReader(File f) throws IOException {
 		RandomAccessFile mf = new RandomAccessFile(f.getPath(), "r");
 		FileIndex found = null;
-		if (storedIndex != null) {
-			for (int i = 0; i < storedIndex.getFileIndexCount(); i++) {
-				FileIndex fi = storedIndex.getFileIndex(i);
-				if (f.length() == fi.getSize() && f.getName().equals(fi.getFileName())) {
-					// f.lastModified() == fi.getDateModified()
-					found = fi;
-					break;
+		byte[] data = null;
+		synchronized (this) {
+			// f.lastModified() == fi.getDateModified()
+			Entry e = entries.get(getKey(f.getName(), f.length()));
+			if (e != null) {
+				e.used = true;
+				found = e.index;
+				if (found == null) {
+					data = readEntry(e);
 				}
 			}
 		}
+		if (data != null) {
+			try {
+				found = FileIndex.parseFrom(data);
+			} catch (InvalidProtocolBufferException ex) {
+				log.warn("Cache entry of " + f.getName() + " is broken"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
 		BinaryMapIndexReader reader = null;
 		if (found == null) {
 			long val = System.currentTimeMillis();
@@ -196,6 +263,15 @@ public class CachedOsmandIndexes {
 		return reader;
 	}
 	
+	// should be called under lock
+	private byte[] readEntry(Entry e) {
+		byte[] data = new byte[e.length];
+		ByteBuffer b = mapped.duplicate();
+		b.position((int) e.offset);
+		b.get(data);
+		return data;
+	}
+	
 	private BinaryMapIndexReader initFileIndex(FileIndex found, RandomAccessFile mf, File f) throws IOException {
 		BinaryMapIndexReader reader = new BinaryMapIndexReader(mf, f, false);
 		reader.version = found.getVersion();
@@ -306,28 +382,241 @@ public class CachedOsmandIndexes {
 
 	public void readFromFile(File f, int version) throws IOException {
 		long time = System.currentTimeMillis();
-		FileInputStream is = new FileInputStream(f);
+		RandomAccessFile raf = new RandomAccessFile(f, "r"); //$NON-NLS-1$
 		try {
-			storedIndex = OsmandIndex.OsmAndStoredIndex.newBuilder().mergeFrom(is).build();
-			hasChanged = false;
-			if(storedIndex.getVersion() != version){
-				storedIndex = null;
+			FileChannel channel = raf.getChannel();
+			ByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			synchronized (this) {
+				entries.clear();
+				newEntries.clear();
+				mapped = null;
+				fileValid = false;
+				if (buf.limit() >= HEADER_SIZE && buf.getInt(0) == MAGIC && buf.getInt(4) == version) {
+					capacity = buf.getInt(8);
+					slots = buf.getInt(12);
+					dataEnd = buf.getLong(16);
+					long directoryEnd = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+					fileValid = slots >= 0 && slots <= capacity && directoryEnd <= dataEnd && dataEnd <= buf.limit();
+				}
+				if (fileValid) {
+					mapped = buf;
+					for (int i = 0; i < slots; i++) {
+						Entry e = readSlot(i);
+						if (e != null) {
+							entries.put(getKey(e.name, e.size), e);
+						}
+					}
+				}
 			}
 		} finally {
-			is.close();
+			raf.close();
 		}
 		log.info("Initialize cache " + (System.currentTimeMillis() - time));
 	}
 	
-	public void writeToFile(File f) throws IOException {
-		if (hasChanged) {
-			FileOutputStream outputStream = new FileOutputStream(f);
-			try {
-				storedIndexBuilder.build().writeTo(outputStream);
-			} finally {
-				outputStream.close();
+	// should be called under lock
+	private Entry readSlot(int slot) {
+		int pos = HEADER_SIZE + slot * SLOT_SIZE;
+		long size = mapped.getLong(pos);
+		long date = mapped.getLong(pos + 8);
+		long offset = mapped.getLong(pos + 16);
+		int length = mapped.getInt(pos + 24);
+		int nameLength = mapped.getShort(pos + 28);
+		if (length <= 0 || nameLength <= 0 || nameLength > MAX_NAME_LENGTH || offset < 0 || offset + length > dataEnd) {
+			return null;
+		}
+		byte[] name = new byte[nameLength];
+		for (int i = 0; i < nameLength; i++) {
+			name[i] = mapped.get(pos + 30 + i);
+		}
+		Entry e;
+		try {
+			e = new Entry(new String(name, "UTF-8"), size, date); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+		e.slot = slot;
+		e.offset = offset;
+		e.length = length;
+		return e;
+	}
+	
+	private static byte[] encodeSlot(Entry e) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(SLOT_SIZE);
+		byte[] name = e.name.getBytes("UTF-8"); //$NON-NLS-1$
+		b.putLong(e.size);
+		b.putLong(e.date);
+		b.putLong(e.offset);
+		b.putInt(e.length);
+		b.putShort((short) name.length);
+		b.put(name);
+		return b.array();
+	}
+	
+	private static boolean canBeStored(Entry e) throws IOException {
+		return e.name.getBytes("UTF-8").length <= MAX_NAME_LENGTH; //$NON-NLS-1$
+	}
+	
+	/**
+	 * Appends entries of newly parsed files to the cache file and writes their slots
+	 * (file is written fully if it is not valid or directory is full)
+	 */
+	public synchronized void appendToFile(File f) throws IOException {
+		if (newEntries.isEmpty()) {
+			return;
+		}
+		if (!fileValid || !f.exists() || slots + newEntries.size() > capacity) {
+			writeFully(f, false);
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(f, "rw"); //$NON-NLS-1$
+		try {
+			for (Entry e : newEntries) {
+				if (!canBeStored(e)) {
+					continue;
+				}
+				byte[] data = e.index.toByteArray();
+				raf.seek(dataEnd);
+				raf.write(data);
+				e.offset = dataEnd;
+				e.length = data.length;
+				dataEnd += data.length;
+				e.slot = takeSlot(e);
+				raf.seek(HEADER_SIZE + (long) e.slot * SLOT_SIZE);
+				raf.write(encodeSlot(e));
+			}
+			// header is updated last, so slots are never pointing to not written data
+			raf.seek(12);
+			raf.writeInt(slots);
+			raf.writeLong(dataEnd);
+		} finally {
+			raf.close();
+		}
+		newEntries.clear();
+	}
+	
+	// slot of outdated entry of the same file is reused
+	private int takeSlot(Entry e) {
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			Entry o = it.next();
+			if (o != e && !o.used && o.slot >= 0 && o.name.equals(e.name)) {
+				it.remove();
+				return o.slot;
+			}
+		}
+		return slots++;
+	}
+	
+	/**
+	 * Writes cache file if it has changed. New entries are appended, file is rewritten with used entries only
+	 * when outdated entries take too much space.
+	 */
+	public synchronized void writeToFile(File f) throws IOException {
+		int used = 0;
+		int outdated = 0;
+		long stored = 0;
+		for (Entry e : entries.values()) {
+			if (e.used) {
+				used++;
+			} else if (e.slot >= 0) {
+				outdated++;
+			}
+			if (e.slot >= 0) {
+				stored += e.length;
+			}
+		}
+		long garbage = dataEnd - HEADER_SIZE - (long) capacity * SLOT_SIZE - stored;
+		if (!fileValid || !f.exists() || outdated > Math.max(8, used / 2) || garbage > Math.max(stored, 1 << 16)) {
+			writeFully(f, true);
+		} else {
+			appendToFile(f);
+		}
+	}
+	
+	// should be called under lock, compact - remove entries of files not used since reading
+	private void writeFully(File f, boolean compact) throws IOException {
+		List<Entry> toWrite = new ArrayList<Entry>();
+		List<byte[]> data = new ArrayList<byte[]>();
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			Entry e = it.next();
+			if (compact && !e.used) {
+				it.remove();
+			} else if (canBeStored(e)) {
+				toWrite.add(e);
+				data.add(e.index != null ? e.index.toByteArray() : readEntry(e));
 			}
 		}
+		int cap = Math.max(MIN_CAPACITY, toWrite.size() * 2);
+		long offset = HEADER_SIZE + (long) cap * SLOT_SIZE;
+		for (int i = 0; i < toWrite.size(); i++) {
+			Entry e = toWrite.get(i);
+			e.slot = i;
+			e.offset = offset;
+			e.length = data.get(i).length;
+			offset += e.length;
+		}
+		File tmp = new File(f.getParentFile(), f.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(cap);
+			out.writeInt(toWrite.size());
+			out.writeLong(offset);
+			out.write(new byte[HEADER_SIZE - 24]);
+			byte[] empty = new byte[SLOT_SIZE];
+			for (int i = 0; i < cap; i++) {
+				out.write(i < toWrite.size() ? encodeSlot(toWrite.get(i)) : empty);
+			}
+			for (byte[] d : data) {
+				out.write(d);
+			}
+		} finally {
+			out.close();
+		}
+		// mapping of old file is not used after this point
+		mapped = null;
+		f.delete();
+		if (!tmp.renameTo(f)) {
+			throw new IOException("Can't rename " + tmp.getName()); //$NON-NLS-1$
+		}
+		RandomAccessFile raf = new RandomAccessFile(f, "r"); //$NON-NLS-1$
+		try {
+			mapped = raf.getChannel().map(MapMode.READ_ONLY, 0, offset);
+		} finally {
+			raf.close();
+		}
+		capacity = cap;
+		slots = toWrite.size();
+		dataEnd = offset;
+		fileValid = true;
+		newEntries.clear();
+		// written entries are decoded again from file when needed
+		for (Entry e : toWrite) {
+			e.index = null;
+		}
+	}
+	
+	/**
+	 * Writes entries of used files in protobuf format ({@link OsmAndStoredIndex}) read by native library
+	 */
+	public synchronized void writeStoredIndex(File f) throws IOException {
+		OsmAndStoredIndex.Builder b = OsmandIndex.OsmAndStoredIndex.newBuilder();
+		b.setVersion(STORED_INDEX_VERSION);
+		b.setDateCreated(System.currentTimeMillis());
+		for (Entry e : entries.values()) {
+			if (e.used) {
+				b.addFileIndex(e.index != null ? e.index : FileIndex.parseFrom(readEntry(e)));
+			}
+		}
+		FileOutputStream outputStream = new FileOutputStream(f);
+		try {
+			b.build().writeTo(outputStream);
+		} finally {
+			outputStream.close();
+		}
 	}
 
 }
@@ -0,0 +1,471 @@
+package net.osmand.binary;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.osmand.PlatformUtil;
+import net.osmand.data.City;
+import net.osmand.data.City.CityType;
+import net.osmand.data.MapObject;
+import net.osmand.data.Street;
+import net.osmand.util.Algorithms;
+import net.osmand.util.LongIntMap;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Compact address index of one region: cities (city/town type) and streets of cities
+ * which were once loaded. Objects are kept in primitive arrays (coordinates, file offsets,
+ * ids of names in shared string table and pointers to parent city), {@link City} and {@link Street}
+ * objects are created on request. Index is persisted to the file, so next time cities and streets
+ * are not read from obf file.
+ *
+ * Not thread safe.
+ */
+public class CompactAddressIndex {
+
+	private static final Log log = PlatformUtil.getLog(CompactAddressIndex.class);
+
+	public static final int VERSION = 2;
+	// closest city is searched in cells of that zoom around the point
+	public static final int ZOOM_GRID = 10;
+	// number of cells around the cell of the point to search closest city
+	public static final int GRID_RADIUS = 2;
+	private static final int NOT_LOADED = -1;
+	private static final int NO_TYPE = -1;
+	// 31 tile numbers are not negative
+	private static final int NO_LOCATION = -1;
+
+	// strings (names and languages) table
+	private final List<String> strings = new ArrayList<String>();
+	// open addressing table of string ids + 1 by string hash (0 is free slot)
+	private int[] stringSlots = new int[64];
+	// names of objects: count, then pairs (lang id, name id); main name has lang "" and english has lang "en"
+	private final TIntArrayList names = new TIntArrayList();
+
+	private final TLongArrayList cityIds = new TLongArrayList();
+	private final TByteArrayList cityTypes = new TByteArrayList();
+	private final TIntArrayList cityX = new TIntArrayList();
+	private final TIntArrayList cityY = new TIntArrayList();
+	private final TIntArrayList cityOffsets = new TIntArrayList();
+	private final TIntArrayList cityNames = new TIntArrayList();
+	private final TIntArrayList cityStreetsStart = new TIntArrayList();
+	private final TIntArrayList cityStreetsCount = new TIntArrayList();
+	private final LongIntMap cityIndexById = new LongIntMap();
+
+	private final TLongArrayList streetIds = new TLongArrayList();
+	private final TIntArrayList streetX = new TIntArrayList();
+	private final TIntArrayList streetY = new TIntArrayList();
+	private final TIntArrayList streetOffsets = new TIntArrayList();
+	private final TIntArrayList streetNames = new TIntArrayList();
+	private final TIntArrayList streetCity = new TIntArrayList();
+
+	// cities sorted by grid cell
+	private long[] gridKeys;
+	private int[] gridCities;
+
+	// length and modification time of obf file from which index is read
+	private final long obfLength;
+	private final long obfLastModified;
+	private boolean modified;
+
+	/**
+	 * @param obfLength length of obf file from which objects are read (stored to validate the index)
+	 * @param obfLastModified modification time of obf file from which objects are read
+	 */
+	public CompactAddressIndex(long obfLength, long obfLastModified) {
+		this.obfLength = obfLength;
+		this.obfLastModified = obfLastModified;
+	}
+
+	public int getCitiesCount() {
+		return cityIds.size();
+	}
+
+	public int getStreetsCount() {
+		return streetIds.size();
+	}
+
+	/**
+	 * @return true if index was changed since it was read or written
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * @return index of the city or -1
+	 */
+	public int getCityIndex(long id) {
+		return cityIndexById.get(id);
+	}
+
+	public long getCityId(int city) {
+		return cityIds.get(city);
+	}
+
+	public int addCity(City c) {
+		if (c.getId() == null) {
+			return -1;
+		}
+		int ind = getCityIndex(c.getId());
+		if (ind != -1) {
+			return ind;
+		}
+		ind = cityIds.size();
+		cityIds.add(c.getId());
+		cityTypes.add((byte) (c.getType() == null ? NO_TYPE : c.getType().ordinal()));
+		addLocation(c, cityX, cityY);
+		cityOffsets.add(c.getFileOffset());
+		cityNames.add(addNames(c));
+		cityStreetsStart.add(NOT_LOADED);
+		cityStreetsCount.add(0);
+		cityIndexById.put(c.getId(), ind);
+		gridKeys = null;
+		modified = true;
+		return ind;
+	}
+
+	public City createCity(int ind) {
+		byte type = cityTypes.get(ind);
+		City c;
+		if (type == NO_TYPE) {
+			c = City.createPostcode("");
+		} else {
+			c = new City(CityType.values()[type]);
+		}
+		c.setId(cityIds.get(ind));
+		c.setFileOffset(cityOffsets.get(ind));
+		readLocation(c, ind, cityX, cityY);
+		readNames(c, cityNames.get(ind));
+		return c;
+	}
+
+	public boolean isStreetsLoaded(int city) {
+		return cityStreetsStart.get(city) != NOT_LOADED;
+	}
+
+	/**
+	 * Stores streets of the city (streets of the city are stored only once)
+	 */
+	public void setStreets(int city, Collection<Street> streets) {
+		if (isStreetsLoaded(city)) {
+			return;
+		}
+		cityStreetsStart.set(city, streetIds.size());
+		cityStreetsCount.set(city, streets.size());
+		for (Street s : streets) {
+			streetIds.add(s.getId() == null ? -1 : s.getId());
+			addLocation(s, streetX, streetY);
+			streetOffsets.add(s.getFileOffset());
+			streetNames.add(addNames(s));
+			streetCity.add(city);
+		}
+		modified = true;
+	}
+
+	/**
+	 * @param c city object created for the city index
+	 * @return streets (buildings are not loaded) or null if streets were not stored
+	 */
+	public List<Street> createStreets(int city, City c) {
+		if (!isStreetsLoaded(city)) {
+			return null;
+		}
+		int start = cityStreetsStart.get(city);
+		int count = cityStreetsCount.get(city);
+		List<Street> res = new ArrayList<Street>(count);
+		for (int i = start; i < start + count; i++) {
+			Street s = new Street(c);
+			long id = streetIds.get(i);
+			if (id != -1) {
+				s.setId(id);
+			}
+			s.setFileOffset(streetOffsets.get(i));
+			readLocation(s, i, streetX, streetY);
+			readNames(s, streetNames.get(i));
+			res.add(s);
+		}
+		return res;
+	}
+
+	/**
+	 * Closest city to the point among cities in {@link #GRID_RADIUS} cells of {@link #ZOOM_GRID} zoom around the point
+	 * @return index of the city or -1
+	 */
+	public int getClosestCity(double lat, double lon) {
+		if (gridKeys == null) {
+			buildGrid();
+		}
+		int x31 = MapUtils.get31TileNumberX(lon);
+		int y31 = MapUtils.get31TileNumberY(lat);
+		int dz = 31 - ZOOM_GRID;
+		int cx = x31 >> dz;
+		int cy = y31 >> dz;
+		int closest = -1;
+		double min = 0;
+		for (int dx = -GRID_RADIUS; dx <= GRID_RADIUS; dx++) {
+			for (int dy = -GRID_RADIUS; dy <= GRID_RADIUS; dy++) {
+				long key = cellKey(cx + dx, cy + dy);
+				int i = Arrays.binarySearch(gridKeys, key);
+				if (i < 0) {
+					continue;
+				}
+				// binary search returns any of equal keys
+				while (i > 0 && gridKeys[i - 1] == key) {
+					i--;
+				}
+				for (; i < gridKeys.length && gridKeys[i] == key; i++) {
+					int c = gridCities[i];
+					double d = MapUtils.squareRootDist31(x31, y31, cityX.get(c), cityY.get(c));
+					if (closest == -1 || d < min) {
+						min = d;
+						closest = c;
+					}
+				}
+			}
+		}
+		return closest;
+	}
+
+	private void buildGrid() {
+		int dz = 31 - ZOOM_GRID;
+		long[] keys = new long[cityIds.size()];
+		List<Integer> located = new ArrayList<Integer>();
+		for (int i = 0; i < keys.length; i++) {
+			if (cityX.get(i) != NO_LOCATION) {
+				keys[i] = cellKey(cityX.get(i) >> dz, cityY.get(i) >> dz);
+				located.add(i);
+			}
+		}
+		int size = located.size();
+		Integer[] order = located.toArray(new Integer[size]);
+		final long[] fkeys = keys;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				long k1 = fkeys[o1];
+				long k2 = fkeys[o2];
+				return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+			}
+		});
+		gridKeys = new long[size];
+		gridCities = new int[size];
+		for (int i = 0; i < size; i++) {
+			gridCities[i] = order[i];
+			gridKeys[i] = keys[order[i]];
+		}
+	}
+
+	private static void addLocation(MapObject o, TIntArrayList x, TIntArrayList y) {
+		if (o.getLocation() != null) {
+			x.add(MapUtils.get31TileNumberX(o.getLocation().getLongitude()));
+			y.add(MapUtils.get31TileNumberY(o.getLocation().getLatitude()));
+		} else {
+			x.add(NO_LOCATION);
+			y.add(NO_LOCATION);
+		}
+	}
+
+	private static void readLocation(MapObject o, int ind, TIntArrayList x, TIntArrayList y) {
+		if (x.get(ind) != NO_LOCATION) {
+			o.setLocation(MapUtils.get31LatitudeY(y.get(ind)), MapUtils.get31LongitudeX(x.get(ind)));
+		}
+	}
+
+	private static long cellKey(int cx, int cy) {
+		return (((long) cx) << 32) | (cy & 0xffffffffL);
+	}
+
+	private int addNames(MapObject o) {
+		int start = names.size();
+		Map<String, String> mp = o.getNamesMap(true);
+		int count = mp.size() + (Algorithms.isEmpty(o.getName()) ? 0 : 1);
+		names.add(count);
+		if (!Algorithms.isEmpty(o.getName())) {
+			names.add(getStringId(""));
+			names.add(getStringId(o.getName()));
+		}
+		for (Entry<String, String> e : mp.entrySet()) {
+			names.add(getStringId(e.getKey()));
+			names.add(getStringId(e.getValue()));
+		}
+		return start;
+	}
+
+	private void readNames(MapObject o, int start) {
+		int count = names.get(start);
+		for (int i = 0; i < count; i++) {
+			String lang = strings.get(names.get(start + 1 + 2 * i));
+			String name = strings.get(names.get(start + 2 + 2 * i));
+			if (lang.length() == 0) {
+				o.setName(name);
+			} else if (lang.equals("en")) {
+				o.setEnName(name);
+			} else {
+				o.setName(lang, name);
+			}
+		}
+	}
+
+	private int getStringId(String s) {
+		int mask = stringSlots.length - 1;
+		int i = s.hashCode() & mask;
+		for (; stringSlots[i] != 0; i = (i + 1) & mask) {
+			if (strings.get(stringSlots[i] - 1).equals(s)) {
+				return stringSlots[i] - 1;
+			}
+		}
+		int id = strings.size();
+		strings.add(s);
+		stringSlots[i] = id + 1;
+		if (strings.size() * 4 > stringSlots.length * 3) {
+			stringSlots = new int[stringSlots.length * 2];
+			mask = stringSlots.length - 1;
+			for (int k = 0; k < strings.size(); k++) {
+				int j = strings.get(k).hashCode() & mask;
+				while (stringSlots[j] != 0) {
+					j = (j + 1) & mask;
+				}
+				stringSlots[j] = k + 1;
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Writes index with length and modification time of obf file it was created for (not of the current file,
+	 * which could be replaced since then)
+	 */
+	public void writeToFile(File file) throws IOException {
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(VERSION);
+			out.writeLong(obfLength);
+			out.writeLong(obfLastModified);
+			out.writeInt(strings.size());
+			for (String s : strings) {
+				out.writeUTF(s);
+			}
+			writeInts(out, names);
+			writeLongs(out, cityIds);
+			out.writeInt(cityTypes.size());
+			out.write(cityTypes.toArray());
+			writeInts(out, cityX);
+			writeInts(out, cityY);
+			writeInts(out, cityOffsets);
+			writeInts(out, cityNames);
+			writeInts(out, cityStreetsStart);
+			writeInts(out, cityStreetsCount);
+			writeLongs(out, streetIds);
+			writeInts(out, streetX);
+			writeInts(out, streetY);
+			writeInts(out, streetOffsets);
+			writeInts(out, streetNames);
+			writeInts(out, streetCity);
+		} finally {
+			out.close();
+		}
+		file.delete();
+		if (!tmp.renameTo(file)) {
+			throw new IOException("Can't rename " + tmp.getName());
+		}
+		modified = false;
+	}
+
+	/**
+	 * @return index or null if file doesn't exist or was created for another version of obf file
+	 */
+	public static CompactAddressIndex readFromFile(File file, long obfLength, long obfLastModified) {
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != VERSION || in.readLong() != obfLength || in.readLong() != obfLastModified) {
+				return null;
+			}
+			CompactAddressIndex index = new CompactAddressIndex(obfLength, obfLastModified);
+			int sz = in.readInt();
+			for (int i = 0; i < sz; i++) {
+				index.getStringId(in.readUTF());
+			}
+			readInts(in, index.names);
+			readLongs(in, index.cityIds);
+			byte[] types = new byte[in.readInt()];
+			in.readFully(types);
+			index.cityTypes.add(types);
+			readInts(in, index.cityX);
+			readInts(in, index.cityY);
+			readInts(in, index.cityOffsets);
+			readInts(in, index.cityNames);
+			readInts(in, index.cityStreetsStart);
+			readInts(in, index.cityStreetsCount);
+			readLongs(in, index.streetIds);
+			readInts(in, index.streetX);
+			readInts(in, index.streetY);
+			readInts(in, index.streetOffsets);
+			readInts(in, index.streetNames);
+			readInts(in, index.streetCity);
+			for (int i = 0; i < index.cityIds.size(); i++) {
+				index.cityIndexById.put(index.cityIds.get(i), i);
+			}
+			return index;
+		} catch (IOException e) {
+			log.error("Address index " + file.getName() + " could not be read", e);
+			return null;
+		} finally {
+			Algorithms.closeStream(in);
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, TIntArrayList l) throws IOException {
+		out.writeInt(l.size());
+		for (int i = 0; i < l.size(); i++) {
+			out.writeInt(l.get(i));
+		}
+	}
+
+	private static void writeLongs(DataOutputStream out, TLongArrayList l) throws IOException {
+		out.writeInt(l.size());
+		for (int i = 0; i < l.size(); i++) {
+			out.writeLong(l.get(i));
+		}
+	}
+
+	private static void readInts(DataInputStream in, TIntArrayList l) throws IOException {
+		int sz = in.readInt();
+		l.ensureCapacity(sz);
+		for (int i = 0; i < sz; i++) {
+			l.add(in.readInt());
+		}
+	}
+
+	private static void readLongs(DataInputStream in, TLongArrayList l) throws IOException {
+		int sz = in.readInt();
+		l.ensureCapacity(sz);
+		for (int i = 0; i < sz; i++) {
+			l.add(in.readLong());
+		}
+	}
+}
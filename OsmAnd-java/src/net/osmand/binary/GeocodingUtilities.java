@@ -235,11 +235,21 @@ public class GeocodingUtilities {
 	
 	public List<GeocodingResult> justifyReverseGeocodingSearch(final GeocodingResult road, BinaryMapIndexReader reader,
 			double knownMinBuidlingDistance, final ResultMatcher<GeocodingResult> result) throws IOException {
+		List<Street> streets = searchStreetsByName(road.streetName, reader, result);
+		return justifyReverseGeocodingSearch(road, reader, streets, knownMinBuidlingDistance);
+	}
+
+	/**
+	 * Streets of the file which name consists of the same words as streetName (independent of search point,
+	 * so result could be reused for several points near the same road)
+	 */
+	public List<Street> searchStreetsByName(String streetName, BinaryMapIndexReader reader,
+			final ResultMatcher<GeocodingResult> result) throws IOException {
 		// test address index search
-		final List<GeocodingResult> streetsList = new ArrayList<GeocodingResult>();
-		final List<String> streetNamePacked = prepareStreetName(road.streetName);
+		final List<Street> streetsList = new ArrayList<Street>();
+		final List<String> streetNamePacked = prepareStreetName(streetName);
 		if (streetNamePacked.size() > 0) {
-			log.info("Search street by name " + road.streetName + " " + streetNamePacked);
+			log.info("Search street by name " + streetName + " " + streetNamePacked);
 			String mainWord = "";
 			for(int i = 0; i < streetNamePacked.size(); i++) {
 				String s = streetNamePacked.get(i);
@@ -256,18 +266,8 @@ public class GeocodingUtilities {
 						public boolean publish(MapObject object) {
 							if (object instanceof Street
 									&& prepareStreetName(object.getName()).equals(streetNamePacked)) {
-								double d = MapUtils.getDistance(object.getLocation(), road.searchPoint.getLatitude(),
-										road.searchPoint.getLongitude());
-								if (d < DISTANCE_STREET_NAME_PROXIMITY_BY_NAME) {
-									GeocodingResult rs = new GeocodingResult(road);
-									rs.street = (Street) object;
-									// set connection point to sort
-									rs.connectionPoint = rs.street.getLocation();
-									rs.city = rs.street.getCity();
-									streetsList.add(rs);
-									return true;
-								}
-								return false;
+								streetsList.add((Street) object);
+								return true;
 							}
 							return false;
 						}
@@ -279,6 +279,36 @@ public class GeocodingUtilities {
 					}, mainWord);
 			reader.searchAddressDataByName(req);
 		}
+		return streetsList;
+	}
+
+	/**
+	 * @param streets result of {@link #searchStreetsByName} for the road name, buildings are loaded only once per street
+	 */
+	public List<GeocodingResult> justifyReverseGeocodingSearch(final GeocodingResult road, BinaryMapIndexReader reader,
+			List<Street> streets, double knownMinBuidlingDistance) throws IOException {
+		return justifyReverseGeocodingSearch(road, reader, streets, knownMinBuidlingDistance, null);
+	}
+
+	/**
+	 * @param loadedStreets streets which buildings are already loaded (streets loaded by this call are added),
+	 *        if null buildings are loaded for streets without buildings
+	 */
+	public List<GeocodingResult> justifyReverseGeocodingSearch(final GeocodingResult road, BinaryMapIndexReader reader,
+			List<Street> streets, double knownMinBuidlingDistance, Set<Street> loadedStreets) throws IOException {
+		final List<GeocodingResult> streetsList = new ArrayList<GeocodingResult>();
+		for (Street s : streets) {
+			double d = MapUtils.getDistance(s.getLocation(), road.searchPoint.getLatitude(),
+					road.searchPoint.getLongitude());
+			if (d < DISTANCE_STREET_NAME_PROXIMITY_BY_NAME) {
+				GeocodingResult rs = new GeocodingResult(road);
+				rs.street = s;
+				// set connection point to sort
+				rs.connectionPoint = rs.street.getLocation();
+				rs.city = rs.street.getCity();
+				streetsList.add(rs);
+			}
+		}
 		
 		final List<GeocodingResult> res = new ArrayList<GeocodingResult>();
 		if(streetsList.size() == 0) {
@@ -293,7 +323,7 @@ public class GeocodingUtilities {
 					continue;
 				}
 				street.connectionPoint = road.connectionPoint;
-				final List<GeocodingResult> streetBuildings = loadStreetBuildings(road, reader, street);
+				final List<GeocodingResult> streetBuildings = loadStreetBuildings(road, reader, street, loadedStreets);
 				Collections.sort(streetBuildings, DISTANCE_COMPARATOR);
 				if (streetBuildings.size() > 0) {
 					Iterator<GeocodingResult> it = streetBuildings.iterator();
@@ -319,10 +349,13 @@ public class GeocodingUtilities {
 	}
 
 	private List<GeocodingResult> loadStreetBuildings(final GeocodingResult road, BinaryMapIndexReader reader,
-			GeocodingResult street) throws IOException {
+			GeocodingResult street, Set<Street> loadedStreets) throws IOException {
 		final List<GeocodingResult> streetBuildings = new ArrayList<GeocodingResult>();
-		reader.preloadBuildings(street.street, null);
-		log.info("Preload buildings " + street.street.getName() + " " + street.city.getName() + " " + street.street.getId());
+		boolean load = loadedStreets == null ? street.street.getBuildings().isEmpty() : loadedStreets.add(street.street);
+		if (load) {
+			reader.preloadBuildings(street.street, null);
+			log.info("Preload buildings " + street.street.getName() + " " + street.city.getName() + " " + street.street.getId());
+		}
 		for (Building b : street.street.getBuildings()) {
 			if(b.getLatLon2() != null) {
 				double slat = b.getLocation().getLatitude();
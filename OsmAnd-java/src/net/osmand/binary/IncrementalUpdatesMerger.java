@@ -0,0 +1,215 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
+import net.osmand.util.Algorithms;
+
+import org.apache.commons.logging.Log;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * Merges obf file of region with its incremental (live) updates into one file, so they are not
+ * opened and queried as separate files.
+ * Parts are copied as they are (like {@link BinaryInspector#combineParts(File, java.util.Map)}). Map, routing and
+ * poi parts of updates are placed before the parts of base file in order from the newest update. Map and routing
+ * searches skip objects with already found ids, poi reader reads object only from the first poi part which has
+ * its id and skips deleted objects, so object of newer update overrides the same object of older files.
+ * Address parts are taken from base file. Date of merged file is the date of the newest update, so it is
+ * used as timestamp to check next updates.
+ */
+public class IncrementalUpdatesMerger {
+
+	private static final Log log = PlatformUtil.getLog(IncrementalUpdatesMerger.class);
+
+	private final File base;
+	private final List<File> updates = new ArrayList<File>();
+	private boolean includeRouting = true;
+	private volatile boolean cancelled;
+
+	public IncrementalUpdatesMerger(File base) {
+		this.base = base;
+	}
+
+	public void addUpdate(File update) {
+		updates.add(update);
+	}
+
+	public List<File> getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Routing parts of updates are not copied if routing by live data is disabled
+	 */
+	public void setIncludeRouting(boolean includeRouting) {
+		this.includeRouting = includeRouting;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Merges files into temporary file and replaces base file with it (rename is atomic if files are on the same
+	 * file system). Update files are not deleted.
+	 */
+	public void mergeAndReplace() throws IOException {
+		File tmp = new File(base.getParentFile(), base.getName() + ".merge"); //$NON-NLS-1$
+		try {
+			merge(tmp);
+			if (!tmp.renameTo(base)) {
+				// some file systems do not replace existing file
+				base.delete();
+				if (!tmp.renameTo(base)) {
+					throw new IOException("Can't rename " + tmp.getName()); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Writes merged file to target (it should not be one of the merged files)
+	 */
+	public void merge(File target) throws IOException {
+		cancelled = false;
+		long time = System.currentTimeMillis();
+		List<File> files = new ArrayList<File>(updates);
+		// newest first
+		Collections.sort(files, Algorithms.getFileVersionComparator());
+		files.add(base);
+		List<BinaryMapIndexReader> readers = new ArrayList<BinaryMapIndexReader>();
+		List<RandomAccessFile> rafs = new ArrayList<RandomAccessFile>();
+		try {
+			int version = -1;
+			long dateCreated = 0;
+			for (File f : files) {
+				if (f.getAbsolutePath().equals(target.getAbsolutePath())) {
+					throw new IllegalArgumentException("Input file is equal to output file " + f.getName()); //$NON-NLS-1$
+				}
+				RandomAccessFile raf = new RandomAccessFile(f, "r"); //$NON-NLS-1$
+				rafs.add(raf);
+				BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, f);
+				readers.add(reader);
+				if (version == -1) {
+					version = reader.getVersion();
+				} else if (version != reader.getVersion()) {
+					throw new IOException("Different versions of files " + version + " != " + reader.getVersion()); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				dateCreated = Math.max(dateCreated, reader.getDateCreated());
+			}
+			int parts = write(target, readers, rafs, version, dateCreated);
+			checkMergedFile(target, version, parts);
+		} finally {
+			for (RandomAccessFile raf : rafs) {
+				Algorithms.closeStream(raf);
+			}
+		}
+		log.info("Merged " + base.getName() + " with " + updates.size() + " updates in " //$NON-NLS-1$ //$NON-NLS-2$
+				+ (System.currentTimeMillis() - time) + " ms"); //$NON-NLS-1$
+	}
+
+	private int write(File target, List<BinaryMapIndexReader> readers, List<RandomAccessFile> rafs, int version,
+			long dateCreated) throws IOException {
+		FileOutputStream fout = new FileOutputStream(target);
+		int parts = 0;
+		try {
+			CodedOutputStream ous = CodedOutputStream.newInstance(fout, BinaryInspector.BUFFER_SIZE);
+			byte[] buffer = new byte[BinaryInspector.BUFFER_SIZE];
+			ous.writeInt32(OsmandOdb.OsmAndStructure.VERSION_FIELD_NUMBER, version);
+			ous.writeInt64(OsmandOdb.OsmAndStructure.DATECREATED_FIELD_NUMBER, dateCreated);
+			for (int i = 0; i < readers.size(); i++) {
+				boolean update = i < readers.size() - 1;
+				for (BinaryIndexPart part : readers.get(i).getIndexes()) {
+					if (part instanceof AddressRegion || (update && !includeRouting && part instanceof RouteRegion)) {
+						continue;
+					}
+					parts += writePart(ous, buffer, rafs.get(i), part);
+				}
+			}
+			// address parts of updates are used only if base file doesn't have such region
+			Set<String> addressNames = new HashSet<String>();
+			for (int i = readers.size() - 1; i >= 0; i--) {
+				for (AddressRegion part : readers.get(i).getAddressIndexes()) {
+					if (addressNames.add(part.getName())) {
+						parts += writePart(ous, buffer, rafs.get(i), part);
+					}
+				}
+			}
+			ous.writeInt32(OsmandOdb.OsmAndStructure.VERSIONCONFIRM_FIELD_NUMBER, version);
+			ous.flush();
+		} finally {
+			fout.close();
+		}
+		return parts;
+	}
+
+	private int writePart(CodedOutputStream ous, byte[] buffer, RandomAccessFile raf, BinaryIndexPart part)
+			throws IOException {
+		if (cancelled) {
+			throw new IOException("Interrupted"); //$NON-NLS-1$
+		}
+		BinaryInspector.writePart(ous, buffer, raf, part);
+		return 1;
+	}
+
+	private static void checkMergedFile(File target, int version, int parts) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(target, "r"); //$NON-NLS-1$
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, target);
+		try {
+			if (reader.getVersion() != version || reader.getIndexes().size() != parts) {
+				throw new IOException("Merged file " + target.getName() + " is not valid"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String describe(BinaryIndexPart part) {
+		if (part instanceof MapIndex) {
+			return "Map"; //$NON-NLS-1$
+		} else if (part instanceof PoiRegion) {
+			return "POI"; //$NON-NLS-1$
+		} else if (part instanceof RouteRegion) {
+			return "Routing"; //$NON-NLS-1$
+		} else if (part instanceof TransportIndex) {
+			return "Transport"; //$NON-NLS-1$
+		}
+		return "Address"; //$NON-NLS-1$
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println("Usage : <merged file> <base file> <update file>..."); //$NON-NLS-1$
+			return;
+		}
+		IncrementalUpdatesMerger merger = new IncrementalUpdatesMerger(new File(args[1]));
+		for (int i = 2; i < args.length; i++) {
+			merger.addUpdate(new File(args[i]));
+		}
+		File target = new File(args[0]);
+		merger.merge(target);
+		RandomAccessFile raf = new RandomAccessFile(target, "r"); //$NON-NLS-1$
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, target);
+		for (BinaryIndexPart part : reader.getIndexes()) {
+			System.out.println(describe(part) + " part " + part.getName() + " " + part.getLength() + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		reader.close();
+	}
+}
@@ -0,0 +1,197 @@
+package net.osmand.binary;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.osmand.SearchKey;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Decoded nodes of indexed string tables (name indexes of address and poi sections) of one reader.
+ * Tables are decoded lazily: only subtables of matched keys are read, so the next query
+ * that refines previous one (type-ahead) descends the same already decoded subtree without reading the file.
+ * Cache is cleared when number of decoded keys exceeds {@link #MAX_KEYS}.
+ */
+class IndexedStringTableCache {
+
+	static final int MAX_KEYS = 50000;
+
+	private static class Node {
+		final List<Entry> entries = new ArrayList<Entry>();
+	}
+
+	private static class Entry {
+		final String key;
+		final String foldedKey;
+		TIntArrayList values;
+		int subtableOffset = -1;
+		int subtableLength;
+		Node subtable;
+
+		Entry(String key, String foldedKey) {
+			this.key = key;
+			this.foldedKey = foldedKey;
+		}
+	}
+
+	private final BinaryMapIndexReader reader;
+	private final TIntObjectHashMap<Node> tables = new TIntObjectHashMap<Node>();
+	private final SearchKey keyBuffer = new SearchKey();
+	private int decodedKeys;
+	// could be requested from another thread (low memory)
+	private volatile boolean clearRequested;
+	// statistics
+	private int hits;
+	private int misses;
+
+	IndexedStringTableCache(BinaryMapIndexReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Stream should be positioned at the beginning of the table with limit pushed to the end of the table.
+	 * After the call stream is positioned at the end of the table.
+	 * @return length of the best matched key
+	 */
+	int search(SearchKey query, TIntArrayList list) throws IOException {
+		CodedInputStream codedIS = reader.codedIS;
+		int tableOffset = codedIS.getTotalBytesRead();
+		int tableEnd = tableOffset + codedIS.getBytesUntilLimit();
+		if (decodedKeys > MAX_KEYS || clearRequested) {
+			clearRequested = false;
+			tables.clear();
+			decodedKeys = 0;
+		}
+		Node root = tables.get(tableOffset);
+		if (root == null) {
+			misses++;
+			root = decode("");
+			tables.put(tableOffset, root);
+		} else {
+			hits++;
+		}
+		try {
+			return search(root, query.toString(), query.getSource().length(), list, 0);
+		} finally {
+			codedIS.seek(tableEnd);
+		}
+	}
+
+	/**
+	 * Cache is released before next search (reader is not thread safe)
+	 */
+	void clear() {
+		clearRequested = true;
+	}
+
+	int getDecodedKeys() {
+		return decodedKeys;
+	}
+
+	int getHits() {
+		return hits;
+	}
+
+	int getMisses() {
+		return misses;
+	}
+
+	private int search(Node node, String foldedQuery, int queryLength, TIntArrayList list, int charMatches)
+			throws IOException {
+		for (Entry e : node.entries) {
+			boolean matches = false;
+			// check query is part of key (the best matching)
+			if (e.foldedKey.startsWith(foldedQuery)) {
+				if (queryLength >= charMatches) {
+					if (queryLength > charMatches) {
+						charMatches = queryLength;
+						list.clear();
+					}
+					matches = true;
+				}
+				// check key is part of query
+			} else if (foldedQuery.startsWith(e.foldedKey)) {
+				if (e.key.length() >= charMatches) {
+					if (e.key.length() > charMatches) {
+						charMatches = e.key.length();
+						list.clear();
+					}
+					matches = true;
+				}
+			}
+			if (!matches) {
+				continue;
+			}
+			if (e.values != null) {
+				list.addAll(e.values);
+			}
+			if (e.subtableOffset != -1) {
+				if (e.subtable == null) {
+					e.subtable = decodeSubtable(e);
+				}
+				charMatches = search(e.subtable, foldedQuery, queryLength, list, charMatches);
+			}
+		}
+		return charMatches;
+	}
+
+	private Node decodeSubtable(Entry e) throws IOException {
+		CodedInputStream codedIS = reader.codedIS;
+		codedIS.seek(e.subtableOffset);
+		int oldLimit = codedIS.pushLimit(e.subtableLength);
+		try {
+			return decode(e.key);
+		} finally {
+			codedIS.popLimit(oldLimit);
+		}
+	}
+
+	private Node decode(String prefix) throws IOException {
+		CodedInputStream codedIS = reader.codedIS;
+		Node node = new Node();
+		Entry current = null;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				return node;
+			case OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER:
+				String key = codedIS.readString();
+				if (prefix.length() > 0) {
+					key = prefix + key;
+				}
+				current = new Entry(key, keyBuffer.set(key).toString());
+				node.entries.add(current);
+				decodedKeys++;
+				break;
+			case OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER:
+				int val = reader.readInt();
+				if (current != null) {
+					if (current.values == null) {
+						current.values = new TIntArrayList(1);
+					}
+					current.values.add(val);
+				}
+				break;
+			case OsmandOdb.IndexedStringTable.SUBTABLES_FIELD_NUMBER:
+				int len = codedIS.readRawVarint32();
+				if (current != null) {
+					current.subtableOffset = codedIS.getTotalBytesRead();
+					current.subtableLength = len;
+				}
+				codedIS.skipRawBytes(len);
+				break;
+			default:
+				reader.skipUnknownField(t);
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
+import net.osmand.data.Amenity;
+import net.osmand.osm.PoiCategory;
+import net.osmand.util.LongIntMap;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Resolves versions of objects of region files which have live updates. When region is added all objects of its
+ * update files are read once and for each id the file with the latest version is stored (or the object is marked
+ * as deleted if the latest version has osmand_change=delete). Objects which are not changed by updates are not
+ * stored. So any query could check whether found object is the latest version with one lookup, without collecting
+ * ids of objects found in other files.
+ * Map, routing and poi objects are resolved separately (they have different ids). Versions are stored by parts of
+ * files where object could be found (zooms of map levels, base and detailed route subregions): newer version hides
+ * object only if it could be found by the same query.
+ */
+public class LiveUpdatesOverlay {
+
+	private static final Log log = PlatformUtil.getLog(LiveUpdatesOverlay.class);
+
+	public static final String OSMAND_CHANGE_TAG = "osmand_change"; //$NON-NLS-1$
+	public static final String OSMAND_CHANGE_DELETE = "delete"; //$NON-NLS-1$
+
+	private static final int DELETED = -1;
+	private static final int MAX_COORDINATE = Integer.MAX_VALUE;
+	private static final int MAX_PART = 31;
+	private static final int DETAILED_ROUTE_PART = 0;
+	private static final int BASE_ROUTE_PART = 1;
+
+	// layers by file name, map is replaced on init
+	private volatile Map<String, Layer> layers = Collections.emptyMap();
+
+	/**
+	 * Versions of objects of one kind. For each id entries are chained from the newest file: entry has index of
+	 * file (or {@link #DELETED}) and bit mask of parts where object of that file is the latest version.
+	 */
+	static class Versions {
+		private final LongIntMap firstEntries = new LongIntMap();
+		private int[] files = new int[16];
+		private int[] masks = new int[16];
+		private int[] next = new int[16];
+		private int size;
+
+		// files are read from the newest, so object is stored only for parts not covered by newer files
+		void put(long id, int file, int mask) {
+			if (id <= 0) {
+				return;
+			}
+			int covered = 0;
+			int last = LongIntMap.NO_ENTRY;
+			for (int e = firstEntries.get(id); e != LongIntMap.NO_ENTRY; e = next[e]) {
+				covered |= masks[e];
+				last = e;
+			}
+			mask &= ~covered;
+			if (mask == 0) {
+				return;
+			}
+			if (last != LongIntMap.NO_ENTRY && files[last] == file) {
+				masks[last] |= mask;
+				return;
+			}
+			if (size == files.length) {
+				files = Arrays.copyOf(files, size * 2);
+				masks = Arrays.copyOf(masks, size * 2);
+				next = Arrays.copyOf(next, size * 2);
+			}
+			files[size] = file;
+			masks[size] = mask;
+			next[size] = LongIntMap.NO_ENTRY;
+			if (last == LongIntMap.NO_ENTRY) {
+				firstEntries.put(id, size);
+			} else {
+				next[last] = size;
+			}
+			size++;
+		}
+
+		boolean isLatest(long id, int file, int part) {
+			// generated (not osm) ids are not comparable between files
+			if (id <= 0) {
+				return true;
+			}
+			int bit = 1 << part;
+			for (int e = firstEntries.get(id); e != LongIntMap.NO_ENTRY; e = next[e]) {
+				if ((masks[e] & bit) != 0) {
+					return files[e] == file;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Objects of one region (index of file with the latest version: updates are numbered from the newest one,
+	 * base file has the last index)
+	 */
+	private static class RegionObjects {
+		final Versions mapObjects = new Versions();
+		final Versions routeObjects = new Versions();
+		final Versions amenities = new Versions();
+	}
+
+	/**
+	 * One file of region with updates
+	 */
+	public static class Layer {
+		private final RegionObjects objects;
+		private final int index;
+
+		private Layer(RegionObjects objects, int index) {
+			this.objects = objects;
+			this.index = index;
+		}
+
+		/**
+		 * @param zoom zoom of query which found the object
+		 */
+		public boolean isLatest(BinaryMapDataObject o, int zoom) {
+			return objects.mapObjects.isLatest(o.getId(), index, Math.max(0, Math.min(zoom, MAX_PART)));
+		}
+
+		/**
+		 * @param base true if object is found in base route subregions
+		 */
+		public boolean isLatest(RouteDataObject o, boolean base) {
+			return objects.routeObjects.isLatest(o.getId(), index, base ? BASE_ROUTE_PART : DETAILED_ROUTE_PART);
+		}
+
+		public boolean isLatest(Amenity a) {
+			Long id = a.getId();
+			return id == null || objects.amenities.isLatest(id, index, 0);
+		}
+	}
+
+	/**
+	 * @return layer of file or null if file is not part of region with live updates
+	 */
+	public Layer getLayer(BinaryMapIndexReader reader) {
+		if (reader.getFile() == null) {
+			return null;
+		}
+		return layers.get(reader.getFile().getName());
+	}
+
+	/**
+	 * @return matcher which skips not the latest versions of amenities of the file (or the same matcher)
+	 */
+	public ResultMatcher<Amenity> filterAmenities(BinaryMapIndexReader reader, final ResultMatcher<Amenity> matcher) {
+		final Layer layer = getLayer(reader);
+		if (layer == null) {
+			return matcher;
+		}
+		return new ResultMatcher<Amenity>() {
+
+			@Override
+			public boolean publish(Amenity object) {
+				return layer.isLatest(object) && (matcher == null || matcher.publish(object));
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return matcher != null && matcher.isCancelled();
+			}
+		};
+	}
+
+	/**
+	 * Reads update files and replaces current layers
+	 * @param regions region files with their update files (the newest first)
+	 * @param headers readers with already read headers of update files by file name (other files are read fully)
+	 * @param includeRouting false if updates are not used for routing
+	 */
+	public void init(Map<File, List<File>> regions, Map<String, BinaryMapIndexReader> headers,
+			boolean includeRouting) {
+		long time = System.currentTimeMillis();
+		Map<String, Layer> newLayers = new HashMap<String, Layer>();
+		for (Map.Entry<File, List<File>> region : regions.entrySet()) {
+			List<File> updates = region.getValue();
+			RegionObjects objects = new RegionObjects();
+			try {
+				for (int i = 0; i < updates.size(); i++) {
+					readUpdate(updates.get(i), headers.get(updates.get(i).getName()), i, objects, includeRouting);
+				}
+			} catch (IOException e) {
+				// without all updates versions can't be resolved, files are queried as they are
+				log.error("Live updates of " + region.getKey().getName() + " could not be read", e); //$NON-NLS-1$ //$NON-NLS-2$
+				continue;
+			}
+			for (int i = 0; i < updates.size(); i++) {
+				newLayers.put(updates.get(i).getName(), new Layer(objects, i));
+			}
+			newLayers.put(region.getKey().getName(), new Layer(objects, updates.size()));
+		}
+		layers = newLayers;
+		log.info("Live updates of " + regions.size() + " regions are read in " //$NON-NLS-1$ //$NON-NLS-2$
+				+ (System.currentTimeMillis() - time) + " ms"); //$NON-NLS-1$
+	}
+
+	private static int getZoomMask(MapRoot level) {
+		int mask = 0;
+		for (int z = Math.max(0, level.getMinZoom()); z <= Math.min(level.getMaxZoom(), MAX_PART); z++) {
+			mask |= 1 << z;
+		}
+		return mask;
+	}
+
+	private static void readUpdate(File f, BinaryMapIndexReader header, final int index,
+			final RegionObjects objects, boolean includeRouting) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r"); //$NON-NLS-1$
+		BinaryMapIndexReader reader = header == null ? new BinaryMapIndexReader(raf, f) : new BinaryMapIndexReader(
+				raf, header);
+		try {
+			for (MapIndex mapIndex : reader.getMapIndexes()) {
+				for (MapRoot level : mapIndex.getRoots()) {
+					final int zoomMask = getZoomMask(level);
+					SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(0,
+							MAX_COORDINATE, 0, MAX_COORDINATE, level.getMinZoom(), null,
+							new ResultMatcher<BinaryMapDataObject>() {
+
+								@Override
+								public boolean publish(BinaryMapDataObject object) {
+									Integer rule = object.getMapIndex().getRule(OSMAND_CHANGE_TAG, OSMAND_CHANGE_DELETE);
+									boolean deleted = rule != null
+											&& (object.containsType(rule) || object.containsAdditionalType(rule));
+									objects.mapObjects.put(object.getId(), deleted ? DELETED : index, zoomMask);
+									return false;
+								}
+
+								@Override
+								public boolean isCancelled() {
+									return false;
+								}
+							});
+					reader.searchMapIndex(req, mapIndex);
+				}
+			}
+			if (includeRouting) {
+				for (RouteRegion region : reader.getRoutingIndexes()) {
+					readRouteObjects(reader, region, region.getSubregions(), 1 << DETAILED_ROUTE_PART, index, objects);
+					readRouteObjects(reader, region, region.getBaseSubregions(), 1 << BASE_ROUTE_PART, index, objects);
+				}
+			}
+			if (!reader.getPoiIndexes().isEmpty()) {
+				SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, MAX_COORDINATE, 0,
+						MAX_COORDINATE, -1, new SearchPoiTypeFilter() {
+
+							@Override
+							public boolean accept(PoiCategory type, String subcategory) {
+								return true;
+							}
+
+							@Override
+							public boolean isEmpty() {
+								return false;
+							}
+						}, new ResultMatcher<Amenity>() {
+
+							@Override
+							public boolean publish(Amenity object) {
+								boolean deleted = OSMAND_CHANGE_DELETE.equals(object.getAdditionalInfo(OSMAND_CHANGE_TAG));
+								if (object.getId() != null) {
+									objects.amenities.put(object.getId(), deleted ? DELETED : index, 1);
+								}
+								return false;
+							}
+
+							@Override
+							public boolean isCancelled() {
+								return false;
+							}
+						});
+				reader.searchPoi(req);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void readRouteObjects(BinaryMapIndexReader reader, RouteRegion region,
+			List<RouteSubregion> roots, final int partMask, final int index, final RegionObjects objects)
+			throws IOException {
+		SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, MAX_COORDINATE, 0,
+				MAX_COORDINATE, null);
+		List<RouteSubregion> subregions = reader.searchRouteIndexTree(req, roots);
+		// encoding rules are read with the tree
+		final int deleteRule = findDeleteRule(region);
+		reader.loadRouteIndexData(subregions, new ResultMatcher<RouteDataObject>() {
+
+			@Override
+			public boolean publish(RouteDataObject object) {
+				boolean deleted = false;
+				for (int i = 0; deleteRule != -1 && i < object.types.length; i++) {
+					deleted |= object.types[i] == deleteRule;
+				}
+				objects.routeObjects.put(object.getId(), deleted ? DELETED : index, partMask);
+				return false;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return false;
+			}
+		});
+	}
+
+	private static int findDeleteRule(RouteRegion region) {
+		for (int i = 0; i < region.routeEncodingRules.size(); i++) {
+			RouteTypeRule rule = region.routeEncodingRules.get(i);
+			if (rule != null && OSMAND_CHANGE_TAG.equals(rule.getTag()) && OSMAND_CHANGE_DELETE.equals(rule.getValue())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
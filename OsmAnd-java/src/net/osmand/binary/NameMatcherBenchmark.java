@@ -0,0 +1,145 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import net.osmand.Collator;
+import net.osmand.CollatorStringMatcher;
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+import net.osmand.OsmAndCollator;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.data.City;
+import net.osmand.data.Street;
+
+/**
+ * Compares folded key matching with substring collator matching on names read from obf files.
+ * Usage: NameMatcherBenchmark file.obf [file2.obf ...]
+ */
+public class NameMatcherBenchmark {
+
+	private static final int QUERIES = 200;
+
+	public static void main(String[] args) throws IOException {
+		List<String> names = new ArrayList<String>();
+		for (String f : args) {
+			readNames(new File(f), names);
+		}
+		if (names.isEmpty()) {
+			System.out.println("Usage: NameMatcherBenchmark file.obf [file2.obf ...]");
+			return;
+		}
+		Random rnd = new Random(1);
+		List<String> queries = new ArrayList<String>();
+		for (int i = 0; i < QUERIES; i++) {
+			String n = names.get(rnd.nextInt(names.size()));
+			int len = Math.min(n.length(), 2 + rnd.nextInt(4));
+			queries.add(n.substring(0, len).toLowerCase(Locale.getDefault()));
+		}
+		System.out.println("Names " + names.size() + ", queries " + queries.size());
+		for (StringMatcherMode mode : StringMatcherMode.values()) {
+			Collator collator = OsmAndCollator.primaryCollator();
+			long time = System.nanoTime();
+			int legacyMatches = 0;
+			for (String q : queries) {
+				for (String n : names) {
+					if (legacyMatches(collator, n, q, mode)) {
+						legacyMatches++;
+					}
+				}
+			}
+			long legacyTime = System.nanoTime() - time;
+			time = System.nanoTime();
+			int keyMatches = 0;
+			for (String q : queries) {
+				CollatorStringMatcher m = new CollatorStringMatcher(q, mode);
+				for (String n : names) {
+					if (m.matches(n)) {
+						keyMatches++;
+					}
+				}
+			}
+			long keyTime = System.nanoTime() - time;
+			System.out.println(String.format("%s: collator %d ms (%d matches), search key %d ms (%d matches)", mode,
+					legacyTime / 1000000, legacyMatches, keyTime / 1000000, keyMatches));
+		}
+	}
+
+	private static void readNames(File file, final List<String> names) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, file);
+		try {
+			SearchRequest<City> req = BinaryMapIndexReader.buildAddressRequest(null);
+			List<City> cities = new ArrayList<City>();
+			cities.addAll(reader.getCities(req, BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE));
+			cities.addAll(reader.getCities(req, BinaryMapAddressReaderAdapter.VILLAGES_TYPE));
+			for (City c : cities) {
+				names.add(c.getName());
+				reader.preloadStreets(c, null);
+				for (Street s : c.getStreets()) {
+					names.add(s.getName());
+				}
+			}
+			for (PoiRegion r : reader.getPoiIndexes()) {
+				reader.initCategories(r);
+				names.addAll(r.categories);
+				for (List<String> subcategories : r.subcategories) {
+					names.addAll(subcategories);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	// previous implementation based on collator comparison of substrings
+	private static boolean legacyMatches(Collator collator, String base, String part, StringMatcherMode mode) {
+		switch (mode) {
+		case CHECK_CONTAINS:
+			return legacyIndexOf(collator, part, base.toLowerCase(Locale.getDefault()), 0, false) != -1;
+		case CHECK_STARTS_FROM_SPACE:
+			return legacyStartsWith(collator, base, part, true, true);
+		case CHECK_STARTS_FROM_SPACE_NOT_BEGINNING:
+			return legacyStartsWith(collator, base, part, false, true);
+		case CHECK_ONLY_STARTS_WITH:
+			return legacyStartsWith(collator, base, part, true, false);
+		}
+		return false;
+	}
+
+	private static int legacyIndexOf(Collator collator, String part, String base, int start, boolean wordStart) {
+		for (int pos = start; pos <= base.length() - part.length(); pos++) {
+			if (wordStart && pos > 0 && !(isSpace(base.charAt(pos - 1)) && !isSpace(base.charAt(pos)))) {
+				continue;
+			}
+			if (collator.equals(base.substring(pos, pos + part.length()), part)) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean legacyStartsWith(Collator collator, String base, String part, boolean checkBeginning,
+			boolean checkSpaces) {
+		String searchIn = base.toLowerCase(Locale.getDefault());
+		if (part.length() > searchIn.length()) {
+			return false;
+		}
+		if (checkBeginning && collator.equals(searchIn.substring(0, part.length()), part)) {
+			return true;
+		}
+		if (checkSpaces) {
+			return legacyIndexOf(collator, part, searchIn, 1, true) != -1;
+		}
+		return false;
+	}
+
+	private static boolean isSpace(char c) {
+		return !Character.isLetter(c) && !Character.isDigit(c);
+	}
+}
@@ -0,0 +1,475 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.osmand.CollatorStringMatcher;
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.SearchKey;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.data.Amenity;
+import net.osmand.data.LatLon;
+import net.osmand.data.MapObject;
+import net.osmand.data.QuadRect;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Searches address and POI objects by name in all registered files at once.
+ * Engine keeps own readers of name tables (so it doesn't block other repositories using the same files),
+ * files are searched in parallel starting from the closest one, results are ranked by relevance and distance
+ * in a single bounded queue. Files that could not improve current top results are skipped and search is stopped
+ * when top results stay unchanged for {@link #setStableResultsCount(int)} candidates.
+ */
+public class NameSearchEngine {
+
+	private static final Log log = PlatformUtil.getLog(NameSearchEngine.class);
+
+	public static final int RELEVANCE_EXACT = 0;
+	public static final int RELEVANCE_STARTS_WITH = 1;
+	public static final int RELEVANCE_WORD_STARTS_WITH = 2;
+	public static final int RELEVANCE_OTHER = 3;
+
+	public static final double DEFAULT_RELEVANCE_WEIGHT = 5000;
+
+	public static class NameSearchResult {
+		private final MapObject object;
+		private final String fileName;
+		private final int relevance;
+		private final double distance;
+		private final double score;
+
+		NameSearchResult(MapObject object, String fileName, int relevance, double distance, double score) {
+			this.object = object;
+			this.fileName = fileName;
+			this.relevance = relevance;
+			this.distance = distance;
+			this.score = score;
+		}
+
+		public MapObject getObject() {
+			return object;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		public int getRelevance() {
+			return relevance;
+		}
+
+		/**
+		 * @return distance in meters to search location or 0 if location is unknown
+		 */
+		public double getDistance() {
+			return distance;
+		}
+
+		/**
+		 * @return rank of result (less is better)
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return object + " " + fileName + " (" + relevance + ", " + (int) distance + " m)";
+		}
+	}
+
+	private static final Comparator<NameSearchResult> BEST_FIRST = new Comparator<NameSearchResult>() {
+		@Override
+		public int compare(NameSearchResult o1, NameSearchResult o2) {
+			return Double.compare(o1.score, o2.score);
+		}
+	};
+
+	private static final Comparator<NameSearchResult> WORST_FIRST = Collections.reverseOrder(BEST_FIRST);
+
+	private static class SearchFile {
+		final File file;
+		final BinaryMapIndexReader reader;
+		// bbox of file data, is used to estimate the closest possible result
+		double top = -90;
+		double bottom = 90;
+		double left = 180;
+		double right = -180;
+
+		SearchFile(File file, BinaryMapIndexReader reader) {
+			this.file = file;
+			this.reader = reader;
+			for (PoiRegion r : reader.getPoiIndexes()) {
+				extend(r.topLatitude, r.leftLongitude, r.bottomLatitude, r.rightLongitude);
+			}
+			for (MapIndex mi : reader.getMapIndexes()) {
+				for (MapRoot root : mi.getRoots()) {
+					extend(MapUtils.get31LatitudeY(root.getTop()), MapUtils.get31LongitudeX(root.getLeft()),
+							MapUtils.get31LatitudeY(root.getBottom()), MapUtils.get31LongitudeX(root.getRight()));
+				}
+			}
+		}
+
+		private void extend(double t, double l, double b, double r) {
+			top = Math.max(top, t);
+			bottom = Math.min(bottom, b);
+			left = Math.min(left, l);
+			right = Math.max(right, r);
+		}
+
+		boolean intersects(QuadRect latLonBounds) {
+			return top < bottom || (latLonBounds.left <= right && latLonBounds.right >= left
+					&& latLonBounds.top >= bottom && latLonBounds.bottom <= top);
+		}
+
+		double getMinDistance(LatLon l) {
+			if (l == null || top < bottom) {
+				return 0;
+			}
+			double lat = Math.max(bottom, Math.min(top, l.getLatitude()));
+			double lon = Math.max(left, Math.min(right, l.getLongitude()));
+			return MapUtils.getDistance(l.getLatitude(), l.getLongitude(), lat, lon);
+		}
+	}
+
+	/**
+	 * Top results of one search. All methods are synchronized, because files are searched in parallel.
+	 */
+	private class RankedResults {
+		private final int limit;
+		private final PriorityQueue<NameSearchResult> queue;
+		// best result of every published object, evicted results are kept so objects are not published twice
+		private final Map<String, NameSearchResult> byKey = new HashMap<String, NameSearchResult>();
+		private final ResultMatcher<NameSearchResult> matcher;
+		private int unchanged = 0;
+		private boolean stable;
+
+		RankedResults(int limit, ResultMatcher<NameSearchResult> matcher) {
+			this.limit = limit;
+			this.matcher = matcher;
+			this.queue = new PriorityQueue<NameSearchResult>(limit > 0 ? limit + 1 : 64, WORST_FIRST);
+		}
+
+		synchronized boolean offer(NameSearchResult r) {
+			String key = getKey(r);
+			NameSearchResult existing = key == null ? null : byKey.get(key);
+			if (existing != null && existing.score <= r.score) {
+				// the same object is stored in overlapping files
+				return rejected();
+			}
+			if (limit > 0 && queue.size() >= limit && queue.peek().score <= r.score) {
+				return rejected();
+			}
+			if (existing != null) {
+				// object is already published (it could be evicted from the top), only its rank is improved
+				queue.remove(existing);
+			} else if (matcher != null && !matcher.publish(r)) {
+				return rejected();
+			}
+			queue.add(r);
+			if (key != null) {
+				byKey.put(key, r);
+			}
+			if (limit > 0 && queue.size() > limit) {
+				queue.poll();
+			}
+			unchanged = 0;
+			return true;
+		}
+
+		// objects without id are not deduplicated
+		private String getKey(NameSearchResult r) {
+			Long id = r.object.getId();
+			return id == null ? null : r.object.getClass().getSimpleName() + id;
+		}
+
+		private boolean rejected() {
+			unchanged++;
+			if (limit > 0 && stableResultsCount > 0 && queue.size() >= limit && unchanged >= stableResultsCount) {
+				stable = true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return true if result with given score could get into top results
+		 */
+		synchronized boolean canImprove(double bestPossibleScore) {
+			return limit <= 0 || queue.size() < limit || queue.peek().score > bestPossibleScore;
+		}
+
+		synchronized boolean isStable() {
+			return stable;
+		}
+
+		synchronized List<NameSearchResult> getResults() {
+			List<NameSearchResult> res = new ArrayList<NameSearchResult>(queue);
+			Collections.sort(res, BEST_FIRST);
+			return res;
+		}
+	}
+
+	private final Map<String, SearchFile> files = new LinkedHashMap<String, SearchFile>();
+	private final ExecutorService executor;
+	private double relevanceWeight = DEFAULT_RELEVANCE_WEIGHT;
+	private int stableResultsCount = 0;
+
+	public NameSearchEngine() {
+		this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+	}
+
+	public NameSearchEngine(int threads) {
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Name search");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * @param relevanceWeight distance in meters that is equivalent to one step of relevance
+	 * (exact match, starts with, word starts with)
+	 */
+	public void setRelevanceWeight(double relevanceWeight) {
+		this.relevanceWeight = relevanceWeight;
+	}
+
+	/**
+	 * @param stableResultsCount stop search after so many candidates didn't change full top results (0 - disabled)
+	 */
+	public void setStableResultsCount(int stableResultsCount) {
+		this.stableResultsCount = stableResultsCount;
+	}
+
+	/**
+	 * Opens name tables of the file with a separate reader, reference reader is used to avoid parsing file structure
+	 */
+	public void addFile(File file, BinaryMapIndexReader reference) throws IOException {
+		if (!reference.containsPoiData() && !reference.containsAddressData()) {
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		SearchFile sf = new SearchFile(file, new BinaryMapIndexReader(raf, reference));
+		SearchFile old;
+		synchronized (files) {
+			old = files.put(file.getName(), sf);
+		}
+		if (old != null) {
+			closeFile(old);
+		}
+	}
+
+	public void removeFile(String fileName) {
+		SearchFile sf;
+		synchronized (files) {
+			sf = files.remove(fileName);
+		}
+		if (sf != null) {
+			closeFile(sf);
+		}
+	}
+
+	public void clear() {
+		List<SearchFile> toClose;
+		synchronized (files) {
+			toClose = new ArrayList<SearchFile>(files.values());
+			files.clear();
+		}
+		for (SearchFile sf : toClose) {
+			closeFile(sf);
+		}
+	}
+
+	/**
+	 * Releases decoded name indexes of all files
+	 */
+	public void clearCaches() {
+		synchronized (files) {
+			for (SearchFile sf : files.values()) {
+				sf.reader.clearNameIndexCache();
+			}
+		}
+	}
+
+	public void close() {
+		clear();
+		executor.shutdownNow();
+	}
+
+	private void closeFile(SearchFile sf) {
+		synchronized (sf.reader) {
+			try {
+				sf.reader.close();
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * @param location location to rank results by distance (could be null)
+	 * @param latLonBounds only files intersecting bounds are searched (x - longitude, y - latitude; could be null)
+	 * @param limit number of top results to keep or -1 to keep all matched objects
+	 * @param matcher is called (from one thread at a time) when result is added to top results, it is called once
+	 * per object (better ranked duplicate from other file is not published again), result could be removed later from
+	 * top results
+	 * @return results sorted from the best
+	 */
+	public List<NameSearchResult> search(String query, LatLon location, QuadRect latLonBounds, int limit,
+			boolean address, boolean poi, ResultMatcher<NameSearchResult> matcher) {
+		if (query == null || query.trim().length() == 0) {
+			return Collections.emptyList();
+		}
+		final String q = query.trim();
+		final LatLon loc = location;
+		final SearchKey queryKey = new CollatorStringMatcher(q, StringMatcherMode.CHECK_STARTS_FROM_SPACE)
+				.getSearchKey();
+		final RankedResults results = new RankedResults(limit, matcher);
+		List<SearchFile> toSearch;
+		synchronized (files) {
+			toSearch = new ArrayList<SearchFile>(files.values());
+		}
+		Collections.sort(toSearch, new Comparator<SearchFile>() {
+			@Override
+			public int compare(SearchFile o1, SearchFile o2) {
+				return Double.compare(o1.getMinDistance(loc), o2.getMinDistance(loc));
+			}
+		});
+		long time = System.currentTimeMillis();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final SearchFile sf : toSearch) {
+			final boolean searchAddress = address && sf.reader.containsAddressData();
+			final boolean searchPoi = poi && sf.reader.containsPoiData();
+			if ((!searchAddress && !searchPoi) || (latLonBounds != null && !sf.intersects(latLonBounds))) {
+				continue;
+			}
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					searchFile(sf, q, queryKey, loc, searchAddress, searchPoi, results);
+					return null;
+				}
+			}));
+		}
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				log.error("Error searching " + q, e.getCause());
+			}
+		}
+		List<NameSearchResult> res = results.getResults();
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Name search for %s in %d files done in %d ms, found %d (stable %s)", q,
+					futures.size(), System.currentTimeMillis() - time, res.size(), results.isStable()));
+		}
+		return res;
+	}
+
+	private void searchFile(final SearchFile sf, String query, final SearchKey queryKey, final LatLon loc,
+			boolean address, boolean poi, final RankedResults results) throws IOException {
+		final double bestPossibleScore = sf.getMinDistance(loc);
+		final ResultMatcher<NameSearchResult> userMatcher = results.matcher;
+		ResultMatcher<MapObject> rm = new ResultMatcher<MapObject>() {
+			private final SearchKey nameKey = new SearchKey();
+
+			@Override
+			public boolean publish(MapObject object) {
+				results.offer(rank(object, sf.file.getName(), queryKey, nameKey, loc));
+				// results are kept in ranked queue
+				return false;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return (userMatcher != null && userMatcher.isCancelled()) || results.isStable()
+						|| !results.canImprove(bestPossibleScore) || Thread.currentThread().isInterrupted();
+			}
+		};
+		if (rm.isCancelled()) {
+			return;
+		}
+		synchronized (sf.reader) {
+			if (address && !rm.isCancelled()) {
+				SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(rm, query);
+				sf.reader.searchAddressDataByName(req);
+			}
+			if (poi && !rm.isCancelled()) {
+				int x = loc == null ? 0 : MapUtils.get31TileNumberX(loc.getLongitude());
+				int y = loc == null ? 0 : MapUtils.get31TileNumberY(loc.getLatitude());
+				final ResultMatcher<MapObject> objMatcher = rm;
+				SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(x, y, query, 0,
+						Integer.MAX_VALUE, 0, Integer.MAX_VALUE, new ResultMatcher<Amenity>() {
+							@Override
+							public boolean publish(Amenity object) {
+								return objMatcher.publish(object);
+							}
+
+							@Override
+							public boolean isCancelled() {
+								return objMatcher.isCancelled();
+							}
+						});
+				sf.reader.searchPoiByName(req);
+			}
+		}
+	}
+
+	private NameSearchResult rank(MapObject object, String fileName, SearchKey queryKey, SearchKey nameKey,
+			LatLon loc) {
+		int relevance = getRelevance(nameKey.set(object.getName()), queryKey);
+		if (relevance > RELEVANCE_EXACT) {
+			relevance = Math.min(relevance, getRelevance(nameKey.set(object.getEnName(true)), queryKey));
+			for (String n : object.getAllNames()) {
+				if (relevance == RELEVANCE_EXACT) {
+					break;
+				}
+				relevance = Math.min(relevance, getRelevance(nameKey.set(n), queryKey));
+			}
+		}
+		double distance = 0;
+		if (loc != null && object.getLocation() != null) {
+			distance = MapUtils.getDistance(loc, object.getLocation());
+		}
+		return new NameSearchResult(object, fileName, relevance, distance, distance + relevance * relevanceWeight);
+	}
+
+	private static int getRelevance(SearchKey name, SearchKey query) {
+		if (name.length() == query.length() && name.startsWith(query)) {
+			return RELEVANCE_EXACT;
+		} else if (name.startsWith(query)) {
+			return RELEVANCE_STARTS_WITH;
+		} else if (name.startsWith(query, false, true)) {
+			return RELEVANCE_WORD_STARTS_WITH;
+		}
+		return RELEVANCE_OTHER;
+	}
+}
@@ -11,9 +11,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import net.osmand.Collator;
+import net.osmand.NormalizedName;
 import net.osmand.OsmAndCollator;
 import net.osmand.util.Algorithms;
-import net.sf.junidecode.Junidecode;
 
 
 public abstract class MapObject implements Comparable<MapObject> {
@@ -132,7 +132,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 						return nm;
 					}
 					if(transliterate) {
-						return Junidecode.unidecode(getName());
+						return NormalizedName.transliterate(getName());
 					}
 				}
 			}
@@ -144,7 +144,7 @@ public abstract class MapObject implements Comparable<MapObject> {
 		if(!Algorithms.isEmpty(enName)){
 			return this.enName;
 		} else if(!Algorithms.isEmpty(getName()) && transliterate){
-			return Junidecode.unidecode(getName());
+			return NormalizedName.transliterate(getName());
 		}
 		return ""; //$NON-NLS-1$
 	}
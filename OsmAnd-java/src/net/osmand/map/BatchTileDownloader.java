@@ -0,0 +1,382 @@
+package net.osmand.map;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import net.osmand.PlatformUtil;
+import net.osmand.map.MapTileDownloader.DownloadRequest;
+import net.osmand.osm.io.NetworkUtils;
+import net.osmand.util.Algorithms;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Downloads many tiles (bulk download of an area) with few worker threads.
+ * Responses are always read to the end and streams are closed without disconnecting, so
+ * HTTP/1.1 keep-alive connections are reused for the following tiles of the same host.
+ * Number of simultaneous requests per host is limited, failed requests (i/o errors, 5xx, 429) are
+ * retried with exponential backoff. Retry-After of 429 and 503 responses pauses all requests to the host.
+ * Downloaded tiles are passed to {@link TileSink} in groups, so they could be stored in one transaction.
+ *
+ * Cancelled downloader stays cancelled, new downloader should be created for the next batch.
+ */
+public class BatchTileDownloader {
+
+	private static final Log log = PlatformUtil.getLog(BatchTileDownloader.class);
+
+	private int threads = 4;
+	private int maxConnectionsPerHost = 2;
+	private int maxRetries = 3;
+	private long retryDelay = 500;
+	private int groupSize = 50;
+	private int timeout = 30000;
+	private long maxRetryAfter = 60000;
+	private String userAgent = MapTileDownloader.USER_AGENT;
+
+	private volatile boolean cancelled;
+	private final Map<String, HostState> hosts = new HashMap<String, HostState>();
+
+	private static class HostState {
+		final Semaphore limit;
+		// requests are not sent before that time (Retry-After)
+		volatile long pausedUntil;
+
+		HostState(int connections) {
+			limit = new Semaphore(connections);
+		}
+	}
+
+	/**
+	 * Receives downloaded tiles, calls are not concurrent
+	 */
+	public interface TileSink {
+
+		void saveTiles(List<DownloadedTile> tiles) throws IOException;
+	}
+
+	public interface BatchProgress {
+
+		/**
+		 * Called from worker threads after each tile
+		 */
+		void tileProcessed(DownloadRequest request, boolean success, BatchStatistics statistics);
+	}
+
+	public static class DownloadedTile {
+		public final DownloadRequest request;
+		public final byte[] data;
+
+		public DownloadedTile(DownloadRequest request, byte[] data) {
+			this.request = request;
+			this.data = data;
+		}
+	}
+
+	public static class BatchStatistics {
+		private final long start = System.currentTimeMillis();
+		private long end;
+		private int downloaded;
+		private int failed;
+		private int retries;
+		private long bytes;
+
+		public synchronized int getDownloaded() {
+			return downloaded;
+		}
+
+		public synchronized int getFailed() {
+			return failed;
+		}
+
+		public synchronized int getRetries() {
+			return retries;
+		}
+
+		public synchronized long getBytes() {
+			return bytes;
+		}
+
+		public synchronized long getTime() {
+			return (end == 0 ? System.currentTimeMillis() : end) - start;
+		}
+
+		public double getTilesPerSecond() {
+			long time = getTime();
+			return time == 0 ? 0 : getDownloaded() * 1000d / time;
+		}
+
+		public double getBytesPerSecond() {
+			long time = getTime();
+			return time == 0 ? 0 : getBytes() * 1000d / time;
+		}
+
+		@Override
+		public String toString() {
+			return "Downloaded " + getDownloaded() + " tiles (" + (getBytes() >> 10) + " KB), failed " + getFailed()
+					+ ", retries " + getRetries() + " in " + getTime() + " ms, "
+					+ ((int) getTilesPerSecond()) + " tiles/s, " + ((int) getBytesPerSecond() >> 10) + " KB/s";
+		}
+	}
+
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Delay before first retry in ms, it is doubled for each next retry
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	/**
+	 * Number of tiles passed to the sink at once
+	 */
+	public void setGroupSize(int groupSize) {
+		this.groupSize = Math.max(1, groupSize);
+	}
+
+	/**
+	 * Maximum pause in ms requested by server with Retry-After (longer pauses are shortened)
+	 */
+	public void setMaxRetryAfter(long maxRetryAfter) {
+		this.maxRetryAfter = maxRetryAfter;
+	}
+
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public void setUserAgent(String userAgent) {
+		this.userAgent = userAgent;
+	}
+
+	/**
+	 * Stops current download or the next one if download wasn't started yet
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Downloads all requests (blocks until all are processed or download is cancelled)
+	 */
+	public BatchStatistics download(List<? extends DownloadRequest> requests, final TileSink sink,
+			final BatchProgress progress) throws IOException {
+		final BatchStatistics stats = new BatchStatistics();
+		final ConcurrentLinkedQueue<DownloadRequest> queue = new ConcurrentLinkedQueue<DownloadRequest>(requests);
+		final List<DownloadedTile> group = new ArrayList<DownloadedTile>();
+		final IOException[] sinkError = new IOException[1];
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				DownloadRequest r;
+				while (!cancelled && (r = queue.poll()) != null) {
+					byte[] data = fetch(r, stats);
+					synchronized (stats) {
+						if (data == null) {
+							stats.failed++;
+						} else {
+							stats.downloaded++;
+							stats.bytes += data.length;
+						}
+					}
+					if (data != null) {
+						List<DownloadedTile> toSave = null;
+						synchronized (group) {
+							group.add(new DownloadedTile(r, data));
+							if (group.size() >= groupSize) {
+								toSave = new ArrayList<DownloadedTile>(group);
+								group.clear();
+							}
+						}
+						if (toSave != null && !save(sink, toSave, sinkError)) {
+							cancelled = true;
+						}
+					}
+					if (progress != null) {
+						progress.tileProcessed(r, data != null, stats);
+					}
+				}
+			}
+		};
+		Thread[] workers = new Thread[Math.min(threads, Math.max(1, requests.size()))];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(worker, "Batch tile downloader " + i);
+			workers[i].start();
+		}
+		try {
+			for (Thread t : workers) {
+				t.join();
+			}
+		} catch (InterruptedException e) {
+			cancelled = true;
+			Thread.currentThread().interrupt();
+		}
+		if (!group.isEmpty()) {
+			save(sink, group, sinkError);
+		}
+		synchronized (stats) {
+			stats.end = System.currentTimeMillis();
+		}
+		log.info(stats.toString());
+		if (sinkError[0] != null) {
+			throw sinkError[0];
+		}
+		return stats;
+	}
+
+	private boolean save(TileSink sink, List<DownloadedTile> tiles, IOException[] error) {
+		synchronized (sink) {
+			if (error[0] != null) {
+				return false;
+			}
+			try {
+				sink.saveTiles(tiles);
+				return true;
+			} catch (IOException e) {
+				log.error("Tiles couldn't be saved", e); //$NON-NLS-1$
+				error[0] = e;
+				return false;
+			}
+		}
+	}
+
+	private HostState getHost(String url) {
+		String host;
+		try {
+			host = new URL(url).getHost();
+		} catch (IOException e) {
+			host = "";
+		}
+		synchronized (hosts) {
+			HostState s = hosts.get(host);
+			if (s == null) {
+				s = new HostState(maxConnectionsPerHost);
+				hosts.put(host, s);
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * @return pause in ms requested with Retry-After header (seconds or http date) or -1
+	 */
+	static long getRetryAfter(HttpURLConnection connection, long now) {
+		String value = connection.getHeaderField("Retry-After"); //$NON-NLS-1$
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Math.max(0, Long.parseLong(value.trim()) * 1000);
+		} catch (NumberFormatException e) {
+			long date = connection.getHeaderFieldDate("Retry-After", -1); //$NON-NLS-1$
+			return date == -1 ? -1 : Math.max(0, date - now);
+		}
+	}
+
+	/**
+	 * @return tile data or null if tile couldn't be downloaded
+	 */
+	protected byte[] fetch(DownloadRequest request, BatchStatistics stats) {
+		if (request.url == null) {
+			return null;
+		}
+		HostState host = getHost(request.url);
+		long delay = retryDelay;
+		for (int attempt = 0; attempt <= maxRetries && !cancelled; attempt++) {
+			if (attempt > 0) {
+				synchronized (stats) {
+					stats.retries++;
+				}
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					return null;
+				}
+				delay *= 2;
+			}
+			try {
+				long pause = host.pausedUntil - System.currentTimeMillis();
+				if (pause > 0) {
+					Thread.sleep(pause);
+				}
+				host.limit.acquire();
+			} catch (InterruptedException e) {
+				return null;
+			}
+			try {
+				int code = 0;
+				URLConnection connection = NetworkUtils.getHttpURLConnection(request.url);
+				connection.setRequestProperty("User-Agent", userAgent); //$NON-NLS-1$
+				if (request.referer != null) {
+					connection.setRequestProperty("Referer", request.referer); //$NON-NLS-1$
+				}
+				connection.setConnectTimeout(timeout);
+				connection.setReadTimeout(timeout);
+				if (connection instanceof HttpURLConnection) {
+					code = ((HttpURLConnection) connection).getResponseCode();
+				}
+				if (code == 0 || code == HttpURLConnection.HTTP_OK) {
+					return readFully(connection.getInputStream());
+				}
+				// error body is read to keep the connection alive
+				if (connection instanceof HttpURLConnection) {
+					HttpURLConnection http = (HttpURLConnection) connection;
+					readFully(http.getErrorStream());
+					if (code == 429 || code == HttpURLConnection.HTTP_UNAVAILABLE) {
+						long now = System.currentTimeMillis();
+						long retryAfter = getRetryAfter(http, now);
+						if (retryAfter > 0) {
+							host.pausedUntil = Math.max(host.pausedUntil, now + Math.min(retryAfter, maxRetryAfter));
+						}
+					}
+				}
+				if (code != 429 && code < 500) {
+					log.warn("Tile " + request.url + " couldn't be downloaded : " + code); //$NON-NLS-1$ //$NON-NLS-2$
+					return null;
+				}
+			} catch (IOException e) {
+				log.warn("Cannot download tile : " + request.url + " " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+			} finally {
+				host.limit.release();
+			}
+		}
+		return null;
+	}
+
+	private static byte[] readFully(InputStream is) throws IOException {
+		if (is == null) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+			Algorithms.streamCopy(is, out);
+			return out.toByteArray();
+		} finally {
+			Algorithms.closeStream(is);
+		}
+	}
+}
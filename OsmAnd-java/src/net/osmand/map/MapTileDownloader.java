@@ -1,6 +1,7 @@
 package net.osmand.map;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -18,14 +19,15 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import net.osmand.PlatformUtil;
+import net.osmand.map.BatchTileDownloader.BatchProgress;
+import net.osmand.map.BatchTileDownloader.BatchStatistics;
+import net.osmand.map.BatchTileDownloader.DownloadedTile;
+import net.osmand.map.BatchTileDownloader.TileSink;
 import net.osmand.osm.io.NetworkUtils;
 import net.osmand.util.Algorithms;
 
@@ -48,6 +50,8 @@ public class MapTileDownloader {
 	
 	
 	private ThreadPoolExecutor threadPoolExecutor;
+	private ViewportTileQueue<Runnable> queue;
+	private volatile BatchTileDownloader batchDownloader;
 	private List<WeakReference<IMapDownloaderCallback>> callbacks = new LinkedList<WeakReference<IMapDownloaderCallback>>();
 	
 	private Set<File> pendingToDownload;
@@ -93,6 +97,8 @@ public class MapTileDownloader {
 		public final String url;
 		public String referer = null;
 		public boolean error;
+		// request for visible area, could be dropped when area is changed
+		public boolean viewportBound;
 		
 		public DownloadRequest(String url, File fileToSave, int xTile, int yTile, int zoom) {
 			this.url = url;
@@ -131,32 +137,38 @@ public class MapTileDownloader {
 	
 	public MapTileDownloader(int numberOfThreads){
 		
+		pendingToDownload = Collections.synchronizedSet(new HashSet<File>());
+		currentlyDownloaded = Collections.synchronizedSet(new HashSet<File>());
 		threadPoolExecutor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, TILE_DOWNLOAD_SECONDS_TO_WORK, 
 				TimeUnit.SECONDS, createQueue());
 		// 1.6 method but very useful to kill non-running threads
 //		threadPoolExecutor.allowCoreThreadTimeOut(true);
-		pendingToDownload = Collections.synchronizedSet(new HashSet<File>());
-		currentlyDownloaded = Collections.synchronizedSet(new HashSet<File>());
 		
 	}
 
 	protected BlockingQueue<Runnable> createQueue() {
-		boolean loaded = false;
-		try {
-			Class<?> cl = Class.forName("java.util.concurrent.LinkedBlockingDeque");
-			loaded = cl != null;
-		} catch (Throwable e) {
-			e.printStackTrace();
-		}
-		if(!loaded) {
-			// for Android 2.2
-			return new LinkedBlockingQueue<Runnable>();
-		}
-		return createDeque();
-	}
+		queue = new ViewportTileQueue<Runnable>() {
+			@Override
+			protected DownloadRequest getRequest(Runnable element) {
+				return element instanceof DownloadMapWorker ? ((DownloadMapWorker) element).request : null;
+			}
 
-	protected static BlockingQueue<Runnable> createDeque() {
-		return new net.osmand.util.LIFOBlockingDeque<Runnable>();
+			@Override
+			protected void cancelled(Runnable element) {
+				DownloadRequest r = getRequest(element);
+				if (r != null) {
+					pendingToDownload.remove(r.fileToSave);
+				}
+			}
+		};
+		return queue;
+	}
+	
+	/**
+	 * Downloads are ordered by distance from the centre of visible area, coordinates are in tiles of zoom
+	 */
+	public void setViewport(int zoom, double centerX, double centerY, double width, double height) {
+		queue.setViewport(zoom, centerX, centerY, width, height);
 	}
 	
 	public void addDownloaderCallback(IMapDownloaderCallback callback){
@@ -209,6 +221,42 @@ public class MapTileDownloader {
 		return (int) (threadPoolExecutor.getTaskCount());
 	}
 	
+	/**
+	 * Downloads many tiles reusing connections (blocks until all tiles are processed or download is cancelled).
+	 * @param sink receives groups of downloaded tiles, when null each tile is saved by its request
+	 */
+	public BatchStatistics downloadBatch(List<? extends DownloadRequest> requests, TileSink sink, BatchProgress progress)
+			throws IOException {
+		BatchTileDownloader batch = new BatchTileDownloader();
+		batch.setThreads(TILE_DOWNLOAD_THREADS);
+		batch.setUserAgent(USER_AGENT);
+		batch.setTimeout(CONNECTION_TIMEOUT);
+		if (sink == null) {
+			sink = new TileSink() {
+				@Override
+				public void saveTiles(List<DownloadedTile> tiles) throws IOException {
+					for (DownloadedTile t : tiles) {
+						t.request.saveTile(new ByteArrayInputStream(t.data));
+					}
+				}
+			};
+		}
+		batchDownloader = batch;
+		try {
+			return batch.download(requests, sink, progress);
+		} finally {
+			batchDownloader = null;
+			fireLoadCallback(null);
+		}
+	}
+	
+	public void cancelBatchDownload() {
+		BatchTileDownloader batch = batchDownloader;
+		if (batch != null) {
+			batch.cancel();
+		}
+	}
+	
 	public void refuseAllPreviousRequests(){
 		// That's very strange because exception in impl of queue (possibly wrong impl)
 //		threadPoolExecutor.getQueue().clear();
@@ -238,7 +286,7 @@ public class MapTileDownloader {
 	}
 	
 	
-	private class DownloadMapWorker implements Runnable, Comparable<DownloadMapWorker> {
+	private class DownloadMapWorker implements Runnable {
 		
 		private DownloadRequest request;
 		
@@ -292,11 +340,6 @@ public class MapTileDownloader {
 				
 		} 
 		
-		@Override
-		public int compareTo(DownloadMapWorker o) {
-			return 0; //(int) (time - o.time);
-		}
-		
 	}
 
 
@@ -0,0 +1,302 @@
+package net.osmand.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory cache of decoded tiles limited by size in bytes (size of a tile is given by {@link #sizeOf(Object)}).
+ * Tiles are identified by packed long key ({@link #getTileKey(int, int, int, int)}) made of source id, zoom, x, y.
+ * Cache is split into stripes by key, each stripe is access ordered LRU with its own lock and part of the budget,
+ * so threads that draw and load tiles don't wait for each other.
+ *
+ * Optionally second level keeps compressed tile data with its modification time (limited by its own budget),
+ * so tiles evicted from the first level are decoded again without reading storage.
+ */
+public abstract class TileMemoryCache<T> {
+
+	private static final int STRIPES = 8;
+	private static final int ZOOM_BITS = 5;
+	private static final int COORD_BITS = 24;
+	public static final int MAX_SOURCES = 1 << (63 - ZOOM_BITS - 2 * COORD_BITS);
+	public static final int MAX_ZOOM = COORD_BITS;
+
+	private final List<Stripe<T>> stripes = new ArrayList<Stripe<T>>(STRIPES);
+	private final List<Stripe<CompressedTile>> compressed = new ArrayList<Stripe<CompressedTile>>(STRIPES);
+	private final Map<String, Integer> sourceIds = new HashMap<String, Integer>();
+	private volatile long maxSize;
+	private volatile long maxCompressedSize;
+
+	private static class Stripe<V> {
+		final LinkedHashMap<Long, V> map = new LinkedHashMap<Long, V>(32, 0.75f, true);
+		long size;
+		int hits;
+		int misses;
+		int evictions;
+	}
+
+	/**
+	 * Compressed tile data and time when it was stored (to check expiration)
+	 */
+	public static class CompressedTile {
+		public final byte[] data;
+		public final long time;
+
+		public CompressedTile(byte[] data, long time) {
+			this.data = data;
+			this.time = time;
+		}
+	}
+
+	public TileMemoryCache(long maxSize) {
+		this.maxSize = maxSize;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes.add(new Stripe<T>());
+			compressed.add(new Stripe<CompressedTile>());
+		}
+	}
+
+	/**
+	 * @return size of tile in bytes
+	 */
+	protected abstract int sizeOf(T tile);
+
+	/**
+	 * @return key of tile or -1 if tile can't be cached (zoom or number of sources is too big)
+	 */
+	public static long getTileKey(int sourceId, int x, int y, int zoom) {
+		if (zoom < 0 || zoom > MAX_ZOOM || sourceId < 0 || sourceId >= MAX_SOURCES) {
+			return -1;
+		}
+		long mask = (1l << COORD_BITS) - 1;
+		return (((((long) sourceId << ZOOM_BITS) | zoom) << COORD_BITS | (x & mask)) << COORD_BITS) | (y & mask);
+	}
+
+	/**
+	 * @return small id of source used in tile keys (ids are given in order of registration)
+	 */
+	public int getSourceId(String sourceName) {
+		synchronized (sourceIds) {
+			Integer id = sourceIds.get(sourceName);
+			if (id == null) {
+				id = sourceIds.size();
+				sourceIds.put(sourceName, id);
+			}
+			return id;
+		}
+	}
+
+	private static int stripe(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 61) & (STRIPES - 1);
+	}
+
+	public T get(long key) {
+		if (key == -1) {
+			return null;
+		}
+		Stripe<T> s = stripes.get(stripe(key));
+		synchronized (s) {
+			T t = s.map.get(key);
+			if (t == null) {
+				s.misses++;
+			} else {
+				s.hits++;
+			}
+			return t;
+		}
+	}
+
+	public void put(long key, T tile) {
+		if (key == -1 || tile == null) {
+			return;
+		}
+		Stripe<T> s = stripes.get(stripe(key));
+		synchronized (s) {
+			T old = s.map.put(key, tile);
+			if (old != null) {
+				s.size -= sizeOf(old);
+			}
+			s.size += sizeOf(tile);
+			trim(s, maxSize / STRIPES, true);
+		}
+	}
+
+	public T remove(long key) {
+		if (key == -1) {
+			return null;
+		}
+		removeCompressed(key);
+		Stripe<T> s = stripes.get(stripe(key));
+		synchronized (s) {
+			T old = s.map.remove(key);
+			if (old != null) {
+				s.size -= sizeOf(old);
+			}
+			return old;
+		}
+	}
+
+	/**
+	 * Second level cache is enabled when size > 0
+	 */
+	public void setMaxCompressedSize(long maxCompressedSize) {
+		this.maxCompressedSize = maxCompressedSize;
+		for (Stripe<CompressedTile> s : compressed) {
+			synchronized (s) {
+				trimCompressed(s, maxCompressedSize / STRIPES);
+			}
+		}
+	}
+
+	public boolean isCompressedCacheEnabled() {
+		return maxCompressedSize > 0;
+	}
+
+	/**
+	 * @param time modification time of data in storage (0 if unknown)
+	 */
+	public void putCompressed(long key, byte[] data, long time) {
+		if (key == -1 || data == null || maxCompressedSize <= 0) {
+			return;
+		}
+		Stripe<CompressedTile> s = compressed.get(stripe(key));
+		synchronized (s) {
+			CompressedTile old = s.map.put(key, new CompressedTile(data, time));
+			if (old != null) {
+				s.size -= old.data.length;
+			}
+			s.size += data.length;
+			trimCompressed(s, maxCompressedSize / STRIPES);
+		}
+	}
+
+	public CompressedTile getCompressed(long key) {
+		if (key == -1 || maxCompressedSize <= 0) {
+			return null;
+		}
+		Stripe<CompressedTile> s = compressed.get(stripe(key));
+		synchronized (s) {
+			CompressedTile data = s.map.get(key);
+			if (data == null) {
+				s.misses++;
+			} else {
+				s.hits++;
+			}
+			return data;
+		}
+	}
+
+	public void removeCompressed(long key) {
+		Stripe<CompressedTile> s = compressed.get(stripe(key));
+		synchronized (s) {
+			CompressedTile old = s.map.remove(key);
+			if (old != null) {
+				s.size -= old.data.length;
+			}
+		}
+	}
+
+	private void trim(Stripe<T> s, long max, boolean keepLast) {
+		Iterator<T> it = s.map.values().iterator();
+		// last put tile is kept even if it is bigger than budget
+		while (s.size > max && s.map.size() > (keepLast ? 1 : 0)) {
+			T t = it.next();
+			s.size -= sizeOf(t);
+			s.evictions++;
+			it.remove();
+		}
+	}
+
+	private static void trimCompressed(Stripe<CompressedTile> s, long max) {
+		Iterator<CompressedTile> it = s.map.values().iterator();
+		while (s.size > max && it.hasNext()) {
+			s.size -= it.next().data.length;
+			s.evictions++;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Evicts least recently used tiles so that decoded tiles don't take more than size
+	 */
+	public void trimToSize(long size) {
+		for (Stripe<T> s : stripes) {
+			synchronized (s) {
+				trim(s, size / STRIPES, false);
+			}
+		}
+	}
+
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		trimToSize(maxSize);
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public void clear() {
+		trimToSize(0);
+		for (Stripe<CompressedTile> s : compressed) {
+			synchronized (s) {
+				s.map.clear();
+				s.size = 0;
+			}
+		}
+	}
+
+	public int size() {
+		int r = 0;
+		for (Stripe<T> s : stripes) {
+			synchronized (s) {
+				r += s.map.size();
+			}
+		}
+		return r;
+	}
+
+	public long getSizeInBytes() {
+		long r = 0;
+		for (Stripe<T> s : stripes) {
+			synchronized (s) {
+				r += s.size;
+			}
+		}
+		return r;
+	}
+
+	public long getCompressedSizeInBytes() {
+		long r = 0;
+		for (Stripe<CompressedTile> s : compressed) {
+			synchronized (s) {
+				r += s.size;
+			}
+		}
+		return r;
+	}
+
+	public String getStatistics() {
+		int hits = 0, misses = 0, evictions = 0, chits = 0, cmisses = 0;
+		for (Stripe<T> s : stripes) {
+			synchronized (s) {
+				hits += s.hits;
+				misses += s.misses;
+				evictions += s.evictions;
+			}
+		}
+		for (Stripe<CompressedTile> s : compressed) {
+			synchronized (s) {
+				chits += s.hits;
+				cmisses += s.misses;
+			}
+		}
+		return "Tiles " + size() + " (" + (getSizeInBytes() >> 10) + " KB of " + (maxSize >> 10) + " KB), hits " + hits
+				+ ", misses " + misses + ", evicted " + evictions + "; compressed " + (getCompressedSizeInBytes() >> 10)
+				+ " KB, hits " + chits + ", misses " + cmisses;
+	}
+}
@@ -0,0 +1,531 @@
+package net.osmand.map;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import net.osmand.PlatformUtil;
+import net.osmand.data.LatLon;
+import net.osmand.map.BatchTileDownloader.BatchProgress;
+import net.osmand.map.BatchTileDownloader.BatchStatistics;
+import net.osmand.map.BatchTileDownloader.DownloadedTile;
+import net.osmand.map.BatchTileDownloader.TileSink;
+import net.osmand.map.MapTileDownloader.DownloadRequest;
+import net.osmand.map.TileSourceManager.TileSourceTemplate;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Pre-fills tile storage for an area (bbox or polygon) and range of zooms, so it could be used offline.
+ * Tiles that are stored and not expired are skipped, others are downloaded in parallel with
+ * {@link MapTileDownloader#downloadBatch(List, TileSink, BatchProgress)}.
+ *
+ * Tiles are enumerated in fixed order (zoom, x, y), position in this order is written to checkpoint file after
+ * each downloaded chunk, so interrupted seeding of the same area continues from that position.
+ */
+public class TileSeeder {
+
+	private static final Log log = PlatformUtil.getLog(TileSeeder.class);
+	private static final int CHUNK_SIZE = 500;
+
+	private final ITileSource source;
+	private final TileStore store;
+	private final MapTileDownloader downloader;
+
+	private int minZoom;
+	private int maxZoom;
+	// bbox in lat/lon
+	private double left, top, right, bottom;
+	private List<LatLon> polygon;
+	private long expirationTime = -1;
+	private File checkpointFile;
+	private SeedProgress progress;
+	private volatile boolean cancelled;
+
+	private int processed;
+	private int skipped;
+	private int downloaded;
+	private int failed;
+
+	/**
+	 * Storage of tiles to seed
+	 */
+	public interface TileStore extends TileSink {
+
+		/**
+		 * @return time when tile was stored, 0 if tile is stored but time is unknown and -1 if there is no tile
+		 */
+		long getTileTime(int x, int y, int zoom);
+	}
+
+	public interface SeedProgress {
+
+		/**
+		 * Called after each tile (from download threads)
+		 */
+		void tileProcessed(TileSeeder seeder);
+	}
+
+	public TileSeeder(ITileSource source, TileStore store, MapTileDownloader downloader) {
+		this.source = source;
+		this.store = store;
+		this.downloader = downloader;
+		this.expirationTime = source.getExpirationTimeMillis();
+		this.minZoom = source.getMinimumZoomSupported();
+		this.maxZoom = source.getMaximumZoomSupported();
+	}
+
+	public void setZooms(int minZoom, int maxZoom) {
+		this.minZoom = Math.max(minZoom, source.getMinimumZoomSupported());
+		this.maxZoom = Math.min(maxZoom, source.getMaximumZoomSupported());
+	}
+
+	public void setBBox(double leftLongitude, double topLatitude, double rightLongitude, double bottomLatitude) {
+		this.left = leftLongitude;
+		this.top = topLatitude;
+		this.right = rightLongitude;
+		this.bottom = bottomLatitude;
+		this.polygon = null;
+	}
+
+	/**
+	 * Only tiles intersecting polygon are seeded
+	 */
+	public void setPolygon(List<LatLon> polygon) {
+		this.polygon = new ArrayList<LatLon>(polygon);
+		left = right = polygon.get(0).getLongitude();
+		top = bottom = polygon.get(0).getLatitude();
+		for (LatLon l : polygon) {
+			left = Math.min(left, l.getLongitude());
+			right = Math.max(right, l.getLongitude());
+			top = Math.max(top, l.getLatitude());
+			bottom = Math.min(bottom, l.getLatitude());
+		}
+	}
+
+	/**
+	 * Stored tiles older than expiration time are downloaded again (by default expiration time of source is used),
+	 * when time is <= 0 stored tiles never expire
+	 */
+	public void setExpirationTime(long expirationTime) {
+		this.expirationTime = expirationTime;
+	}
+
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public void setProgress(SeedProgress progress) {
+		this.progress = progress;
+	}
+
+	public void cancel() {
+		cancelled = true;
+		downloader.cancelBatchDownload();
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public synchronized int getProcessed() {
+		return processed;
+	}
+
+	public synchronized int getSkipped() {
+		return skipped;
+	}
+
+	public synchronized int getDownloaded() {
+		return downloaded;
+	}
+
+	public synchronized int getFailed() {
+		return failed;
+	}
+
+	private interface TileVisitor {
+		// returns false to stop
+		boolean visit(int x, int y, int zoom) throws IOException;
+	}
+
+	private double getTileY(int zoom, double latitude) {
+		return source.isEllipticYTile() ? MapUtils.getTileEllipsoidNumberY(zoom, latitude) : MapUtils.getTileNumberY(
+				zoom, latitude);
+	}
+
+	private void iterateTiles(TileVisitor visitor) throws IOException {
+		for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+			int max = (1 << zoom) - 1;
+			int x1 = Math.max(0, (int) MapUtils.getTileNumberX(zoom, left));
+			int x2 = Math.min(max, (int) MapUtils.getTileNumberX(zoom, right));
+			int y1 = Math.max(0, (int) getTileY(zoom, top));
+			int y2 = Math.min(max, (int) getTileY(zoom, bottom));
+			double[] px = null;
+			double[] py = null;
+			if (polygon != null) {
+				px = new double[polygon.size()];
+				py = new double[polygon.size()];
+				for (int i = 0; i < px.length; i++) {
+					px[i] = MapUtils.getTileNumberX(zoom, polygon.get(i).getLongitude());
+					py[i] = getTileY(zoom, polygon.get(i).getLatitude());
+				}
+			}
+			for (int x = x1; x <= x2; x++) {
+				for (int y = y1; y <= y2; y++) {
+					if (px != null && !intersects(px, py, x, y)) {
+						continue;
+					}
+					if (!visitor.visit(x, y, zoom)) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return number of tiles in area
+	 */
+	public int countTiles() {
+		final int[] count = new int[1];
+		try {
+			iterateTiles(new TileVisitor() {
+				@Override
+				public boolean visit(int x, int y, int zoom) {
+					count[0]++;
+					return true;
+				}
+			});
+		} catch (IOException e) {
+			// not thrown
+		}
+		return count[0];
+	}
+
+	private boolean isFresh(int x, int y, int zoom, long now) {
+		long time = store.getTileTime(x, y, zoom);
+		if (time < 0) {
+			return false;
+		}
+		return expirationTime <= 0 || time == 0 || now - time < expirationTime;
+	}
+
+	/**
+	 * Seeds the area (blocks until all tiles are processed or seeding is cancelled)
+	 */
+	public void seed() throws IOException {
+		cancelled = false;
+		synchronized (this) {
+			processed = skipped = downloaded = failed = 0;
+		}
+		final String job = getJobId();
+		final int start = readCheckpoint(job);
+		if (start > 0) {
+			log.info("Seeding of " + source.getName() + " continues from tile " + start); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		final long now = System.currentTimeMillis();
+		final List<DownloadRequest> chunk = new ArrayList<DownloadRequest>();
+		final int[] position = new int[1];
+		final BatchProgress batchProgress = new BatchProgress() {
+			@Override
+			public void tileProcessed(DownloadRequest request, boolean success, BatchStatistics statistics) {
+				synchronized (TileSeeder.this) {
+					processed++;
+					if (success) {
+						downloaded++;
+					} else {
+						failed++;
+					}
+				}
+				fireProgress();
+			}
+		};
+		iterateTiles(new TileVisitor() {
+			@Override
+			public boolean visit(int x, int y, int zoom) throws IOException {
+				if (cancelled) {
+					return false;
+				}
+				position[0]++;
+				if (position[0] <= start) {
+					return true;
+				}
+				if (isFresh(x, y, zoom, now)) {
+					synchronized (TileSeeder.this) {
+						processed++;
+						skipped++;
+					}
+					fireProgress();
+				} else {
+					DownloadRequest r = new DownloadRequest(source.getUrlToLoad(x, y, zoom), null, x, y, zoom);
+					r.referer = source.getReferer();
+					chunk.add(r);
+				}
+				if (chunk.size() >= CHUNK_SIZE) {
+					downloadChunk(chunk, batchProgress);
+					if (!cancelled) {
+						writeCheckpoint(job, position[0]);
+					}
+				}
+				return true;
+			}
+		});
+		if (!cancelled && !chunk.isEmpty()) {
+			downloadChunk(chunk, batchProgress);
+		}
+		if (!cancelled) {
+			// area is seeded
+			deleteCheckpoint();
+		} else {
+			// tiles of unfinished chunk are checked again when seeding continues
+			log.info("Seeding of " + source.getName() + " is cancelled"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		log.info("Seeding of " + source.getName() + " : processed " + getProcessed() + ", skipped " + getSkipped() //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ ", downloaded " + getDownloaded() + ", failed " + getFailed()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void downloadChunk(List<DownloadRequest> chunk, BatchProgress batchProgress) throws IOException {
+		downloader.downloadBatch(chunk, store, batchProgress);
+		chunk.clear();
+	}
+
+	private void fireProgress() {
+		if (progress != null) {
+			progress.tileProcessed(this);
+		}
+	}
+
+	private String getJobId() {
+		StringBuilder b = new StringBuilder();
+		b.append(source.getName()).append(' ').append(minZoom).append('-').append(maxZoom);
+		if (polygon != null) {
+			for (LatLon l : polygon) {
+				b.append(' ').append((float) l.getLatitude()).append(',').append((float) l.getLongitude());
+			}
+		} else {
+			b.append(' ').append((float) left).append(',').append((float) top).append(',').append((float) right)
+					.append(',').append((float) bottom);
+		}
+		return b.toString();
+	}
+
+	private int readCheckpoint(String job) {
+		if (checkpointFile == null || !checkpointFile.exists()) {
+			return 0;
+		}
+		Properties p = new Properties();
+		FileInputStream is = null;
+		try {
+			is = new FileInputStream(checkpointFile);
+			p.load(is);
+			if (job.equals(p.getProperty("job"))) { //$NON-NLS-1$
+				return Integer.parseInt(p.getProperty("position", "0")); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} catch (IOException e) {
+			log.warn("Checkpoint couldn't be read " + checkpointFile, e); //$NON-NLS-1$
+		} catch (NumberFormatException e) {
+			log.warn("Checkpoint is broken " + checkpointFile, e); //$NON-NLS-1$
+		} finally {
+			Algorithms.closeStream(is);
+		}
+		return 0;
+	}
+
+	private void writeCheckpoint(String job, int position) {
+		if (checkpointFile == null) {
+			return;
+		}
+		Properties p = new Properties();
+		p.setProperty("job", job); //$NON-NLS-1$
+		p.setProperty("position", position + ""); //$NON-NLS-1$ //$NON-NLS-2$
+		File tmp = new File(checkpointFile.getAbsolutePath() + ".tmp"); //$NON-NLS-1$
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(tmp);
+			p.store(os, null);
+			os.close();
+			os = null;
+			checkpointFile.delete();
+			if (!tmp.renameTo(checkpointFile)) {
+				log.warn("Checkpoint couldn't be written " + checkpointFile); //$NON-NLS-1$
+			}
+		} catch (IOException e) {
+			log.warn("Checkpoint couldn't be written " + checkpointFile, e); //$NON-NLS-1$
+		} finally {
+			Algorithms.closeStream(os);
+		}
+	}
+
+	private void deleteCheckpoint() {
+		if (checkpointFile != null) {
+			checkpointFile.delete();
+		}
+	}
+
+	private static boolean intersects(double[] px, double[] py, int x, int y) {
+		int n = px.length;
+		// polygon vertex inside tile
+		for (int i = 0; i < n; i++) {
+			if (px[i] >= x && px[i] <= x + 1 && py[i] >= y && py[i] <= y + 1) {
+				return true;
+			}
+		}
+		// tile centre inside polygon
+		double cx = x + 0.5;
+		double cy = y + 0.5;
+		boolean inside = false;
+		for (int i = 0, j = n - 1; i < n; j = i++) {
+			if ((py[i] > cy) != (py[j] > cy) && cx < (px[j] - px[i]) * (cy - py[i]) / (py[j] - py[i]) + px[i]) {
+				inside = !inside;
+			}
+		}
+		if (inside) {
+			return true;
+		}
+		// polygon edge crosses tile
+		for (int i = 0, j = n - 1; i < n; j = i++) {
+			if (segmentIntersectsRect(px[j], py[j], px[i], py[i], x, y, x + 1, y + 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Liang-Barsky clipping
+	private static boolean segmentIntersectsRect(double x0, double y0, double x1, double y1, double minX,
+			double minY, double maxX, double maxY) {
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x0 - minX, maxX - x0, y0 - minY, maxY - y0 };
+		double t0 = 0;
+		double t1 = 1;
+		for (int i = 0; i < 4; i++) {
+			if (p[i] == 0) {
+				if (q[i] < 0) {
+					return false;
+				}
+			} else {
+				double t = q[i] / p[i];
+				if (p[i] < 0) {
+					t0 = Math.max(t0, t);
+				} else {
+					t1 = Math.min(t1, t);
+				}
+				if (t0 > t1) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tiles stored as files (layout of {@link TileSourceTemplate#calculateTileId(int, int, int)}),
+	 * time of tile is time of file modification
+	 */
+	public static class DirectoryTileStore implements TileStore {
+		private final File dir;
+		private final TileSourceTemplate template;
+
+		public DirectoryTileStore(File tilesDir, TileSourceTemplate template) {
+			this.dir = tilesDir;
+			this.template = template;
+		}
+
+		public File getTileFile(int x, int y, int zoom) {
+			return new File(dir, template.calculateTileId(x, y, zoom));
+		}
+
+		@Override
+		public long getTileTime(int x, int y, int zoom) {
+			File f = getTileFile(x, y, zoom);
+			return f.exists() ? f.lastModified() : -1;
+		}
+
+		@Override
+		public void saveTiles(List<DownloadedTile> tiles) throws IOException {
+			for (DownloadedTile t : tiles) {
+				File f = getTileFile(t.request.xTile, t.request.yTile, t.request.zoom);
+				f.getParentFile().mkdirs();
+				OutputStream os = new FileOutputStream(f);
+				try {
+					os.write(t.data);
+				} finally {
+					Algorithms.closeStream(os);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Seeds tiles directory : <source name> <tiles dir> <min zoom> <max zoom> <area> [expire minutes],
+	 * source is a name of known source or of a directory with .metainfo in tiles dir,
+	 * area is a bbox "left,top,right,bottom" or a polygon "lat,lon;lat,lon;...".
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 5) {
+			System.out.println("Usage: <source name> <tiles dir> <min zoom> <max zoom> " //$NON-NLS-1$
+					+ "<left,top,right,bottom | lat,lon;lat,lon;...> [expire minutes]"); //$NON-NLS-1$
+			return;
+		}
+		File tilesDir = new File(args[1]);
+		TileSourceTemplate template = null;
+		File sourceDir = new File(tilesDir, args[0]);
+		if (TileSourceManager.isTileSourceMetaInfoExist(sourceDir)) {
+			template = TileSourceManager.createTileSourceTemplate(sourceDir);
+		} else {
+			for (TileSourceTemplate t : TileSourceManager.getKnownSourceTemplates()) {
+				if (t.getName().equalsIgnoreCase(args[0])) {
+					template = t;
+				}
+			}
+		}
+		if (template == null) {
+			System.err.println("Unknown tile source " + args[0]); //$NON-NLS-1$
+			return;
+		}
+		TileSeeder seeder = new TileSeeder(template, new DirectoryTileStore(tilesDir, template),
+				MapTileDownloader.getInstance(MapTileDownloader.USER_AGENT));
+		seeder.setZooms(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		if (args[4].contains(";")) { //$NON-NLS-1$
+			List<LatLon> polygon = new ArrayList<LatLon>();
+			for (String p : args[4].split(";")) { //$NON-NLS-1$
+				String[] ll = p.split(","); //$NON-NLS-1$
+				polygon.add(new LatLon(Double.parseDouble(ll[0]), Double.parseDouble(ll[1])));
+			}
+			seeder.setPolygon(polygon);
+		} else {
+			String[] bbox = args[4].split(","); //$NON-NLS-1$
+			seeder.setBBox(Double.parseDouble(bbox[0]), Double.parseDouble(bbox[1]), Double.parseDouble(bbox[2]),
+					Double.parseDouble(bbox[3]));
+		}
+		if (args.length > 5) {
+			seeder.setExpirationTime(Long.parseLong(args[5]) * 60 * 1000);
+		}
+		seeder.setCheckpointFile(new File(tilesDir, template.getName() + ".seed")); //$NON-NLS-1$
+		final int total = seeder.countTiles();
+		System.out.println("Tiles in area : " + total); //$NON-NLS-1$
+		seeder.setProgress(new SeedProgress() {
+			@Override
+			public void tileProcessed(TileSeeder seeder) {
+				int p = seeder.getProcessed();
+				if (p % 1000 == 0) {
+					System.out.println("Processed " + p + " of " + total); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		});
+		seeder.seed();
+		System.out.println("Skipped " + seeder.getSkipped() + ", downloaded " + seeder.getDownloaded() //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", failed " + seeder.getFailed()); //$NON-NLS-1$
+		System.exit(0);
+	}
+}
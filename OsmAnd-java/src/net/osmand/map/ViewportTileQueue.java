@@ -0,0 +1,340 @@
+package net.osmand.map;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.osmand.map.MapTileDownloader.DownloadRequest;
+
+/**
+ * Blocking queue of tile requests ordered by distance from the viewport centre and by zoom relevance
+ * (tiles of the viewport zoom go first, other zooms are penalized). Requests with the same key are merged
+ * (the latest replaces the queued one). When viewport changes, queued requests marked as
+ * {@link DownloadRequest#viewportBound} that are far outside of it are dropped.
+ *
+ * Elements that are not tile requests ({@link #getRequest(Object)} returns null) are taken in order of arrival
+ * after tile requests. Without viewport tile requests are taken newest first.
+ *
+ * Queue is expected to be short (visible tiles), so the best element is found by a scan.
+ */
+public abstract class ViewportTileQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	// penalty for each zoom level of difference, in tiles of viewport zoom
+	public static final double ZOOM_WEIGHT = 2;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final List<Entry<E>> entries = new ArrayList<Entry<E>>();
+	private final Map<Object, Entry<E>> entriesByKey = new HashMap<Object, Entry<E>>();
+	private long order = 0;
+
+	private boolean viewportSet = false;
+	private int zoom;
+	private double centerX;
+	private double centerY;
+	private double halfWidth;
+	private double halfHeight;
+
+	private static class Entry<E> {
+		E element;
+		Object key;
+		long order;
+	}
+
+	/**
+	 * @return tile request of element or null if element is not a tile request
+	 */
+	protected abstract DownloadRequest getRequest(E element);
+
+	/**
+	 * @return key to merge equal requests (file of tile by default)
+	 */
+	protected Object getKey(E element) {
+		DownloadRequest r = getRequest(element);
+		if (r != null && r.fileToSave != null) {
+			return r.fileToSave;
+		}
+		return element;
+	}
+
+	/**
+	 * Called (under the queue lock) for requests removed without being taken
+	 */
+	protected void cancelled(E element) {
+	}
+
+	/**
+	 * Sets visible area, coordinates are in tiles of zoom. Requests (bound to viewport) outside of twice
+	 * bigger area are dropped.
+	 */
+	public void setViewport(int zoom, double centerX, double centerY, double width, double height) {
+		lock.lock();
+		try {
+			viewportSet = true;
+			this.zoom = zoom;
+			this.centerX = centerX;
+			this.centerY = centerY;
+			this.halfWidth = width / 2;
+			this.halfHeight = height / 2;
+			Iterator<Entry<E>> it = entries.iterator();
+			while (it.hasNext()) {
+				Entry<E> e = it.next();
+				DownloadRequest r = getRequest(e.element);
+				if (r != null && r.viewportBound && isOutside(r)) {
+					it.remove();
+					entriesByKey.remove(e.key);
+					cancelled(e.element);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private double[] distance(DownloadRequest r) {
+		double scale = Math.pow(2, zoom - r.zoom);
+		double left = r.xTile * scale;
+		double top = r.yTile * scale;
+		double dx = Math.max(0, Math.max(left - centerX, centerX - (left + scale)));
+		double dy = Math.max(0, Math.max(top - centerY, centerY - (top + scale)));
+		return new double[] { dx, dy };
+	}
+
+	private boolean isOutside(DownloadRequest r) {
+		if (r.zoom < 0) {
+			return false;
+		}
+		double[] d = distance(r);
+		return d[0] > 2 * halfWidth || d[1] > 2 * halfHeight;
+	}
+
+	/**
+	 * @return priority of request (less is better)
+	 */
+	protected double getPriority(DownloadRequest r) {
+		if (!viewportSet || r.zoom < 0) {
+			return 0;
+		}
+		double[] d = distance(r);
+		return Math.max(d[0], d[1]) + Math.abs(r.zoom - zoom) * ZOOM_WEIGHT;
+	}
+
+	// should be called under lock
+	private int findBest() {
+		int best = -1;
+		double bestPriority = 0;
+		boolean bestTile = false;
+		for (int i = 0; i < entries.size(); i++) {
+			Entry<E> e = entries.get(i);
+			DownloadRequest r = getRequest(e.element);
+			if (r != null) {
+				double p = getPriority(r);
+				if (!bestTile || p < bestPriority
+						|| (p == bestPriority && e.order > entries.get(best).order)) {
+					best = i;
+					bestPriority = p;
+					bestTile = true;
+				}
+			} else if (best == -1) {
+				// first not tile element (entries are in order of arrival)
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private E removeAt(int i) {
+		Entry<E> e = entries.remove(i);
+		entriesByKey.remove(e.key);
+		return e.element;
+	}
+
+	@Override
+	public boolean offer(E element) {
+		if (element == null) {
+			throw new NullPointerException();
+		}
+		lock.lock();
+		try {
+			Entry<E> e = new Entry<E>();
+			e.element = element;
+			e.key = getKey(element);
+			e.order = order++;
+			Entry<E> prev = entriesByKey.put(e.key, e);
+			if (prev != null) {
+				entries.remove(prev);
+			}
+			entries.add(e);
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+		offer(e);
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		return offer(e);
+	}
+
+	@Override
+	public E poll() {
+		lock.lock();
+		try {
+			int i = findBest();
+			return i == -1 ? null : removeAt(i);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (entries.isEmpty()) {
+				notEmpty.await();
+			}
+			return removeAt(findBest());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (entries.isEmpty()) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return removeAt(findBest());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public E peek() {
+		lock.lock();
+		try {
+			int i = findBest();
+			return i == -1 ? null : entries.get(i).element;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		lock.lock();
+		try {
+			for (int i = 0; i < entries.size(); i++) {
+				if (entries.get(i).element.equals(o)) {
+					removeAt(i);
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			entries.clear();
+			entriesByKey.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		lock.lock();
+		try {
+			int n = 0;
+			while (n < maxElements && !entries.isEmpty()) {
+				c.add(removeAt(findBest()));
+				n++;
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Iterator over snapshot of elements in order of arrival
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		lock.lock();
+		try {
+			final List<E> snapshot = new ArrayList<E>(entries.size());
+			for (Entry<E> e : entries) {
+				snapshot.add(e.element);
+			}
+			return new Iterator<E>() {
+				int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return i < snapshot.size();
+				}
+
+				@Override
+				public E next() {
+					return snapshot.get(i++);
+				}
+
+				@Override
+				public void remove() {
+					ViewportTileQueue.this.remove(snapshot.get(i - 1));
+				}
+			};
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,675 @@
+package net.osmand.osm.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import net.osmand.PlatformUtil;
+import net.osmand.util.Algorithms;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Downloads file by HTTP ranges (chunks) with several parallel connections into a local file. Number of
+ * downloaded bytes of each chunk is kept in state file, so interrupted download continues from the same
+ * place (if file was not changed on server).
+ *
+ * Downloaded data could be consumed while download is in progress by {@link #getInputStream()} : stream
+ * reads the file in order and waits for chunks that are not yet downloaded (chunks are downloaded in order
+ * of position, so stream is not behind connections for long). Stream verifies MD5 of file when it is given.
+ *
+ * When server doesn't support ranges (or doesn't tell file length), file is downloaded by one connection and
+ * download can't be resumed.
+ */
+public class ChunkedDownloader {
+
+	private static final Log log = PlatformUtil.getLog(ChunkedDownloader.class);
+	private static final int BUFFER_SIZE = 32256;
+	private static final long UNKNOWN = -1;
+
+	private final String url;
+	private final File file;
+	private final File stateFile;
+
+	private int connections = 3;
+	private long chunkSize = 1 << 20;
+	private int maxTries = 15;
+	private long retryDelay = 2000;
+	private int timeout = 30000;
+	private String userAgent = "OsmAnd"; //$NON-NLS-1$
+	private String expectedMd5;
+
+	// all fields below are guarded by this
+	private long length = UNKNOWN;
+	private boolean rangesSupported;
+	private String validator;
+	private long[] written;
+	private boolean[] taken;
+	private int activeWorkers;
+	private IOException error;
+	private volatile boolean cancelled;
+	private boolean started;
+	private long lastStateSave;
+
+	public ChunkedDownloader(String url, File file) {
+		this.url = url;
+		this.file = file;
+		this.stateFile = new File(file.getParentFile(), file.getName() + ".state"); //$NON-NLS-1$
+	}
+
+	public void setConnections(int connections) {
+		this.connections = Math.max(1, connections);
+	}
+
+	public void setChunkSize(long chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setMaxTries(int maxTries) {
+		this.maxTries = maxTries;
+	}
+
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public void setUserAgent(String userAgent) {
+		this.userAgent = userAgent;
+	}
+
+	/**
+	 * MD5 (hex) of the whole file, it is checked when stream reaches the end
+	 */
+	public void setExpectedMd5(String expectedMd5) {
+		this.expectedMd5 = expectedMd5;
+	}
+
+	/**
+	 * Could be overridden to stop using connection (for example when wifi is required), the request is retried
+	 */
+	protected boolean isConnectionAllowed() {
+		return true;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return length of file or -1 if it is not known
+	 */
+	public synchronized long getLength() {
+		return length;
+	}
+
+	public synchronized long getDownloadedBytes() {
+		long r = 0;
+		if (written != null) {
+			for (long w : written) {
+				r += w;
+			}
+		}
+		return r;
+	}
+
+	public synchronized boolean isComplete() {
+		if (written == null) {
+			return false;
+		}
+		for (int i = 0; i < written.length; i++) {
+			if (!isChunkComplete(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void cancel() {
+		synchronized (this) {
+			cancelled = true;
+			notifyAll();
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Removes downloaded data and resume state
+	 */
+	public synchronized void delete() {
+		file.delete();
+		stateFile.delete();
+		written = null;
+	}
+
+	/**
+	 * Starts download (or continues it) in background threads
+	 */
+	public void start() throws IOException {
+		synchronized (this) {
+			if (started) {
+				return;
+			}
+			started = true;
+			cancelled = false;
+			error = null;
+		}
+		try {
+			prepare();
+		} catch (IOException e) {
+			synchronized (this) {
+				started = false;
+			}
+			throw e;
+		}
+		int workers;
+		synchronized (this) {
+			workers = rangesSupported ? Math.min(connections, written.length) : 1;
+			activeWorkers = workers;
+		}
+		for (int i = 0; i < workers; i++) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "Downloading " + file.getName()); //$NON-NLS-1$
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Starts download and blocks until it is finished
+	 */
+	public void download() throws IOException {
+		start();
+		synchronized (this) {
+			while (activeWorkers > 0) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					cancel();
+					throw new IOException("Interrupted"); //$NON-NLS-1$
+				}
+			}
+			checkError();
+		}
+	}
+
+	/**
+	 * Starts download (if it is not started) and returns stream of file data
+	 */
+	public InputStream getInputStream() throws IOException {
+		start();
+		return new ChunkedInputStream();
+	}
+
+	private void prepare() throws IOException {
+		HttpURLConnection conn = openConnection();
+		conn.setRequestProperty("Range", "bytes=0-0"); //$NON-NLS-1$ //$NON-NLS-2$
+		int code = conn.getResponseCode();
+		long len = UNKNOWN;
+		boolean ranges = false;
+		if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+			throw new IOException("File not found "); //$NON-NLS-1$
+		} else if (code == HttpURLConnection.HTTP_PARTIAL) {
+			String contentRange = conn.getHeaderField("Content-Range"); //$NON-NLS-1$
+			int ind = contentRange == null ? -1 : contentRange.lastIndexOf('/');
+			if (ind != -1 && !contentRange.endsWith("*")) { //$NON-NLS-1$
+				len = Long.parseLong(contentRange.substring(ind + 1).trim());
+				ranges = true;
+			}
+		} else if (code == HttpURLConnection.HTTP_OK) {
+			len = conn.getContentLength();
+		} else {
+			throw new IOException("Server response " + code + " " + conn.getResponseMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		String etag = conn.getHeaderField("ETag"); //$NON-NLS-1$
+		String val = etag != null ? etag : conn.getHeaderField("Last-Modified"); //$NON-NLS-1$
+		if (code == HttpURLConnection.HTTP_PARTIAL) {
+			skipResponse(conn);
+		} else {
+			// whole file is sent, it is downloaded by worker
+			conn.disconnect();
+		}
+		synchronized (this) {
+			length = len <= 0 ? UNKNOWN : len;
+			rangesSupported = ranges && length > 0;
+			validator = val;
+			int chunks = rangesSupported ? (int) ((length + chunkSize - 1) / chunkSize) : 1;
+			written = new long[chunks];
+			taken = new boolean[chunks];
+			if (rangesSupported && readState()) {
+				log.info("Continue download of " + file.getName() + " from " + getDownloadedBytes()); //$NON-NLS-1$ //$NON-NLS-2$
+			} else {
+				file.getParentFile().mkdirs();
+				RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+				try {
+					raf.setLength(rangesSupported ? length : 0);
+				} finally {
+					raf.close();
+				}
+				stateFile.delete();
+			}
+		}
+	}
+
+	private HttpURLConnection openConnection() throws IOException {
+		HttpURLConnection conn = NetworkUtils.getHttpURLConnection(url);
+		conn.setRequestProperty("User-Agent", userAgent); //$NON-NLS-1$
+		conn.setConnectTimeout(timeout);
+		conn.setReadTimeout(timeout);
+		return conn;
+	}
+
+	private static void skipResponse(HttpURLConnection conn) {
+		InputStream is = null;
+		try {
+			is = conn.getInputStream();
+			byte[] b = new byte[1024];
+			while (is.read(b) != -1) {
+			}
+		} catch (IOException e) {
+			// connection is not reused
+		} finally {
+			Algorithms.closeStream(is);
+		}
+	}
+
+	// should be called under lock
+	private long chunkStart(int chunk) {
+		return chunk * chunkSize;
+	}
+
+	// should be called under lock, -1 if size is not known
+	private long chunkLength(int chunk) {
+		if (!rangesSupported) {
+			return length;
+		}
+		return Math.min(chunkSize, length - chunkStart(chunk));
+	}
+
+	// should be called under lock
+	private boolean isChunkComplete(int chunk) {
+		long l = chunkLength(chunk);
+		return l != UNKNOWN && written[chunk] >= l;
+	}
+
+	private synchronized int takeChunk() {
+		if (cancelled || error != null) {
+			return -1;
+		}
+		for (int i = 0; i < written.length; i++) {
+			if (!taken[i] && !isChunkComplete(i)) {
+				taken[i] = true;
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void work() {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+			int chunk;
+			while ((chunk = takeChunk()) != -1) {
+				downloadChunk(chunk, raf);
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				if (error == null && !cancelled) {
+					error = e;
+				}
+			}
+		} finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+				}
+			}
+			synchronized (this) {
+				activeWorkers--;
+				if (activeWorkers == 0) {
+					saveState();
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	private void downloadChunk(int chunk, RandomAccessFile raf) throws IOException {
+		int tries = maxTries;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (!cancelled) {
+			long from;
+			long to;
+			synchronized (this) {
+				if (isChunkComplete(chunk)) {
+					return;
+				}
+				if (!rangesSupported) {
+					// can't continue without ranges
+					written[chunk] = 0;
+				}
+				from = chunkStart(chunk) + written[chunk];
+				to = chunkStart(chunk) + chunkLength(chunk) - 1;
+			}
+			InputStream is = null;
+			try {
+				HttpURLConnection conn = openConnection();
+				if (rangesSupported) {
+					conn.setRequestProperty("Range", "bytes=" + from + "-" + to); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					if (validator != null) {
+						conn.setRequestProperty("If-Range", validator); //$NON-NLS-1$
+					}
+				}
+				int code = conn.getResponseCode();
+				if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+					throw new FatalException("File not found "); //$NON-NLS-1$
+				}
+				if (rangesSupported && code == HttpURLConnection.HTTP_OK) {
+					throw new FatalException("File was changed on server"); //$NON-NLS-1$
+				}
+				if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+					conn.disconnect();
+					throw new RetryException("Server response " + code); //$NON-NLS-1$
+				}
+				if (!isConnectionAllowed()) {
+					conn.disconnect();
+					throw new RetryException("Connection is not allowed"); //$NON-NLS-1$
+				}
+				is = conn.getInputStream();
+				raf.seek(from);
+				int read;
+				while ((read = is.read(buffer)) != -1) {
+					if (rangesSupported && from + read > to + 1) {
+						read = (int) (to + 1 - from);
+					}
+					raf.write(buffer, 0, read);
+					from += read;
+					chunkWritten(chunk, read);
+					if (cancelled) {
+						return;
+					}
+				}
+				synchronized (this) {
+					if (length == UNKNOWN) {
+						length = written[chunk];
+						notifyAll();
+						return;
+					}
+					if (!isChunkComplete(chunk)) {
+						throw new RetryException("Chunk was not fully read"); //$NON-NLS-1$
+					}
+					saveState();
+				}
+				return;
+			} catch (FatalException e) {
+				throw e;
+			} catch (IOException e) {
+				log.warn("Download of " + file.getName() + " failed at " + from + " : " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				if (--tries <= 0) {
+					throw new IOException("File was not fully read"); //$NON-NLS-1$
+				}
+				sleep(retryDelay);
+			} finally {
+				Algorithms.closeStream(is);
+			}
+		}
+	}
+
+	private static class RetryException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		RetryException(String msg) {
+			super(msg);
+		}
+	}
+
+	private static class FatalException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		FatalException(String msg) {
+			super(msg);
+		}
+	}
+
+	private void sleep(long delay) {
+		synchronized (this) {
+			long end = System.currentTimeMillis() + delay;
+			long left = delay;
+			while (left > 0 && !cancelled) {
+				try {
+					wait(left);
+				} catch (InterruptedException e) {
+					return;
+				}
+				left = end - System.currentTimeMillis();
+			}
+		}
+	}
+
+	private synchronized void chunkWritten(int chunk, int bytes) {
+		written[chunk] += bytes;
+		notifyAll();
+		// state is saved at least each 5 seconds to lose less on crash
+		long now = System.currentTimeMillis();
+		if (now - lastStateSave > 5000) {
+			saveState();
+		}
+	}
+
+	// should be called under lock
+	private boolean readState() {
+		if (!stateFile.exists() || !file.exists() || file.length() != length) {
+			return false;
+		}
+		Properties p = new Properties();
+		FileInputStream is = null;
+		try {
+			is = new FileInputStream(stateFile);
+			p.load(is);
+			if (!url.equals(p.getProperty("url")) || !(length + "").equals(p.getProperty("length")) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					|| !(chunkSize + "").equals(p.getProperty("chunk")) //$NON-NLS-1$ //$NON-NLS-2$
+					|| !Algorithms.objectEquals(validator, p.getProperty("validator"))) { //$NON-NLS-1$
+				return false;
+			}
+			String[] w = p.getProperty("written", "").split(","); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			if (w.length != written.length) {
+				return false;
+			}
+			for (int i = 0; i < w.length; i++) {
+				written[i] = Math.min(Long.parseLong(w[i]), chunkLength(i));
+			}
+			return true;
+		} catch (IOException e) {
+			log.warn("Download state couldn't be read " + stateFile, e); //$NON-NLS-1$
+		} catch (NumberFormatException e) {
+			log.warn("Download state is broken " + stateFile, e); //$NON-NLS-1$
+		} finally {
+			Algorithms.closeStream(is);
+		}
+		for (int i = 0; i < written.length; i++) {
+			written[i] = 0;
+		}
+		return false;
+	}
+
+	// should be called under lock
+	private void saveState() {
+		lastStateSave = System.currentTimeMillis();
+		if (!rangesSupported || written == null) {
+			return;
+		}
+		Properties p = new Properties();
+		p.setProperty("url", url); //$NON-NLS-1$
+		p.setProperty("length", length + ""); //$NON-NLS-1$ //$NON-NLS-2$
+		p.setProperty("chunk", chunkSize + ""); //$NON-NLS-1$ //$NON-NLS-2$
+		if (validator != null) {
+			p.setProperty("validator", validator); //$NON-NLS-1$
+		}
+		StringBuilder w = new StringBuilder();
+		for (int i = 0; i < written.length; i++) {
+			if (i > 0) {
+				w.append(',');
+			}
+			w.append(written[i]);
+		}
+		p.setProperty("written", w.toString()); //$NON-NLS-1$
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(stateFile);
+			p.store(os, null);
+		} catch (IOException e) {
+			log.warn("Download state couldn't be saved " + stateFile, e); //$NON-NLS-1$
+		} finally {
+			Algorithms.closeStream(os);
+		}
+	}
+
+	// should be called under lock
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw error;
+		}
+		if (cancelled) {
+			throw new IOException("Interrupted"); //$NON-NLS-1$
+		}
+	}
+
+	// should be called under lock, number of bytes available from start of file
+	private long getContiguousLength(int fromChunk) {
+		long r = chunkStart(fromChunk);
+		for (int i = fromChunk; i < written.length; i++) {
+			r += written[i];
+			if (!isChunkComplete(i)) {
+				break;
+			}
+		}
+		return r;
+	}
+
+	private class ChunkedInputStream extends InputStream {
+		private final RandomAccessFile raf;
+		private final MessageDigest digest;
+		private long position;
+		private boolean eof;
+
+		ChunkedInputStream() throws IOException {
+			raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			MessageDigest md = null;
+			if (expectedMd5 != null) {
+				try {
+					md = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+				} catch (NoSuchAlgorithmException e) {
+					log.warn("MD5 is not supported", e); //$NON-NLS-1$
+				}
+			}
+			digest = md;
+		}
+
+		// returns number of bytes that could be read without waiting or -1 at the end of file
+		private long waitForData() throws IOException {
+			synchronized (ChunkedDownloader.this) {
+				while (true) {
+					checkError();
+					int chunk = rangesSupported ? (int) (position / chunkSize) : 0;
+					long available = getContiguousLength(chunk) - position;
+					if (available > 0) {
+						return available;
+					}
+					if (isComplete() || (activeWorkers == 0 && !rangesSupported)) {
+						return -1;
+					}
+					if (activeWorkers == 0) {
+						throw new IOException("File was not fully read"); //$NON-NLS-1$
+					}
+					try {
+						ChunkedDownloader.this.wait();
+					} catch (InterruptedException e) {
+						throw new IOException("Interrupted"); //$NON-NLS-1$
+					}
+				}
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (eof) {
+				return -1;
+			}
+			long available = waitForData();
+			if (available == -1) {
+				eof = true;
+				verifyChecksum();
+				return -1;
+			}
+			int toRead = (int) Math.min(len, available);
+			raf.seek(position);
+			raf.readFully(b, off, toRead);
+			position += toRead;
+			if (digest != null) {
+				digest.update(b, off, toRead);
+			}
+			return toRead;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int r = read(b, 0, 1);
+			return r == -1 ? -1 : (b[0] & 0xff);
+		}
+
+		private void verifyChecksum() throws IOException {
+			if (digest == null) {
+				return;
+			}
+			byte[] md5 = digest.digest();
+			StringBuilder hex = new StringBuilder();
+			for (byte b : md5) {
+				hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+			}
+			if (!hex.toString().equalsIgnoreCase(expectedMd5)) {
+				throw new IOException("Checksum of " + file.getName() + " doesn't match"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+
+		/**
+		 * @return number of downloaded bytes that could be read without waiting (use {@link #getLength()} for
+		 *         total length)
+		 */
+		@Override
+		public int available() throws IOException {
+			synchronized (ChunkedDownloader.this) {
+				if (eof || written == null) {
+					return 0;
+				}
+				int chunk = rangesSupported ? (int) (position / chunkSize) : 0;
+				return (int) Math.max(0, Math.min(Integer.MAX_VALUE, getContiguousLength(chunk) - position));
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package net.osmand.render;
+
+import net.osmand.binary.BinaryMapDataObject;
+
+/**
+ * Converts 31 tile coordinates of map objects to screen pixels and reduces geometry before it is drawn:
+ * vertices closer than pixel tolerance to the previous kept vertex are dropped and vertices outside of expanded
+ * viewport are removed when neighbour vertices lie outside on the same side (so removed part could not be visible).
+ * Result is written into reusable float buffers, so the same instance should be used only by one thread.
+ */
+public class GeometrySimplifier {
+
+	public static final float DEFAULT_PIXEL_TOLERANCE = 0.5f;
+	public static final float DEFAULT_EXPAND = 100;
+
+	private static final int INSIDE = 0;
+	private static final int LEFT = 1;
+	private static final int RIGHT = 2;
+	private static final int TOP = 4;
+	private static final int BOTTOM = 8;
+
+	private double leftX;
+	private double topY;
+	private double tileDivisor = 1;
+	private float cosRotateTileSize;
+	private float sinRotateTileSize;
+	private int width;
+	private int height;
+	private float expandedLeft;
+	private float expandedTop;
+	private float expandedRight;
+	private float expandedBottom;
+	private float toleranceSq = DEFAULT_PIXEL_TOLERANCE * DEFAULT_PIXEL_TOLERANCE;
+
+	private float[] xs = new float[256];
+	private float[] ys = new float[256];
+	private int[] outCodes = new int[256];
+	private int size;
+	private float sumX;
+	private float sumY;
+	private int originalSize;
+	private boolean intersectsViewport;
+
+	// statistics
+	private int pointCount;
+	private int pointInsideCount;
+	private int pointKeptCount;
+
+	public void init(double leftX, double topY, double tileDivisor, float cosRotateTileSize, float sinRotateTileSize,
+			int width, int height) {
+		init(leftX, topY, tileDivisor, cosRotateTileSize, sinRotateTileSize, width, height, DEFAULT_EXPAND,
+				DEFAULT_PIXEL_TOLERANCE);
+	}
+
+	public void init(double leftX, double topY, double tileDivisor, float cosRotateTileSize, float sinRotateTileSize,
+			int width, int height, float expand, float pixelTolerance) {
+		this.leftX = leftX;
+		this.topY = topY;
+		this.tileDivisor = tileDivisor;
+		this.cosRotateTileSize = cosRotateTileSize;
+		this.sinRotateTileSize = sinRotateTileSize;
+		this.width = width;
+		this.height = height;
+		this.expandedLeft = -expand;
+		this.expandedTop = -expand;
+		this.expandedRight = width + expand;
+		this.expandedBottom = height + expand;
+		this.toleranceSq = pixelTolerance * pixelTolerance;
+		this.pointCount = 0;
+		this.pointInsideCount = 0;
+		this.pointKeptCount = 0;
+	}
+
+	/**
+	 * Simplifies outer line (or polygon) of object.
+	 * @return number of kept points
+	 */
+	public int simplify(BinaryMapDataObject o) {
+		int len = o.getPointsLength();
+		ensureCapacity(len);
+		for (int i = 0; i < len; i++) {
+			transform(i, o.getPoint31XTile(i), o.getPoint31YTile(i));
+		}
+		return reduce(len);
+	}
+
+	/**
+	 * Simplifies line given as array of x,y pairs (inner polygon rings).
+	 * @return number of kept points
+	 */
+	public int simplify(int[] coordinates) {
+		int len = coordinates.length / 2;
+		ensureCapacity(len);
+		for (int i = 0; i < len; i++) {
+			transform(i, coordinates[i * 2], coordinates[i * 2 + 1]);
+		}
+		return reduce(len);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public float getX(int i) {
+		return xs[i];
+	}
+
+	public float getY(int i) {
+		return ys[i];
+	}
+
+	/**
+	 * Buffers are reused by next simplify call
+	 */
+	public float[] getXs() {
+		return xs;
+	}
+
+	public float[] getYs() {
+		return ys;
+	}
+
+	/**
+	 * @return center of all original (not simplified) points
+	 */
+	public float getCenterX() {
+		return originalSize == 0 ? 0 : sumX / originalSize;
+	}
+
+	public float getCenterY() {
+		return originalSize == 0 ? 0 : sumY / originalSize;
+	}
+
+	/**
+	 * @return true if any point or segment of the last simplified line could be visible on screen (not expanded)
+	 */
+	public boolean isIntersectingViewport() {
+		return intersectsViewport;
+	}
+
+	public int getPointCount() {
+		return pointCount;
+	}
+
+	public int getPointInsideCount() {
+		return pointInsideCount;
+	}
+
+	public int getPointKeptCount() {
+		return pointKeptCount;
+	}
+
+	private void ensureCapacity(int len) {
+		if (xs.length < len) {
+			int nl = Math.max(len, xs.length * 2);
+			xs = new float[nl];
+			ys = new float[nl];
+			outCodes = new int[nl];
+		}
+	}
+
+	private void transform(int i, int xt, int yt) {
+		double dTileX = xt / tileDivisor - leftX;
+		double dTileY = yt / tileDivisor - topY;
+		float x = (float) (cosRotateTileSize * dTileX - sinRotateTileSize * dTileY);
+		float y = (float) (sinRotateTileSize * dTileX + cosRotateTileSize * dTileY);
+		xs[i] = x;
+		ys[i] = y;
+		int code = INSIDE;
+		if (x < expandedLeft) {
+			code |= LEFT;
+		} else if (x > expandedRight) {
+			code |= RIGHT;
+		}
+		if (y < expandedTop) {
+			code |= TOP;
+		} else if (y > expandedBottom) {
+			code |= BOTTOM;
+		}
+		outCodes[i] = code;
+	}
+
+	private int reduce(int len) {
+		pointCount += len;
+		originalSize = len;
+		sumX = 0;
+		sumY = 0;
+		intersectsViewport = false;
+		for (int i = 0; i < len; i++) {
+			float x = xs[i];
+			float y = ys[i];
+			sumX += x;
+			sumY += y;
+			boolean inside = x >= 0 && y >= 0 && x < width && y < height;
+			if (inside) {
+				pointInsideCount++;
+			}
+			if (!intersectsViewport) {
+				if (inside) {
+					intersectsViewport = true;
+				} else if (i > 0) {
+					float px = xs[i - 1];
+					float py = ys[i - 1];
+					intersectsViewport = !((x < 0 && px < 0) || (y < 0 && py < 0) || (x > width && px > width)
+							|| (y > height && py > height));
+				}
+			}
+		}
+		if (len <= 2) {
+			size = len;
+			pointKeptCount += size;
+			return size;
+		}
+		// points are compacted in place: write index is always behind read index
+		int w = 1;
+		for (int i = 1; i < len - 1; i++) {
+			int prev = w - 1;
+			float dx = xs[i] - xs[prev];
+			float dy = ys[i] - ys[prev];
+			if (dx * dx + dy * dy < toleranceSq) {
+				continue;
+			}
+			if ((outCodes[prev] & outCodes[i] & outCodes[i + 1]) != 0) {
+				// previous, current and next points are outside on the same side
+				continue;
+			}
+			xs[w] = xs[i];
+			ys[w] = ys[i];
+			outCodes[w] = outCodes[i];
+			w++;
+		}
+		xs[w] = xs[len - 1];
+		ys[w] = ys[len - 1];
+		outCodes[w] = outCodes[len - 1];
+		size = w + 1;
+		pointKeptCount += size;
+		return size;
+	}
+}
@@ -0,0 +1,274 @@
+package net.osmand.render;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.osmand.data.QuadRect;
+
+/**
+ * Platform independent placement of map labels.
+ * Labels are tested for collisions using uniform grid (instead of quad tree rebuilt for every frame)
+ * and labels accepted in previous frame (identified by object id + text) are preferred
+ * over new labels with the same order, so labels do not jump between frames after pan/rotate.
+ */
+public class LabelPlacementEngine<T extends LabelPlacementEngine.Label> {
+
+	public static final int DEFAULT_CELL_SIZE = 64;
+
+	public static class Label {
+		public String text;
+		public long objectId = -1;
+		public QuadRect bounds;
+		public float pathRotate = 0;
+		public float minDistance = 0;
+		public int textOrder = 100;
+
+		// set by engine
+		boolean reused;
+
+		public Label(String text) {
+			this.text = text;
+		}
+
+		public boolean isReused() {
+			return reused;
+		}
+
+		public long getPlacementKey() {
+			// collisions only influence priority of label, not the correctness of placement
+			return (objectId << 20) ^ (text == null ? 0 : text.hashCode());
+		}
+	}
+
+	private final int cellSize;
+	private float minDistanceInsetX = 5;
+	private float minDistanceInsetY = 15;
+	private float viewportInset = 100;
+
+	// grid
+	private int cols;
+	private int rows;
+	private double gridLeft;
+	private double gridTop;
+	private int[] cellHead = new int[0];
+	private int[] entryNext = new int[256];
+	private int[] entryLabel = new int[256];
+	private int entries;
+	private int[] queryStamp = new int[256];
+	private int stamp;
+	private final List<T> placed = new ArrayList<T>();
+
+	private TLongHashSet previousFrame = new TLongHashSet();
+	private TLongHashSet currentFrame = new TLongHashSet();
+	private int reusedCount;
+	private int collisionChecks;
+
+	private final Comparator<T> orderComparator = new Comparator<T>() {
+		@Override
+		public int compare(T object1, T object2) {
+			if (object1.textOrder != object2.textOrder) {
+				return object1.textOrder < object2.textOrder ? -1 : 1;
+			}
+			if (object1.reused != object2.reused) {
+				return object1.reused ? -1 : 1;
+			}
+			return 0;
+		}
+	};
+
+	public LabelPlacementEngine() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public LabelPlacementEngine(int cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Insets used to search labels with the same text when label has min distance specified
+	 */
+	public void setMinDistanceInsets(float dx, float dy) {
+		this.minDistanceInsetX = dx;
+		this.minDistanceInsetY = dy;
+	}
+
+	public void setViewportInset(float viewportInset) {
+		this.viewportInset = viewportInset;
+	}
+
+	/**
+	 * Forget labels accepted in previous frames (for example when style or zoom was changed)
+	 */
+	public void reset() {
+		previousFrame.clear();
+		currentFrame.clear();
+	}
+
+	public int getReusedCount() {
+		return reusedCount;
+	}
+
+	public int getCollisionChecks() {
+		return collisionChecks;
+	}
+
+	/**
+	 * Sorts labels by text order and selects the ones that could be displayed without intersections.
+	 * Labels are processed in place and returned in the order they should be drawn.
+	 */
+	public List<T> place(List<T> labels, int width, int height, List<T> result) {
+		result.clear();
+		reusedCount = 0;
+		collisionChecks = 0;
+		for (int i = 0; i < labels.size(); i++) {
+			T l = labels.get(i);
+			l.reused = previousFrame.contains(l.getPlacementKey());
+		}
+		Collections.sort(labels, orderComparator);
+		initGrid(width, height, labels.size());
+		for (int i = 0; i < labels.size(); i++) {
+			T l = labels.get(i);
+			if (l.text == null || l.text.length() == 0 || l.bounds == null) {
+				continue;
+			}
+			if (!intersectsPlaced(l)) {
+				insert(l);
+				result.add(l);
+				currentFrame.add(l.getPlacementKey());
+				if (l.reused) {
+					reusedCount++;
+				}
+			}
+		}
+		TLongHashSet t = previousFrame;
+		previousFrame = currentFrame;
+		currentFrame = t;
+		currentFrame.clear();
+		placed.clear();
+		return result;
+	}
+
+	private void initGrid(int width, int height, int capacity) {
+		gridLeft = -viewportInset;
+		gridTop = -viewportInset;
+		cols = Math.max(1, (int) Math.ceil((width + 2 * viewportInset) / cellSize));
+		rows = Math.max(1, (int) Math.ceil((height + 2 * viewportInset) / cellSize));
+		if (cellHead.length < cols * rows) {
+			cellHead = new int[cols * rows];
+		}
+		Arrays.fill(cellHead, 0, cols * rows, -1);
+		if (queryStamp.length < capacity) {
+			queryStamp = new int[capacity];
+		} else {
+			Arrays.fill(queryStamp, 0);
+		}
+		stamp = 0;
+		entries = 0;
+		placed.clear();
+	}
+
+	private int col(double x) {
+		int c = (int) Math.floor((x - gridLeft) / cellSize);
+		return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+	}
+
+	private int row(double y) {
+		int r = (int) Math.floor((y - gridTop) / cellSize);
+		return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+	}
+
+	private void insert(T l) {
+		int ind = placed.size();
+		placed.add(l);
+		int r1 = row(l.bounds.top);
+		int r2 = row(l.bounds.bottom);
+		int c1 = col(l.bounds.left);
+		int c2 = col(l.bounds.right);
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				if (entries == entryNext.length) {
+					entryNext = Arrays.copyOf(entryNext, entries * 2);
+					entryLabel = Arrays.copyOf(entryLabel, entries * 2);
+				}
+				int cell = r * cols + c;
+				entryLabel[entries] = ind;
+				entryNext[entries] = cellHead[cell];
+				cellHead[cell] = entries;
+				entries++;
+			}
+		}
+	}
+
+	private boolean intersectsPlaced(T text) {
+		if (intersectsInBox(text, text.bounds, false)) {
+			return true;
+		}
+		if (text.minDistance > 0) {
+			QuadRect boundsSearch = new QuadRect(text.bounds);
+			boundsSearch.inset(-Math.max(minDistanceInsetX, text.minDistance), -minDistanceInsetY);
+			return intersectsInBox(text, boundsSearch, true);
+		}
+		return false;
+	}
+
+	private boolean intersectsInBox(T text, QuadRect box, boolean sameText) {
+		stamp++;
+		int r1 = row(box.top);
+		int r2 = row(box.bottom);
+		int c1 = col(box.left);
+		int c2 = col(box.right);
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				int e = cellHead[r * cols + c];
+				while (e != -1) {
+					int ind = entryLabel[e];
+					e = entryNext[e];
+					if (queryStamp[ind] == stamp) {
+						continue;
+					}
+					queryStamp[ind] = stamp;
+					T t = placed.get(ind);
+					if (sameText && (t.minDistance <= 0 || !t.text.equals(text.text))) {
+						continue;
+					}
+					collisionChecks++;
+					if (intersects(box, text.pathRotate, t.bounds, t.pathRotate)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks intersection of boxes rotated around their centers (angle is direction of the box width)
+	 */
+	public static boolean intersects(QuadRect tRect, float tRot, QuadRect sRect, float sRot) {
+		if (Math.abs(tRot) < Math.PI / 15 && Math.abs(sRot) < Math.PI / 15) {
+			return QuadRect.intersects(tRect, sRect);
+		}
+		// boxes don't intersect if projections on axis of one of them don't overlap (separating axis)
+		double dx = sRect.centerX() - tRect.centerX();
+		double dy = sRect.centerY() - tRect.centerY();
+		return !separatedByAxes(tRect, tRot, sRect, sRot, dx, dy) && !separatedByAxes(sRect, sRot, tRect, tRot, -dx, -dy);
+	}
+
+	private static boolean separatedByAxes(QuadRect a, double aRot, QuadRect b, double bRot, double dx, double dy) {
+		double cos = Math.abs(Math.cos(bRot - aRot));
+		double sin = Math.abs(Math.sin(bRot - aRot));
+		double bw = b.width() / 2;
+		double bh = b.height() / 2;
+		double ax = Math.cos(aRot);
+		double ay = Math.sin(aRot);
+		if (Math.abs(dx * ax + dy * ay) > a.width() / 2 + bw * cos + bh * sin) {
+			return true;
+		}
+		return Math.abs(dy * ax - dx * ay) > a.height() / 2 + bw * sin + bh * cos;
+	}
+}
@@ -0,0 +1,296 @@
+package net.osmand.render;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.osmand.PlatformUtil;
+import net.osmand.RenderingContext;
+import net.osmand.binary.BinaryMapDataObject;
+import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Classifies map objects before drawing: evaluates order rules, calculates polygon areas
+ * and sorts objects by order. Classification is done in parallel chunks (each chunk uses its own
+ * copy of rendering request) and sorted chunks are merged preserving order of sequential algorithm.
+ */
+public class MapObjectsClassifier {
+	private static final Log log = PlatformUtil.getLog(MapObjectsClassifier.class);
+
+	public static final int MAX_V = 75;
+	public static final int MIN_OBJECTS_PER_CHUNK = 1500;
+
+	public static class MapDataObjectPrimitive {
+		public BinaryMapDataObject obj;
+		public int typeInd;
+		public double order;
+		public int objectType;
+	}
+
+	public static class ClassifiedObjects {
+		public final List<MapDataObjectPrimitive> points = new ArrayList<MapDataObjectPrimitive>();
+		public final List<MapDataObjectPrimitive> polygons = new ArrayList<MapDataObjectPrimitive>();
+		public final List<MapDataObjectPrimitive> lines = new ArrayList<MapDataObjectPrimitive>();
+		public int shadowLevelMin = 256;
+		public int shadowLevelMax = 0;
+
+		void sort() {
+			Comparator<MapDataObjectPrimitive> cmp = sortByOrder();
+			Collections.sort(polygons, cmp);
+			Collections.sort(points, cmp);
+			Collections.sort(lines, cmp);
+		}
+	}
+
+	private final int threads;
+	private ExecutorService executor;
+
+	public MapObjectsClassifier() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public MapObjectsClassifier(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public static Comparator<MapDataObjectPrimitive> sortByOrder() {
+		return new Comparator<MapDataObjectPrimitive>() {
+
+			@Override
+			public int compare(MapDataObjectPrimitive i, MapDataObjectPrimitive j) {
+				if (i.order == j.order) {
+					if (i.typeInd == j.typeInd) {
+						if (i.obj.getPointsLength() == j.obj.getPointsLength()) {
+							return 0;
+						}
+						return i.obj.getPointsLength() < j.obj.getPointsLength() ? -1 : 1;
+					}
+					return i.typeInd < j.typeInd ? -1 : 1;
+				}
+				return (i.order < j.order ? -1 : 1);
+			}
+
+		};
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private int counter = 0;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Classify map objects " + (counter++));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+	// executor is not shut down between getting it and submitting the task
+	private synchronized Future<ClassifiedObjects> submit(Callable<ClassifiedObjects> task) {
+		return getExecutor().submit(task);
+	}
+
+	/**
+	 * Stops threads when submitted chunks are classified, new threads are started by next classification
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return sorted points, polygons and lines or null if rendering was interrupted
+	 */
+	public ClassifiedObjects classify(final RenderingContext rc, final List<BinaryMapDataObject> objects,
+			RenderingRuleSearchRequest render) {
+		if (render == null) {
+			return new ClassifiedObjects();
+		}
+		render.clearState();
+		int sz = objects.size();
+		int chunks = Math.min(threads, sz / MIN_OBJECTS_PER_CHUNK);
+		if (chunks <= 1) {
+			ClassifiedObjects res = new ClassifiedObjects();
+			if (!classifyChunk(rc, objects, 0, sz, render, res)) {
+				return null;
+			}
+			res.sort();
+			return res;
+		}
+		List<Future<ClassifiedObjects>> futures = new ArrayList<Future<ClassifiedObjects>>(chunks);
+		List<RenderingRuleSearchRequest> requests = new ArrayList<RenderingRuleSearchRequest>(chunks);
+		int chunkSize = (sz + chunks - 1) / chunks;
+		for (int c = 0; c < chunks; c++) {
+			final int start = c * chunkSize;
+			final int end = Math.min(sz, start + chunkSize);
+			final RenderingRuleSearchRequest req = new RenderingRuleSearchRequest(render);
+			requests.add(req);
+			futures.add(submit(new Callable<ClassifiedObjects>() {
+				@Override
+				public ClassifiedObjects call() throws Exception {
+					ClassifiedObjects res = new ClassifiedObjects();
+					if (!classifyChunk(rc, objects, start, end, req, res)) {
+						return null;
+					}
+					res.sort();
+					return res;
+				}
+			}));
+		}
+		List<ClassifiedObjects> parts = new ArrayList<ClassifiedObjects>(chunks);
+		try {
+			for (Future<ClassifiedObjects> f : futures) {
+				ClassifiedObjects part = f.get();
+				if (part == null) {
+					return null;
+				}
+				parts.add(part);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			log.error(e.getMessage(), e);
+			return null;
+		} finally {
+			for (RenderingRuleSearchRequest req : requests) {
+				render.searchCount += req.searchCount;
+			}
+		}
+		ClassifiedObjects res = new ClassifiedObjects();
+		List<List<MapDataObjectPrimitive>> pointParts = new ArrayList<List<MapDataObjectPrimitive>>(chunks);
+		List<List<MapDataObjectPrimitive>> polygonParts = new ArrayList<List<MapDataObjectPrimitive>>(chunks);
+		List<List<MapDataObjectPrimitive>> lineParts = new ArrayList<List<MapDataObjectPrimitive>>(chunks);
+		for (ClassifiedObjects part : parts) {
+			pointParts.add(part.points);
+			polygonParts.add(part.polygons);
+			lineParts.add(part.lines);
+			res.shadowLevelMin = Math.min(res.shadowLevelMin, part.shadowLevelMin);
+			res.shadowLevelMax = Math.max(res.shadowLevelMax, part.shadowLevelMax);
+		}
+		Comparator<MapDataObjectPrimitive> cmp = sortByOrder();
+		merge(pointParts, res.points, cmp);
+		merge(polygonParts, res.polygons, cmp);
+		merge(lineParts, res.lines, cmp);
+		return res;
+	}
+
+	/**
+	 * Merges sorted lists, equal elements are taken from the list with lower index
+	 * so the result is the same as stable sort of concatenated lists.
+	 */
+	static <T> void merge(List<List<T>> sorted, List<T> result, Comparator<T> cmp) {
+		int k = sorted.size();
+		int[] pos = new int[k];
+		int total = 0;
+		for (List<T> l : sorted) {
+			total += l.size();
+		}
+		if (result instanceof ArrayList) {
+			((ArrayList<T>) result).ensureCapacity(total);
+		}
+		for (int n = 0; n < total; n++) {
+			int best = -1;
+			T bestObj = null;
+			for (int i = 0; i < k; i++) {
+				List<T> l = sorted.get(i);
+				if (pos[i] < l.size()) {
+					T o = l.get(pos[i]);
+					if (best == -1 || cmp.compare(o, bestObj) < 0) {
+						best = i;
+						bestObj = o;
+					}
+				}
+			}
+			pos[best]++;
+			result.add(bestObj);
+		}
+	}
+
+	private boolean classifyChunk(RenderingContext rc, List<BinaryMapDataObject> objects, int start, int end,
+			RenderingRuleSearchRequest render, ClassifiedObjects res) {
+		float mult = (float) (1. / MapUtils.getPowZoom(Math.max(31 - (rc.zoom + 8), 0)));
+		for (int i = start; i < end; i++) {
+			BinaryMapDataObject o = objects.get(i);
+			for (int j = 0; j < o.getTypes().length; j++) {
+				int wholeType = o.getTypes()[j];
+				int layer = 0;
+				if (o.getPointsLength() > 1) {
+					layer = o.getSimpleLayer();
+				}
+
+				TagValuePair pair = o.getMapIndex().decodeType(wholeType);
+				if (pair != null) {
+					render.setTagValueZoomLayer(pair.tag, pair.value, rc.zoom, layer, o);
+					render.setBooleanFilter(render.ALL.R_AREA, o.isArea());
+					render.setBooleanFilter(render.ALL.R_POINT, o.getPointsLength() == 1);
+					render.setBooleanFilter(render.ALL.R_CYCLE, o.isCycle());
+					if (render.search(RenderingRulesStorage.ORDER_RULES)) {
+						int objectType = render.getIntPropertyValue(render.ALL.R_OBJECT_TYPE);
+						int order = render.getIntPropertyValue(render.ALL.R_ORDER);
+						MapDataObjectPrimitive mapObj = new MapDataObjectPrimitive();
+						mapObj.objectType = objectType;
+						mapObj.order = order;
+						mapObj.typeInd = j;
+						mapObj.obj = o;
+						if (objectType == 3) {
+							MapDataObjectPrimitive pointObj = mapObj;
+							pointObj.objectType = 1;
+							double area = polygonArea(mapObj, mult);
+							if (area > MAX_V) {
+								mapObj.order = mapObj.order + (1. / area);
+								res.polygons.add(mapObj);
+								res.points.add(pointObj); // TODO fix duplicate text? verify if it is needed for icon
+							}
+						} else if (objectType == 1) {
+							res.points.add(mapObj);
+						} else {
+							res.lines.add(mapObj);
+						}
+						if (render.isSpecified(render.ALL.R_SHADOW_LEVEL)) {
+							res.shadowLevelMin = Math.min(res.shadowLevelMin, order);
+							res.shadowLevelMax = Math.max(res.shadowLevelMax, order);
+							render.clearValue(render.ALL.R_SHADOW_LEVEL);
+						}
+					}
+
+				}
+			}
+
+			if (rc.interrupted) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static double polygonArea(MapDataObjectPrimitive mapObj, float mult) {
+		double area = 0.;
+		int j = mapObj.obj.getPointsLength() - 1;
+		for (int i = 0; i < mapObj.obj.getPointsLength(); i++) {
+			int px = mapObj.obj.getPoint31XTile(i);
+			int py = mapObj.obj.getPoint31YTile(i);
+			int sx = mapObj.obj.getPoint31XTile(j);
+			int sy = mapObj.obj.getPoint31YTile(j);
+			area += (sx + ((float) px)) * (sy - ((float) py));
+			j = i;
+		}
+		return Math.abs(area) * mult * mult * .5;
+	}
+}
@@ -0,0 +1,121 @@
+package net.osmand.render;
+
+import net.osmand.util.Algorithms;
+
+/**
+ * Interned output of rendering rules that is needed to configure paint for drawing line or area.
+ * Instances are registered in {@link PaintStyleRegistry} and identified by int id.
+ */
+public class PaintStyle {
+
+	boolean area;
+	int color;
+	float strokeWidth;
+	String cap;
+	String pathEffect;
+	float density;
+	String shader;
+	boolean shadowLayer;
+	int shadowColor;
+	int shadowRadius;
+
+	// derived values (not part of key)
+	int id = -1;
+	float[] dashIntervals;
+
+	PaintStyle() {
+	}
+
+	PaintStyle(PaintStyle s) {
+		this.area = s.area;
+		this.color = s.color;
+		this.strokeWidth = s.strokeWidth;
+		this.cap = s.cap;
+		this.pathEffect = s.pathEffect;
+		this.density = s.density;
+		this.shader = s.shader;
+		this.shadowLayer = s.shadowLayer;
+		this.shadowColor = s.shadowColor;
+		this.shadowRadius = s.shadowRadius;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public boolean isArea() {
+		return area;
+	}
+
+	public int getColor() {
+		return color;
+	}
+
+	public float getStrokeWidth() {
+		return strokeWidth;
+	}
+
+	/**
+	 * @return cap name as specified in style (BUTT, ROUND, SQUARE) or null
+	 */
+	public String getCap() {
+		return cap;
+	}
+
+	/**
+	 * @return dash intervals in pixels or null if path effect is not specified
+	 */
+	public float[] getDashIntervals() {
+		return dashIntervals;
+	}
+
+	public String getShader() {
+		return shader;
+	}
+
+	public boolean hasShadowLayer() {
+		return shadowLayer;
+	}
+
+	public int getShadowColor() {
+		return shadowColor;
+	}
+
+	public int getShadowRadius() {
+		return shadowRadius;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (area ? 1231 : 1237);
+		result = prime * result + color;
+		result = prime * result + Float.floatToIntBits(strokeWidth);
+		result = prime * result + ((cap == null) ? 0 : cap.hashCode());
+		result = prime * result + ((pathEffect == null) ? 0 : pathEffect.hashCode());
+		result = prime * result + Float.floatToIntBits(density);
+		result = prime * result + ((shader == null) ? 0 : shader.hashCode());
+		result = prime * result + (shadowLayer ? 1231 : 1237);
+		result = prime * result + shadowColor;
+		result = prime * result + shadowRadius;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		PaintStyle other = (PaintStyle) obj;
+		return area == other.area && color == other.color
+				&& Float.floatToIntBits(strokeWidth) == Float.floatToIntBits(other.strokeWidth)
+				&& Float.floatToIntBits(density) == Float.floatToIntBits(other.density)
+				&& shadowLayer == other.shadowLayer && shadowColor == other.shadowColor
+				&& shadowRadius == other.shadowRadius && Algorithms.objectEquals(cap, other.cap)
+				&& Algorithms.objectEquals(pathEffect, other.pathEffect) && Algorithms.objectEquals(shader, other.shader);
+	}
+}
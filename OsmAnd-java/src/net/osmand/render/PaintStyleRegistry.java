@@ -0,0 +1,184 @@
+package net.osmand.render;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.osmand.RenderingContext;
+import net.osmand.util.Algorithms;
+
+/**
+ * Interns paint styles calculated from rendering rules output, so paint could be configured once per distinct
+ * style and reused by id while drawing. Registry is cleared when it grows over {@link #MAX_STYLES},
+ * check {@link #getVersion()} to invalidate objects created for style ids.
+ */
+public class PaintStyleRegistry {
+
+	public static final int MAX_STYLES = 4096;
+
+	private final Map<PaintStyle, PaintStyle> styles = new HashMap<PaintStyle, PaintStyle>();
+	private final List<PaintStyle> stylesById = new ArrayList<PaintStyle>();
+	private final Map<String, float[]> parsedDashEffects = new HashMap<String, float[]>();
+	private final PaintStyle probe = new PaintStyle();
+	private int version = 0;
+
+	public synchronized int getVersion() {
+		return version;
+	}
+
+	public synchronized int size() {
+		return stylesById.size();
+	}
+
+	public synchronized PaintStyle getStyle(int id) {
+		return stylesById.get(id);
+	}
+
+	public synchronized void clear() {
+		styles.clear();
+		stylesById.clear();
+		version++;
+	}
+
+	/**
+	 * @param ind index of paint properties (-3..4) as they are used for lines
+	 * @return style id or -1 if style is not specified by rendering rules output
+	 */
+	public synchronized int getStyleId(RenderingRuleSearchRequest req, RenderingContext rc, int ind, boolean area) {
+		RenderingRuleProperty rColor;
+		RenderingRuleProperty rStrokeW;
+		RenderingRuleProperty rCap;
+		RenderingRuleProperty rPathEff;
+		if (ind == 0) {
+			rColor = req.ALL.R_COLOR;
+			rStrokeW = req.ALL.R_STROKE_WIDTH;
+			rCap = req.ALL.R_CAP;
+			rPathEff = req.ALL.R_PATH_EFFECT;
+		} else if (ind == 1) {
+			rColor = req.ALL.R_COLOR_2;
+			rStrokeW = req.ALL.R_STROKE_WIDTH_2;
+			rCap = req.ALL.R_CAP_2;
+			rPathEff = req.ALL.R_PATH_EFFECT_2;
+		} else if (ind == -1) {
+			rColor = req.ALL.R_COLOR_0;
+			rStrokeW = req.ALL.R_STROKE_WIDTH_0;
+			rCap = req.ALL.R_CAP_0;
+			rPathEff = req.ALL.R_PATH_EFFECT_0;
+		} else if (ind == -2) {
+			rColor = req.ALL.R_COLOR__1;
+			rStrokeW = req.ALL.R_STROKE_WIDTH__1;
+			rCap = req.ALL.R_CAP__1;
+			rPathEff = req.ALL.R_PATH_EFFECT__1;
+		} else if (ind == 2) {
+			rColor = req.ALL.R_COLOR_3;
+			rStrokeW = req.ALL.R_STROKE_WIDTH_3;
+			rCap = req.ALL.R_CAP_3;
+			rPathEff = req.ALL.R_PATH_EFFECT_3;
+		} else if (ind == -3) {
+			rColor = req.ALL.R_COLOR__2;
+			rStrokeW = req.ALL.R_STROKE_WIDTH__2;
+			rCap = req.ALL.R_CAP__2;
+			rPathEff = req.ALL.R_PATH_EFFECT__2;
+		} else if (ind == 3) {
+			rColor = req.ALL.R_COLOR_4;
+			rStrokeW = req.ALL.R_STROKE_WIDTH_4;
+			rCap = req.ALL.R_CAP_4;
+			rPathEff = req.ALL.R_PATH_EFFECT_4;
+		} else {
+			rColor = req.ALL.R_COLOR_5;
+			rStrokeW = req.ALL.R_STROKE_WIDTH_5;
+			rCap = req.ALL.R_CAP_5;
+			rPathEff = req.ALL.R_PATH_EFFECT_5;
+		}
+		PaintStyle s = probe;
+		s.area = area;
+		if (area) {
+			if (!req.isSpecified(rColor) && !req.isSpecified(req.ALL.R_SHADER)) {
+				return -1;
+			}
+			s.strokeWidth = 0;
+			s.cap = null;
+			s.pathEffect = null;
+		} else {
+			if (!req.isSpecified(rStrokeW)) {
+				return -1;
+			}
+			s.strokeWidth = rc.getComplexValue(req, rStrokeW);
+			String cap = req.getStringPropertyValue(rCap);
+			s.cap = Algorithms.isEmpty(cap) ? null : cap.toUpperCase();
+			String pathEffect = req.getStringPropertyValue(rPathEff);
+			s.pathEffect = Algorithms.isEmpty(pathEffect) ? null : pathEffect;
+		}
+		s.density = s.pathEffect == null ? 0 : rc.getDensityValue(1);
+		s.color = req.getIntPropertyValue(rColor);
+		s.shader = null;
+		s.shadowLayer = false;
+		s.shadowColor = 0;
+		s.shadowRadius = 0;
+		if (ind == 0) {
+			s.shader = req.getStringPropertyValue(req.ALL.R_SHADER);
+			if (s.shader != null && s.color == 0) {
+				// set color required by skia
+				s.color = 0xffffffff;
+			}
+			// do not check shadow color here
+			if (rc.shadowRenderingMode == 1) {
+				int shadowColor = req.getIntPropertyValue(req.ALL.R_SHADOW_COLOR);
+				if (shadowColor == 0) {
+					shadowColor = rc.shadowRenderingColor;
+				}
+				int shadowRadius = (int) rc.getComplexValue(req, req.ALL.R_SHADOW_RADIUS);
+				if (shadowColor == 0) {
+					shadowRadius = 0;
+				}
+				s.shadowLayer = true;
+				s.shadowColor = shadowColor;
+				s.shadowRadius = shadowRadius;
+			}
+		}
+		PaintStyle registered = styles.get(s);
+		if (registered == null) {
+			if (stylesById.size() >= MAX_STYLES) {
+				clear();
+			}
+			registered = new PaintStyle(s);
+			if (registered.pathEffect != null) {
+				registered.dashIntervals = calculateDashIntervals(registered.pathEffect, rc);
+			}
+			registered.id = stylesById.size();
+			stylesById.add(registered);
+			styles.put(registered, registered);
+		}
+		return registered.id;
+	}
+
+	private float[] calculateDashIntervals(String pathEffect, RenderingContext rc) {
+		float[] cachedValues = parsedDashEffects.get(pathEffect);
+		if (cachedValues == null) {
+			String[] vls = pathEffect.split("_");
+			cachedValues = new float[vls.length * 2];
+			for (int i = 0; i < vls.length; i++) {
+				int s = vls[i].indexOf(':');
+				String pre = vls[i];
+				String post = "";
+				if (s != -1) {
+					pre = vls[i].substring(0, s);
+					post = vls[i].substring(s + 1);
+				}
+				if (pre.length() > 0) {
+					cachedValues[i * 2] = Float.parseFloat(pre);
+				}
+				if (post.length() > 0) {
+					cachedValues[i * 2 + 1] = Float.parseFloat(post);
+				}
+			}
+			parsedDashEffects.put(pathEffect, cachedValues);
+		}
+		float[] dashes = new float[cachedValues.length / 2];
+		for (int i = 0; i < dashes.length; i++) {
+			dashes[i] = rc.getDensityValue(cachedValues[i * 2]) + cachedValues[i * 2 + 1];
+		}
+		return dashes;
+	}
+}
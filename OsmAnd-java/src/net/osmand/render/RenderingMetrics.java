@@ -0,0 +1,58 @@
+package net.osmand.render;
+
+import net.osmand.util.MetricsRegistry;
+
+/**
+ * Names of metrics collected by rendering pipeline (data search, style evaluation, drawing, text placement)
+ */
+public class RenderingMetrics {
+
+	public static final MetricsRegistry REGISTRY = new MetricsRegistry("rendering");
+
+	// data search
+	public static final String SEARCH_TIME = "search.time_ms";
+	public static final String SEARCH_FILE_TIME_PREFIX = "search.file_time_ms.";
+	public static final String SEARCH_VISITED_OBJECTS = "search.visited_objects";
+	public static final String SEARCH_ACCEPTED_OBJECTS = "search.accepted_objects";
+	public static final String SEARCH_READ_SUBTREES = "search.read_subtrees";
+	public static final String SEARCH_ACCEPTED_SUBTREES = "search.accepted_subtrees";
+	public static final String SEARCH_RESULTS = "search.results";
+	public static final String COASTLINE_TIME = "search.coastline_time_ms";
+
+	// rendering
+	public static final String STYLE_EVALUATIONS = "render.style_evaluations";
+	public static final String CLASSIFY_TIME = "render.classify_time_ms";
+	public static final String DRAW_TIME_PREFIX = "render.draw_time_ms.";
+	public static final String TEXT_PLACEMENT_TIME = "render.text_placement_time_ms";
+	public static final String TEXT_PLACED = "render.text_placed";
+	public static final String TEXT_REUSED = "render.text_reused";
+	public static final String RENDER_TIME = "render.time_ms";
+	public static final String POINTS = "render.points";
+	public static final String POINTS_DRAWN = "render.points_drawn";
+	public static final String BITMAP_ALLOCATIONS = "render.bitmap_allocations";
+	public static final String BITMAP_ALLOCATED_BYTES = "render.bitmap_allocated_bytes";
+
+	// screen
+	public static final String FRAME_TIME = "view.frame_time_ms";
+	public static final String BUFFER_FRAME_TIME = "view.buffer_frame_time_ms";
+
+	public static final String LAYER_POLYGONS = "polygons";
+	public static final String LAYER_LINE_SHADOWS = "line_shadows";
+	public static final String LAYER_LINES = "lines";
+	public static final String LAYER_POINTS = "points";
+	public static final String LAYER_ICONS = "icons";
+	public static final String LAYER_TEXT = "text";
+
+	public static void recordFileSearch(String fileName, long timeMs, int visitedObjects, int acceptedObjects,
+			int readSubtrees, int acceptedSubtrees) {
+		REGISTRY.record(SEARCH_FILE_TIME_PREFIX + fileName, timeMs);
+		REGISTRY.add(SEARCH_VISITED_OBJECTS, visitedObjects);
+		REGISTRY.add(SEARCH_ACCEPTED_OBJECTS, acceptedObjects);
+		REGISTRY.add(SEARCH_READ_SUBTREES, readSubtrees);
+		REGISTRY.add(SEARCH_ACCEPTED_SUBTREES, acceptedSubtrees);
+	}
+
+	public static void recordDrawTime(String layer, long timeMs) {
+		REGISTRY.record(DRAW_TIME_PREFIX + layer, timeMs);
+	}
+}
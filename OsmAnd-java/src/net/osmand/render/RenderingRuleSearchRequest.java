@@ -16,6 +16,7 @@ public class RenderingRuleSearchRequest {
 	float[] savedFvalues;
 	
 	boolean searchResult = false;
+	int searchCount = 0;
 	
 	
 	public final RenderingRuleStorageProperties ALL;
@@ -35,6 +36,21 @@ public class RenderingRuleSearchRequest {
 		saveState();
 	}
 
+	/**
+	 * Creates independent copy of request (including saved state) that could be used in another thread
+	 */
+	public RenderingRuleSearchRequest(RenderingRuleSearchRequest searchRequest) {
+		this.storage = searchRequest.storage;
+		this.ALL = searchRequest.ALL;
+		this.props = searchRequest.props;
+		this.values = searchRequest.values.clone();
+		this.fvalues = searchRequest.fvalues.clone();
+		this.savedValues = searchRequest.savedValues.clone();
+		this.savedFvalues = searchRequest.savedFvalues.clone();
+		this.object = searchRequest.object;
+		this.searchResult = searchRequest.searchResult;
+	}
+
 	public void setStringFilter(RenderingRuleProperty p, String filter) {
 		assert p.isInputProperty();
 		values[p.getId()] = storage.getDictionaryValue(filter);
@@ -94,6 +110,13 @@ public class RenderingRuleSearchRequest {
 		setStringFilter(ALL.R_VALUE, val);
 	}
 	
+	/**
+	 * @return number of rule searches done with this request (copies count separately)
+	 */
+	public int getSearchCount() {
+		return searchCount;
+	}
+
 	public boolean isFound() {
 		return searchResult;
 	}
@@ -115,6 +138,7 @@ public class RenderingRuleSearchRequest {
 	
 	public boolean search(int state, boolean loadOutput) {
 		searchResult = false;
+		searchCount++;
 		int tagKey = values[storage.PROPS.R_TAG.getId()];
 		int valueKey = values[storage.PROPS.R_VALUE.getId()];
 		boolean result = searchInternal(state, tagKey, valueKey, loadOutput);
@@ -69,7 +69,7 @@ public class RenderingRulesStorage {
 		}
 	}
 	
-	public int getDictionaryValue(String val) {
+	public synchronized int getDictionaryValue(String val) {
 		if(dictionaryMap.containsKey(val)){
 			return dictionaryMap.get(val);
 		}
@@ -80,7 +80,7 @@ public class RenderingRulesStorage {
 
 	}
 	
-	public String getStringValue(int i){
+	public synchronized String getStringValue(int i){
 		return dictionary.get(i);
 	}
 	
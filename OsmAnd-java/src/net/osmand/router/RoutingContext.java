@@ -26,6 +26,7 @@ import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.binary.BinaryMapRouteReaderAdapter;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.LiveUpdatesOverlay;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegment;
@@ -67,6 +68,8 @@ public class RoutingContext {
 	public boolean leftSideNavigation;
 	public List<RouteSegmentResult> previouslyCalculatedRoute;
 	public PrecalculatedRouteDirection precalculatedRouteDirection;
+	// versions of objects of files with live updates (not used by native library)
+	public LiveUpdatesOverlay liveUpdates;
 
 	// 2. Routing memory cache (big objects)
 	TLongObjectHashMap<List<RoutingSubregionTile>> indexedSubregions = new TLongObjectHashMap<List<RoutingSubregionTile>>();
@@ -116,6 +119,7 @@ public class RoutingContext {
 		this.leftSideNavigation = cp.leftSideNavigation;
 		this.reverseMap.putAll(cp.reverseMap);
 		this.nativeLib = cp.nativeLib;
+		this.liveUpdates = cp.liveUpdates;
 		// copy local data and clear caches
 		for(RoutingSubregionTile tl : subregionTiles) {
 			if(tl.isLoaded()) {
@@ -317,11 +321,18 @@ public class RoutingContext {
 				ts.setLoadedNonNative();
 				List<RouteDataObject> res = reader.loadRouteIndexData(ts.subregion);
 //				System.out.println(ts.subregion.shiftToData + " " + res);
+				// objects changed or deleted by newer files are not loaded, so they are not counted as duplicates
+				LiveUpdatesOverlay.Layer layer = liveUpdates == null ? null : liveUpdates.getLayer(reader);
+				boolean base = calculationMode == RouteCalculationMode.BASE;
 				if(toLoad != null) {
-					toLoad.addAll(res);
+					for(RouteDataObject ro : res){
+						if(ro == null || layer == null || layer.isLatest(ro, base)) {
+							toLoad.add(ro);
+						}
+					}
 				} else {
 					for(RouteDataObject ro : res){
-						if(ro != null) {
+						if(ro != null && (layer == null || layer.isLatest(ro, base))) {
 							if(config.router.acceptLine(ro)) {
 								if(excludeNotAllowed != null && !excludeNotAllowed.contains(ro.getId())) {
 									ts.add(ro);
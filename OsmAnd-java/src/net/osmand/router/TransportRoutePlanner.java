@@ -0,0 +1,528 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.osmand.PlatformUtil;
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+import net.osmand.util.LongIntMap;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Public transport planner without timetables. Ride time is estimated by route type speed and
+ * average waiting time is added for each boarding. Search is round based (RAPTOR): round k finds best
+ * arrival to each stop with k rides scanning only routes of stops improved in previous round,
+ * then walking transfers are relaxed. Rounds give results with different number of changes,
+ * more alternatives are found by excluding routes of found results.
+ */
+public class TransportRoutePlanner {
+
+	private static final Log log = PlatformUtil.getLog(TransportRoutePlanner.class);
+
+	private static final double INF = Double.MAX_VALUE;
+	private static final int PARENT_NONE = 0;
+	private static final int PARENT_ACCESS = 1;
+	private static final int PARENT_RIDE = 2;
+	private static final int PARENT_WALK = 3;
+
+	public static class TransportRouteResultSegment {
+		private final TransportRoute route;
+		private final List<TransportStop> stops;
+		private final boolean forward;
+		private final int start;
+		private final int end;
+		// walking distance to the start stop
+		private double walkDist;
+
+		TransportRouteResultSegment(TransportRoute route, boolean forward, int start, int end) {
+			this.route = route;
+			this.forward = forward;
+			this.stops = forward ? route.getForwardStops() : route.getBackwardStops();
+			this.start = start;
+			this.end = end;
+		}
+
+		public TransportRoute getRoute() {
+			return route;
+		}
+
+		public boolean isForward() {
+			return forward;
+		}
+
+		public TransportStop getStart() {
+			return stops.get(start);
+		}
+
+		public TransportStop getEnd() {
+			return stops.get(end);
+		}
+
+		public List<TransportStop> getTravelStops() {
+			return stops.subList(start, end + 1);
+		}
+
+		public double getWalkDist() {
+			return walkDist;
+		}
+
+		public double getTravelDist() {
+			double d = 0;
+			for (int i = start + 1; i <= end; i++) {
+				d += MapUtils.getDistance(stops.get(i - 1).getLocation(), stops.get(i).getLocation());
+			}
+			return d;
+		}
+
+		@Override
+		public String toString() {
+			return route.getType() + " " + route.getRef() + " " + getStart().getName() + " -> " + getEnd().getName();
+		}
+	}
+
+	public static class TransportRouteResult {
+		private final List<TransportRouteResultSegment> segments = new ArrayList<TransportRouteResultSegment>();
+		private double finishWalkDist;
+		private double time;
+
+		public List<TransportRouteResultSegment> getSegments() {
+			return segments;
+		}
+
+		public double getFinishWalkDist() {
+			return finishWalkDist;
+		}
+
+		public double getWalkDist() {
+			double d = finishWalkDist;
+			for (TransportRouteResultSegment s : segments) {
+				d += s.walkDist;
+			}
+			return d;
+		}
+
+		/**
+		 * @return estimated time in seconds
+		 */
+		public double getTime() {
+			return time;
+		}
+
+		public int getChanges() {
+			return Math.max(0, segments.size() - 1);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder bld = new StringBuilder();
+			bld.append("Time ").append((int) (time / 60)).append(" min, walk ").append((int) getWalkDist())
+					.append(" m: ");
+			for (TransportRouteResultSegment s : segments) {
+				bld.append(s).append("; ");
+			}
+			return bld.toString();
+		}
+	}
+
+	// route direction as a sequence of network stops
+	private static class Pattern {
+		TransportRoute route;
+		boolean forward;
+		int[] stops;
+		// cumulative distance from the first stop
+		double[] dist;
+		double speed;
+	}
+
+	// network of one query
+	private static class Network {
+		final List<Pattern> patterns = new ArrayList<Pattern>();
+		final LongIntMap stopIndexes = new LongIntMap();
+		final TIntArrayList x31 = new TIntArrayList();
+		final TIntArrayList y31 = new TIntArrayList();
+		final List<LatLon> locations = new ArrayList<LatLon>();
+		// stop -> pairs (pattern, position)
+		int[][] stopPatterns;
+		// walking transfers: pairs (stop, distance)
+		TIntObjectHashMap<int[]> transfers = new TIntObjectHashMap<int[]>();
+		int gridShift;
+		TIntObjectHashMap<TIntArrayList> grid;
+
+		int getStop(TransportStop s) {
+			int ind = stopIndexes.get(s.getId());
+			if (ind == LongIntMap.NO_ENTRY) {
+				ind = locations.size();
+				stopIndexes.put(s.getId(), ind);
+				locations.add(s.getLocation());
+				x31.add(MapUtils.get31TileNumberX(s.getLocation().getLongitude()));
+				y31.add(MapUtils.get31TileNumberY(s.getLocation().getLatitude()));
+			}
+			return ind;
+		}
+
+		int size() {
+			return locations.size();
+		}
+	}
+
+	private final TransportRoutingContext ctx;
+
+	public TransportRoutePlanner(TransportRoutingContext ctx) {
+		this.ctx = ctx;
+	}
+
+	/**
+	 * @param k maximum number of results
+	 * @return results sorted by estimated time
+	 */
+	public List<TransportRouteResult> searchRoutes(LatLon start, LatLon end, int k) throws IOException {
+		long time = System.currentTimeMillis();
+		List<TransportRoute> routes = ctx.loadRoutes(ctx.getNetworkBox(start, end));
+		long loadTime = System.currentTimeMillis() - time;
+		Network network = buildNetwork(routes);
+		List<TransportRouteResult> results = new ArrayList<TransportRouteResult>();
+		Set<String> found = new HashSet<String>();
+		TIntHashSet excluded = new TIntHashSet();
+		List<TransportRouteResult> toExclude = new ArrayList<TransportRouteResult>();
+		int iterations = 0;
+		while (results.size() < k && iterations++ < 2 * k) {
+			List<TransportRouteResult> res = search(network, start, end, excluded);
+			boolean added = false;
+			for (TransportRouteResult r : res) {
+				if (found.add(getKey(r))) {
+					results.add(r);
+					toExclude.add(r);
+					added = true;
+				}
+			}
+			if (!added && toExclude.isEmpty()) {
+				break;
+			}
+			if (toExclude.isEmpty()) {
+				continue;
+			}
+			// alternatives: exclude longest ride of the next found result
+			excludeLongestRide(network, toExclude.remove(0), excluded);
+		}
+		Collections.sort(results, new Comparator<TransportRouteResult>() {
+			@Override
+			public int compare(TransportRouteResult o1, TransportRouteResult o2) {
+				return Double.compare(o1.time, o2.time);
+			}
+		});
+		if (results.size() > k) {
+			results = new ArrayList<TransportRouteResult>(results.subList(0, k));
+		}
+		log.info("Transport routing: loaded " + routes.size() + " routes in " + loadTime + " ms, found "
+				+ results.size() + " results in " + (System.currentTimeMillis() - time) + " ms");
+		return results;
+	}
+
+	private static String getKey(TransportRouteResult r) {
+		StringBuilder key = new StringBuilder();
+		for (TransportRouteResultSegment s : r.segments) {
+			key.append(s.route.getId()).append(s.forward ? '+' : '-').append(' ');
+		}
+		return key.toString();
+	}
+
+	private void excludeLongestRide(Network network, TransportRouteResult r, TIntHashSet excluded) {
+		TransportRouteResultSegment longest = null;
+		for (TransportRouteResultSegment s : r.segments) {
+			if (longest == null || s.end - s.start > longest.end - longest.start) {
+				longest = s;
+			}
+		}
+		if (longest != null) {
+			for (int p = 0; p < network.patterns.size(); p++) {
+				Pattern pt = network.patterns.get(p);
+				if (pt.route == longest.route) {
+					excluded.add(p);
+				}
+			}
+		}
+	}
+
+	private Network buildNetwork(List<TransportRoute> routes) {
+		Network network = new Network();
+		for (TransportRoute r : routes) {
+			addPattern(network, r, true);
+			addPattern(network, r, false);
+		}
+		int n = network.size();
+		TIntArrayList[] adj = new TIntArrayList[n];
+		for (int p = 0; p < network.patterns.size(); p++) {
+			int[] stops = network.patterns.get(p).stops;
+			for (int i = 0; i < stops.length; i++) {
+				if (adj[stops[i]] == null) {
+					adj[stops[i]] = new TIntArrayList(4);
+				}
+				adj[stops[i]].add(p);
+				adj[stops[i]].add(i);
+			}
+		}
+		network.stopPatterns = new int[n][];
+		for (int s = 0; s < n; s++) {
+			network.stopPatterns[s] = adj[s] == null ? new int[0] : adj[s].toArray();
+		}
+		// grid to find walking transfers, cell is not less than transfer distance
+		double maxLat = 0;
+		for (LatLon l : network.locations) {
+			maxLat = Math.max(maxLat, Math.abs(l.getLatitude()));
+		}
+		double metersPerUnit = 40075016d / (1l << 31) * Math.cos(Math.toRadians(Math.min(maxLat, 85)));
+		int shift = 0;
+		while (shift < 30 && (1 << shift) * metersPerUnit < ctx.maxTransferWalkDistance) {
+			shift++;
+		}
+		network.gridShift = shift;
+		network.grid = new TIntObjectHashMap<TIntArrayList>();
+		for (int s = 0; s < n; s++) {
+			int key = cellKey(network.x31.get(s) >> shift, network.y31.get(s) >> shift);
+			TIntArrayList l = network.grid.get(key);
+			if (l == null) {
+				l = new TIntArrayList(2);
+				network.grid.put(key, l);
+			}
+			l.add(s);
+		}
+		return network;
+	}
+
+	private static int cellKey(int cx, int cy) {
+		return cx * 31 + cy * 65537;
+	}
+
+	private void addPattern(Network network, TransportRoute r, boolean forward) {
+		List<TransportStop> stops = forward ? r.getForwardStops() : r.getBackwardStops();
+		if (stops.size() < 2) {
+			return;
+		}
+		Pattern p = new Pattern();
+		p.route = r;
+		p.forward = forward;
+		p.speed = ctx.getSpeed(r);
+		p.stops = new int[stops.size()];
+		p.dist = new double[stops.size()];
+		for (int i = 0; i < stops.size(); i++) {
+			TransportStop s = stops.get(i);
+			p.stops[i] = network.getStop(s);
+			if (i > 0) {
+				p.dist[i] = p.dist[i - 1] + MapUtils.getDistance(stops.get(i - 1).getLocation(), s.getLocation());
+			}
+		}
+		network.patterns.add(p);
+	}
+
+	private int[] getTransfers(Network network, int s) {
+		int[] tr = network.transfers.get(s);
+		if (tr == null) {
+			TIntArrayList l = new TIntArrayList();
+			int cx = network.x31.get(s) >> network.gridShift;
+			int cy = network.y31.get(s) >> network.gridShift;
+			LatLon loc = network.locations.get(s);
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					TIntArrayList cell = network.grid.get(cellKey(cx + dx, cy + dy));
+					if (cell == null) {
+						continue;
+					}
+					for (int i = 0; i < cell.size(); i++) {
+						int t = cell.get(i);
+						if (t == s) {
+							continue;
+						}
+						double d = MapUtils.getDistance(loc, network.locations.get(t));
+						if (d <= ctx.maxTransferWalkDistance) {
+							l.add(t);
+							l.add((int) d);
+						}
+					}
+				}
+			}
+			tr = l.toArray();
+			network.transfers.put(s, tr);
+		}
+		return tr;
+	}
+
+	private List<TransportRouteResult> search(Network network, LatLon start, LatLon end, TIntHashSet excluded) {
+		int n = network.size();
+		int rounds = ctx.maxTransfers + 2;
+		double[][] cost = new double[rounds][];
+		int[][] parentType = new int[rounds][];
+		int[][] parent = new int[rounds][];
+		int[][] boardPos = new int[rounds][];
+		int[][] alightPos = new int[rounds][];
+		double[] best = new double[n];
+		Arrays.fill(best, INF);
+		double[] egress = new double[n];
+		List<TransportRouteResult> results = new ArrayList<TransportRouteResult>();
+
+		// round 0: walking to stops
+		cost[0] = new double[n];
+		parentType[0] = new int[n];
+		Arrays.fill(cost[0], INF);
+		boolean[] marked = new boolean[n];
+		for (int s = 0; s < n; s++) {
+			LatLon l = network.locations.get(s);
+			double ds = MapUtils.getDistance(start, l);
+			if (ds <= ctx.maxWalkDistance) {
+				cost[0][s] = best[s] = ds / ctx.walkSpeed;
+				parentType[0][s] = PARENT_ACCESS;
+				marked[s] = true;
+			}
+			double de = MapUtils.getDistance(end, l);
+			egress[s] = de <= ctx.maxWalkDistance ? de : -1;
+		}
+		double targetBest = INF;
+		// earliest marked position for each pattern (-1 if pattern is not queued)
+		int[] queuePos = new int[network.patterns.size()];
+		Arrays.fill(queuePos, -1);
+		TIntArrayList queue = new TIntArrayList();
+		for (int k = 1; k < rounds; k++) {
+			cost[k] = cost[k - 1].clone();
+			parentType[k] = new int[n];
+			parent[k] = new int[n];
+			boardPos[k] = new int[n];
+			alightPos[k] = new int[n];
+			for (int s = 0; s < n; s++) {
+				if (!marked[s]) {
+					continue;
+				}
+				int[] sp = network.stopPatterns[s];
+				for (int i = 0; i < sp.length; i += 2) {
+					int p = sp[i];
+					if (excluded.contains(p)) {
+						continue;
+					}
+					if (queuePos[p] == -1) {
+						queue.add(p);
+						queuePos[p] = sp[i + 1];
+					} else if (sp[i + 1] < queuePos[p]) {
+						queuePos[p] = sp[i + 1];
+					}
+				}
+			}
+			Arrays.fill(marked, false);
+			boolean improved = false;
+			for (int q = 0; q < queue.size(); q++) {
+				int p = queue.get(q);
+				Pattern pt = network.patterns.get(p);
+				int boarded = -1;
+				double boardCost = 0;
+				int firstPos = queuePos[p];
+				queuePos[p] = -1;
+				for (int i = firstPos; i < pt.stops.length; i++) {
+					int s = pt.stops[i];
+					if (boarded != -1) {
+						double arr = boardCost + (pt.dist[i] - pt.dist[boarded]) / pt.speed;
+						if (arr < best[s] && arr < targetBest) {
+							cost[k][s] = best[s] = arr;
+							parentType[k][s] = PARENT_RIDE;
+							parent[k][s] = p;
+							boardPos[k][s] = boarded;
+							alightPos[k][s] = i;
+							marked[s] = true;
+							improved = true;
+						}
+					}
+					double prev = cost[k - 1][s];
+					if (prev != INF) {
+						double candidate = prev + ctx.boardingTime;
+						if (boarded == -1 || candidate < boardCost + (pt.dist[i] - pt.dist[boarded]) / pt.speed) {
+							boarded = i;
+							boardCost = candidate;
+						}
+					}
+				}
+			}
+			queue.resetQuick();
+			if (!improved) {
+				break;
+			}
+			// walking transfers from stops reached by ride
+			for (int s = 0; s < n; s++) {
+				if (!marked[s] || parentType[k][s] != PARENT_RIDE) {
+					continue;
+				}
+				int[] tr = getTransfers(network, s);
+				for (int i = 0; i < tr.length; i += 2) {
+					int t = tr[i];
+					double c = cost[k][s] + tr[i + 1] / ctx.walkSpeed;
+					if (c < best[t] && c < targetBest) {
+						cost[k][t] = best[t] = c;
+						parentType[k][t] = PARENT_WALK;
+						parent[k][t] = s;
+						marked[t] = true;
+					}
+				}
+			}
+			// finish
+			int finishStop = -1;
+			for (int s = 0; s < n; s++) {
+				if (marked[s] && egress[s] >= 0) {
+					double c = cost[k][s] + egress[s] / ctx.walkSpeed;
+					if (c < targetBest) {
+						targetBest = c;
+						finishStop = s;
+					}
+				}
+			}
+			if (finishStop != -1) {
+				results.add(buildResult(network, k, finishStop, egress[finishStop], targetBest, parentType, parent,
+						boardPos, alightPos, start));
+			}
+		}
+		return results;
+	}
+
+	private TransportRouteResult buildResult(Network network, int k, int s, double finishWalk, double time,
+			int[][] parentType, int[][] parent, int[][] boardPos, int[][] alightPos, LatLon start) {
+		TransportRouteResult r = new TransportRouteResult();
+		r.finishWalkDist = finishWalk;
+		r.time = time;
+		double walk = 0;
+		while (k > 0) {
+			int type = parentType[k][s];
+			if (type == PARENT_NONE) {
+				// reached in previous round
+				k--;
+			} else if (type == PARENT_WALK) {
+				int from = parent[k][s];
+				walk = MapUtils.getDistance(network.locations.get(from), network.locations.get(s));
+				if (!r.segments.isEmpty()) {
+					r.segments.get(0).walkDist = walk;
+				} else {
+					r.finishWalkDist += walk;
+				}
+				s = from;
+			} else {
+				Pattern pt = network.patterns.get(parent[k][s]);
+				TransportRouteResultSegment seg = new TransportRouteResultSegment(pt.route, pt.forward,
+						boardPos[k][s], alightPos[k][s]);
+				r.segments.add(0, seg);
+				s = pt.stops[boardPos[k][s]];
+				k--;
+			}
+		}
+		if (!r.segments.isEmpty()) {
+			r.segments.get(0).walkDist = MapUtils.getDistance(start, network.locations.get(s));
+		}
+		return r;
+	}
+}
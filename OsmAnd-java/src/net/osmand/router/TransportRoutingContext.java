@@ -0,0 +1,179 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.data.QuadRect;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Settings of public transport routing and cache of transport network (stops with references to routes,
+ * loaded routes) per file. Stops are loaded by tiles of {@link #TILE_ZOOM}, routes are loaded once for
+ * all stops that reference them, so consecutive queries in the same area don't read files.
+ *
+ * Not thread safe (readers are used directly).
+ */
+public class TransportRoutingContext {
+
+	private static final Log log = PlatformUtil.getLog(TransportRoutingContext.class);
+
+	public static final int TILE_ZOOM = 13;
+
+	// speeds are in m/s
+	public double walkSpeed = 1.2;
+	public double defaultSpeed = 20 / 3.6;
+	public final Map<String, Double> routeTypeSpeeds = new HashMap<String, Double>();
+	// average waiting time before each ride (no timetables), seconds
+	public int boardingTime = 300;
+	// walking to first stop and from last stop, meters
+	public int maxWalkDistance = 1000;
+	public int maxTransferWalkDistance = 300;
+	public int maxTransfers = 3;
+	// network is loaded in the box of start and end points extended by margin, meters
+	public int networkMargin = 3000;
+	public int maxLoadedRoutes = 20000;
+
+	private final BinaryMapIndexReader[] readers;
+	private final Map<BinaryMapIndexReader, RegionNetwork> networks = new LinkedHashMap<BinaryMapIndexReader, RegionNetwork>();
+
+	/**
+	 * Cached stops and routes of one file
+	 */
+	static class RegionNetwork {
+		// references to routes of stops in loaded tiles
+		final TLongObjectHashMap<int[]> tileRoutes = new TLongObjectHashMap<int[]>();
+		final TLongObjectHashMap<TransportStop> stops = new TLongObjectHashMap<TransportStop>();
+		final TIntObjectHashMap<TransportRoute> routes = new TIntObjectHashMap<TransportRoute>();
+	}
+
+	public TransportRoutingContext(BinaryMapIndexReader[] readers) {
+		this.readers = readers;
+		routeTypeSpeeds.put("bus", 20 / 3.6);
+		routeTypeSpeeds.put("trolleybus", 18 / 3.6);
+		routeTypeSpeeds.put("share_taxi", 25 / 3.6);
+		routeTypeSpeeds.put("tram", 18 / 3.6);
+		routeTypeSpeeds.put("subway", 35 / 3.6);
+		routeTypeSpeeds.put("light_rail", 35 / 3.6);
+		routeTypeSpeeds.put("train", 60 / 3.6);
+		routeTypeSpeeds.put("railway", 60 / 3.6);
+		routeTypeSpeeds.put("ferry", 15 / 3.6);
+	}
+
+	public double getSpeed(TransportRoute route) {
+		Double s = route.getType() == null ? null : routeTypeSpeeds.get(route.getType());
+		return s == null ? defaultSpeed : s;
+	}
+
+	public void clearCache() {
+		networks.clear();
+	}
+
+	/**
+	 * Loads routes serving stops in the box (stops and routes already loaded are taken from cache)
+	 */
+	public List<TransportRoute> loadRoutes(QuadRect latLonBox) throws IOException {
+		List<TransportRoute> res = new ArrayList<TransportRoute>();
+		int sh = 31 - TILE_ZOOM;
+		int left = MapUtils.get31TileNumberX(latLonBox.left) >> sh;
+		int right = MapUtils.get31TileNumberX(latLonBox.right) >> sh;
+		int top = MapUtils.get31TileNumberY(latLonBox.top) >> sh;
+		int bottom = MapUtils.get31TileNumberY(latLonBox.bottom) >> sh;
+		for (BinaryMapIndexReader r : readers) {
+			if (!r.containTransportData(latLonBox.top, latLonBox.left, latLonBox.bottom, latLonBox.right)) {
+				continue;
+			}
+			RegionNetwork network = getNetwork(r);
+			TIntArrayList routeRefs = new TIntArrayList();
+			for (int x = left; x <= right; x++) {
+				for (int y = top; y <= bottom; y++) {
+					loadTile(r, network, x, y, routeRefs);
+				}
+			}
+			if (routeRefs.size() > 0) {
+				routeRefs.sort();
+				TIntArrayList toLoad = new TIntArrayList();
+				for (int i = 0; i < routeRefs.size(); i++) {
+					int ref = routeRefs.get(i);
+					if ((i == 0 || routeRefs.get(i - 1) != ref) && !network.routes.containsKey(ref)) {
+						toLoad.add(ref);
+					}
+				}
+				if (toLoad.size() > 0) {
+					network.routes.putAll(r.getTransportRoutes(toLoad.toArray()));
+				}
+				for (int i = 0; i < routeRefs.size(); i++) {
+					if (i == 0 || routeRefs.get(i - 1) != routeRefs.get(i)) {
+						TransportRoute route = network.routes.get(routeRefs.get(i));
+						if (route != null) {
+							res.add(route);
+						}
+					}
+				}
+			}
+		}
+		return res;
+	}
+
+	private RegionNetwork getNetwork(BinaryMapIndexReader r) {
+		RegionNetwork network = networks.get(r);
+		if (network == null || network.routes.size() > maxLoadedRoutes) {
+			network = new RegionNetwork();
+			networks.put(r, network);
+		}
+		return network;
+	}
+
+	private void loadTile(BinaryMapIndexReader r, RegionNetwork network, int x, int y, TIntArrayList routeRefs)
+			throws IOException {
+		long key = (((long) x) << TILE_ZOOM) + y;
+		int[] refs = network.tileRoutes.get(key);
+		if (refs != null) {
+			routeRefs.add(refs);
+			return;
+		}
+		int sh = 31 - TILE_ZOOM;
+		List<TransportStop> stops = r.searchTransportIndex(BinaryMapIndexReader.buildSearchTransportRequest(x << sh,
+				((x + 1) << sh) - 1, y << sh, ((y + 1) << sh) - 1, -1, null));
+		TIntArrayList tileRefs = new TIntArrayList();
+		for (TransportStop s : stops) {
+			if (s.getId() != null && s.getReferencesToRoutes() != null) {
+				network.stops.put(s.getId(), s);
+				tileRefs.add(s.getReferencesToRoutes());
+			}
+		}
+		network.tileRoutes.put(key, tileRefs.toArray());
+		routeRefs.addAll(tileRefs);
+		if (log.isDebugEnabled()) {
+			log.debug("Loaded transport tile " + x + " " + y + " stops " + stops.size());
+		}
+	}
+
+	/**
+	 * Box around start and end points extended by {@link #networkMargin}
+	 */
+	public QuadRect getNetworkBox(LatLon start, LatLon end) {
+		double dLat = networkMargin / 111000d;
+		double cos = Math.max(0.1, Math.cos(Math.toRadians(Math.max(Math.abs(start.getLatitude()),
+				Math.abs(end.getLatitude())))));
+		double dLon = dLat / cos;
+		return new QuadRect(Math.min(start.getLongitude(), end.getLongitude()) - dLon,
+				Math.max(start.getLatitude(), end.getLatitude()) + dLat,
+				Math.max(start.getLongitude(), end.getLongitude()) + dLon,
+				Math.min(start.getLatitude(), end.getLatitude()) - dLat);
+	}
+}
@@ -0,0 +1,101 @@
+package net.osmand.util;
+
+/**
+ * Open addressing hash map of long keys to int values without boxing (bundled trove doesn't have
+ * TLongIntHashMap). Missing keys return {@link #NO_ENTRY}.
+ */
+public class LongIntMap {
+	public static final int NO_ENTRY = -1;
+
+	private long[] keys;
+	private int[] values;
+	// slot is free if key is 0, so key 0 is kept separately
+	private boolean hasZeroKey;
+	private int zeroValue = NO_ENTRY;
+	private int size;
+
+	public LongIntMap() {
+		this(16);
+	}
+
+	public LongIntMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * 3 < expectedSize * 4) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		values = new int[capacity];
+	}
+
+	private static int hash(long key) {
+		int h = (int) (key ^ (key >>> 32));
+		return h ^ (h >>> 16);
+	}
+
+	public int get(long key) {
+		if (key == 0) {
+			return zeroValue;
+		}
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+		}
+		return NO_ENTRY;
+	}
+
+	public boolean containsKey(long key) {
+		if (key == 0) {
+			return hasZeroKey;
+		}
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void put(long key, int value) {
+		if (key == 0) {
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+			zeroValue = value;
+			return;
+		}
+		if ((size + 1) * 4 > keys.length * 3) {
+			resize(keys.length * 2);
+		}
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != 0 && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		if (keys[i] == 0) {
+			keys[i] = key;
+			size++;
+		}
+		values[i] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[capacity];
+		values = new int[capacity];
+		size = hasZeroKey ? 1 : 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+}
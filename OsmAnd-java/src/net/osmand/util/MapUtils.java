@@ -3,7 +3,9 @@ package net.osmand.util;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.osmand.data.LatLon;
 import net.osmand.data.MapObject;
@@ -284,11 +286,15 @@ public class MapUtils {
 	
 	
 	public static void sortListOfMapObject(List<? extends MapObject> list, final double lat, final double lon){
+		// distances are calculated once per object, not per comparison
+		final Map<MapObject, Double> distances = new IdentityHashMap<MapObject, Double>(list.size());
+		for (MapObject o : list) {
+			distances.put(o, MapUtils.getDistance(o.getLocation(), lat, lon));
+		}
 		Collections.sort(list, new Comparator<MapObject>() {
 			@Override
 			public int compare(MapObject o1, MapObject o2) {
-				return Double.compare(MapUtils.getDistance(o1.getLocation(), lat, lon), MapUtils.getDistance(o2.getLocation(),
-						lat, lon));
+				return Double.compare(distances.get(o1), distances.get(o2));
 			}
 		});
 	}
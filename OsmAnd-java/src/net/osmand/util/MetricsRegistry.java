@@ -0,0 +1,239 @@
+package net.osmand.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Named counters and histograms that could be exported in JSON format on demand
+ * (to compare performance between devices and versions).
+ */
+public class MetricsRegistry {
+
+	private static final long[] DEFAULT_BOUNDS = new long[] { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000,
+			10000, 20000, 50000, 100000, 1000000 };
+
+	public static class Counter {
+		private final AtomicLong value = new AtomicLong();
+
+		public void inc() {
+			value.incrementAndGet();
+		}
+
+		public void add(long v) {
+			value.addAndGet(v);
+		}
+
+		public long get() {
+			return value.get();
+		}
+
+		void reset() {
+			value.set(0);
+		}
+	}
+
+	public static class Histogram {
+		private final long[] bounds;
+		private final long[] buckets;
+		private long count;
+		private long sum;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+
+		public Histogram(long[] bounds) {
+			this.bounds = bounds;
+			this.buckets = new long[bounds.length + 1];
+		}
+
+		public synchronized void record(long v) {
+			int i = 0;
+			while (i < bounds.length && v > bounds[i]) {
+				i++;
+			}
+			buckets[i]++;
+			count++;
+			sum += v;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return approximate value (upper bound of bucket) for percentile in range [0, 1]
+		 */
+		public synchronized long getPercentile(double p) {
+			if (count == 0) {
+				return 0;
+			}
+			long target = (long) Math.ceil(p * count);
+			long c = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				c += buckets[i];
+				if (c >= target) {
+					return i < bounds.length ? Math.min(bounds[i], max) : max;
+				}
+			}
+			return max;
+		}
+
+		synchronized void reset() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = 0;
+			}
+			count = 0;
+			sum = 0;
+			min = Long.MAX_VALUE;
+			max = Long.MIN_VALUE;
+		}
+
+		synchronized JSONObject toJSON() throws JSONException {
+			JSONObject o = new JSONObject();
+			o.put("count", count);
+			o.put("sum", sum);
+			if (count > 0) {
+				o.put("min", min);
+				o.put("max", max);
+				o.put("avg", (double) sum / count);
+				o.put("p50", getPercentile(0.5));
+				o.put("p90", getPercentile(0.9));
+				o.put("p99", getPercentile(0.99));
+			}
+			JSONArray bs = new JSONArray();
+			for (int i = 0; i < buckets.length; i++) {
+				if (buckets[i] > 0) {
+					JSONObject b = new JSONObject();
+					b.put("le", i < bounds.length ? String.valueOf(bounds[i]) : "inf");
+					b.put("count", buckets[i]);
+					bs.put(b);
+				}
+			}
+			o.put("buckets", bs);
+			return o;
+		}
+	}
+
+	private final String name;
+	private final Map<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private long startTime = System.currentTimeMillis();
+
+	public MetricsRegistry(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Counter counter(String name) {
+		Counter c = counters.get(name);
+		if (c == null) {
+			synchronized (counters) {
+				c = counters.get(name);
+				if (c == null) {
+					c = new Counter();
+					counters.put(name, c);
+				}
+			}
+		}
+		return c;
+	}
+
+	public Histogram histogram(String name) {
+		Histogram h = histograms.get(name);
+		if (h == null) {
+			synchronized (histograms) {
+				h = histograms.get(name);
+				if (h == null) {
+					h = new Histogram(DEFAULT_BOUNDS);
+					histograms.put(name, h);
+				}
+			}
+		}
+		return h;
+	}
+
+	public void inc(String counter) {
+		counter(counter).inc();
+	}
+
+	public void add(String counter, long value) {
+		counter(counter).add(value);
+	}
+
+	public void record(String histogram, long value) {
+		histogram(histogram).record(value);
+	}
+
+	public void reset() {
+		for (Counter c : counters.values()) {
+			c.reset();
+		}
+		for (Histogram h : histograms.values()) {
+			h.reset();
+		}
+		startTime = System.currentTimeMillis();
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		JSONObject o = new JSONObject();
+		o.put("name", name);
+		o.put("start", startTime);
+		o.put("end", System.currentTimeMillis());
+		JSONObject cs = new JSONObject();
+		for (String k : sortedKeys(counters)) {
+			cs.put(k, counters.get(k).get());
+		}
+		o.put("counters", cs);
+		JSONObject hs = new JSONObject();
+		for (String k : sortedKeys(histograms)) {
+			hs.put(k, histograms.get(k).toJSON());
+		}
+		o.put("histograms", hs);
+		return o;
+	}
+
+	private static List<String> sortedKeys(Map<String, ?> map) {
+		List<String> keys = new ArrayList<String>(map.keySet());
+		Collections.sort(keys);
+		return keys;
+	}
+
+	public void write(Writer w) throws IOException {
+		try {
+			w.write(toJSON().toString(2));
+		} catch (JSONException e) {
+			throw new IOException(e.getMessage());
+		}
+		w.flush();
+	}
+
+	public void dump(File file) throws IOException {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			write(w);
+		} finally {
+			Algorithms.closeStream(w);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package net.osmand;
+
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CollatorStringMatcherTest {
+
+	private static boolean matches(String base, String part, StringMatcherMode mode) {
+		return new CollatorStringMatcher(part, mode).matches(base);
+	}
+
+	@Test
+	public void testStartsWithIgnoresCaseAndDiacritics() {
+		Assert.assertTrue(matches("Zürich", "zur", StringMatcherMode.CHECK_ONLY_STARTS_WITH));
+		Assert.assertTrue(matches("École Normale", "ECO", StringMatcherMode.CHECK_ONLY_STARTS_WITH));
+		Assert.assertTrue(matches("Straße des 17. Juni", "strasse", StringMatcherMode.CHECK_ONLY_STARTS_WITH));
+		Assert.assertFalse(matches("Berlin", "erl", StringMatcherMode.CHECK_ONLY_STARTS_WITH));
+	}
+
+	@Test
+	public void testStartsFromSpace() {
+		Assert.assertTrue(matches("Rue de la Paix", "paix", StringMatcherMode.CHECK_STARTS_FROM_SPACE));
+		Assert.assertTrue(matches("Rue de la Paix", "rue", StringMatcherMode.CHECK_STARTS_FROM_SPACE));
+		Assert.assertFalse(matches("Rue de la Paix", "aix", StringMatcherMode.CHECK_STARTS_FROM_SPACE));
+		Assert.assertFalse(matches("Rue de la Paix", "rue", StringMatcherMode.CHECK_STARTS_FROM_SPACE_NOT_BEGINNING));
+		Assert.assertTrue(matches("Sankt-Pölten", "polt", StringMatcherMode.CHECK_STARTS_FROM_SPACE_NOT_BEGINNING));
+		// decomposed diacritic doesn't start new word
+		Assert.assertFalse(matches("Zürich", "rich", StringMatcherMode.CHECK_STARTS_FROM_SPACE));
+	}
+
+	@Test
+	public void testContains() {
+		Assert.assertTrue(matches("Amsterdam Centraal", "dam c", StringMatcherMode.CHECK_CONTAINS));
+		Assert.assertTrue(matches("Москва", "оск",
+				StringMatcherMode.CHECK_CONTAINS));
+		Assert.assertFalse(matches("Amsterdam", "rotter", StringMatcherMode.CHECK_CONTAINS));
+		Assert.assertTrue(matches("Amsterdam", "", StringMatcherMode.CHECK_CONTAINS));
+	}
+
+	@Test
+	public void testSameResultAsPrimaryCollator() {
+		java.text.Collator collator = java.text.Collator.getInstance(java.util.Locale.US);
+		collator.setStrength(java.text.Collator.PRIMARY);
+		String[] names = new String[] { "München", "Malmö", "Kraków", "São Paulo", "Niš",
+				"Gdańsk", "České Budějovice", "Umeå" };
+		int matched = 0;
+		int notMatched = 0;
+		for (String name : names) {
+			// prefixes without diacritics of all names and their words are checked against every name
+			for (String other : names) {
+				String plain = stripDiacritics(other);
+				for (int len = 1; len <= plain.length(); len++) {
+					int word = plain.lastIndexOf(' ', len - 1) + 1;
+					String part = plain.substring(word == len ? 0 : word, len);
+					boolean expected = collatorStartsWith(collator, name, part, true, false);
+					Assert.assertEquals(name + " / " + part, expected,
+							CollatorStringMatcher.cmatches(name, part, StringMatcherMode.CHECK_ONLY_STARTS_WITH));
+					Assert.assertEquals(name + " / " + part, collatorStartsWith(collator, name, part, true, true),
+							CollatorStringMatcher.cmatches(name, part, StringMatcherMode.CHECK_STARTS_FROM_SPACE));
+					if (expected) {
+						matched++;
+					} else {
+						notMatched++;
+					}
+				}
+			}
+		}
+		Assert.assertTrue(matched > 0 && notMatched > 0);
+	}
+
+	// starts with check as it was done with primary collator before search keys
+	private static boolean collatorStartsWith(java.text.Collator collator, String searchIn, String start,
+			boolean checkBeginning, boolean checkSpaces) {
+		int len = start.length();
+		if (checkBeginning && len <= searchIn.length() && collator.equals(searchIn.substring(0, len), start)) {
+			return true;
+		}
+		if (checkSpaces) {
+			for (int i = 1; i <= searchIn.length() - len; i++) {
+				if (!Character.isLetterOrDigit(searchIn.charAt(i - 1)) && Character.isLetterOrDigit(searchIn.charAt(i))
+						&& collator.equals(searchIn.substring(i, i + len), start)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static String stripDiacritics(String s) {
+		return java.text.Normalizer.normalize(s, java.text.Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+	}
+}
@@ -0,0 +1,34 @@
+package net.osmand;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NormalizedNameTest {
+
+	@Test
+	public void testForms() {
+		NormalizedName n = NormalizedName.get("Москва 12");
+		Assert.assertSame(n, NormalizedName.get("Москва 12"));
+		Assert.assertEquals("Moskva 12", n.getTransliterated());
+		Assert.assertEquals("москва 12", n.getLowerCase());
+		Assert.assertEquals("Москва ", n.getNumberPrefix());
+		Assert.assertEquals(12, n.getNumber());
+		Assert.assertTrue(n.getSearchKey().startsWith(NormalizedName.get("моск").getSearchKey()));
+		Assert.assertEquals("", NormalizedName.get(null).getTransliterated());
+	}
+
+	@Test
+	public void testCapacity() {
+		NormalizedName.setCapacity(16);
+		try {
+			NormalizedName first = NormalizedName.get("first");
+			for (int i = 0; i < 1000; i++) {
+				NormalizedName.get("name " + i);
+			}
+			Assert.assertNotSame(first, NormalizedName.get("first"));
+		} finally {
+			NormalizedName.setCapacity(16 * 1024);
+			NormalizedName.clearCache();
+		}
+	}
+}
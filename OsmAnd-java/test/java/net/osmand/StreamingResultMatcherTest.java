@@ -0,0 +1,53 @@
+package net.osmand;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingResultMatcherTest {
+
+	private static Thread produce(final StreamingResultMatcher<Integer> matcher, final int count) {
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count && !matcher.isCancelled(); i++) {
+					matcher.publish(i);
+				}
+				matcher.finish();
+			}
+		});
+		t.start();
+		return t;
+	}
+
+	@Test
+	public void testBatchesKeepOrder() throws InterruptedException {
+		StreamingResultMatcher<Integer> matcher = new StreamingResultMatcher<Integer>(10, null);
+		Thread producer = produce(matcher, 1000);
+		List<Integer> all = new ArrayList<Integer>();
+		while (!matcher.isFinished() || all.size() < matcher.getPublishedCount()) {
+			List<Integer> batch = matcher.nextBatch(1000);
+			Assert.assertTrue(batch.size() <= 10);
+			all.addAll(batch);
+		}
+		producer.join();
+		Assert.assertEquals(1000, all.size());
+		for (int i = 0; i < all.size(); i++) {
+			Assert.assertEquals(i, all.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void testCancelReleasesProducer() throws InterruptedException {
+		StreamingResultMatcher<Integer> matcher = new StreamingResultMatcher<Integer>(5, null);
+		Thread producer = produce(matcher, 1000);
+		List<Integer> batch = matcher.nextBatch(1000);
+		Assert.assertTrue(batch.size() > 0 && batch.size() <= 5);
+		matcher.cancel();
+		producer.join(5000);
+		Assert.assertFalse(producer.isAlive());
+		Assert.assertTrue(matcher.getPublishedCount() < 1000);
+	}
+}
@@ -0,0 +1,198 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.GeocodingUtilities.GeocodingResult;
+import net.osmand.data.Building;
+import net.osmand.data.City;
+import net.osmand.data.City.CityType;
+import net.osmand.data.LatLon;
+import net.osmand.data.MapObject;
+import net.osmand.data.Street;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchReverseGeocoderTest {
+
+	private static final double LAT = 52.0;
+	private static final double LON = 4.0;
+	private static final String MAIN = "Main Street";
+	private static final String SIDE = "Side Street";
+
+	/**
+	 * Reader with address data in memory: streets are created on every search as they are read from file
+	 */
+	private static class AddressReader extends BinaryMapIndexReader {
+		private int preloads;
+
+		AddressReader(File f) throws IOException {
+			super(new RandomAccessFile(f, "r"), f);
+		}
+
+		@Override
+		public List<MapObject> searchAddressDataByName(SearchRequest<MapObject> req) throws IOException {
+			City a = city(100, "A", LAT, LON);
+			City b = city(200, "B", LAT + 0.1, LON);
+			req.publish(street(a, 1, MAIN, LAT, LON + 0.01));
+			req.publish(street(b, 2, MAIN, LAT + 0.1, LON + 0.01));
+			req.publish(street(a, 3, SIDE, LAT + 0.001, LON + 0.005));
+			return req.getSearchResults();
+		}
+
+		@Override
+		public void preloadBuildings(Street s, SearchRequest<Building> resultMatcher) throws IOException {
+			preloads++;
+			// side street has no buildings
+			if (s.getId() == 1) {
+				for (int i = 0; i < 20; i++) {
+					Building bld = new Building();
+					bld.setId((long) i + 1000);
+					bld.setName(String.valueOf(i + 1));
+					bld.setLocation(LAT + 0.0002, LON + i * 0.001);
+					s.addBuilding(bld);
+				}
+			}
+		}
+
+		private static City city(long id, String name, double lat, double lon) {
+			City c = new City(CityType.CITY);
+			c.setId(id);
+			c.setName(name);
+			c.setLocation(lat, lon);
+			c.setFileOffset((int) id);
+			return c;
+		}
+
+		private static Street street(City c, long id, String name, double lat, double lon) {
+			Street s = new Street(c);
+			s.setId(id);
+			s.setName(name);
+			s.setLocation(lat, lon);
+			return s;
+		}
+	}
+
+	private File file;
+	private AddressReader reader;
+
+	@Before
+	public void setUp() throws IOException, URISyntaxException {
+		// address data is in memory, file only has an empty poi index
+		file = new File(getClass().getResource("/poi_empty.obf").toURI());
+		reader = new AddressReader(file);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+
+	private static List<GeocodingResult> searchRoads(LatLon point) {
+		List<GeocodingResult> roads = new ArrayList<GeocodingResult>();
+		roads.add(road(point, new LatLon(LAT, point.getLongitude()), MAIN));
+		roads.add(road(point, new LatLon(LAT + 0.001, point.getLongitude()), SIDE));
+		Collections.sort(roads, GeocodingUtilities.DISTANCE_COMPARATOR);
+		return roads;
+	}
+
+	private static GeocodingResult road(LatLon point, LatLon connection, String name) {
+		GeocodingResult r = new GeocodingResult();
+		r.searchPoint = point;
+		r.connectionPoint = connection;
+		r.streetName = name;
+		return r;
+	}
+
+	/**
+	 * Geocoding of one point as it is done by application for single location
+	 */
+	private GeocodingResult searchPoint(LatLon point) throws IOException {
+		GeocodingUtilities utilities = new GeocodingUtilities();
+		List<GeocodingResult> complete = new ArrayList<GeocodingResult>();
+		double minBuildingDistance = 0;
+		for (GeocodingResult r : searchRoads(point)) {
+			List<GeocodingResult> justified = utilities.justifyReverseGeocodingSearch(r, reader,
+					minBuildingDistance, null);
+			if (!justified.isEmpty()) {
+				double md = justified.get(0).getDistance();
+				minBuildingDistance = minBuildingDistance == 0 ? md : Math.min(md, minBuildingDistance);
+				complete.addAll(justified);
+			}
+		}
+		Collections.sort(complete, GeocodingUtilities.DISTANCE_COMPARATOR);
+		return complete.get(0);
+	}
+
+	private BatchReverseGeocoder createGeocoder() {
+		return new BatchReverseGeocoder(null, new BinaryMapIndexReader[] { reader }) {
+			@Override
+			protected List<GeocodingResult> searchRoads(LatLon point) throws IOException {
+				return BatchReverseGeocoderTest.searchRoads(point);
+			}
+
+			@Override
+			protected BinaryMapIndexReader getReader(GeocodingResult r) {
+				return reader;
+			}
+		};
+	}
+
+	@Test
+	public void testBatchMatchesSinglePointGeocoding() throws IOException {
+		List<LatLon> points = new ArrayList<LatLon>();
+		for (int i = 0; i < 40; i++) {
+			points.add(new LatLon(LAT + 0.0002 + (i % 3) * 0.0003, LON + (39 - i) * 0.0005));
+		}
+		List<GeocodingResult> expected = new ArrayList<GeocodingResult>();
+		for (LatLon p : points) {
+			expected.add(searchPoint(p));
+		}
+		int singlePreloads = reader.preloads;
+		reader.preloads = 0;
+
+		BatchReverseGeocoder geocoder = createGeocoder();
+		List<GeocodingResult> res = geocoder.search(points, null);
+		Assert.assertEquals(points.size(), res.size());
+		int buildings = 0;
+		for (int i = 0; i < points.size(); i++) {
+			GeocodingResult e = expected.get(i);
+			GeocodingResult r = res.get(i);
+			Assert.assertEquals(e.street.getId(), r.street.getId());
+			Assert.assertEquals(e.city.getName(), r.city.getName());
+			Assert.assertEquals(e.building == null ? null : e.building.getName(),
+					r.building == null ? null : r.building.getName());
+			Assert.assertEquals(e.getDistance(), r.getDistance(), 1e-6);
+			if (e.building != null) {
+				buildings++;
+			}
+		}
+		Assert.assertTrue(buildings > 0);
+		Assert.assertEquals(2 * points.size(), singlePreloads);
+		// buildings of both streets of the city are loaded once (even if street doesn't have buildings)
+		Assert.assertEquals(2, reader.preloads);
+		Assert.assertEquals(2, geocoder.getMetrics().counter(BatchReverseGeocoder.STREET_CACHE_MISSES).get());
+	}
+
+	@Test
+	public void testStreetsAreSearchedAgainAfterEviction() throws IOException {
+		BatchReverseGeocoder geocoder = createGeocoder();
+		// main street is found in 2 cities, both blocks can't be kept
+		geocoder.setCacheSize(1);
+		List<LatLon> points = Collections.singletonList(new LatLon(LAT + 0.0002, LON + 0.01));
+		geocoder.search(points, null);
+		GeocodingResult r = geocoder.search(points, null).get(0);
+		Assert.assertEquals(Long.valueOf(1), r.street.getId());
+		Assert.assertEquals("11", r.building.getName());
+		Assert.assertEquals(4, geocoder.getMetrics().counter(BatchReverseGeocoder.STREET_CACHE_MISSES).get());
+	}
+}
@@ -0,0 +1,102 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.osmand.binary.OsmandIndex.FileIndex;
+import net.osmand.binary.OsmandIndex.OsmAndStoredIndex;
+import net.osmand.util.Algorithms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachedOsmandIndexesTest {
+
+	private File dir;
+	private File cache;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("indexes", "");
+		dir.delete();
+		dir.mkdirs();
+		cache = new File(dir, "ind.cache");
+	}
+
+	@After
+	public void tearDown() {
+		Algorithms.removeAllFiles(dir);
+	}
+
+	// files are not valid obf files, so they could be opened only using cached entries
+	private File createFile(String name, int size) throws IOException {
+		File f = new File(dir, name);
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(new byte[size]);
+		out.close();
+		return f;
+	}
+
+	private static FileIndex entry(File f, long date) {
+		return FileIndex.newBuilder().setFileName(f.getName()).setSize(f.length()).setDateModified(date)
+				.setVersion(2).build();
+	}
+
+	private static long getDate(CachedOsmandIndexes indexes, File f) throws IOException {
+		BinaryMapIndexReader reader = indexes.getReader(f);
+		reader.close();
+		return reader.getDateCreated();
+	}
+
+	@Test
+	public void testEntryIsUpdatedWithoutRewriting() throws IOException {
+		File a = createFile("A.obf", 10);
+		File b = createFile("B.obf", 20);
+		CachedOsmandIndexes indexes = new CachedOsmandIndexes();
+		indexes.addToCache(entry(a, 100));
+		indexes.addToCache(entry(b, 200));
+		indexes.writeToFile(cache);
+
+		indexes = new CachedOsmandIndexes();
+		indexes.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		Assert.assertEquals(100, getDate(indexes, a));
+		long length = cache.length();
+		b = createFile("B.obf", 30);
+		indexes.addToCache(entry(b, 300));
+		indexes.appendToFile(cache);
+		Assert.assertEquals(length + entry(b, 300).getSerializedSize(), cache.length());
+
+		indexes = new CachedOsmandIndexes();
+		indexes.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		Assert.assertEquals(300, getDate(indexes, b));
+		Assert.assertEquals(100, getDate(indexes, a));
+	}
+
+	@Test
+	public void testCacheOfOtherFormatIsRewritten() throws IOException {
+		File a = createFile("A.obf", 10);
+		FileOutputStream out = new FileOutputStream(cache);
+		OsmAndStoredIndex.newBuilder().setVersion(2).setDateCreated(1).addFileIndex(entry(a, 100)).build()
+				.writeTo(out);
+		out.close();
+		CachedOsmandIndexes indexes = new CachedOsmandIndexes();
+		indexes.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		indexes.addToCache(entry(a, 100));
+		indexes.appendToFile(cache);
+
+		indexes = new CachedOsmandIndexes();
+		indexes.readFromFile(cache, CachedOsmandIndexes.VERSION);
+		Assert.assertEquals(100, getDate(indexes, a));
+		File stored = new File(dir, "stored.cache");
+		indexes.writeStoredIndex(stored);
+		FileInputStream is = new FileInputStream(stored);
+		OsmAndStoredIndex index = OsmAndStoredIndex.parseFrom(is);
+		is.close();
+		Assert.assertEquals(1, index.getFileIndexCount());
+		Assert.assertEquals("A.obf", index.getFileIndex(0).getFileName());
+	}
+}
@@ -0,0 +1,131 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.osmand.data.City;
+import net.osmand.data.City.CityType;
+import net.osmand.data.Street;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactAddressIndexTest {
+
+	private static City city(long id, String name, double lat, double lon) {
+		City c = new City(CityType.CITY);
+		c.setId(id);
+		c.setName(name);
+		c.setEnName(name + " en");
+		c.setName("de", name + " de");
+		c.setLocation(lat, lon);
+		c.setFileOffset((int) id * 100);
+		return c;
+	}
+
+	@Test
+	public void testClosestCity() {
+		CompactAddressIndex index = new CompactAddressIndex(0, 0);
+		index.addCity(city(1, "Amsterdam", 52.37, 4.89));
+		index.addCity(city(2, "Haarlem", 52.38, 4.64));
+		index.addCity(city(3, "Berlin", 52.52, 13.40));
+		Assert.assertEquals(1, index.getCityId(index.getClosestCity(52.36, 4.85)));
+		Assert.assertEquals(2, index.getCityId(index.getClosestCity(52.39, 4.66)));
+		Assert.assertEquals(-1, index.getClosestCity(40.0, -3.0));
+	}
+
+	@Test
+	public void testClosestCityInTwoCells() {
+		CompactAddressIndex index = new CompactAddressIndex(0, 0);
+		// zoom 10 cell is 0.35 degree of longitude
+		index.addCity(city(1, "Far", 52.0, 4.0 + 0.35 * 1.9));
+		Assert.assertEquals(1, index.getCityId(index.getClosestCity(52.0, 4.0)));
+		Assert.assertEquals(-1, index.getClosestCity(52.0, 4.0 - 0.35 * 2));
+	}
+
+	@Test
+	public void testObjectsWithoutLocation() {
+		CompactAddressIndex index = new CompactAddressIndex(0, 0);
+		City c = new City(CityType.VILLAGE);
+		c.setId(1L);
+		c.setName("Nowhere");
+		int ind = index.addCity(c);
+		Assert.assertEquals(0, ind);
+		Assert.assertNull(index.createCity(ind).getLocation());
+		Assert.assertEquals(-1, index.getClosestCity(0, 0));
+		Street s = new Street(c);
+		s.setId(2L);
+		s.setName("Unknown");
+		index.setStreets(ind, Collections.singletonList(s));
+		Assert.assertNull(index.createStreets(ind, c).get(0).getLocation());
+	}
+
+	@Test
+	public void testSharedNames() {
+		CompactAddressIndex index = new CompactAddressIndex(0, 0);
+		// enough names to grow string table several times
+		for (int i = 0; i < 500; i++) {
+			index.addCity(city(i + 1, "City " + (i % 200), 52.0, 4.0));
+		}
+		Assert.assertEquals(500, index.getCitiesCount());
+		Assert.assertEquals(499, index.getCityIndex(500));
+		Assert.assertEquals(-1, index.getCityIndex(501));
+		City c = index.createCity(index.getCityIndex(250));
+		Assert.assertEquals("City 49", c.getName());
+		Assert.assertEquals("City 49 de", c.getName("de"));
+		Assert.assertEquals("City 49 en", c.getEnName(false));
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		File obf = File.createTempFile("region", ".obf");
+		File file = File.createTempFile("region", ".cache");
+		try {
+			FileOutputStream fous = new FileOutputStream(obf);
+			fous.write(new byte[] { 1, 2, 3 });
+			fous.close();
+			long length = obf.length();
+			long lastModified = obf.lastModified();
+			CompactAddressIndex index = new CompactAddressIndex(length, lastModified);
+			City c = city(10, "Utrecht", 52.09, 5.12);
+			int ind = index.addCity(c);
+			List<Street> streets = new ArrayList<Street>();
+			Street s = new Street(c);
+			s.setId(100L);
+			s.setName("Oudegracht");
+			s.setLocation(52.09, 5.121);
+			s.setFileOffset(12345);
+			streets.add(s);
+			index.setStreets(ind, streets);
+			// obf file is replaced after the index was created (e.g. merged with live updates)
+			fous = new FileOutputStream(obf, true);
+			fous.write(4);
+			fous.close();
+			index.writeToFile(file);
+			Assert.assertFalse(index.isModified());
+			Assert.assertNull(CompactAddressIndex.readFromFile(file, obf.length(), obf.lastModified()));
+
+			CompactAddressIndex read = CompactAddressIndex.readFromFile(file, length, lastModified);
+			Assert.assertNotNull(read);
+			Assert.assertEquals(1, read.getCitiesCount());
+			City rc = read.createCity(read.getCityIndex(10));
+			Assert.assertEquals("Utrecht", rc.getName());
+			Assert.assertEquals("Utrecht de", rc.getName("de"));
+			Assert.assertEquals("Utrecht en", rc.getEnName(false));
+			Assert.assertEquals(1000, rc.getFileOffset());
+			Assert.assertEquals(52.09, rc.getLocation().getLatitude(), 1e-5);
+			List<Street> rs = read.createStreets(0, rc);
+			Assert.assertEquals(1, rs.size());
+			Assert.assertEquals("Oudegracht", rs.get(0).getName());
+			Assert.assertEquals(12345, rs.get(0).getFileOffset());
+			Assert.assertEquals(100L, rs.get(0).getId().longValue());
+		} finally {
+			obf.delete();
+			file.delete();
+		}
+	}
+}
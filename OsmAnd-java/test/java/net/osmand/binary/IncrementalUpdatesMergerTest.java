@@ -0,0 +1,125 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+public class IncrementalUpdatesMergerTest {
+
+	private static final int VERSION = 2;
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("merge", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		Algorithms.removeAllFiles(dir);
+	}
+
+	// obf file with poi parts containing only names
+	private File createFile(String name, long date, String... poiParts) throws IOException {
+		File f = new File(dir, name);
+		FileOutputStream fout = new FileOutputStream(f);
+		CodedOutputStream ous = CodedOutputStream.newInstance(fout);
+		ous.writeInt32(OsmandOdb.OsmAndStructure.VERSION_FIELD_NUMBER, VERSION);
+		ous.writeInt64(OsmandOdb.OsmAndStructure.DATECREATED_FIELD_NUMBER, date);
+		for (String part : poiParts) {
+			byte[] data = OsmandOdb.OsmAndPoiIndex.newBuilder().setName(part).buildPartial().toByteArray();
+			ous.writeTag(OsmandOdb.OsmAndStructure.POIINDEX_FIELD_NUMBER,
+					WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
+			BinaryInspector.writeInt(ous, data.length);
+			ous.writeRawBytes(data);
+		}
+		ous.writeInt32(OsmandOdb.OsmAndStructure.VERSIONCONFIRM_FIELD_NUMBER, VERSION);
+		ous.flush();
+		fout.close();
+		return f;
+	}
+
+	private File copyResource(String resource, String name) throws IOException {
+		File f = new File(dir, name);
+		InputStream is = getClass().getResourceAsStream(resource);
+		FileOutputStream fout = new FileOutputStream(f);
+		try {
+			Algorithms.streamCopy(is, fout);
+		} finally {
+			fout.close();
+			is.close();
+		}
+		return f;
+	}
+
+	@Test
+	public void testUpdatesGoBeforeBaseFile() throws IOException {
+		File base = createFile("Region.obf", 100, "base");
+		IncrementalUpdatesMerger merger = new IncrementalUpdatesMerger(base);
+		merger.addUpdate(createFile("Region_16_02_01.obf", 300, "day"));
+		merger.addUpdate(createFile("Region_16_01_00.obf", 200, "month"));
+		merger.mergeAndReplace();
+
+		Assert.assertFalse(new File(dir, "Region.obf.merge").exists());
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(base, "r"), base);
+		try {
+			Assert.assertEquals(300, reader.getDateCreated());
+			Assert.assertEquals(VERSION, reader.getVersion());
+			Assert.assertEquals(3, reader.getPoiIndexes().size());
+			Assert.assertEquals("day", reader.getPoiIndexes().get(0).getName());
+			Assert.assertEquals("month", reader.getPoiIndexes().get(1).getName());
+			Assert.assertEquals("base", reader.getPoiIndexes().get(2).getName());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testChangedAndDeletedAmenitiesAfterMerge() throws IOException {
+		// base has pois 1 "unchanged", 2 "old" and 3 "deleted", update changes 2 to "new" and deletes 3
+		File base = copyResource("/poi_region.obf", "Region.obf");
+		IncrementalUpdatesMerger merger = new IncrementalUpdatesMerger(base);
+		merger.addUpdate(copyResource("/poi_region_update.obf", "Region_16_01_01.obf"));
+		merger.mergeAndReplace();
+
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(base, "r"), base);
+		try {
+			Assert.assertEquals(2, reader.getPoiIndexes().size());
+			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+					Integer.MAX_VALUE, -1, null, null);
+			List<String> names = new ArrayList<String>();
+			for (Amenity a : reader.searchPoi(req)) {
+				names.add(a.getName());
+			}
+			Collections.sort(names);
+			Assert.assertEquals("[new, unchanged]", names.toString());
+
+			req = BinaryMapIndexReader.buildSearchPoiNearestRequest(MapUtils.get31TileNumberX(4.0),
+					MapUtils.get31TileNumberY(52.02), 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, null, null);
+			List<Amenity> nearest = reader.searchPoiNearest(req, 1);
+			Assert.assertEquals("new", nearest.get(0).getName());
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.LiveUpdatesOverlay.Versions;
+import net.osmand.data.Amenity;
+import net.osmand.osm.PoiCategory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LiveUpdatesOverlayTest {
+
+	private File base;
+	private File update;
+	private LiveUpdatesOverlay overlay;
+
+	@Before
+	public void setUp() throws URISyntaxException {
+		// base has pois 1 "unchanged", 2 "old" and 3 "deleted", update changes 2 to "new" and deletes 3
+		base = new File(getClass().getResource("/poi_region.obf").toURI());
+		update = new File(getClass().getResource("/poi_region_update.obf").toURI());
+		overlay = new LiveUpdatesOverlay();
+		Map<File, List<File>> regions = new HashMap<File, List<File>>();
+		regions.put(base, Collections.singletonList(update));
+		overlay.init(regions, Collections.<String, BinaryMapIndexReader>emptyMap(), false);
+	}
+
+	private List<String> searchNames(File f) throws IOException {
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(f, "r"), f);
+		try {
+			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+					Integer.MAX_VALUE, -1, new SearchPoiTypeFilter() {
+
+						@Override
+						public boolean accept(PoiCategory type, String subcategory) {
+							return true;
+						}
+
+						@Override
+						public boolean isEmpty() {
+							return false;
+						}
+					}, overlay.filterAmenities(reader, null));
+			List<String> names = new ArrayList<String>();
+			for (Amenity a : reader.searchPoi(req)) {
+				names.add(a.getName());
+			}
+			Collections.sort(names);
+			return names;
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testSupersededAndDeletedAmenitiesAreHidden() throws IOException {
+		Assert.assertEquals(Collections.singletonList("unchanged"), searchNames(base));
+		// delete marker itself is not shown
+		Assert.assertEquals(Collections.singletonList("new"), searchNames(update));
+	}
+
+	@Test
+	public void testVersionsHideObjectOnlyInPartsOfNewerVersion() {
+		Versions versions = new Versions();
+		int detailedZooms = 0;
+		for (int z = 15; z <= 22; z++) {
+			detailedZooms |= 1 << z;
+		}
+		// update 0 changes object only on detailed zooms, update 1 deletes other object on all zooms
+		versions.put(10, 0, detailedZooms);
+		versions.put(11, -1, -1);
+		versions.put(10, 1, -1);
+		versions.put(13, 0, detailedZooms);
+		Assert.assertTrue(versions.isLatest(10, 0, 16));
+		Assert.assertFalse(versions.isLatest(10, 2, 16));
+		Assert.assertFalse(versions.isLatest(10, 2, 12));
+		Assert.assertTrue(versions.isLatest(10, 1, 12));
+		Assert.assertFalse(versions.isLatest(11, 2, 16));
+		// base object is shown on zooms where update doesn't have it
+		Assert.assertFalse(versions.isLatest(13, 2, 16));
+		Assert.assertTrue(versions.isLatest(13, 2, 12));
+		// objects not changed by updates
+		Assert.assertTrue(versions.isLatest(12, 2, 16));
+		Assert.assertTrue(versions.isLatest(-5, 2, 16));
+	}
+}
@@ -0,0 +1,66 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.util.MapUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PoiNearestSearchTest {
+
+	private static final double LAT = 52.0;
+	private static final double LON = 4.0;
+	private File file;
+	private BinaryMapIndexReader reader;
+
+	@Before
+	public void setUp() throws IOException, URISyntaxException {
+		// pois in separate boxes at increasing distance (written not in order of distance):
+		// 4 "far" (+0.4, 0), 1 "closest" (+0.01, 0), 3 "third" (0, -0.2), 2 "second" (-0.05, +0.05),
+		// 5 "out of bounds" (+5, +5)
+		file = new File(getClass().getResource("/poi_nearest.obf").toURI());
+		reader = new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+
+	private SearchRequest<Amenity> request(double radius) {
+		return BinaryMapIndexReader.buildSearchPoiNearestRequest(MapUtils.get31TileNumberX(LON),
+				MapUtils.get31TileNumberY(LAT), MapUtils.get31TileNumberX(LON - radius),
+				MapUtils.get31TileNumberX(LON + radius), MapUtils.get31TileNumberY(LAT + radius),
+				MapUtils.get31TileNumberY(LAT - radius), null, null);
+	}
+
+	@Test
+	public void testKNearestInOrderOfDistance() throws IOException {
+		SearchRequest<Amenity> req = request(1);
+		List<Amenity> res = reader.searchPoiNearest(req, 3);
+		Assert.assertEquals(3, res.size());
+		Assert.assertEquals(Long.valueOf(1), res.get(0).getId());
+		Assert.assertEquals(Long.valueOf(2), res.get(1).getId());
+		Assert.assertEquals(Long.valueOf(3), res.get(2).getId());
+		// data of the farthest poi is not read, box out of bounds is pruned (root and 4 boxes are accepted)
+		Assert.assertEquals(3, req.numberOfVisitedObjects);
+		Assert.assertEquals(5, req.numberOfAcceptedSubtrees);
+	}
+
+	@Test
+	public void testOnlyPoisInsideBounds() throws IOException {
+		List<Amenity> res = reader.searchPoiNearest(request(0.1), 10);
+		Assert.assertEquals(2, res.size());
+		Assert.assertEquals("closest", res.get(0).getName());
+		Assert.assertEquals("second", res.get(1).getName());
+	}
+}
@@ -0,0 +1,134 @@
+package net.osmand.map;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.map.BatchTileDownloader.BatchStatistics;
+import net.osmand.map.BatchTileDownloader.DownloadedTile;
+import net.osmand.map.BatchTileDownloader.TileSink;
+import net.osmand.map.MapTileDownloader.DownloadRequest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class BatchTileDownloaderTest {
+
+	@Test
+	public void testDownloadWithRetry() throws IOException {
+		final AtomicInteger failures = new AtomicInteger(2);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				int code = 200;
+				if (path.startsWith("/missing")) {
+					code = 404;
+				} else if (path.startsWith("/unstable") && failures.getAndDecrement() > 0) {
+					code = 503;
+				}
+				byte[] body = path.getBytes("UTF-8");
+				exchange.sendResponseHeaders(code, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+			}
+		});
+		server.start();
+		try {
+			String base = "http://127.0.0.1:" + server.getAddress().getPort();
+			List<DownloadRequest> requests = new ArrayList<DownloadRequest>();
+			for (int i = 0; i < 20; i++) {
+				requests.add(new DownloadRequest(base + "/15/" + i + "/1.png", null, i, 1, 15));
+			}
+			requests.add(new DownloadRequest(base + "/unstable/1.png", null, 100, 1, 15));
+			requests.add(new DownloadRequest(base + "/missing/1.png", null, 101, 1, 15));
+			final List<Integer> groups = new ArrayList<Integer>();
+			final List<DownloadedTile> saved = new ArrayList<DownloadedTile>();
+			BatchTileDownloader downloader = new BatchTileDownloader();
+			downloader.setGroupSize(8);
+			downloader.setRetryDelay(10);
+			downloader.setMaxRetries(3);
+			BatchStatistics stats = downloader.download(requests, new TileSink() {
+				@Override
+				public void saveTiles(List<DownloadedTile> tiles) throws IOException {
+					groups.add(tiles.size());
+					saved.addAll(tiles);
+				}
+			}, null);
+			Assert.assertEquals(21, stats.getDownloaded());
+			Assert.assertEquals(1, stats.getFailed());
+			Assert.assertTrue(stats.getRetries() >= 2);
+			Assert.assertEquals(21, saved.size());
+			for (DownloadedTile t : saved) {
+				Assert.assertTrue(t.request.url.endsWith(new String(t.data, "UTF-8")));
+			}
+			Assert.assertEquals(8, groups.get(0).intValue());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testRetryAfter() throws IOException {
+		final AtomicInteger limited = new AtomicInteger(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int code = 200;
+				if (limited.getAndDecrement() > 0) {
+					code = 429;
+					exchange.getResponseHeaders().add("Retry-After", "1");
+				}
+				exchange.sendResponseHeaders(code, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+		try {
+			String base = "http://127.0.0.1:" + server.getAddress().getPort();
+			List<DownloadRequest> requests = new ArrayList<DownloadRequest>();
+			requests.add(new DownloadRequest(base + "/15/1/1.png", null, 1, 1, 15));
+			BatchTileDownloader downloader = new BatchTileDownloader();
+			downloader.setRetryDelay(10);
+			long time = System.currentTimeMillis();
+			BatchStatistics stats = downloader.download(requests, new TileSink() {
+				@Override
+				public void saveTiles(List<DownloadedTile> tiles) throws IOException {
+				}
+			}, null);
+			Assert.assertEquals(1, stats.getDownloaded());
+			Assert.assertEquals(1, stats.getRetries());
+			// second attempt waits for Retry-After instead of retry delay
+			Assert.assertTrue(System.currentTimeMillis() - time >= 1000);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testCancelBeforeStart() throws IOException {
+		List<DownloadRequest> requests = new ArrayList<DownloadRequest>();
+		requests.add(new DownloadRequest("http://127.0.0.1:1/15/1/1.png", null, 1, 1, 15));
+		BatchTileDownloader downloader = new BatchTileDownloader();
+		downloader.cancel();
+		final List<DownloadedTile> saved = new ArrayList<DownloadedTile>();
+		BatchStatistics stats = downloader.download(requests, new TileSink() {
+			@Override
+			public void saveTiles(List<DownloadedTile> tiles) throws IOException {
+				saved.addAll(tiles);
+			}
+		}, null);
+		Assert.assertEquals(0, stats.getDownloaded() + stats.getFailed());
+		Assert.assertTrue(saved.isEmpty());
+	}
+}
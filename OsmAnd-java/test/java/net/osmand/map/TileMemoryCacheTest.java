@@ -0,0 +1,59 @@
+package net.osmand.map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileMemoryCacheTest {
+
+	private static TileMemoryCache<byte[]> cache(long size) {
+		return new TileMemoryCache<byte[]>(size) {
+			@Override
+			protected int sizeOf(byte[] tile) {
+				return tile.length;
+			}
+		};
+	}
+
+	@Test
+	public void testKeys() {
+		long k1 = TileMemoryCache.getTileKey(1, 100, 200, 10);
+		Assert.assertTrue(k1 > 0);
+		Assert.assertTrue(k1 != TileMemoryCache.getTileKey(2, 100, 200, 10));
+		Assert.assertTrue(k1 != TileMemoryCache.getTileKey(1, 200, 100, 10));
+		Assert.assertTrue(k1 != TileMemoryCache.getTileKey(1, 100, 200, 11));
+		Assert.assertTrue(TileMemoryCache.getTileKey(TileMemoryCache.MAX_SOURCES - 1, (1 << 24) - 1, (1 << 24) - 1, 24) > 0);
+		Assert.assertEquals(-1, TileMemoryCache.getTileKey(1, 0, 0, 25));
+		Assert.assertEquals(-1, TileMemoryCache.getTileKey(TileMemoryCache.MAX_SOURCES, 0, 0, 1));
+	}
+
+	@Test
+	public void testBudgetAndLru() {
+		TileMemoryCache<byte[]> c = cache(8 * 1000);
+		int src = c.getSourceId("mapnik");
+		Assert.assertEquals(src, c.getSourceId("mapnik"));
+		for (int i = 0; i < 1000; i++) {
+			c.put(TileMemoryCache.getTileKey(src, i, 0, 15), new byte[100]);
+		}
+		Assert.assertTrue(c.getSizeInBytes() <= 8 * 1000);
+		Assert.assertTrue(c.size() > 0);
+		Assert.assertNotNull(c.get(TileMemoryCache.getTileKey(src, 999, 0, 15)));
+		Assert.assertNull(c.get(TileMemoryCache.getTileKey(src, 0, 0, 15)));
+		c.trimToSize(0);
+		Assert.assertEquals(0, c.size());
+		Assert.assertEquals(0, c.getSizeInBytes());
+	}
+
+	@Test
+	public void testCompressed() {
+		TileMemoryCache<byte[]> c = cache(1000);
+		long k = TileMemoryCache.getTileKey(0, 1, 1, 1);
+		c.putCompressed(k, new byte[10], 5);
+		Assert.assertNull(c.getCompressed(k));
+		c.setMaxCompressedSize(8 * 100);
+		c.putCompressed(k, new byte[10], 5);
+		Assert.assertNotNull(c.getCompressed(k));
+		Assert.assertEquals(5, c.getCompressed(k).time);
+		c.remove(k);
+		Assert.assertNull(c.getCompressed(k));
+	}
+}
@@ -0,0 +1,95 @@
+package net.osmand.map;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.osmand.data.LatLon;
+import net.osmand.map.TileSeeder.DirectoryTileStore;
+import net.osmand.map.TileSourceManager.TileSourceTemplate;
+import net.osmand.util.Algorithms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TileSeederTest {
+
+	private HttpServer server;
+	private AtomicInteger requests = new AtomicInteger();
+	private File dir;
+	private TileSourceTemplate template;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				byte[] body = exchange.getRequestURI().getPath().getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(body);
+				os.close();
+			}
+		});
+		server.start();
+		String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/{0}/{1}/{2}.png";
+		template = new TileSourceTemplate("test", url, ".png", 18, 1, 256, 8, 18000);
+		dir = File.createTempFile("seed", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		Algorithms.removeAllFiles(dir);
+	}
+
+	private TileSeeder createSeeder() {
+		TileSeeder seeder = new TileSeeder(template, new DirectoryTileStore(dir, template), new MapTileDownloader(1));
+		seeder.setZooms(8, 10);
+		seeder.setCheckpointFile(new File(dir, "test.seed"));
+		return seeder;
+	}
+
+	@Test
+	public void testSeedSkipsStoredTiles() throws IOException {
+		TileSeeder seeder = createSeeder();
+		seeder.setBBox(27.4, 54, 27.8, 53.8);
+		int total = seeder.countTiles();
+		seeder.seed();
+		Assert.assertEquals(total, seeder.getDownloaded());
+		Assert.assertEquals(total, requests.get());
+		Assert.assertFalse(new File(dir, "test.seed").exists());
+		Assert.assertTrue(new DirectoryTileStore(dir, template).getTileFile(147, 82, 8).exists());
+
+		seeder.seed();
+		Assert.assertEquals(total, seeder.getSkipped());
+		Assert.assertEquals(0, seeder.getDownloaded());
+		Assert.assertEquals(total, requests.get());
+	}
+
+	@Test
+	public void testPolygonCoversLessThanBBox() throws IOException {
+		TileSeeder seeder = createSeeder();
+		seeder.setBBox(27, 55, 29, 53);
+		int bbox = seeder.countTiles();
+		seeder.setPolygon(Arrays.asList(new LatLon(55, 27), new LatLon(55, 29), new LatLon(53, 27)));
+		int polygon = seeder.countTiles();
+		Assert.assertTrue(polygon < bbox);
+		Assert.assertTrue(polygon > bbox / 2);
+		seeder.seed();
+		Assert.assertEquals(polygon, seeder.getDownloaded());
+	}
+}
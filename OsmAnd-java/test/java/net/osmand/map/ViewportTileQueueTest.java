@@ -0,0 +1,64 @@
+package net.osmand.map;
+
+import java.io.File;
+
+import net.osmand.map.MapTileDownloader.DownloadRequest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ViewportTileQueueTest {
+
+	private static ViewportTileQueue<DownloadRequest> queue() {
+		return new ViewportTileQueue<DownloadRequest>() {
+			@Override
+			protected DownloadRequest getRequest(DownloadRequest element) {
+				return element;
+			}
+		};
+	}
+
+	private static DownloadRequest tile(int x, int y, int zoom) {
+		DownloadRequest r = new DownloadRequest("url", new File(zoom + "/" + x + "/" + y), x, y, zoom);
+		r.viewportBound = true;
+		return r;
+	}
+
+	@Test
+	public void testOrderByDistance() {
+		ViewportTileQueue<DownloadRequest> q = queue();
+		q.offer(tile(100, 100, 10));
+		q.offer(tile(103, 100, 10));
+		q.offer(tile(101, 101, 10));
+		q.offer(tile(51, 50, 9));
+		q.offer(tile(101, 100, 10));
+		// duplicate replaces previous request
+		q.offer(tile(101, 101, 10));
+		Assert.assertEquals(5, q.size());
+		q.setViewport(10, 101.5, 100.5, 4, 2);
+		Assert.assertEquals(101, q.poll().xTile);
+		Assert.assertEquals(101, q.peek().xTile);
+		Assert.assertEquals(101, q.poll().yTile);
+		DownloadRequest r = q.poll();
+		Assert.assertEquals(10, r.zoom);
+		Assert.assertEquals(100, r.xTile);
+		Assert.assertEquals(103, q.poll().xTile);
+		// lower zoom tile close to centre is penalized by zoom difference
+		Assert.assertEquals(9, q.poll().zoom);
+		Assert.assertNull(q.poll());
+	}
+
+	@Test
+	public void testDropOutsideViewport() {
+		ViewportTileQueue<DownloadRequest> q = queue();
+		q.offer(tile(100, 100, 10));
+		q.offer(tile(200, 100, 10));
+		DownloadRequest notBound = tile(300, 100, 10);
+		notBound.viewportBound = false;
+		q.offer(notBound);
+		q.setViewport(10, 100, 100, 4, 4);
+		Assert.assertEquals(2, q.size());
+		Assert.assertEquals(100, q.poll().xTile);
+		Assert.assertEquals(300, q.poll().xTile);
+	}
+}
@@ -0,0 +1,193 @@
+package net.osmand.osm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import net.osmand.util.Algorithms;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ChunkedDownloaderTest {
+
+	private HttpServer server;
+	private byte[] content;
+	private byte[] zip;
+	private volatile boolean supportRanges = true;
+	// number of responses to break in the middle
+	private final AtomicInteger drops = new AtomicInteger();
+	private final AtomicLong served = new AtomicLong();
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		content = new byte[300 * 1024];
+		new Random(1).nextBytes(content);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ZipOutputStream zos = new ZipOutputStream(bos);
+		zos.putNextEntry(new ZipEntry("test.obf"));
+		zos.write(content);
+		zos.closeEntry();
+		zos.close();
+		zip = bos.toByteArray();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String range = exchange.getRequestHeaders().getFirst("Range");
+				int from = 0;
+				int to = zip.length - 1;
+				int code = 200;
+				if (range != null && supportRanges) {
+					String[] r = range.substring("bytes=".length()).split("-");
+					from = Integer.parseInt(r[0]);
+					to = Math.min(to, Integer.parseInt(r[1]));
+					code = 206;
+					exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + zip.length);
+				}
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				int len = to - from + 1;
+				exchange.sendResponseHeaders(code, len);
+				OutputStream os = exchange.getResponseBody();
+				if (len > 1 && drops.getAndDecrement() > 0) {
+					os.write(zip, from, len / 2);
+					served.addAndGet(len / 2);
+					exchange.close();
+					return;
+				}
+				os.write(zip, from, len);
+				served.addAndGet(len);
+				os.close();
+			}
+		});
+		server.start();
+		file = File.createTempFile("download", ".zip");
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		file.delete();
+		new File(file.getParentFile(), file.getName() + ".state").delete();
+	}
+
+	private ChunkedDownloader createDownloader() {
+		ChunkedDownloader d = new ChunkedDownloader("http://127.0.0.1:" + server.getAddress().getPort() + "/test.zip",
+				file);
+		d.setChunkSize(16 * 1024);
+		d.setRetryDelay(10);
+		return d;
+	}
+
+	private static String md5(byte[] data) throws Exception {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("MD5").digest(data)) {
+			hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		}
+		return hex.toString();
+	}
+
+	private static byte[] unzip(InputStream is) throws IOException {
+		ZipInputStream zis = new ZipInputStream(is);
+		Assert.assertNotNull(zis.getNextEntry());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Algorithms.streamCopy(zis, out);
+		while (zis.getNextEntry() != null) {
+		}
+		// checksum is verified at the end of stream
+		byte[] b = new byte[1024];
+		while (is.read(b) != -1) {
+		}
+		zis.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testParallelDownloadIsUnzippedWhileDownloading() throws Exception {
+		drops.set(3);
+		ChunkedDownloader d = createDownloader();
+		d.setConnections(3);
+		d.setExpectedMd5(md5(zip));
+		Assert.assertTrue(Arrays.equals(content, unzip(d.getInputStream())));
+		Assert.assertTrue(d.isComplete());
+		Assert.assertEquals(zip.length, d.getLength());
+	}
+
+	@Test(expected = IOException.class)
+	public void testWrongChecksum() throws Exception {
+		ChunkedDownloader d = createDownloader();
+		d.setExpectedMd5(md5(content));
+		unzip(d.getInputStream());
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		ChunkedDownloader d = createDownloader();
+		d.setConnections(1);
+		InputStream is = d.getInputStream();
+		byte[] b = new byte[1024];
+		int read = 0;
+		while (read < 100 * 1024) {
+			read += is.read(b);
+		}
+		d.cancel();
+		is.close();
+		try {
+			d.download();
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("Interrupted", e.getMessage());
+		}
+		long first = served.get();
+		long downloaded = d.getDownloadedBytes();
+		Assert.assertTrue(downloaded < zip.length);
+
+		ChunkedDownloader resumed = createDownloader();
+		resumed.download();
+		// only not downloaded part and the probe byte are requested again
+		Assert.assertEquals(zip.length - downloaded + 1, served.get() - first);
+		Assert.assertTrue(Arrays.equals(content, unzip(resumed.getInputStream())));
+	}
+
+	@Test
+	public void testAvailableDoesNotCountNotDownloadedBytes() throws Exception {
+		ChunkedDownloader d = createDownloader();
+		d.download();
+		InputStream is = d.getInputStream();
+		Assert.assertEquals(zip.length, is.available());
+		byte[] b = new byte[1024];
+		int read = is.read(b);
+		Assert.assertEquals(zip.length - read, is.available());
+		while (is.read(b) != -1) {
+		}
+		Assert.assertEquals(0, is.available());
+		is.close();
+	}
+
+	@Test
+	public void testServerWithoutRanges() throws Exception {
+		supportRanges = false;
+		drops.set(1);
+		ChunkedDownloader d = createDownloader();
+		d.setConnections(3);
+		Assert.assertTrue(Arrays.equals(content, unzip(d.getInputStream())));
+	}
+}
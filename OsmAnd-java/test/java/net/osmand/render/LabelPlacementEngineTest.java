@@ -0,0 +1,102 @@
+package net.osmand.render;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.osmand.data.QuadRect;
+import net.osmand.render.LabelPlacementEngine.Label;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LabelPlacementEngineTest {
+
+	private static Label label(long id, String text, int order, double left, double top) {
+		Label l = new Label(text);
+		l.objectId = id;
+		l.textOrder = order;
+		l.bounds = new QuadRect(left, top, left + 50, top + 20);
+		return l;
+	}
+
+	@Test
+	public void testIntersectingLabelsAreDropped() {
+		LabelPlacementEngine<Label> engine = new LabelPlacementEngine<Label>();
+		List<Label> labels = new ArrayList<Label>();
+		labels.add(label(1, "a", 10, 10, 10));
+		labels.add(label(2, "b", 5, 30, 15));
+		labels.add(label(3, "c", 20, 200, 200));
+		List<Label> res = engine.place(labels, 400, 400, new ArrayList<Label>());
+		Assert.assertEquals(2, res.size());
+		Assert.assertEquals("b", res.get(0).text);
+		Assert.assertEquals("c", res.get(1).text);
+	}
+
+	@Test
+	public void testMinDistanceForSameText() {
+		LabelPlacementEngine<Label> engine = new LabelPlacementEngine<Label>();
+		engine.setMinDistanceInsets(5, 15);
+		List<Label> labels = new ArrayList<Label>();
+		Label a = label(1, "Main street", 10, 10, 10);
+		a.minDistance = 100;
+		Label b = label(2, "Main street", 10, 100, 10);
+		b.minDistance = 100;
+		Label c = label(3, "Other street", 10, 100, 40);
+		labels.add(a);
+		labels.add(b);
+		labels.add(c);
+		List<Label> res = engine.place(labels, 400, 400, new ArrayList<Label>());
+		Assert.assertEquals(2, res.size());
+		Assert.assertSame(a, res.get(0));
+		Assert.assertSame(c, res.get(1));
+	}
+
+	@Test
+	public void testLabelsFromPreviousFrameArePreferred() {
+		LabelPlacementEngine<Label> engine = new LabelPlacementEngine<Label>();
+		List<Label> labels = new ArrayList<Label>();
+		labels.add(label(1, "a", 10, 10, 10));
+		labels.add(label(2, "b", 10, 30, 15));
+		List<Label> res = engine.place(labels, 400, 400, new ArrayList<Label>());
+		Assert.assertEquals(1, res.size());
+		Assert.assertEquals("a", res.get(0).text);
+
+		// after pan "b" comes first but "a" was visible in previous frame
+		labels.clear();
+		labels.add(label(2, "b", 10, 40, 15));
+		labels.add(label(1, "a", 10, 20, 10));
+		res = engine.place(labels, 400, 400, new ArrayList<Label>());
+		Assert.assertEquals(1, res.size());
+		Assert.assertEquals("a", res.get(0).text);
+		Assert.assertEquals(1, engine.getReusedCount());
+	}
+
+	@Test
+	public void testLabelsOutsideViewport() {
+		LabelPlacementEngine<Label> engine = new LabelPlacementEngine<Label>();
+		List<Label> labels = new ArrayList<Label>();
+		labels.add(label(1, "a", 10, -500, -500));
+		labels.add(label(2, "b", 10, -490, -495));
+		labels.add(label(3, "c", 10, 1000, 1000));
+		List<Label> res = engine.place(labels, 400, 400, new ArrayList<Label>());
+		Assert.assertEquals(2, res.size());
+	}
+
+	@Test
+	public void testRotatedLabelsIntersection() {
+		float diagonal = (float) (Math.PI / 4);
+		// 100x10 labels crossing at their centers
+		Assert.assertTrue(LabelPlacementEngine.intersects(new QuadRect(0, 0, 100, 10), diagonal,
+				new QuadRect(0, 0, 100, 10), -diagonal));
+		// parallel diagonal labels one above another (bounding boxes intersect) and on the same line
+		Assert.assertFalse(LabelPlacementEngine.intersects(new QuadRect(0, 0, 100, 10), diagonal,
+				new QuadRect(10, -10, 110, 0), diagonal));
+		Assert.assertTrue(LabelPlacementEngine.intersects(new QuadRect(0, 0, 100, 10), diagonal,
+				new QuadRect(30, 30, 130, 40), diagonal));
+		// vertical label next to diagonal one
+		Assert.assertFalse(LabelPlacementEngine.intersects(new QuadRect(0, 0, 100, 10), diagonal,
+				new QuadRect(60, 60, 160, 70), (float) (Math.PI / 2)));
+		Assert.assertTrue(LabelPlacementEngine.intersects(new QuadRect(0, 0, 100, 10), diagonal,
+				new QuadRect(20, 40, 120, 50), (float) (Math.PI / 2)));
+	}
+}
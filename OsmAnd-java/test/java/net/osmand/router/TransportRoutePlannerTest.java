@@ -0,0 +1,81 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.data.QuadRect;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+import net.osmand.router.TransportRoutePlanner.TransportRouteResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransportRoutePlannerTest {
+
+	private static TransportStop stop(long id, double lat, double lon) {
+		TransportStop s = new TransportStop();
+		s.setId(id);
+		s.setName("s" + id);
+		s.setLocation(lat, lon);
+		return s;
+	}
+
+	private static TransportRoute route(long id, String type, TransportStop... stops) {
+		TransportRoute r = new TransportRoute();
+		r.setId(id);
+		r.setRef(id + "");
+		r.setType(type);
+		for (TransportStop s : stops) {
+			r.getForwardStops().add(s);
+		}
+		for (int i = stops.length - 1; i >= 0; i--) {
+			r.getBackwardStops().add(stops[i]);
+		}
+		return r;
+	}
+
+	private static TransportRoutingContext context(final List<TransportRoute> routes) {
+		return new TransportRoutingContext(new BinaryMapIndexReader[0]) {
+			@Override
+			public List<TransportRoute> loadRoutes(QuadRect latLonBox) throws IOException {
+				return routes;
+			}
+		};
+	}
+
+	@Test
+	public void testTransfer() throws IOException {
+		// west-east bus line and north-south tram line crossing at stop 3
+		List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		routes.add(route(1, "bus", stop(1, 52.0, 4.00), stop(2, 52.0, 4.05), stop(3, 52.0, 4.10)));
+		routes.add(route(2, "tram", stop(3, 52.0, 4.10), stop(4, 52.05, 4.10), stop(5, 52.10, 4.10)));
+		TransportRoutePlanner planner = new TransportRoutePlanner(context(routes));
+		List<TransportRouteResult> res = planner.searchRoutes(new LatLon(52.0, 4.001), new LatLon(52.1, 4.101), 3);
+		Assert.assertFalse(res.isEmpty());
+		TransportRouteResult best = res.get(0);
+		Assert.assertEquals(1, best.getChanges());
+		Assert.assertEquals(1L, best.getSegments().get(0).getRoute().getId().longValue());
+		Assert.assertEquals(3L, best.getSegments().get(0).getEnd().getId().longValue());
+		Assert.assertEquals(2L, best.getSegments().get(1).getRoute().getId().longValue());
+		Assert.assertEquals(5L, best.getSegments().get(1).getEnd().getId().longValue());
+	}
+
+	@Test
+	public void testDirectRouteAndAlternative() throws IOException {
+		List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		routes.add(route(1, "bus", stop(1, 52.0, 4.00), stop(2, 52.0, 4.05), stop(3, 52.0, 4.10)));
+		routes.add(route(2, "train", stop(11, 52.0, 4.0005), stop(13, 52.0, 4.0995)));
+		TransportRoutePlanner planner = new TransportRoutePlanner(context(routes));
+		List<TransportRouteResult> res = planner.searchRoutes(new LatLon(52.0, 4.0), new LatLon(52.0, 4.1), 2);
+		Assert.assertEquals(2, res.size());
+		// train is faster
+		Assert.assertEquals(2L, res.get(0).getSegments().get(0).getRoute().getId().longValue());
+		Assert.assertEquals(0, res.get(0).getChanges());
+		Assert.assertEquals(1L, res.get(1).getSegments().get(0).getRoute().getId().longValue());
+		Assert.assertTrue(res.get(0).getTime() < res.get(1).getTime());
+	}
+}
@@ -502,6 +502,7 @@ public class AppInitializer implements IProgress {
 			restoreBackupForFavoritesFiles();
 			notifyEvent(InitEvents.RESTORE_BACKUPS);
 			checkLiveUpdatesAlerts();
+			app.resourceManager.mergeIncrementalUpdatesAsync();
 			LocalIndexHelper helper = new LocalIndexHelper(app);
 		} catch (RuntimeException e) {
 			e.printStackTrace();
@@ -3,6 +3,7 @@ package net.osmand.plus;
 import android.os.AsyncTask;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -11,11 +12,13 @@ import java.util.List;
 
 import net.osmand.Location;
 import net.osmand.ResultMatcher;
+import net.osmand.binary.BatchReverseGeocoder;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.GeocodingUtilities;
 import net.osmand.binary.GeocodingUtilities.GeocodingResult;
 import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
 import net.osmand.plus.resources.RegionAddressRepository;
 import net.osmand.router.GeneralRouter.GeneralRouterProfile;
 import net.osmand.router.RoutePlannerFrontEnd;
@@ -29,6 +32,9 @@ public class CurrentPositionHelper {
 	private Location lastAskedLocation = null;
 	private RoutingContext ctx;
 	private RoutingContext defCtx;
+	private BatchReverseGeocoder batchGeocoder;
+	private BinaryMapIndexReader[] batchReaders;
+	private List<BinaryMapIndexReader> batchHeaders;
 	private OsmandApplication app;
 	private ApplicationMode am;
 
@@ -51,6 +57,7 @@ public class CurrentPositionHelper {
 		RoutingConfiguration cfg = app.getDefaultRoutingConfig().build(p.name().toLowerCase(), 10, 
 				new HashMap<String, String>());
 		ctx = new RoutePlannerFrontEnd(false).buildRoutingContext(cfg, null, app.getResourceManager().getRoutingMapFiles());
+		ctx.liveUpdates = app.getResourceManager().getLiveUpdatesOverlay();
 		RoutingConfiguration defCfg = app.getDefaultRoutingConfig().build(GeneralRouterProfile.CAR.name().toLowerCase(), 10, 
 				new HashMap<String, String>());
 		BinaryMapIndexReader[] rs = new BinaryMapIndexReader[app.getResourceManager().getAddressRepositories().size()];
@@ -61,6 +68,49 @@ public class CurrentPositionHelper {
 		defCtx = new RoutePlannerFrontEnd(false).buildRoutingContext(defCfg, null, rs);
 	}
 
+	/**
+	 * Batch geocoder reads files with its own readers: readers of address repositories are guarded by
+	 * their synchronized methods and can't be used from that thread
+	 */
+	private void initBatchGeocoder() throws IOException {
+		List<BinaryMapIndexReader> headers = new ArrayList<>();
+		for (RegionAddressRepository rep : app.getResourceManager().getAddressRepositories()) {
+			if (rep.getFile() != null && rep.getFile().getFile() != null) {
+				headers.add(rep.getFile());
+			}
+		}
+		if (batchGeocoder != null && headers.equals(batchHeaders)) {
+			return;
+		}
+		closeBatchReaders();
+		BinaryMapIndexReader[] rs = new BinaryMapIndexReader[headers.size()];
+		for (int i = 0; i < rs.length; i++) {
+			BinaryMapIndexReader header = headers.get(i);
+			rs[i] = new BinaryMapIndexReader(new RandomAccessFile(header.getFile(), "r"), header);
+		}
+		RoutingConfiguration cfg = app.getDefaultRoutingConfig().build(GeneralRouterProfile.CAR.name().toLowerCase(), 10,
+				new HashMap<String, String>());
+		RoutingContext batchCtx = new RoutePlannerFrontEnd(false).buildRoutingContext(cfg, null, rs);
+		batchReaders = rs;
+		batchHeaders = headers;
+		batchGeocoder = new BatchReverseGeocoder(batchCtx, rs);
+	}
+
+	private void closeBatchReaders() {
+		if (batchReaders != null) {
+			for (BinaryMapIndexReader r : batchReaders) {
+				try {
+					r.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		batchReaders = null;
+		batchHeaders = null;
+		batchGeocoder = null;
+	}
+
 	private boolean scheduleRouteSegmentFind(final Location loc, final boolean storeFound, final ResultMatcher<GeocodingResult> geoCoding, final ResultMatcher<RouteDataObject> result) {
 		boolean res = false;
 		if (loc != null) {
@@ -186,6 +236,16 @@ public class CurrentPositionHelper {
 		return scheduleRouteSegmentFind(loc, false, result, null);
 	}
 	
+	/**
+	 * Geocodes points (track, favorites) in the calling thread, streets are loaded once for neighbour points.
+	 * @return best result for each point in the same order
+	 */
+	public synchronized List<GeocodingResult> getGeocodingResults(List<LatLon> points,
+			ResultMatcher<GeocodingResult> progress) throws IOException {
+		initBatchGeocoder();
+		return batchGeocoder.search(points, progress);
+	}
+
 	public RouteDataObject getLastKnownRouteSegment(Location loc) {
 		Location last = lastAskedLocation;
 		RouteDataObject r = lastFound;
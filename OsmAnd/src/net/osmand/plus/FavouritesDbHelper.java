@@ -3,6 +3,7 @@ package net.osmand.plus;
 import android.content.Context;
 import android.support.v7.app.AlertDialog;
 
+import net.osmand.NormalizedName;
 import net.osmand.PlatformUtil;
 import net.osmand.data.FavouritePoint;
 import net.osmand.plus.GPXUtilities.GPXFile;
@@ -511,20 +512,12 @@ public class FavouritesDbHelper {
 			public int compare(FavouritePoint o1, FavouritePoint o2) {
 				String s1 = o1.getName();
 				String s2 = o2.getName();
-				int i1 = Algorithms.extractIntegerNumber(s1);
-				int i2 = Algorithms.extractIntegerNumber(s2);
-				String ot1 = Algorithms.extractIntegerPrefix(s1);
-				String ot2 = Algorithms.extractIntegerPrefix(s2);
-				// Next 6 lines needed for correct comparison of names with and without digits
-				if (ot1.length() == 0) {
-					ot1 = s1;
-				}
-				if (ot2.length() == 0) {
-					ot2 = s2;
-				}
-				int res = collator.compare(ot1, ot2);
+				// prefix is the whole name for names starting with digits
+				NormalizedName n1 = NormalizedName.get(s1);
+				NormalizedName n2 = NormalizedName.get(s2);
+				int res = collator.compare(n1.getNumberPrefix(), n2.getNumberPrefix());
 				if (res == 0) {
-					res = i1 - i2;
+					res = n1.getNumber() - n2.getNumber();
 				}
 				if (res == 0) {
 					res = collator.compare(s1, s2);
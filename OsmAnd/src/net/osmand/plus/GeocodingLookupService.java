@@ -10,6 +10,7 @@ import net.osmand.binary.RouteDataObject;
 import net.osmand.data.LatLon;
 import net.osmand.util.Algorithms;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -123,6 +124,55 @@ public class GeocodingLookupService {
 		}
 	}
 
+	private String getAddress(GeocodingResult object) {
+		String result = null;
+		if (object != null) {
+			OsmandSettings settings = app.getSettings();
+			String lang = settings.MAP_PREFERRED_LOCALE.get();
+			String geocodingResult = "";
+			double relevantDistance = -1;
+
+			if (object.building != null) {
+				String bldName = object.building.getName(lang);
+				if (!Algorithms.isEmpty(object.buildingInterpolation)) {
+					bldName = object.buildingInterpolation;
+				}
+				geocodingResult = object.street.getName(lang) + " " + bldName + ", "
+						+ object.city.getName(lang);
+			} else if (object.street != null) {
+				geocodingResult = object.street.getName(lang) + ", " + object.city.getName(lang);
+				relevantDistance = object.getDistanceP();
+			} else if (object.city != null) {
+				geocodingResult = object.city.getName(lang);
+			} else if (object.point != null) {
+				RouteDataObject rd = object.point.getRoad();
+				String sname = rd.getName(lang);
+				if (Algorithms.isEmpty(sname)) {
+					sname = "";
+				}
+				String ref = rd.getRef();
+				if (!Algorithms.isEmpty(ref)) {
+					if (!Algorithms.isEmpty(sname)) {
+						sname += ", ";
+					}
+					sname += ref;
+				}
+				geocodingResult = sname;
+				relevantDistance = object.getDistanceP();
+			}
+
+			result = geocodingResult;
+			if (relevantDistance == -1) {
+				relevantDistance = object.getDistance();
+			}
+
+			if (!Algorithms.isEmpty(result) && relevantDistance > 100) {
+				result = app.getString(R.string.shared_string_near) + " " + result;
+			}
+		}
+		return result;
+	}
+
 	private boolean geocode(final LatLon latLon) {
 		Location loc = new Location("");
 		loc.setLatitude(latLon.getLatitude());
@@ -132,51 +182,7 @@ public class GeocodingLookupService {
 
 					@Override
 					public boolean publish(GeocodingResult object) {
-						String result = null;
-						if (object != null) {
-							OsmandSettings settings = app.getSettings();
-							String lang = settings.MAP_PREFERRED_LOCALE.get();
-							String geocodingResult = "";
-							double relevantDistance = -1;
-
-							if (object.building != null) {
-								String bldName = object.building.getName(lang);
-								if (!Algorithms.isEmpty(object.buildingInterpolation)) {
-									bldName = object.buildingInterpolation;
-								}
-								geocodingResult = object.street.getName(lang) + " " + bldName + ", "
-										+ object.city.getName(lang);
-							} else if (object.street != null) {
-								geocodingResult = object.street.getName(lang) + ", " + object.city.getName(lang);
-								relevantDistance = object.getDistanceP();
-							} else if (object.city != null) {
-								geocodingResult = object.city.getName(lang);
-							} else if (object.point != null) {
-								RouteDataObject rd = object.point.getRoad();
-								String sname = rd.getName(lang);
-								if (Algorithms.isEmpty(sname)) {
-									sname = "";
-								}
-								String ref = rd.getRef();
-								if (!Algorithms.isEmpty(ref)) {
-									if (!Algorithms.isEmpty(sname)) {
-										sname += ", ";
-									}
-									sname += ref;
-								}
-								geocodingResult = sname;
-								relevantDistance = object.getDistanceP();
-							}
-
-							result = geocodingResult;
-							if (relevantDistance == -1) {
-								relevantDistance = object.getDistance();
-							}
-
-							if (!Algorithms.isEmpty(result) && relevantDistance > 100) {
-								result = app.getString(R.string.shared_string_near) + " " + result;
-							}
-						}
+						String result = getAddress(object);
 
 						lastFoundAddress = result;
 						searchDone = true;
@@ -192,6 +198,61 @@ public class GeocodingLookupService {
 				});
 	}
 
+	private void geocodeBatch() throws IOException {
+		final List<LatLon> points = new ArrayList<>();
+		synchronized (this) {
+			while (!lookupLocations.isEmpty()) {
+				LatLon latLon = lookupLocations.poll();
+				if (hasAnyRequest(latLon)) {
+					points.add(latLon);
+				} else {
+					addressLookupRequestsMap.remove(latLon);
+				}
+			}
+		}
+		List<GeocodingResult> results = app.getLocationProvider().getGeocodingResults(points,
+				new ResultMatcher<GeocodingResult>() {
+
+					@Override
+					public boolean publish(GeocodingResult object) {
+						return true;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						for (LatLon latLon : points) {
+							if (hasAnyRequest(latLon)) {
+								return false;
+							}
+						}
+						return true;
+					}
+				});
+		for (int i = 0; i < points.size(); i++) {
+			GeocodingResult r = results.get(i);
+			publishAddress(points.get(i), r == null ? null : getAddress(r));
+		}
+	}
+
+	private void publishAddress(LatLon latLon, final String address) {
+		synchronized (this) {
+			List<AddressLookupRequest> requests = addressLookupRequestsMap.get(latLon);
+			if (requests != null) {
+				for (final AddressLookupRequest request : requests) {
+					if (request.uiResultCallback != null) {
+						app.runInUIThread(new Runnable() {
+							@Override
+							public void run() {
+								request.uiResultCallback.geocodingDone(address);
+							}
+						});
+					}
+				}
+			}
+			addressLookupRequestsMap.remove(latLon);
+		}
+	}
+
 	private class AddressLookupRequestsAsyncTask extends AsyncTask<AddressLookupRequest, AddressLookupRequest, Void> {
 
 		private OsmandApplication app;
@@ -206,6 +267,11 @@ public class GeocodingLookupService {
 			for (;;) {
 				try {
 					while (!lookupLocations.isEmpty()) {
+						if (lookupLocations.size() > 1) {
+							// several points (favorites, waypoints) are geocoded together to share loaded streets
+							geocodeBatch();
+							continue;
+						}
 						final LatLon latLon;
 						synchronized (GeocodingLookupService.this) {
 							latLon = lookupLocations.poll();
@@ -254,20 +320,7 @@ public class GeocodingLookupService {
 							}
 						}
 
-						synchronized (GeocodingLookupService.this) {
-							List<AddressLookupRequest> requests = addressLookupRequestsMap.get(latLon);
-							for (final AddressLookupRequest request : requests) {
-								if (request.uiResultCallback != null) {
-									app.runInUIThread(new Runnable() {
-										@Override
-										public void run() {
-											request.uiResultCallback.geocodingDone(lastFoundAddress);
-										}
-									});
-								}
-							}
-							addressLookupRequestsMap.remove(latLon);
-						}
+						publishAddress(latLon, lastFoundAddress);
 					}
 
 				} catch (Exception e) {
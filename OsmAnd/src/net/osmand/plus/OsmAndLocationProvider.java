@@ -38,6 +38,7 @@ import net.osmand.plus.routing.RoutingHelper;
 import net.osmand.router.RouteSegmentResult;
 import net.osmand.util.MapUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -863,6 +864,11 @@ public class OsmAndLocationProvider implements SensorEventListener {
 		return currentPositionHelper.getGeocodingResult(loc, result);
 	}
 
+	public List<GeocodingResult> getGeocodingResults(List<LatLon> points, ResultMatcher<GeocodingResult> progress)
+			throws IOException {
+		return currentPositionHelper.getGeocodingResults(points, progress);
+	}
+
 	public net.osmand.Location getLastKnownLocation() {
 		return location;
 	}
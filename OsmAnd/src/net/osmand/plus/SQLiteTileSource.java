@@ -1,22 +1,28 @@
 package net.osmand.plus;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.osmand.IndexConstants;
 import net.osmand.PlatformUtil;
 import net.osmand.access.AccessibleToast;
 import net.osmand.data.QuadRect;
+import net.osmand.map.BatchTileDownloader.DownloadedTile;
 import net.osmand.map.ITileSource;
 import net.osmand.map.TileSourceManager;
 import net.osmand.map.TileSourceManager.TileSourceTemplate;
 import net.osmand.plus.api.SQLiteAPI.SQLiteConnection;
 import net.osmand.plus.api.SQLiteAPI.SQLiteCursor;
+import net.osmand.plus.api.SQLiteAPI.SQLiteStatement;
 import net.osmand.util.Algorithms;
 
 import org.apache.commons.logging.Log;
@@ -52,6 +58,38 @@ public class SQLiteTileSource implements ITileSource {
 	private OsmandApplication ctx;
 	private boolean onlyReadonlyAvailable = false;
 	
+	// tiles are written by background writer in transactions of WRITE_BATCH_SIZE tiles
+	private static final int WRITE_BATCH_SIZE = 32;
+	// writer waits for full batch not longer than WRITE_DELAY ms
+	private static final long WRITE_DELAY = 1000;
+	// when writer falls behind, inserting thread writes queued tiles itself
+	private static final int MAX_PENDING_TILES = 256;
+	private static final int CLEANUP_BATCH_SIZE = 500;
+	
+	// tiles not yet written to db (guards writer as well)
+	private final Map<Long, PendingTile> pending = new LinkedHashMap<Long, PendingTile>();
+	private TileWriter writer;
+	private boolean cleanupRequested;
+	// guards writes to db, insertStatement and closing of db
+	private final Object writeLock = new Object();
+	private SQLiteStatement insertStatement;
+	
+	private static class PendingTile {
+		final int x;
+		final int y;
+		final int zoom;
+		final byte[] data;
+		final long time;
+		
+		PendingTile(int x, int y, int zoom, byte[] data, long time) {
+			this.x = x;
+			this.y = y;
+			this.zoom = zoom;
+			this.data = data;
+			this.time = time;
+		}
+	}
+	
 	
 	
 	public SQLiteTileSource(OsmandApplication ctx, File f, List<TileSourceTemplate> toFindUrl){
@@ -175,6 +213,9 @@ public class SQLiteTileSource implements ITileSource {
 				onlyReadonlyAvailable = true;
 				db = ctx.getSQLiteAPI().openByAbsolutePath(file.getAbsolutePath(), true);
 			}
+			if (!onlyReadonlyAvailable) {
+				enableWriteAheadLog();
+			}
 			try {
 				SQLiteCursor cursor = db.rawQuery("SELECT * FROM info", null);
 				if(cursor.moveToFirst()) {
@@ -247,10 +288,30 @@ public class SQLiteTileSource implements ITileSource {
 			} catch (RuntimeException e) {
 				e.printStackTrace();
 			}
+			if (timeSupported && expirationTimeMillis > 0 && !onlyReadonlyAvailable) {
+				synchronized (pending) {
+					cleanupRequested = true;
+					startWriter();
+				}
+			}
 		}
 		return db;
 	}
 
+	/**
+	 * WAL lets readers (map drawing) work while tiles are written. Open flag is only supported since
+	 * Android 4.1, so write-ahead logging is also enabled explicitly.
+	 */
+	private void enableWriteAheadLog() {
+		try {
+			if (!db.enableWriteAheadLogging()) {
+				LOG.warn("WAL mode is not available for " + file.getName()); //$NON-NLS-1$
+			}
+		} catch (RuntimeException e) {
+			LOG.warn("WAL mode is not available for " + file.getName(), e); //$NON-NLS-1$
+		}
+	}
+
 	private void addInfoColumn(String columnName, String value) {
 		if(!onlyReadonlyAvailable) {
 			db.execSQL("alter table info add column "+columnName+" TEXT");
@@ -269,6 +330,9 @@ public class SQLiteTileSource implements ITileSource {
 	}
 	
 	public boolean exists(int x, int y, int zoom) {
+		if (getPending(x, y, zoom) != null) {
+			return true;
+		}
 		SQLiteConnection db = getDatabase();
 		if (db == null) {
 			return false;
@@ -292,6 +356,28 @@ public class SQLiteTileSource implements ITileSource {
 		}
 	}
 	
+	/**
+	 * @return time when tile was saved, 0 if time is not stored and -1 if there is no tile
+	 */
+	public long getTileTime(int x, int y, int zoom) {
+		PendingTile p = getPending(x, y, zoom);
+		if (p != null) {
+			return p.time;
+		}
+		SQLiteConnection db = getDatabase();
+		if (db == null) {
+			return -1;
+		}
+		SQLiteCursor cursor = db.rawQuery("SELECT " + (timeSupported ? "time" : "0") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ " FROM tiles WHERE x = ? AND y = ? AND z = ?", //$NON-NLS-1$
+				new String[] { x + "", y + "", getFileZoom(zoom) + "" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		try {
+			return cursor.moveToFirst() ? Math.max(0, cursor.getLong(0)) : -1;
+		} finally {
+			cursor.close();
+		}
+	}
+	
 	public boolean isLocked() {
 		SQLiteConnection db = getDatabase();
 		if(db == null){
@@ -305,6 +391,13 @@ public class SQLiteTileSource implements ITileSource {
 		if(db == null){
 			return null;
 		}
+		PendingTile p = getPending(x, y, zoom);
+		if (p != null) {
+			if (timeHolder != null && timeHolder.length > 0 && timeSupported) {
+				timeHolder[0] = p.time;
+			}
+			return p.data;
+		}
 		long ts = System.currentTimeMillis();
 		try {
 			if (zoom <= maxZoom) {
@@ -393,6 +486,9 @@ public class SQLiteTileSource implements ITileSource {
 	}
 
 	public void deleteImage(int x, int y, int zoom) {
+		synchronized (pending) {
+			pending.remove(getPendingKey(x, y, zoom));
+		}
 		SQLiteConnection db = getDatabase();
 		if(db == null || db.isReadOnly()){
 			return;
@@ -400,50 +496,191 @@ public class SQLiteTileSource implements ITileSource {
 		db.execSQL("DELETE FROM tiles WHERE x = ? AND y = ? AND z = ?", new String[] {x+"", y+"", getFileZoom(zoom)+""});    //$NON-NLS-1$//$NON-NLS-2$//$NON-NLS-3$//$NON-NLS-4$
 	}
 
-	private static final int BUF_SIZE = 1024;
-	
 	public void insertImage(int x, int y, int zoom, File fileToSave) throws IOException {
-		ByteBuffer buf = ByteBuffer.allocate((int) fileToSave.length());
 		FileInputStream is = new FileInputStream(fileToSave);
-		int i = 0;
-		byte[] b = new byte[BUF_SIZE];
-		while ((i = is.read(b, 0, BUF_SIZE)) > -1) {
-			buf.put(b, 0, i);
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) fileToSave.length());
+		try {
+			Algorithms.streamCopy(is, out);
+		} finally {
+			Algorithms.closeStream(is);
 		}
-
-		insertImage(x, y, zoom, buf.array());
-		is.close();
+		insertImage(x, y, zoom, out.toByteArray());
 	}
+	
 	/**
-	 * Makes method synchronized to give a little more time for get methods and 
-	 * let all writing attempts to wait outside of this method   
+	 * Queues tile to be written by background writer. Queued tiles are visible to readers of this source
+	 * and are written on {@link #closeDB()}.
 	 */
-	public /*synchronized*/ void insertImage(int x, int y, int zoom, byte[] dataToSave) throws IOException {
+	public void insertImage(int x, int y, int zoom, byte[] dataToSave) throws IOException {
 		SQLiteConnection db = getDatabase();
 		if (db == null || db.isReadOnly() || onlyReadonlyAvailable) {
 			return;
 		}
-		/*There is no sense to downoad and do not save. If needed, check should perform before downlad 
-		  if (exists(x, y, zoom)) {
+		boolean writeNow;
+		synchronized (pending) {
+			pending.put(getPendingKey(x, y, zoom), new PendingTile(x, y, zoom, dataToSave, System.currentTimeMillis()));
+			startWriter();
+			// writer is woken up by first tile (to start waiting for batch) and by full batch
+			if (pending.size() == 1 || pending.size() == WRITE_BATCH_SIZE) {
+				pending.notifyAll();
+			}
+			writeNow = pending.size() >= MAX_PENDING_TILES;
+		}
+		if (writeNow) {
+			flush();
+		}
+	}
+
+	/**
+	 * Inserts downloaded tiles in one transaction
+	 */
+	public void insertImages(List<DownloadedTile> tiles) throws IOException {
+		SQLiteConnection db = getDatabase();
+		if (db == null || db.isReadOnly() || onlyReadonlyAvailable || tiles.isEmpty()) {
 			return;
-		}*/
+		}
+		long time = System.currentTimeMillis();
+		List<PendingTile> toWrite = new ArrayList<PendingTile>(tiles.size());
+		for (DownloadedTile t : tiles) {
+			toWrite.add(new PendingTile(t.request.xTile, t.request.yTile, t.request.zoom, t.data, time));
+		}
+		try {
+			synchronized (writeLock) {
+				writeTiles(toWrite);
+			}
+		} catch (RuntimeException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Writes all queued tiles
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			while (writeQueuedBatch()) {
+			}
+		}
+	}
+	
+	private static long getPendingKey(int x, int y, int zoom) {
+		return ((((long) zoom) << 25 | x) << 25) | y;
+	}
+	
+	private PendingTile getPending(int x, int y, int zoom) {
+		synchronized (pending) {
+			return pending.isEmpty() ? null : pending.get(getPendingKey(x, y, zoom));
+		}
+	}
+	
+	// should be called under pending lock
+	private void startWriter() {
+		if (writer == null) {
+			writer = new TileWriter();
+			writer.start();
+		}
+	}
+	
+	// should be called under write lock, returns false if nothing was written
+	private boolean writeQueuedBatch() {
+		List<PendingTile> batch;
+		synchronized (pending) {
+			if (pending.isEmpty()) {
+				return false;
+			}
+			batch = new ArrayList<PendingTile>(Math.min(pending.size(), WRITE_BATCH_SIZE));
+			Iterator<PendingTile> it = pending.values().iterator();
+			while (it.hasNext() && batch.size() < WRITE_BATCH_SIZE) {
+				batch.add(it.next());
+			}
+		}
+		try {
+			writeTiles(batch);
+		} catch (RuntimeException e) {
+			LOG.error("Tiles couldn't be written to " + file.getName(), e); //$NON-NLS-1$
+		}
+		synchronized (pending) {
+			// tiles stay readable from the queue until they are in db, replaced tiles are written later
+			for (PendingTile t : batch) {
+				long key = getPendingKey(t.x, t.y, t.zoom);
+				if (pending.get(key) == t) {
+					pending.remove(key);
+				}
+			}
+		}
+		return true;
+	}
+	
+	// should be called under write lock
+	private void writeTiles(List<PendingTile> tiles) {
+		if (db == null || db.isClosed()) {
+			return;
+		}
+		if (insertStatement == null) {
+			String query = timeSupported ? "INSERT OR REPLACE INTO tiles(x,y,z,s,image,time) VALUES(?, ?, ?, ?, ?, ?)"
+					: "INSERT OR REPLACE INTO tiles(x,y,z,s,image) VALUES(?, ?, ?, ?, ?)";
+			insertStatement = db.compileStatement(query);
+		}
+		db.beginTransaction();
+		try {
+			for (PendingTile t : tiles) {
+				insertStatement.bindLong(1, t.x);
+				insertStatement.bindLong(2, t.y);
+				insertStatement.bindLong(3, getFileZoom(t.zoom));
+				insertStatement.bindLong(4, 0);
+				insertStatement.bindBlob(5, t.data);
+				if (timeSupported) {
+					insertStatement.bindLong(6, t.time);
+				}
+				insertStatement.execute();
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+	
+	/**
+	 * Writes queued tiles in batches and (when there is nothing to write) deletes expired tiles
+	 */
+	private class TileWriter extends Thread {
+		private volatile boolean stopped;
 		
-		String query = timeSupported ? "INSERT OR REPLACE INTO tiles(x,y,z,s,image,time) VALUES(?, ?, ?, ?, ?, ?)"
-				: "INSERT OR REPLACE INTO tiles(x,y,z,s,image) VALUES(?, ?, ?, ?, ?)";
-		net.osmand.plus.api.SQLiteAPI.SQLiteStatement statement = db.compileStatement(query); //$NON-NLS-1$
-		statement.bindLong(1, x);
-		statement.bindLong(2, y);
-		statement.bindLong(3, getFileZoom(zoom));
-		statement.bindLong(4, 0);
-		statement.bindBlob(5, dataToSave);
-		if (timeSupported) {
-			statement.bindLong(6, System.currentTimeMillis());
-		}
-		statement.execute();
-		statement.close();
-
+		TileWriter() {
+			super("Tile writer " + name); //$NON-NLS-1$
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (!stopped) {
+					synchronized (pending) {
+						while (!stopped && pending.isEmpty() && !cleanupRequested) {
+							pending.wait();
+						}
+						if (!stopped && !pending.isEmpty() && pending.size() < WRITE_BATCH_SIZE) {
+							pending.wait(WRITE_DELAY);
+						}
+					}
+					synchronized (writeLock) {
+						if (stopped) {
+							break;
+						}
+						if (!writeQueuedBatch() && cleanupRequested) {
+							boolean more = deleteExpiredBatch();
+							synchronized (pending) {
+								cleanupRequested = more;
+							}
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				LOG.debug("Tile writer is interrupted"); //$NON-NLS-1$
+			}
+		}
 	}
-
+	
 	private int getFileZoom(int zoom) {
 		return inversiveZoom ? 17 - zoom : zoom;
 	}
@@ -451,22 +688,73 @@ public class SQLiteTileSource implements ITileSource {
 	public void closeDB(){
 		LOG.debug("closeDB");
 		bshInterpreter = null;
-		if(timeSupported)
-			clearOld();
-		if(db != null){
-			db.close();
-			db = null;
+		synchronized (pending) {
+			if (writer != null) {
+				writer.stopped = true;
+				writer = null;
+			}
+			cleanupRequested = false;
+			pending.notifyAll();
+		}
+		synchronized (writeLock) {
+			while (writeQueuedBatch()) {
+			}
+			if (insertStatement != null) {
+				insertStatement.close();
+				insertStatement = null;
+			}
+			if (db != null) {
+				db.close();
+				db = null;
+			}
 		}
 	}
 
+	/**
+	 * Deletes expired tiles in small transactions, so readers and writer are not blocked for long.
+	 * Free pages are reused by sqlite, file is not vacuumed.
+	 */
 	public void clearOld() {
 		SQLiteConnection db = getDatabase();
-		if(db == null || db.isReadOnly()){
+		if (db == null || db.isReadOnly()) {
 			return;
 		}
-		LOG.debug("DELETE FROM tiles WHERE time<" + (System.currentTimeMillis() - getExpirationTimeMillis()));
-		db.execSQL("DELETE FROM tiles WHERE time<"+(System.currentTimeMillis()-getExpirationTimeMillis()));    //$NON-NLS-1$//$NON-NLS-2$//$NON-NLS-3$//$NON-NLS-4$
-		db.execSQL("VACUUM");    //$NON-NLS-1$//$NON-NLS-2$//$NON-NLS-3$//$NON-NLS-4$
+		boolean more = true;
+		while (more) {
+			synchronized (writeLock) {
+				more = deleteExpiredBatch();
+			}
+		}
+	}
+
+	// should be called under write lock, returns true if there could be more expired tiles
+	private boolean deleteExpiredBatch() {
+		if (db == null || db.isClosed() || !timeSupported || getExpirationTimeMillis() <= 0) {
+			return false;
+		}
+		long time = System.currentTimeMillis() - getExpirationTimeMillis();
+		long deleted;
+		db.beginTransaction();
+		try {
+			db.execSQL("DELETE FROM tiles WHERE rowid IN (SELECT rowid FROM tiles WHERE time < " + time //$NON-NLS-1$
+					+ " LIMIT " + CLEANUP_BATCH_SIZE + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+			SQLiteStatement changes = db.compileStatement("SELECT changes()"); //$NON-NLS-1$
+			try {
+				deleted = changes.simpleQueryForLong();
+			} finally {
+				changes.close();
+			}
+			db.setTransactionSuccessful();
+		} catch (RuntimeException e) {
+			LOG.error("Expired tiles couldn't be deleted from " + file.getName(), e); //$NON-NLS-1$
+			return false;
+		} finally {
+			db.endTransaction();
+		}
+		if (deleted > 0) {
+			LOG.debug("Deleted " + deleted + " expired tiles from " + file.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return deleted >= CLEANUP_BATCH_SIZE;
 	}
 
 	@Override
@@ -10,18 +10,23 @@ import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import net.osmand.IndexConstants;
 import net.osmand.PlatformUtil;
 import net.osmand.access.AccessibleToast;
 import net.osmand.data.QuadRect;
 import net.osmand.data.RotatedTileBox;
+import net.osmand.map.BatchTileDownloader.DownloadedTile;
 import net.osmand.map.ITileSource;
 import net.osmand.map.MapTileDownloader;
-import net.osmand.map.MapTileDownloader.DownloadRequest;
-import net.osmand.map.MapTileDownloader.IMapDownloaderCallback;
+import net.osmand.map.TileSeeder;
+import net.osmand.map.TileSeeder.DirectoryTileStore;
+import net.osmand.map.TileSeeder.SeedProgress;
+import net.osmand.map.TileSeeder.TileStore;
+import net.osmand.map.TileSourceManager.TileSourceTemplate;
 import net.osmand.plus.OsmandApplication;
 import net.osmand.plus.R;
+import net.osmand.plus.SQLiteTileSource;
 import net.osmand.plus.Version;
-import net.osmand.plus.resources.ResourceManager;
 import net.osmand.plus.views.BaseMapLayer;
 import net.osmand.plus.views.MapTileLayer;
 import net.osmand.plus.views.OsmandMapTileView;
@@ -29,6 +34,7 @@ import net.osmand.util.MapUtils;
 
 import org.apache.commons.logging.Log;
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.List;
 
@@ -109,105 +115,60 @@ public class DownloadTilesDialog {
 		builder.show();
 	}
 	
-	private volatile boolean cancel = false;
-	private IMapDownloaderCallback callback;
 	
 	public void run(final int zoom, final int progress, final QuadRect latlonRect, final ITileSource map){
-		cancel = false;
-		int numberTiles = 0;
-		for (int z = zoom; z <= progress + zoom; z++) {
-			int x1 = (int) MapUtils.getTileNumberX(z, latlonRect.left);
-			int x2 = (int) MapUtils.getTileNumberX(z, latlonRect.right);
-			int y1 = (int) MapUtils.getTileNumberY(z, latlonRect.top);
-			int y2 = (int) MapUtils.getTileNumberY(z, latlonRect.bottom);
-			numberTiles += (x2 - x1 + 1) * (y2 - y1 + 1);
+		TileStore store;
+		if (map instanceof SQLiteTileSource) {
+			final SQLiteTileSource sqlite = (SQLiteTileSource) map;
+			store = new TileStore() {
+				@Override
+				public void saveTiles(List<DownloadedTile> tiles) throws IOException {
+					sqlite.insertImages(tiles);
+				}
+
+				@Override
+				public long getTileTime(int x, int y, int zoom) {
+					return sqlite.getTileTime(x, y, zoom);
+				}
+			};
+		} else if (map instanceof TileSourceTemplate) {
+			store = new DirectoryTileStore(app.getAppPath(IndexConstants.TILES_INDEX_DIR), (TileSourceTemplate) map);
+		} else {
+			return;
 		}
+		final MapTileDownloader instance = MapTileDownloader.getInstance(Version.getFullVersion(app));
+		final TileSeeder seeder = new TileSeeder(map, store, instance);
+		seeder.setZooms(zoom, zoom + progress);
+		seeder.setBBox(latlonRect.left, latlonRect.top, latlonRect.right, latlonRect.bottom);
+		
 		final ProgressDialog progressDlg = new ProgressDialog(ctx);
 		progressDlg.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
 		progressDlg.setMessage(ctx.getString(R.string.shared_string_downloading) + ctx.getString(R.string.shared_string_ellipsis));
 		progressDlg.setCancelable(true);
-		progressDlg.setMax(numberTiles);
+		progressDlg.setMax(seeder.countTiles());
 		progressDlg.setOnCancelListener(new DialogInterface.OnCancelListener(){
 
 			@Override
 			public void onCancel(DialogInterface dialog) {
-				cancel = true;
+				seeder.cancel();
 			}
 		});
-		
-		final MapTileDownloader instance = MapTileDownloader.getInstance(Version.getFullVersion(app));
-		
-		final List<IMapDownloaderCallback> previousCallbacks = instance.getDownloaderCallbacks();
-		instance.clearCallbacks();
-		callback = new IMapDownloaderCallback(){
+		seeder.setProgress(new SeedProgress() {
 			@Override
-			public void tileDownloaded(DownloadRequest request) {
-				if (request != null) {
-					progressDlg.setProgress(progressDlg.getProgress() + 1);
-				}
+			public void tileProcessed(TileSeeder seeder) {
+				progressDlg.setProgress(seeder.getProcessed());
 			}
-		};
-		instance.addDownloaderCallback(callback);
+		});
 		
 		Runnable r = new Runnable(){
 			@Override
 			public void run() {
-				int requests = 0;
-				int limitRequests = 50;
 				try {
-					ResourceManager rm = app.getResourceManager();
-					for (int z = zoom; z <= zoom + progress && !cancel; z++) {
-						int x1 = (int) MapUtils.getTileNumberX(z, latlonRect.left);
-						int x2 = (int) MapUtils.getTileNumberX(z, latlonRect.right);
-						int y1 = (int) MapUtils.getTileNumberY(z, latlonRect.top);
-						int y2 = (int) MapUtils.getTileNumberY(z, latlonRect.bottom);
-						for (int x = x1; x <= x2 && !cancel; x++) {
-							for (int y = y1; y <= y2 && !cancel; y++) {
-								String tileId = rm.calculateTileId(map, x, y, z);
-								if (rm.tileExistOnFileSystem(tileId, map, x, y, z)) {
-									progressDlg.setProgress(progressDlg.getProgress() + 1);
-								} else {
-									rm.getTileImageForMapSync(tileId, map, x, y, z, true);
-									requests++;
-								}
-								if (!cancel) {
-									if (requests >= limitRequests) {
-										requests = 0;
-
-										while (instance.isSomethingBeingDownloaded()) {
-											try {
-												Thread.sleep(500);
-											} catch (InterruptedException e) {
-												throw new IllegalArgumentException(e);
-											}
-										}
-									}
-								}
-							}
-						}
-						
-					}
-					if(cancel){
-						instance.refuseAllPreviousRequests();
-					} else {
-						while (instance.isSomethingBeingDownloaded()) {
-							try {
-								Thread.sleep(500);
-							} catch (InterruptedException e) {
-								throw new IllegalArgumentException(e);
-							}
-						}
-					}
+					seeder.seed();
 					mapView.refreshMap();
-					callback = null;
 				} catch (Exception e) {
 					log.error("Exception while downloading tiles ", e); //$NON-NLS-1$
-					instance.refuseAllPreviousRequests();
 				} finally {
-					instance.clearCallbacks();
-					for(IMapDownloaderCallback cbck : previousCallbacks) {
-						instance.addDownloaderCallback(cbck);
-					}
 					app.getResourceManager().reloadTilesFromFS();
 				}
 				progressDlg.dismiss();
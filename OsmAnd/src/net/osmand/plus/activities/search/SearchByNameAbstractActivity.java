@@ -39,6 +39,8 @@ import net.osmand.CollatorStringMatcher;
 import net.osmand.CollatorStringMatcher.StringMatcherMode;
 import net.osmand.OsmAndCollator;
 import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.StreamingResultMatcher;
 import net.osmand.data.LatLon;
 import net.osmand.data.MapObject;
 import net.osmand.data.PointDescription;
@@ -72,6 +74,9 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 	
 	protected static final int MESSAGE_CLEAR_LIST = OsmAndConstants.UI_HANDLER_SEARCH + 2;
 	protected static final int MESSAGE_ADD_ENTITY = OsmAndConstants.UI_HANDLER_SEARCH + 3;
+	protected static final int MESSAGE_ADD_BATCH = OsmAndConstants.UI_HANDLER_SEARCH + 4;
+	// filter thread waits when so many results are not yet shown
+	private static final int RESULTS_BUFFER_SIZE = 100;
 	protected static final String SELECT_ADDRESS = "SEQUENTIAL_SEARCH";
 	
 	protected ProgressBar progress;
@@ -80,6 +85,8 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 	protected List<T> initialListToFilter = new ArrayList<>();
 	protected Handler uiHandler;
 	protected Collator collator;
+	private CollatorStringMatcher filterMatcher;
+	private String filterMatcherQuery;
 	protected NamesFilter namesFilter;
 	private String currentFilter = "";
 	private boolean initFilter = false;
@@ -327,13 +334,23 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 		if(filter == null || filter.length() == 0){
 			return true;
 		}
-		boolean matches = CollatorStringMatcher.cmatches(collator, getText(obj), filter, StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+		CollatorStringMatcher matcher = getFilterMatcher(filter);
+		boolean matches = matcher.matches(getText(obj));
 		if(!matches && getAdditionalFilterText(obj) != null) {
-			matches = CollatorStringMatcher.cmatches(collator, getAdditionalFilterText(obj), filter, StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+			matches = matcher.matches(getAdditionalFilterText(obj));
 		}
 		return matches;
 	}
 	
+	private synchronized CollatorStringMatcher getFilterMatcher(String filter) {
+		// filter is the same for all objects, so query is folded only once
+		if (filterMatcher == null || !filter.equals(filterMatcherQuery)) {
+			filterMatcher = new CollatorStringMatcher(filter, StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+			filterMatcherQuery = filter;
+		}
+		return filterMatcher;
+	}
+	
 
 	@Override
 	protected void onResume() {
@@ -377,9 +394,45 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 				break;
 			}
 			if(filterObject(obj, query)){
-				Message msg = uiHandler.obtainMessage(MESSAGE_ADD_ENTITY, obj);
-				msg.sendToTarget();
+				publishEntity(obj);
+			}
+		}
+	}
+	
+	/**
+	 * Matcher for searches run from {@link #filterLoop(String, Collection)}: found objects are streamed
+	 * to the list and reading of the file is stopped as soon as the filter is cancelled.
+	 */
+	protected ResultMatcher<T> getResultMatcher() {
+		StreamingResultMatcher<T> stream = namesFilter.stream;
+		if (stream != null) {
+			return stream;
+		}
+		return new ResultMatcher<T>() {
+			@Override
+			public boolean publish(T object) {
+				publishEntity(object);
+				return true;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return namesFilter.isCancelled;
 			}
+		};
+	}
+	
+	/**
+	 * Passes found object to the list, called from filter thread.
+	 * Objects are shown by batches, the call blocks while too many objects are waiting to be shown.
+	 */
+	protected void publishEntity(T obj) {
+		StreamingResultMatcher<T> stream = namesFilter.stream;
+		if (stream != null) {
+			stream.publish(obj);
+		} else {
+			Message msg = uiHandler.obtainMessage(MESSAGE_ADD_ENTITY, obj);
+			msg.sendToTarget();
 		}
 	}
 	
@@ -402,29 +455,45 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 				}
 				updateTextBox(currentFilter, "", null, true);
 			} else if(msg.what == MESSAGE_ADD_ENTITY){
-				getListAdapter().add((T) msg.obj);
-				if (currentFilter.length() > 0) {
-					String shortText = getShortText((T) msg.obj);
-					int entries = !endingMap.containsKey(shortText) ? 0 : endingMap.get(shortText);
-					if (entries < minimalIndex) {
-						if(minimalText != null) {
-							endingMap.put(minimalText, endingMap.get(minimalText) - 1);
-						}
-						minimalIndex = entries;
-						minimalText = shortText;
-						endingMap.put(shortText, entries + 1);
-						String locEndingText;
-						if (shortText.toLowerCase().startsWith(currentFilter.toLowerCase())) {
-							locEndingText = shortText.substring(currentFilter.length());
-						} else {
-							locEndingText = " - " + shortText;
-						}
-						if (locEndingText.length() > MAX_VISIBLE_NAME) {
-							locEndingText = locEndingText.substring(0, MAX_VISIBLE_NAME) + "..";
-						}
-						updateTextBox(currentFilter, locEndingText, (T) msg.obj, true);
-						
+				addEntity(currentFilter, (T) msg.obj);
+			} else if(msg.what == MESSAGE_ADD_BATCH){
+				StreamingResultMatcher<T> stream = (StreamingResultMatcher<T>) msg.obj;
+				List<T> batch = stream.drain();
+				if (batch.isEmpty() || stream.isCancelled()) {
+					return;
+				}
+				NamesAdapter adapter = getListAdapter();
+				adapter.setNotifyOnChange(false);
+				for (T obj : batch) {
+					addEntity(currentFilter, obj);
+				}
+				adapter.notifyDataSetChanged();
+			}
+		}
+
+		private void addEntity(String currentFilter, T obj) {
+			getListAdapter().add(obj);
+			if (currentFilter.length() > 0) {
+				String shortText = getShortText(obj);
+				int entries = !endingMap.containsKey(shortText) ? 0 : endingMap.get(shortText);
+				if (entries < minimalIndex) {
+					if(minimalText != null) {
+						endingMap.put(minimalText, endingMap.get(minimalText) - 1);
 					}
+					minimalIndex = entries;
+					minimalText = shortText;
+					endingMap.put(shortText, entries + 1);
+					String locEndingText;
+					if (shortText.toLowerCase().startsWith(currentFilter.toLowerCase())) {
+						locEndingText = shortText.substring(currentFilter.length());
+					} else {
+						locEndingText = " - " + shortText;
+					}
+					if (locEndingText.length() > MAX_VISIBLE_NAME) {
+						locEndingText = locEndingText.substring(0, MAX_VISIBLE_NAME) + "..";
+					}
+					updateTextBox(currentFilter, locEndingText, obj, true);
+					
 				}
 			}
 		}
@@ -433,6 +502,7 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 	class NamesFilter extends Filter {
 		
 		protected boolean isCancelled = false;
+		private volatile StreamingResultMatcher<T> stream;
 		private String newFilter;
 		private boolean active = false;
 		private long startTime;
@@ -440,6 +510,10 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 		protected void cancelPreviousFilter(String newFilter){
 			this.newFilter = newFilter;
 			isCancelled = true;
+			StreamingResultMatcher<T> s = stream;
+			if (s != null) {
+				s.cancel();
+			}
 		}
 		
 		
@@ -451,9 +525,19 @@ public abstract class SearchByNameAbstractActivity<T> extends OsmandListActivity
 				active = true;
 				startTime = System.currentTimeMillis();
 				uiHandler.sendEmptyMessage(MESSAGE_CLEAR_LIST);
+				StreamingResultMatcher<T> s = new StreamingResultMatcher<T>(RESULTS_BUFFER_SIZE,
+						new StreamingResultMatcher.BatchListener<T>() {
+							@Override
+							public void batchReady(StreamingResultMatcher<T> matcher) {
+								uiHandler.obtainMessage(MESSAGE_ADD_BATCH, matcher).sendToTarget();
+							}
+						});
+				stream = s;
 				// make link copy
 				Collection<T> list = initialListToFilter;
 				filterLoop(query, list);
+				s.finish();
+				stream = null;
 				active = false;
 			}
 			if(!isCancelled){
@@ -1,7 +1,6 @@
 package net.osmand.plus.activities.search;
 
 import android.os.AsyncTask;
-import android.os.Message;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup.LayoutParams;
@@ -117,19 +116,7 @@ public class SearchCityByNameActivity extends SearchByNameAbstractActivity<City>
 		if(!initializeTaskIsFinished() || (query.length() <= 3  && !searchVillages())){
 			super.filterLoop(query, list);
 		} else {
-			region.fillWithSuggestedCities(query, new ResultMatcher<City>() {
-				@Override
-				public boolean isCancelled() {
-					return namesFilter.isCancelled;
-				}
-
-				@Override
-				public boolean publish(City object) {
-					Message msg = uiHandler.obtainMessage(MESSAGE_ADD_ENTITY, object);
-					msg.sendToTarget();
-					return true;
-				}
-			}, searchVillages(), locationToSearch);
+			region.fillWithSuggestedCities(query, getResultMatcher(), searchVillages(), locationToSearch);
 		}
 	}
 
@@ -220,8 +207,8 @@ public class SearchCityByNameActivity extends SearchByNameAbstractActivity<City>
 			if (compare != 0) {
 				return compare;
 			}
-			boolean st1 = CollatorStringMatcher.cmatches(cs, lhs.getName(lang), part, startsWith);
-			boolean st2 = CollatorStringMatcher.cmatches(cs, rhs.getName(lang), part, startsWith);
+			boolean st1 = CollatorStringMatcher.cmatches(lhs.getName(lang), part, startsWith);
+			boolean st2 = CollatorStringMatcher.cmatches(rhs.getName(lang), part, startsWith);
 		    if(st1 != st2) {
 		    	return st1 ? 1 : -1;
 		    }
@@ -22,7 +22,6 @@ import net.osmand.plus.resources.RegionAddressRepository;
 import net.osmand.util.Algorithms;
 import net.osmand.util.MapUtils;
 import android.os.AsyncTask;
-import android.os.Message;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup.LayoutParams;
@@ -132,20 +131,20 @@ public class SearchStreetByNameActivity extends SearchByNameAbstractActivity<Str
 					break;
 				}
 				if(filterObject(obj, query)){
-					Message msg = uiHandler.obtainMessage(MESSAGE_ADD_ENTITY, obj);
-					msg.sendToTarget();
+					publishEntity(obj);
 				}
 			}
 		} else {
 			searchWithCity = 0;
+			final ResultMatcher<Street> matcher = getResultMatcher();
 			final List res = region.searchMapObjectsByName(query, new ResultMatcher<MapObject>() {
 				@Override
 				public boolean publish(MapObject object) {
 					if (object instanceof Street) {
 						if(city == null ||
 								MapUtils.getDistance(city.getLocation(), object.getLocation()) < 100*1000) {
-							Message msg = uiHandler.obtainMessage(MESSAGE_ADD_ENTITY, object);
-							msg.sendToTarget();
+							matcher.publish((Street) object);
+							// streets are kept as initial list of the next filter
 							return true;
 						}
 					}
@@ -154,7 +153,7 @@ public class SearchStreetByNameActivity extends SearchByNameAbstractActivity<Str
 				
 				@Override
 				public boolean isCancelled() {
-					return namesFilter.isCancelled;
+					return matcher.isCancelled();
 				}
 			});
 			runOnUiThread(new Runnable() {
@@ -172,25 +171,26 @@ public class SearchStreetByNameActivity extends SearchByNameAbstractActivity<Str
 
 	private void filter(String query, Collection<Street> list) {
 		boolean emptyQuery = query == null || query.length() == 0;
+		String lang = settings.MAP_PREFERRED_LOCALE.get();
+		CollatorStringMatcher startsWith = emptyQuery ? null :
+			new CollatorStringMatcher(query, StringMatcherMode.CHECK_ONLY_STARTS_WITH);
 		for (Street obj : list) {
 			if (namesFilter.isCancelled) {
 				break;
 			}
-			if (emptyQuery || CollatorStringMatcher.cmatches(collator, obj.getNameWithoutCityPart(settings.MAP_PREFERRED_LOCALE.get()), 
-					query, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
-				Message msg = uiHandler.obtainMessage(MESSAGE_ADD_ENTITY, obj);
-				msg.sendToTarget();
+			if (emptyQuery || startsWith.matches(obj.getNameWithoutCityPart(lang))) {
+				publishEntity(obj);
 			}
 		}
 		if (!emptyQuery) {
+			CollatorStringMatcher wordStartsWith = new CollatorStringMatcher(query,
+					StringMatcherMode.CHECK_STARTS_FROM_SPACE_NOT_BEGINNING);
 			for (Street obj : list) {
 				if (namesFilter.isCancelled) {
 					break;
 				}
-				if (CollatorStringMatcher.cmatches(collator, obj.getNameWithoutCityPart(settings.MAP_PREFERRED_LOCALE.get()), 
-						query, StringMatcherMode.CHECK_STARTS_FROM_SPACE_NOT_BEGINNING)) {
-					Message msg = uiHandler.obtainMessage(MESSAGE_ADD_ENTITY, obj);
-					msg.sendToTarget();
+				if (wordStartsWith.matches(obj.getNameWithoutCityPart(lang))) {
+					publishEntity(obj);
 				}
 			}
 		}
@@ -25,6 +25,17 @@ public interface SQLiteAPI {
 		boolean isDbLockedByOtherThreads();
 
 		boolean isClosed();
+		
+		/**
+		 * @return false if write-ahead logging can't be enabled (e.g. database is read only or in memory)
+		 */
+		boolean enableWriteAheadLogging();
+		
+		void beginTransaction();
+		
+		void setTransactionSuccessful();
+		
+		void endTransaction();
 
 	}
 	
@@ -179,7 +179,27 @@ public class SQLiteAPIImpl implements SQLiteAPI {
 		public boolean isClosed() {
 			return !ds.isOpen();
 		}
+
+		@Override
+		public boolean enableWriteAheadLogging() {
+			return ds.enableWriteAheadLogging();
+		}
+
+		@Override
+		public void beginTransaction() {
+			ds.beginTransaction();
+		}
 		
+		@Override
+		public void setTransactionSuccessful() {
+			ds.setTransactionSuccessful();
+		}
+		
+		@Override
+		public void endTransaction() {
+			ds.endTransaction();
+		}
+
 	}
 
 
@@ -20,8 +20,11 @@ import net.osmand.plus.OsmandApplication;
 import net.osmand.plus.R;
 import net.osmand.plus.activities.SettingsBaseActivity;
 import net.osmand.plus.activities.actions.AppModeDialog;
+import net.osmand.render.RenderingMetrics;
 import net.osmand.util.SunriseSunset;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -31,6 +34,8 @@ import java.util.Set;
 
 public class SettingsDevelopmentActivity extends SettingsBaseActivity {
 
+	private static final String RENDERING_METRICS_FILE = "rendering_metrics.json";
+
 
 	@SuppressLint("SimpleDateFormat")
 	@Override
@@ -131,6 +136,26 @@ public class SettingsDevelopmentActivity extends SettingsBaseActivity {
 		});
 		cat.addPreference(pref);
 
+		pref = new Preference(this);
+		pref.setTitle(R.string.dump_rendering_metrics);
+		pref.setSummary(R.string.dump_rendering_metrics_descr);
+		pref.setKey("dump_rendering_metrics");
+		pref.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+			@Override
+			public boolean onPreferenceClick(Preference preference) {
+				File file = getMyApplication().getAppPath(RENDERING_METRICS_FILE);
+				try {
+					RenderingMetrics.REGISTRY.dump(file);
+					RenderingMetrics.REGISTRY.reset();
+					getMyApplication().showToastMessage(file.getAbsolutePath());
+				} catch (IOException e) {
+					getMyApplication().showToastMessage(e.getMessage());
+				}
+				return true;
+			}
+		});
+		cat.addPreference(pref);
+
 		PreferenceCategory info = new PreferenceCategory(this);
 		info.setTitle(R.string.info_button);
 		cat.addPreference(info);
@@ -234,6 +234,7 @@ public class DownloadActivityType {
 		long timestamp = Algorithms.parseLongSilently(
 				parser.getAttributeValue(null, "timestamp"), 0);
 		IndexItem it = new IndexItem(name, description, timestamp, size, contentSize, containerSize, this);
+		it.md5 = parser.getAttributeValue(null, "md5"); //$NON-NLS-1$
 		it.extra = FileNameTranslationHelper.getStandardMapName(ctx, it.getBasename().toLowerCase()) != null;
 		return it;
 	}
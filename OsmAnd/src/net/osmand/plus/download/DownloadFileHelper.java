@@ -6,7 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
@@ -15,6 +15,7 @@ import java.util.zip.ZipInputStream;
 import net.osmand.IProgress;
 import net.osmand.IndexConstants;
 import net.osmand.PlatformUtil;
+import net.osmand.osm.io.ChunkedDownloader;
 import net.osmand.osm.io.NetworkUtils;
 import net.osmand.plus.OsmandApplication;
 import net.osmand.plus.R;
@@ -31,7 +32,8 @@ public class DownloadFileHelper {
 	protected static final int TRIES_TO_DOWNLOAD = 15;
 	protected static final long TIMEOUT_BETWEEN_DOWNLOADS = 8000;
 	private final OsmandApplication ctx;
-	private boolean interruptDownloading = false;
+	private volatile boolean interruptDownloading = false;
+	private volatile ChunkedDownloader currentDownloader;
 	
 	
 	public DownloadFileHelper(OsmandApplication ctx){
@@ -200,18 +202,39 @@ public class DownloadFileHelper {
 		return ctx.getSettings().isWifiConnected();
 	}
 	
+	/**
+	 * Container is downloaded by ranges in several connections to .part file (kept when download fails, so next
+	 * attempt continues it) and is unpacked while it is being downloaded.
+	 */
 	public boolean downloadFile(IndexItem.DownloadEntry de, IProgress progress, 
-			List<File> toReIndex, DownloadFileShowWarning showWarningCallback, boolean forceWifi) throws InterruptedException {
+			List<File> toReIndex, DownloadFileShowWarning showWarningCallback, final boolean forceWifi) throws InterruptedException {
+		ChunkedDownloader downloader = null;
 		try {
-			final List<InputStream> downloadInputStreams = new ArrayList<InputStream>();
-			URL url = new URL(de.urlToDownload); //$NON-NLS-1$
 			log.debug("Url downloading " + de.urlToDownload);
-			downloadInputStreams.add(getInputStreamToDownload(url, forceWifi));
+			downloader = new ChunkedDownloader(de.urlToDownload, new File(de.targetFile.getParentFile(),
+					de.targetFile.getName() + ".part")) { //$NON-NLS-1$
+				@Override
+				protected boolean isConnectionAllowed() {
+					return !forceWifi || isWifiConnected();
+				}
+			};
+			downloader.setUserAgent(Version.getFullVersion(ctx));
+			downloader.setMaxTries(TRIES_TO_DOWNLOAD);
+			downloader.setRetryDelay(TIMEOUT_BETWEEN_DOWNLOADS);
+			downloader.setExpectedMd5(de.md5);
+			currentDownloader = downloader;
+			if (interruptDownloading) {
+				throw new IOException("Interrupted"); //$NON-NLS-1$
+			}
 			de.fileToDownload = de.targetFile;
 			if(!de.unzipFolder) {
 				de.fileToDownload = new File(de.targetFile.getParentFile(), de.targetFile.getName() +".download");
 			}
-			unzipFile(de, progress, downloadInputStreams);
+			InputStream is = downloader.getInputStream();
+			long length = downloader.getLength();
+			unzipFile(de, progress, Collections.singletonList(is),
+					length < 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, length));
+			downloader.delete();
 			if(!de.targetFile.getAbsolutePath().equals(de.fileToDownload.getAbsolutePath())){
 				Algorithms.removeAllFiles(de.targetFile);
 				boolean renamed = de.fileToDownload.renameTo(de.targetFile);
@@ -231,7 +254,16 @@ public class DownloadFileHelper {
 			showWarningCallback.showWarning(ctx.getString(R.string.shared_string_io_error) + ": " + e.getMessage());
 			// Possibly file is corrupted
 			Algorithms.removeAllFiles(de.fileToDownload);
+			if (downloader != null) {
+				downloader.cancel();
+				if (downloader.isComplete()) {
+					// downloaded data is broken
+					downloader.delete();
+				}
+			}
 			return false;
+		} finally {
+			currentDownloader = null;
 		}
 	}
 
@@ -252,9 +284,12 @@ public class DownloadFileHelper {
 		}
 	}
 
-	private void unzipFile(IndexItem.DownloadEntry de, IProgress progress,  List<InputStream> is) throws IOException {
+	/**
+	 * @param len length of downloaded data in bytes (used for progress)
+	 */
+	private void unzipFile(IndexItem.DownloadEntry de, IProgress progress, List<InputStream> is, int len)
+			throws IOException {
 		CountingMultiInputStream fin = new CountingMultiInputStream(is);
-		int len = (int) fin.available();
 		int mb = (int) (len / (1024f*1024f));
 		if(mb == 0) {
 			mb = 1;
@@ -269,6 +304,7 @@ public class DownloadFileHelper {
 		} else if(de.urlToDownload.contains(".gz")) {
 			GZIPInputStream zipIn = new GZIPInputStream(fin);
 			copyFile(de, progress, fin, len, zipIn, de.fileToDownload);
+			skipRest(fin);
 		} else {
 			if (de.unzipFolder) {
 				de.fileToDownload.mkdirs();
@@ -303,11 +339,19 @@ public class DownloadFileHelper {
 				}
 				copyFile(de, progress, fin, len, zipIn, fs);
 			}
+			skipRest(fin);
 			zipIn.close();
 		}
 		fin.close();
 	}
 
+	// rest of container (after archive entries) is read to verify checksum
+	private void skipRest(InputStream is) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (is.read(buffer, 0, buffer.length) != -1) {
+		}
+	}
+
 	private void copyFile(IndexItem.DownloadEntry de, IProgress progress, 
 			CountingMultiInputStream countIS, int length, InputStream toRead, File targetFile)
 			throws IOException {
@@ -331,6 +375,10 @@ public class DownloadFileHelper {
 	
 	public void setInterruptDownloading(boolean interruptDownloading) {
 		this.interruptDownloading = interruptDownloading;
+		ChunkedDownloader downloader = currentDownloader;
+		if (interruptDownloading && downloader != null) {
+			downloader.cancel();
+		}
 	}
 	
 	public boolean isInterruptDownloading() {
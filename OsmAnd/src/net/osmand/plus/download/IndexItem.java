@@ -26,6 +26,8 @@ public class IndexItem implements Comparable<IndexItem> {
 	long timestamp;
 	long contentSize;
 	long containerSize;
+	// md5 of container (optional)
+	String md5;
 	DownloadActivityType type;
 	boolean extra;
 	
@@ -118,6 +120,7 @@ public class IndexItem implements Comparable<IndexItem> {
 			entry.type = type;
 			entry.baseName = getBasename();
 			entry.urlToDownload = entry.type.getBaseUrl(ctx, fileName) + entry.type.getUrlSuffix(ctx);
+			entry.md5 = md5;
 			entry.zipStream = type.isZipStream(ctx, this);
 			entry.unzipFolder = type.isZipFolder(ctx, this);
 			entry.dateModified = timestamp; 
@@ -230,6 +233,7 @@ public class IndexItem implements Comparable<IndexItem> {
 		
 		public String baseName;
 		public String urlToDownload;
+		public String md5;
 		public boolean isAsset;
 		public String assetName;
 		public DownloadActivityType type;
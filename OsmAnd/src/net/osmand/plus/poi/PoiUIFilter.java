@@ -40,6 +40,8 @@ public class PoiUIFilter implements SearchPoiTypeFilter {
 	public final static String USER_PREFIX = "user_"; //$NON-NLS-1$
 	public final static String CUSTOM_FILTER_ID = USER_PREFIX + "custom_id"; //$NON-NLS-1$
 	public final static String BY_NAME_FILTER_ID = USER_PREFIX + "by_name"; //$NON-NLS-1$
+	// number of the closest amenities searched when nothing is found around
+	private final static int NEAREST_SEARCH_LIMIT = 50;
 	
 	private Map<PoiCategory, LinkedHashSet<String>> acceptedTypes = new LinkedHashMap<PoiCategory,
 			LinkedHashSet<String>>();
@@ -207,15 +209,33 @@ public class PoiUIFilter implements SearchPoiTypeFilter {
 				amenityList.remove(amenityList.size() - 1);
 			}
 		}
-		if (amenityList.size() == 0 && isAutomaticallyIncreaseSearch()) {
-			int step = 5;
-			while (amenityList.size() == 0 && step-- > 0 && isSearchFurtherAvailable()) {
-				amenityList = searchFurther(lat, lon, matcher);
+		if (amenityList.size() == 0 && isAutomaticallyIncreaseSearch() && isSearchFurtherAvailable()) {
+			// the closest amenities are searched at once instead of searching increasing areas step by step
+			int maxInd = Math.min(distanceInd + 5, distanceToSearchValues.length - 1);
+			amenityList = searchAmenitiesNearest(lat, lon, distanceToSearchValues[maxInd] * 1000, matcher);
+			distanceInd = maxInd;
+			if (amenityList.size() > 0) {
+				LatLon farthest = amenityList.get(amenityList.size() - 1).getLocation();
+				double dist = MapUtils.getDistance(lat, lon, farthest.getLatitude(), farthest.getLongitude());
+				while (distanceInd > 0 && distanceToSearchValues[distanceInd - 1] * 1000 >= dist) {
+					distanceInd--;
+				}
 			}
 		}
 		return amenityList; 
 	}
 	
+	private List<Amenity> searchAmenitiesNearest(double lat, double lon, double distance, ResultMatcher<Amenity> matcher) {
+		double baseDistY = MapUtils.getDistance(lat, lon, lat - 1, lon);
+		double baseDistX = MapUtils.getDistance(lat, lon, lat, lon - 1);
+		double topLatitude = Math.min(lat + (distance/ baseDistY ), 84.);
+		double bottomLatitude = Math.max(lat - (distance/ baseDistY ), -84.);
+		double leftLongitude = Math.max(lon - (distance / baseDistX), -180);
+		double rightLongitude = Math.min(lon + (distance/ baseDistX), 180);
+		return app.getResourceManager().searchAmenitiesNearest(this, lat, lon, NEAREST_SEARCH_LIMIT,
+				topLatitude, leftLongitude, bottomLatitude, rightLongitude, wrapResultMatcher(matcher));
+	}
+	
 	public boolean isAutomaticallyIncreaseSearch() {
 		return true;
 	}
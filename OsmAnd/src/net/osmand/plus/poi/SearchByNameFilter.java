@@ -15,6 +15,8 @@ import net.osmand.util.MapUtils;
 public class SearchByNameFilter extends PoiUIFilter {
 
 	public static final String FILTER_ID = PoiUIFilter.BY_NAME_FILTER_ID; //$NON-NLS-1$
+	private static final int LIMIT = 500;
+	private static final int EXTENDED_LIMIT = 2000;
 	
 	public SearchByNameFilter(OsmandApplication application) {
 		super(application);
@@ -32,15 +34,12 @@ public class SearchByNameFilter extends PoiUIFilter {
 	protected List<Amenity> searchAmenitiesInternal(double lat, double lon, double topLatitude,
 			double bottomLatitude, double leftLongitude, double rightLongitude, final ResultMatcher<Amenity> matcher) {
 		currentSearchResult = new ArrayList<Amenity>();
-		final int limit = distanceInd == 0 ? 500 : -1;
+		// only the best ranked results are kept, so search could skip files and stop early
+		final int limit = distanceInd == 0 ? LIMIT : EXTENDED_LIMIT;
 		List<Amenity> result = app.getResourceManager().searchAmenitiesByName(getFilterByName(), 
-				topLatitude, leftLongitude, bottomLatitude, rightLongitude, lat, lon, new ResultMatcher<Amenity>() {
-					boolean elimit = false;
+				topLatitude, leftLongitude, bottomLatitude, rightLongitude, lat, lon, limit, new ResultMatcher<Amenity>() {
 					@Override
 					public boolean publish(Amenity object) {
-						if (limit != -1 && currentSearchResult.size() > limit) {
-							elimit = true;
-						}
 						if (matcher.publish(object)) {
 							currentSearchResult.add(object);
 							return true;
@@ -50,7 +49,7 @@ public class SearchByNameFilter extends PoiUIFilter {
 
 					@Override
 					public boolean isCancelled() {
-						return matcher.isCancelled() || elimit;
+						return matcher.isCancelled();
 					}
 				});
 		MapUtils.sortListOfMapObject(result, lat, lon);
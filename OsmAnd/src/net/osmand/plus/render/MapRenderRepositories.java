@@ -34,6 +34,7 @@ import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
+import net.osmand.binary.LiveUpdatesOverlay;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.data.QuadPointDouble;
 import net.osmand.data.QuadRect;
@@ -47,6 +48,7 @@ import net.osmand.plus.R;
 import net.osmand.plus.development.OsmandDevelopmentPlugin;
 import net.osmand.plus.render.OsmandRenderer.RenderingContext;
 import net.osmand.plus.views.OsmandMapLayer.DrawSettings;
+import net.osmand.render.RenderingMetrics;
 import net.osmand.render.RenderingRuleProperty;
 import net.osmand.render.RenderingRuleSearchRequest;
 import net.osmand.render.RenderingRuleStorageProperties;
@@ -183,6 +185,7 @@ public class MapRenderRepositories {
 		for (String f : new ArrayList<String>(files.keySet())) {
 			closeConnection(f);
 		}
+		renderer.stopClassifierThreads();
 	}
 
 	public boolean updateMapIsNeeded(RotatedTileBox box, DrawSettings drawSettings) {
@@ -309,9 +312,11 @@ public class MapRenderRepositories {
 	private void readRouteDataAsMapObjects(SearchRequest<BinaryMapDataObject> sr, BinaryMapIndexReader c, 
 			final ArrayList<BinaryMapDataObject> tempResult, final TLongSet ids) {
 		final boolean basemap = c.isBasemap();
+		final LiveUpdatesOverlay.Layer layer = context.getResourceManager().getLiveUpdatesOverlay().getLayer(c);
 		try {
 			for (RouteRegion reg : c.getRoutingIndexes()) {
-				List<RouteSubregion> parent = sr.getZoom() < 15 ? reg.getBaseSubregions() : reg.getSubregions();
+				final boolean baseSubregions = sr.getZoom() < 15;
+				List<RouteSubregion> parent = baseSubregions ? reg.getBaseSubregions() : reg.getSubregions();
 				List<RouteSubregion> searchRouteIndexTree = c.searchRouteIndexTree(sr, parent);
 				final MapIndex nmi = new MapIndex();
 				c.loadRouteIndexData(searchRouteIndexTree, new ResultMatcher<RouteDataObject>() {
@@ -323,6 +328,10 @@ public class MapRenderRepositories {
 						} else {
 							renderedState |= 2;
 						}
+						if (layer != null && !layer.isLatest(r, baseSubregions)) {
+							// changed or deleted by live update
+							return false;
+						}
 						if (checkForDuplicateObjectIds && !basemap) {
 							if (ids.contains(r.getId()) && r.getId() > 0) {
 								// do not add object twice
@@ -431,6 +440,7 @@ public class MapRenderRepositories {
 					basemapCoastLines.isEmpty(), true, tempResult);
 			addBasemapCoastlines = (!coastlinesWereAdded && !detailedLandData) || zoom <= zoomOnlyForBasemaps;
 			coastlineTime = "(coastline " + (System.currentTimeMillis() - ms) + " ms )";
+			RenderingMetrics.REGISTRY.record(RenderingMetrics.COASTLINE_TIME, System.currentTimeMillis() - ms);
 		} else {
 			addBasemapCoastlines = !detailedLandData;
 		}
@@ -440,6 +450,7 @@ public class MapRenderRepositories {
 					true, true, tempResult);
 			addBasemapCoastlines = !coastlinesWereAdded;
 			coastlineTime = "(coastline " + (System.currentTimeMillis() - ms) + " ms )";
+			RenderingMetrics.REGISTRY.record(RenderingMetrics.COASTLINE_TIME, System.currentTimeMillis() - ms);
 		}
 		if (addBasemapCoastlines && mi != null) {
 			BinaryMapDataObject o = new BinaryMapDataObject(new int[]{leftX, topY, rightX, topY, rightX, bottomY, leftX, bottomY, leftX,
@@ -463,6 +474,7 @@ public class MapRenderRepositories {
 		}
 
 
+		RenderingMetrics.REGISTRY.add(RenderingMetrics.SEARCH_RESULTS, count[0]);
 		if (count[0] > 0) {
 			log.info(String.format("BLat=%s, TLat=%s, LLong=%s, RLong=%s, zoom=%s", //$NON-NLS-1$
 					cBottomLatitude, cTopLatitude, cLeftLongitude, cRightLongitude, zoom));
@@ -517,14 +529,19 @@ public class MapRenderRepositories {
 		searchRequest = BinaryMapIndexReader.buildSearchRequest(leftX, rightX, topY, bottomY, zoom, searchFilter);
 		for (BinaryMapIndexReader c : files.values()) {
 			boolean basemap = c.isBasemap();
+			LiveUpdatesOverlay.Layer layer = context.getResourceManager().getLiveUpdatesOverlay().getLayer(c);
 			searchRequest.clearSearchResults();
 			List<BinaryMapDataObject> res;
+			long fileSearchStart = System.currentTimeMillis();
 			try {
 				res = c.searchMapIndex(searchRequest);
 			} catch (IOException e) {
 				res = new ArrayList<BinaryMapDataObject>();
 				log.debug("Search failed " + c.getRegionNames(), e); //$NON-NLS-1$
 			}
+			RenderingMetrics.recordFileSearch(c.getFile().getName(), System.currentTimeMillis() - fileSearchStart,
+					searchRequest.getNumberOfVisitedObjects(), searchRequest.getNumberOfAcceptedObjects(),
+					searchRequest.getNumberOfReadSubtrees(), searchRequest.getNumberOfAcceptedSubtrees());
 			if(res.size() > 0) {
 				if(basemap) {
 					renderedState |= 1;
@@ -533,6 +550,10 @@ public class MapRenderRepositories {
 				}
 			}
 			for (BinaryMapDataObject r : res) {
+				if (layer != null && !layer.isLatest(r, zoom)) {
+					// changed or deleted by live update
+					continue;
+				}
 				if (checkForDuplicateObjectIds && !basemap) {
 					if (ids.contains(r.getId()) && r.getId() > 0) {
 						// do not add object twice
@@ -562,11 +583,11 @@ public class MapRenderRepositories {
 			}
 
 			if (searchRequest.isOcean()) {
-				mi = c.getMapIndexes().get(0);
+				mi = searchRequest.getLandOceanIndex();
 				ocean[0] = true;
 			}
 			if (searchRequest.isLand()) {
-				mi = c.getMapIndexes().get(0);
+				mi = searchRequest.getLandOceanIndex();
 				land[0] = true;
 			}
 		}
@@ -689,6 +710,7 @@ public class MapRenderRepositories {
 				}
 			}
 			final long searchTime = System.currentTimeMillis() - now;
+			RenderingMetrics.REGISTRY.record(RenderingMetrics.SEARCH_TIME, searchTime);
 
 			currentRenderingContext = new OsmandRenderer.RenderingContext(context);
 			renderingReq.clearState();
@@ -763,6 +785,8 @@ public class MapRenderRepositories {
 					log.warn(String.format("Create new image ? %d != %d (w) %d != %d (h) ", currentRenderingContext.width, reuse.getWidth(), currentRenderingContext.height, reuse.getHeight()));
 				}
 				bmp = Bitmap.createBitmap(currentRenderingContext.width, currentRenderingContext.height, cfg);
+				RenderingMetrics.REGISTRY.inc(RenderingMetrics.BITMAP_ALLOCATIONS);
+				RenderingMetrics.REGISTRY.add(RenderingMetrics.BITMAP_ALLOCATED_BYTES, bmp.getRowBytes() * bmp.getHeight());
 				if(reuse != null) {
 					reuse.recycle();
 				}
@@ -780,6 +804,8 @@ public class MapRenderRepositories {
 			}
 			String renderingDebugInfo = currentRenderingContext.renderingDebugInfo;
 			currentRenderingContext.ended = true;
+			RenderingMetrics.REGISTRY.add(RenderingMetrics.STYLE_EVALUATIONS, renderingReq.getSearchCount());
+			RenderingMetrics.REGISTRY.record(RenderingMetrics.RENDER_TIME, System.currentTimeMillis() - now);
 			if (checkWhetherInterrupted()) {
 				// revert if it was interrupted 
 				// (be smart a bit do not revert if road already drawn) 
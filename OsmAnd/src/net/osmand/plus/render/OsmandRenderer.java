@@ -20,11 +20,15 @@ import net.osmand.data.QuadTree;
 import net.osmand.map.MapTileDownloader;
 import net.osmand.map.MapTileDownloader.IMapDownloaderCallback;
 import net.osmand.plus.render.TextRenderer.TextDrawInfo;
-import net.osmand.render.RenderingRuleProperty;
+import net.osmand.render.GeometrySimplifier;
+import net.osmand.render.MapObjectsClassifier;
+import net.osmand.render.MapObjectsClassifier.ClassifiedObjects;
+import net.osmand.render.MapObjectsClassifier.MapDataObjectPrimitive;
+import net.osmand.render.PaintStyle;
+import net.osmand.render.PaintStyleRegistry;
+import net.osmand.render.RenderingMetrics;
 import net.osmand.render.RenderingRuleSearchRequest;
 import net.osmand.render.RenderingRulesStorage;
-import net.osmand.util.Algorithms;
-import net.osmand.util.MapUtils;
 
 import org.apache.commons.logging.Log;
 
@@ -32,7 +36,6 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapShader;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.DashPathEffect;
 import android.graphics.Paint;
@@ -61,10 +64,12 @@ public class OsmandRenderer {
 	private Paint paintIcon;
 
 	public static final int TILE_SIZE = 256; 
-	private static final int MAX_V = 75;
 
-	private Map<float[], PathEffect> dashEffect = new LinkedHashMap<float[], PathEffect>();
-	private Map<String, float[]> parsedDashEffects = new LinkedHashMap<String, float[]>();
+	private PaintStyleRegistry paintStyles = new PaintStyleRegistry();
+	// pre-built paints and dash effects indexed by paint style id
+	private List<Paint> stylePaints = new ArrayList<Paint>();
+	private TIntObjectHashMap<PathEffect> dashEffects = new TIntObjectHashMap<PathEffect>();
+	private int stylesVersion = -1;
 	private Map<String, Shader> shaders = new LinkedHashMap<String, Shader>();
 
 	private final Context context;
@@ -73,12 +78,7 @@ public class OsmandRenderer {
 
 	private TextRenderer textRenderer;
 
-	public class MapDataObjectPrimitive {
-		BinaryMapDataObject obj;
-		int typeInd;
-		double order;
-		int objectType;
-	};
+	private MapObjectsClassifier objectsClassifier = new MapObjectsClassifier();
 
 	private static class IconDrawInfo {
 		float x = 0;
@@ -111,6 +111,7 @@ public class OsmandRenderer {
 
 		// use to calculate points
 		PointF tempPoint = new PointF();
+		GeometrySimplifier geometry = new GeometrySimplifier();
 		float cosRotateTileSize;
 		float sinRotateTileSize;
 
@@ -142,17 +143,6 @@ public class OsmandRenderer {
 		wmgr.getDefaultDisplay().getMetrics(dm);
 	}
 
-	public PathEffect getDashEffect(RenderingContext rc, float[] cachedValues, float st){
-		float[] dashes = new float[cachedValues.length / 2];
-		for (int i = 0; i < dashes.length; i++) {
-			dashes[i] = rc.getDensityValue(cachedValues[i * 2]) + cachedValues[i * 2 + 1];
-		}
-		if(!dashEffect.containsKey(dashes)){
-			dashEffect.put(dashes, new DashPathEffect(dashes, st));
-		}
-		return dashEffect.get(dashes);
-	}
-
 	public Shader getShader(String resId){
 		
 		if(shaders.get(resId) == null){
@@ -250,36 +240,52 @@ public class OsmandRenderer {
 		if (objects != null && !objects.isEmpty() && rc.width > 0 && rc.height > 0) {
 			rc.cosRotateTileSize = (float) (Math.cos((float) Math.toRadians(rc.rotate)) * TILE_SIZE);
 			rc.sinRotateTileSize = (float) (Math.sin((float) Math.toRadians(rc.rotate)) * TILE_SIZE);
+			rc.geometry.init(rc.leftX, rc.topY, rc.tileDivisor, rc.cosRotateTileSize, rc.sinRotateTileSize,
+					rc.width, rc.height);
 			
 			// put in order map
-			List<MapDataObjectPrimitive>  pointsArray = new ArrayList<OsmandRenderer.MapDataObjectPrimitive>();
-			List<MapDataObjectPrimitive> polygonsArray = new ArrayList<OsmandRenderer.MapDataObjectPrimitive>();
-			List<MapDataObjectPrimitive>  linesArray = new ArrayList<OsmandRenderer.MapDataObjectPrimitive>();
-			sortObjectsByProperOrder(rc, objects, render, pointsArray, polygonsArray, linesArray);
+			List<MapDataObjectPrimitive>  pointsArray = new ArrayList<MapDataObjectPrimitive>();
+			List<MapDataObjectPrimitive> polygonsArray = new ArrayList<MapDataObjectPrimitive>();
+			List<MapDataObjectPrimitive>  linesArray = new ArrayList<MapDataObjectPrimitive>();
+			long stageStart = System.currentTimeMillis();
+			if (!sortObjectsByProperOrder(rc, objects, render, pointsArray, polygonsArray, linesArray)) {
+				return;
+			}
+			stageStart = recordStageTime(RenderingMetrics.CLASSIFY_TIME, stageStart);
 
 			rc.lastRenderedKey = 0;
 
 			drawObject(rc, cv, render, polygonsArray, 0);
+			stageStart = recordDrawTime(RenderingMetrics.LAYER_POLYGONS, stageStart);
 			rc.lastRenderedKey = 5;
 			if (rc.shadowRenderingMode > 1) {
 				drawObject(rc, cv, render, linesArray, 1);
+				stageStart = recordDrawTime(RenderingMetrics.LAYER_LINE_SHADOWS, stageStart);
 			}
 			rc.lastRenderedKey = 40;
 			drawObject(rc, cv, render, linesArray, 2);
+			stageStart = recordDrawTime(RenderingMetrics.LAYER_LINES, stageStart);
 			rc.lastRenderedKey = 60;
 
 			drawObject(rc, cv, render, pointsArray, 3);
+			stageStart = recordDrawTime(RenderingMetrics.LAYER_POINTS, stageStart);
 			rc.lastRenderedKey = 125;
 
 
 			long beforeIconTextTime = System.currentTimeMillis() - now;
 			notifyListeners(mapTileDownloader);
 			drawIconsOverCanvas(rc, cv);
+			stageStart = recordDrawTime(RenderingMetrics.LAYER_ICONS, stageStart);
 
 			notifyListeners(mapTileDownloader);
 			textRenderer.drawTextOverCanvas(rc, cv, rc.preferredLocale);
+			recordDrawTime(RenderingMetrics.LAYER_TEXT, stageStart);
 
 			long time = System.currentTimeMillis() - now;
+			rc.pointCount += rc.geometry.getPointCount();
+			rc.pointInsideCount += rc.geometry.getPointInsideCount();
+			RenderingMetrics.REGISTRY.add(RenderingMetrics.POINTS, rc.geometry.getPointCount());
+			RenderingMetrics.REGISTRY.add(RenderingMetrics.POINTS_DRAWN, rc.geometry.getPointKeptCount());
 			rc.renderingDebugInfo = String.format("Rendering: %s ms  (%s text)\n"
 					+ "(%s points, %s points inside, %s of %s objects visible)",//$NON-NLS-1$
 					time, time - beforeIconTextTime, rc.pointCount, rc.pointInsideCount, rc.visible, rc.allObjects);
@@ -288,6 +294,16 @@ public class OsmandRenderer {
 		}
 	}
 
+	private long recordStageTime(String metric, long stageStart) {
+		long time = System.currentTimeMillis();
+		RenderingMetrics.REGISTRY.record(metric, time - stageStart);
+		return time;
+	}
+
+	private long recordDrawTime(String layer, long stageStart) {
+		return recordStageTime(RenderingMetrics.DRAW_TIME_PREFIX + layer, stageStart);
+	}
+
 	private void notifyListenersWithDelay(final RenderingContext rc, final MapTileDownloader mapTileDownloader, final Handler h) {
 		h.postDelayed(new Runnable() {
 			@Override
@@ -406,26 +422,6 @@ public class OsmandRenderer {
 		return rf;
 	}
 	
-	Comparator<MapDataObjectPrimitive> sortByOrder() {
-		return new Comparator<MapDataObjectPrimitive>() {
-
-			@Override
-			public int compare(MapDataObjectPrimitive i, MapDataObjectPrimitive j) {
-				if (i.order == j.order) {
-					if (i.typeInd == j.typeInd) {
-						if(i.obj.getPointsLength() == j.obj.getPointsLength()) {
-							return 0;
-						}
-						return i.obj.getPointsLength() < j.obj.getPointsLength() ? -1 : 1;
-					}
-					return i.typeInd < j.typeInd ? -1 : 1;
-				}
-				return (i.order < j.order ? -1 : 1);
-			}
-
-		};
-	}
-	
 	Comparator<MapDataObjectPrimitive> sortPolygonsOrder() {
 		return new Comparator<MapDataObjectPrimitive>() {
 
@@ -438,72 +434,21 @@ public class OsmandRenderer {
 		};
 	}
 
-	private void sortObjectsByProperOrder(RenderingContext rc, List<BinaryMapDataObject> objects,
+	private boolean sortObjectsByProperOrder(RenderingContext rc, List<BinaryMapDataObject> objects,
 			RenderingRuleSearchRequest render, 
 			List<MapDataObjectPrimitive>  pointsArray, List<MapDataObjectPrimitive> polygonsArray,
 			List<MapDataObjectPrimitive>  linesResArray) {
-		int sz = objects.size();
-		List<MapDataObjectPrimitive> linesArray = new ArrayList<OsmandRenderer.MapDataObjectPrimitive>();
-		if (render != null) {
-			render.clearState();
-
-			float mult = (float) (1. / MapUtils.getPowZoom(Math.max(31 - (rc.zoom + 8), 0)));
-			for (int i = 0; i < sz; i++) {
-				BinaryMapDataObject o = objects.get(i);
-				for (int j = 0; j < o.getTypes().length; j++) {
-					int wholeType = o.getTypes()[j];
-					int layer = 0;
-					if (o.getPointsLength() > 1) {
-						layer = o.getSimpleLayer();
-					}
-
-					TagValuePair pair = o.getMapIndex().decodeType(wholeType);
-					if (pair != null) {
-						render.setTagValueZoomLayer(pair.tag, pair.value, rc.zoom, layer, o);
-						render.setBooleanFilter(render.ALL.R_AREA, o.isArea());
-						render.setBooleanFilter(render.ALL.R_POINT, o.getPointsLength() == 1);
-						render.setBooleanFilter(render.ALL.R_CYCLE, o.isCycle());
-						if (render.search(RenderingRulesStorage.ORDER_RULES)) {
-							int objectType = render.getIntPropertyValue(render.ALL.R_OBJECT_TYPE);
-							int order = render.getIntPropertyValue(render.ALL.R_ORDER);
-							MapDataObjectPrimitive mapObj = new MapDataObjectPrimitive();
-							mapObj.objectType = objectType;
-							mapObj.order = order;
-							mapObj.typeInd = j;
-							mapObj.obj = o;
-							if(objectType == 3) {
-								MapDataObjectPrimitive pointObj = mapObj;
-								pointObj.objectType = 1;
-								double area = polygonArea(mapObj, mult);
-								if(area > MAX_V) { 
-									mapObj.order = mapObj.order + (1. / area);
-									polygonsArray.add(mapObj);
-									pointsArray.add(pointObj); // TODO fix duplicate text? verify if it is needed for icon
-								}
-							} else if(objectType == 1) {
-								pointsArray.add(mapObj);
-							} else {
-								linesArray.add(mapObj);
-							}
-							if (render.isSpecified(render.ALL.R_SHADOW_LEVEL)) {
-								rc.shadowLevelMin = Math.min(rc.shadowLevelMin, order);
-								rc.shadowLevelMax = Math.max(rc.shadowLevelMax, order);
-								render.clearValue(render.ALL.R_SHADOW_LEVEL);
-							}
-						}
-
-					}
-				}
-
-				if (rc.interrupted) {
-					return;
-				}
-			}
-		}
-		Collections.sort(polygonsArray, sortByOrder());
-		Collections.sort(pointsArray, sortByOrder());
-		Collections.sort(linesArray, sortByOrder());
-		filterLinesByDensity(rc, linesResArray, linesArray);
+		// classification and sorting is done in parallel, only drawing should be done in order
+		ClassifiedObjects res = objectsClassifier.classify(rc, objects, render);
+		if (res == null) {
+			return false;
+		}
+		rc.shadowLevelMin = Math.min(rc.shadowLevelMin, res.shadowLevelMin);
+		rc.shadowLevelMax = Math.max(rc.shadowLevelMax, res.shadowLevelMax);
+		pointsArray.addAll(res.points);
+		polygonsArray.addAll(res.polygons);
+		filterLinesByDensity(rc, linesResArray, res.lines);
+		return true;
 	}
 	
 	void filterLinesByDensity(RenderingContext rc, List<MapDataObjectPrimitive>  linesResArray,
@@ -550,20 +495,6 @@ public class OsmandRenderer {
 		linesResArray.addAll(linesArray);
 	}
 
-	private double polygonArea(MapDataObjectPrimitive mapObj, float mult) {
-		double area = 0.;
-		int j = mapObj.obj.getPointsLength() - 1;
-		for (int i = 0; i < mapObj.obj.getPointsLength(); i++) {
-			int px = mapObj.obj.getPoint31XTile(i);
-			int py = mapObj.obj.getPoint31YTile(i);
-			int sx = mapObj.obj.getPoint31XTile(j);
-			int sy = mapObj.obj.getPoint31YTile(j);
-			area += (sx + ((float) px)) * (sy - ((float) py));
-			j = i;
-		}
-		return Math.abs(area) * mult * mult * .5;
-	}
-
 	private void notifyListeners(MapTileDownloader mapTileDownloader) {
 		if (mapTileDownloader != null) {
 			mapTileDownloader.fireLoadCallback(null);
@@ -593,6 +524,14 @@ public class OsmandRenderer {
 
 	public void clearCachedResources(){
 		shaders.clear();
+		paintStyles.clear();
+	}
+	
+	/**
+	 * Stops threads classifying map objects, they are started again by next rendering
+	 */
+	public void stopClassifierThreads() {
+		objectsClassifier.shutdown();
 	}
 	
 	private void drawPolygon(BinaryMapDataObject obj, RenderingRuleSearchRequest render, Canvas canvas, RenderingContext rc, TagValuePair pair) {
@@ -607,7 +546,8 @@ public class OsmandRenderer {
 		// rc.main.color = Color.rgb(245, 245, 245);
 		render.setInitialTagValueZoom(pair.tag, pair.value, zoom, obj);
 		boolean rendered = render.search(RenderingRulesStorage.POLYGON_RULES);
-		if(!rendered || !updatePaint(render, paint, 0, true, rc)){
+		Paint polygonPaint = rendered ? getStylePaint(render, 0, true, rc) : null;
+		if(polygonPaint == null){
 			return;
 		}
 		rc.visible++;
@@ -620,167 +560,120 @@ public class OsmandRenderer {
 //			}
 //			return;
 //		}
-		for (int i = 0; i < obj.getPointsLength(); i++) {
-
-			PointF p = calcPoint(obj, i, rc);
-			xText += p.x;
-			yText += p.y;
+		GeometrySimplifier geometry = rc.geometry;
+		int cnt = geometry.simplify(obj);
+		xText = geometry.getCenterX();
+		yText = geometry.getCenterY();
+		for (int i = 0; i < cnt; i++) {
 			if (path == null) {
 				path = new Path();
-				path.moveTo(p.x, p.y);
+				path.moveTo(geometry.getX(i), geometry.getY(i));
 			} else {
-				path.lineTo(p.x, p.y);
+				path.lineTo(geometry.getX(i), geometry.getY(i));
 			}
 		}
 		int[][] polygonInnerCoordinates = obj.getPolygonInnerCoordinates();
 		if (polygonInnerCoordinates != null && path != null) {
 			path.setFillType(FillType.EVEN_ODD);
 			for (int j = 0; j < polygonInnerCoordinates.length; j++) {
-				for (int i = 0; i < polygonInnerCoordinates[j].length; i += 2) {
-					PointF p = calcPoint(polygonInnerCoordinates[j][i], polygonInnerCoordinates[j][i + 1], rc);
+				int innerCnt = geometry.simplify(polygonInnerCoordinates[j]);
+				for (int i = 0; i < innerCnt; i++) {
 					if (i == 0) {
-						path.moveTo(p.x, p.y);
+						path.moveTo(geometry.getX(i), geometry.getY(i));
 					} else {
-						path.lineTo(p.x, p.y);
+						path.lineTo(geometry.getX(i), geometry.getY(i));
 					}
 				}
 			}
 		}
 
 		if (path != null && len > 0) {
-			canvas.drawPath(path, paint);
-			if (updatePaint(render, paint, 1, false, rc)) {
-				canvas.drawPath(path, paint);
+			canvas.drawPath(path, polygonPaint);
+			Paint borderPaint = getStylePaint(render, 1, false, rc);
+			if (borderPaint != null) {
+				canvas.drawPath(path, borderPaint);
 			}
-			textRenderer.renderText(obj, render, rc, pair, xText / len, yText / len, null, null);
+			textRenderer.renderText(obj, render, rc, pair, xText, yText, null, null);
 		}
 	}
 	
-	public boolean updatePaint(RenderingRuleSearchRequest req, Paint p, int ind, boolean area, RenderingContext rc){
-		RenderingRuleProperty rColor;
-		RenderingRuleProperty rStrokeW;
-		RenderingRuleProperty rCap;
-		RenderingRuleProperty rPathEff;
-		
-		if (ind == 0) {
-			rColor = req.ALL.R_COLOR;
-			rStrokeW = req.ALL.R_STROKE_WIDTH;
-			rCap = req.ALL.R_CAP;
-			rPathEff = req.ALL.R_PATH_EFFECT;
-		} else if(ind == 1){
-			rColor = req.ALL.R_COLOR_2;
-			rStrokeW = req.ALL.R_STROKE_WIDTH_2;
-			rCap = req.ALL.R_CAP_2;
-			rPathEff = req.ALL.R_PATH_EFFECT_2;
-		} else if(ind == -1){
-			rColor = req.ALL.R_COLOR_0;
-			rStrokeW = req.ALL.R_STROKE_WIDTH_0;
-			rCap = req.ALL.R_CAP_0;
-			rPathEff = req.ALL.R_PATH_EFFECT_0;
-		} else if(ind == -2){
-			rColor = req.ALL.R_COLOR__1;
-			rStrokeW = req.ALL.R_STROKE_WIDTH__1;
-			rCap = req.ALL.R_CAP__1;
-			rPathEff = req.ALL.R_PATH_EFFECT__1;
-		} else if(ind == 2){
-			rColor = req.ALL.R_COLOR_3;
-			rStrokeW = req.ALL.R_STROKE_WIDTH_3;
-			rCap = req.ALL.R_CAP_3;
-			rPathEff = req.ALL.R_PATH_EFFECT_3;
-		} else if(ind == -3){
-			rColor = req.ALL.R_COLOR__2;
-			rStrokeW = req.ALL.R_STROKE_WIDTH__2;
-			rCap = req.ALL.R_CAP__2;
-			rPathEff = req.ALL.R_PATH_EFFECT__2;
-		} else if(ind == 3){
-			rColor = req.ALL.R_COLOR_4;
-			rStrokeW = req.ALL.R_STROKE_WIDTH_4;
-			rCap = req.ALL.R_CAP_4;
-			rPathEff = req.ALL.R_PATH_EFFECT_4;
-		} else {
-			rColor = req.ALL.R_COLOR_5;
-			rStrokeW = req.ALL.R_STROKE_WIDTH_5;
-			rCap = req.ALL.R_CAP_5;
-			rPathEff = req.ALL.R_PATH_EFFECT_5;
+	/**
+	 * @return pre-built paint for rule output (should not be modified) or null if paint is not specified
+	 */
+	private Paint getStylePaint(RenderingRuleSearchRequest req, int ind, boolean area, RenderingContext rc) {
+		synchronized (paintStyles) {
+			int id = paintStyles.getStyleId(req, rc, ind, area);
+			if (id == -1) {
+				return null;
+			}
+			checkStylesVersion();
+			while (stylePaints.size() <= id) {
+				stylePaints.add(null);
+			}
+			Paint p = stylePaints.get(id);
+			if (p == null) {
+				p = new Paint();
+				p.setAntiAlias(true);
+				applyStyle(p, paintStyles.getStyle(id));
+				stylePaints.set(id, p);
+			}
+			return p;
+		}
+	}
+
+	private void checkStylesVersion() {
+		if (stylesVersion != paintStyles.getVersion()) {
+			stylePaints.clear();
+			dashEffects.clear();
+			stylesVersion = paintStyles.getVersion();
 		}
-		if(area){
-			if(!req.isSpecified(rColor) && !req.isSpecified(req.ALL.R_SHADER)){
+	}
+
+	public boolean updatePaint(RenderingRuleSearchRequest req, Paint p, int ind, boolean area, RenderingContext rc){
+		synchronized (paintStyles) {
+			int id = paintStyles.getStyleId(req, rc, ind, area);
+			if (id == -1) {
 				return false;
 			}
-			p.setShader(null);
-			p.setColorFilter(null);
-			p.clearShadowLayer();
+			checkStylesVersion();
+			applyStyle(p, paintStyles.getStyle(id));
+			return true;
+		}
+	}
+
+	private void applyStyle(Paint p, PaintStyle style) {
+		p.setShader(null);
+		p.setColorFilter(null);
+		p.clearShadowLayer();
+		if (style.isArea()) {
 			p.setStyle(Style.FILL_AND_STROKE);
 			p.setStrokeWidth(0);
 		} else {
-			if(!req.isSpecified(rStrokeW)){
-				return false;
-			}
-			p.setShader(null);
-			p.setColorFilter(null);
-			p.clearShadowLayer();
 			p.setStyle(Style.STROKE);
-			p.setStrokeWidth(rc.getComplexValue(req, rStrokeW));
-			String cap = req.getStringPropertyValue(rCap);
-			if(!Algorithms.isEmpty(cap)){
-				p.setStrokeCap(Cap.valueOf(cap.toUpperCase()));
+			p.setStrokeWidth(style.getStrokeWidth());
+			if (style.getCap() != null) {
+				p.setStrokeCap(Cap.valueOf(style.getCap()));
 			} else {
 				p.setStrokeCap(Cap.BUTT);
 			}
-			String pathEffect = req.getStringPropertyValue(rPathEff);
-			if (!Algorithms.isEmpty(pathEffect)) {
-				if(!parsedDashEffects.containsKey(pathEffect)) {
-					String[] vls = pathEffect.split("_");
-					float[] vs = new float[vls.length * 2];
-					for(int i = 0; i < vls.length; i++) {
-						int s = vls[i].indexOf(':');
-						String pre = vls[i];
-						String post = "";
-						if(s != -1) {
-							pre = vls[i].substring(0, i);
-							post = vls[i].substring(i + 1);
-						}
-						if(pre.length() > 0) {
-							vs[i*2 ] = Float.parseFloat(pre);
-						}
-						if(post.length() > 0) {
-							vs[i*2 +1] = Float.parseFloat(post);
-						}
-					}
-					parsedDashEffects.put(pathEffect, vs);
+			if (style.getDashIntervals() != null) {
+				PathEffect effect = dashEffects.get(style.getId());
+				if (effect == null) {
+					effect = new DashPathEffect(style.getDashIntervals(), 0);
+					dashEffects.put(style.getId(), effect);
 				}
-				float[] cachedValues = parsedDashEffects.get(pathEffect);
-				
-				p.setPathEffect(getDashEffect(rc, cachedValues, 0));
+				p.setPathEffect(effect);
 			} else {
 				p.setPathEffect(null);
 			}
 		}
-		p.setColor(req.getIntPropertyValue(rColor));
-		if(ind == 0){
-			String resId = req.getStringPropertyValue(req.ALL.R_SHADER);
-			if(resId != null){
-				if(req.getIntPropertyValue(rColor) == 0) {
-					p.setColor(Color.WHITE); // set color required by skia
-				}
-				p.setShader(getShader(resId));
-			}
-			// do not check shadow color here
-			if(rc.shadowRenderingMode == 1) {
-				int shadowColor = req.getIntPropertyValue(req.ALL.R_SHADOW_COLOR);
-				if(shadowColor == 0) {
-					shadowColor = rc.shadowRenderingColor;
-				}
-				int shadowRadius = (int) rc.getComplexValue(req, req.ALL.R_SHADOW_RADIUS);
-				if (shadowColor == 0) {
-					shadowRadius = 0;
-				}
-				p.setShadowLayer(shadowRadius, 0, 0, shadowColor);
-			}
+		p.setColor(style.getColor());
+		if (style.getShader() != null) {
+			p.setShader(getShader(style.getShader()));
+		}
+		if (style.hasShadowLayer()) {
+			p.setShadowLayer(style.getShadowRadius(), 0, 0, style.getShadowColor());
 		}
-		
-		return true;
-		
 	}
 	
 
@@ -864,7 +757,8 @@ public class OsmandRenderer {
 		render.setInitialTagValueZoom(pair.tag, pair.value, rc.zoom, obj);
 		render.setIntFilter(render.ALL.R_LAYER, layer);
 		boolean rendered = render.search(RenderingRulesStorage.LINE_RULES);
-		if(!rendered || !updatePaint(render, paint, 0, false, rc)){
+		Paint linePaint = rendered ? getStylePaint(render, 0, false, rc) : null;
+		if(linePaint == null){
 			return;
 		}
 		int oneway = 0;
@@ -881,52 +775,33 @@ public class OsmandRenderer {
 		Path path = null;
 		float xMid = 0;
 		float yMid = 0;
-		int middle = obj.getPointsLength() / 2;
+		GeometrySimplifier geometry = rc.geometry;
+		int cnt = geometry.simplify(obj);
+		if (!geometry.isIntersectingViewport()) {
+			return;
+		}
+		int middle = cnt / 2;
 		PointF[] textPoints = null;
 		if (!drawOnlyShadow) {
-			textPoints = new PointF[length];
+			textPoints = new PointF[cnt];
 		}
 
-		boolean intersect = false;
-		PointF prev = null;
-		for (int i = 0; i < length ; i++) {
-			PointF p = calcPoint(obj, i, rc);
+		for (int i = 0; i < cnt ; i++) {
+			float x = geometry.getX(i);
+			float y = geometry.getY(i);
 			if(textPoints != null) {
-				textPoints[i] = new PointF(p.x, p.y);
-			}
-			if (!intersect) {
-				if (p.x >= 0 && p.y >= 0 && p.x < rc.width && p.y < rc.height) {
-					intersect = true;
-				}
-				if (!intersect && prev != null) {
-					if ((p.x < 0 && prev.x < 0) || (p.y < 0 && prev.y < 0) || (p.x > rc.width && prev.x > rc.width)
-							|| (p.y > rc.height && prev.y > rc.height)) {
-						intersect = false;
-					} else {
-						intersect = true;
-					}
-
-				}
+				textPoints[i] = new PointF(x, y);
 			}
 			if (path == null) {
 				path = new Path();
-				path.moveTo(p.x, p.y);
+				path.moveTo(x, y);
 			} else {
 				if(i == middle){
-					xMid = p.x;
-					yMid = p.y;
+					xMid = x;
+					yMid = y;
 				}
-				path.lineTo(p.x, p.y);
+				path.lineTo(x, y);
 			}
-			prev = p;
-		}
-		if (!intersect) {
-//			System.err.println("Not intersect ");
-//			int[] ts = obj.getTypes();
-//			for(int i=0; i<ts.length; i++) {
-//				System.err.println(obj.getMapIndex().decodeType(ts[i]));
-//			}
-			return;
 		}
 		if (path != null) {
 			if(drawOnlyShadow) {
@@ -935,37 +810,18 @@ public class OsmandRenderer {
 				if(shadowColor == 0) {
 					shadowColor = rc.shadowRenderingColor;
 				}
+				// shadow modifies paint so style paint should not be used directly
+				paint.set(linePaint);
 				drawPolylineShadow(canvas, rc, path, shadowColor, shadowRadius);
 			} else {
-				boolean update = false;
-				if (updatePaint(render, paint, -3, false, rc)) {
-					update = true;
-					canvas.drawPath(path, paint);
-				}
-				if (updatePaint(render, paint, -2, false, rc)) {
-					update = true;
-					canvas.drawPath(path, paint);
-				}
-				if (updatePaint(render, paint, -1, false, rc)) {
-					update = true;
-					canvas.drawPath(path, paint);
-				}
-				if(update) {
-					updatePaint(render, paint, 0, false, rc);
-				}
-				canvas.drawPath(path, paint);
-				if (updatePaint(render, paint, 1, false, rc)) {
-					canvas.drawPath(path, paint);
-				}
-				if (updatePaint(render, paint, 2, false, rc)) {
-					canvas.drawPath(path, paint);
-				}
-				if (updatePaint(render, paint, 3, false, rc)) {
-					canvas.drawPath(path, paint);
-				}
-				if (updatePaint(render, paint, 4, false, rc)) {
-					canvas.drawPath(path, paint);
-				}
+				drawPathWithStyle(canvas, path, render, -3, rc);
+				drawPathWithStyle(canvas, path, render, -2, rc);
+				drawPathWithStyle(canvas, path, render, -1, rc);
+				canvas.drawPath(path, linePaint);
+				drawPathWithStyle(canvas, path, render, 1, rc);
+				drawPathWithStyle(canvas, path, render, 2, rc);
+				drawPathWithStyle(canvas, path, render, 3, rc);
+				drawPathWithStyle(canvas, path, render, 4, rc);
 			}
 			
 			if(oneway != 0 && !drawOnlyShadow){
@@ -980,7 +836,13 @@ public class OsmandRenderer {
 		}
 	}
 
-		
+	private void drawPathWithStyle(Canvas canvas, Path path, RenderingRuleSearchRequest render, int ind, RenderingContext rc) {
+		Paint p = getStylePaint(render, ind, false, rc);
+		if (p != null) {
+			canvas.drawPath(path, p);
+		}
+	}
+
 	private static Paint oneWayPaint(){
 		Paint oneWay = new Paint();
 		oneWay.setStyle(Style.STROKE);
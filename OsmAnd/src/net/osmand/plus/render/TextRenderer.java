@@ -4,19 +4,18 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.procedure.TIntObjectProcedure;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
+import net.osmand.NormalizedName;
 import net.osmand.binary.BinaryMapDataObject;
 import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
 import net.osmand.data.QuadRect;
-import net.osmand.data.QuadTree;
 import net.osmand.plus.render.OsmandRenderer.RenderingContext;
+import net.osmand.render.LabelPlacementEngine;
+import net.osmand.render.RenderingMetrics;
 import net.osmand.render.RenderingRuleSearchRequest;
 import net.osmand.render.RenderingRulesStorage;
 import net.osmand.util.Algorithms;
-import net.sf.junidecode.Junidecode;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -40,21 +39,20 @@ public class TextRenderer {
 	private Typeface italicTypeface;
 	private Typeface boldTypeface;
 
-	static class TextDrawInfo {
+	private LabelPlacementEngine<TextDrawInfo> placementEngine = new LabelPlacementEngine<TextDrawInfo>();
+	private List<TextDrawInfo> placedText = new ArrayList<TextDrawInfo>();
+
+	static class TextDrawInfo extends LabelPlacementEngine.Label {
 
 		public TextDrawInfo(String text) {
-			this.text = text;
+			super(text);
 		}
 
-		String text = null;
 		Path drawOnPath = null;
-		QuadRect bounds = null;
 		float vOffset = 0;
 		float centerX = 0;
-		float pathRotate = 0;
 		float centerY = 0;
 		float textSize = 0;
-		float minDistance = 0;
 		int textColor = Color.BLACK;
 		int textShadow = 0;
 		int textWrap = 0;
@@ -62,7 +60,6 @@ public class TextRenderer {
 		boolean italic = false;
 		String shieldRes = null;
 		String shieldResIcon = null;
-		int textOrder = 100;
 		int textShadowColor = Color.WHITE;
 
 		public void fillProperties(RenderingContext rc, RenderingRuleSearchRequest render, float centerX, float centerY) {
@@ -117,48 +114,10 @@ public class TextRenderer {
 		return paintText;
 	}
 
-	private double sqr(double a) {
-		return a * a;
-	}
-	
 	private float fsqr(float a) {
 		return a * a;
 	}
 
-	boolean intersects(QuadRect tRect, float tRot, QuadRect sRect, float sRot) {
-		if (Math.abs(tRot) < Math.PI / 15 && Math.abs(sRot) < Math.PI / 15) {
-			return QuadRect.intersects(tRect, sRect);
-		}
-		double dist = Math.sqrt(sqr(tRect.centerX() - sRect.centerX()) + sqr(tRect.centerY() - sRect.centerY()));
-		if (dist < 3) {
-			return true;
-		}
-
-		// difference close to 90/270 degrees
-		if (Math.abs(Math.cos(tRot - sRot)) < 0.3) {
-			// rotate one rectangle to 90 degrees
-			tRot += Math.PI / 2;
-			double l = tRect.centerX() - tRect.height() / 2;
-			double t = tRect.centerY() - tRect.width() / 2;
-			tRect = new QuadRect(l, t, l + tRect.height(), t + tRect.width());
-		}
-
-		// determine difference close to 180/0 degrees
-		if (Math.abs(Math.sin(tRot - sRot)) < 0.3) {
-			// rotate t box
-			// (calculate offset for t center suppose we rotate around s center)
-			float diff = (float) (-Math.atan2(tRect.centerX() - sRect.centerX(), tRect.centerY() - sRect.centerY()) + Math.PI / 2);
-			diff -= sRot;
-			double left = sRect.centerX() + dist * Math.cos(diff) - tRect.width() / 2;
-			double top = sRect.centerY() - dist * Math.sin(diff) - tRect.height() / 2;
-			QuadRect nRect = new QuadRect(left, top, left + tRect.width(), top + tRect.height());
-			return QuadRect.intersects(nRect, sRect);
-		}
-
-		// TODO other cases not covered
-		return QuadRect.intersects(tRect, sRect);
-	}
-
 	void drawTestBox(Canvas cv, RectF r, float rot, String text) {
 		cv.save();
 		cv.translate(r.centerX(), r.centerY());
@@ -173,35 +132,6 @@ public class TextRenderer {
 		cv.restore();
 	}
 
-	List<TextDrawInfo> tempSearch = new ArrayList<TextDrawInfo>();
-
-	private boolean findTextIntersection(Canvas cv, RenderingContext rc, QuadTree<TextDrawInfo> boundIntersections, TextDrawInfo text) {
-		// for test purposes
-//		drawTestBox(cv, text.bounds, text.pathRotate, text.text);
-		boundIntersections.queryInBox(text.bounds, tempSearch);
-		for (int i = 0; i < tempSearch.size(); i++) {
-			TextDrawInfo t = tempSearch.get(i);
-			if (intersects(text.bounds, text.pathRotate, t.bounds, t.pathRotate)) {
-				return true;
-			}
-		}
-		if (text.minDistance > 0) {
-			QuadRect boundsSearch = new QuadRect(text.bounds);
-			boundsSearch.inset(-Math.max(rc.getDensityValue(5.0f), text.minDistance), -rc.getDensityValue(15));
-			boundIntersections.queryInBox(boundsSearch, tempSearch);
-			// drawTestBox(cv, &boundsSearch, text.pathRotate, paintIcon, text.text, NULL/*paintText*/);
-			for (int i = 0; i < tempSearch.size(); i++) {
-				TextDrawInfo t = tempSearch.get(i);
-				if (t.minDistance > 0 && t.text.equals(text.text) &&
-						intersects(boundsSearch, text.pathRotate, t.bounds, t.pathRotate)) {
-					return true;
-				}
-			}
-		}
-		boundIntersections.insert(text, text.bounds);
-		return false;
-	}
-
 	private void drawTextOnCanvas(Canvas cv, String text, float centerX, float centerY, Paint paint, int shadowColor,
 			float textShadow) {
 		if (textShadow > 0) {
@@ -220,69 +150,65 @@ public class TextRenderer {
 
 	public void drawTextOverCanvas(RenderingContext rc, Canvas cv, String preferredLocale) {
 		int size = rc.textToDraw.size();
-
-		// 1. Sort text using text order
-		Collections.sort(rc.textToDraw, new Comparator<TextDrawInfo>() {
-			@Override
-			public int compare(TextDrawInfo object1, TextDrawInfo object2) {
-				return object1.textOrder - object2.textOrder;
-			}
-		});
-		QuadRect r = new QuadRect(0, 0, rc.width, rc.height);
-		r.inset(-100, -100);
-		QuadTree<TextDrawInfo> nonIntersectedBounds = new QuadTree<TextDrawInfo>(r, 4, 0.6f);
-
-		for (int i = 0; i < size; i++) {
-			TextDrawInfo text = rc.textToDraw.get(i);
-			if (text.text != null && text.text.length() > 0) {
-				if (preferredLocale.length() > 0) {
-					text.text = Junidecode.unidecode(text.text);
+		if (preferredLocale.length() > 0) {
+			for (int i = 0; i < size; i++) {
+				TextDrawInfo text = rc.textToDraw.get(i);
+				if (text.text != null && text.text.length() > 0) {
+					text.text = NormalizedName.transliterate(text.text);
 				}
+			}
+		}
 
-				// sest text size before finding intersection (it is used there)
-				float textSize = text.textSize * rc.textScale ;
-				paintText.setTextSize(textSize);
-				if(text.bold && text.italic) {
-					paintText.setTypeface(boldItalicTypeface);
-				} else if(text.bold) {
-					paintText.setTypeface(boldTypeface);
-				} else if(text.italic) {
-					paintText.setTypeface(italicTypeface);
-				} else {
-					paintText.setTypeface(defaultTypeface);
+		// 1. Sort text using text order and select labels without intersections
+		long placementStart = System.currentTimeMillis();
+		placementEngine.setMinDistanceInsets(rc.getDensityValue(5.0f), rc.getDensityValue(15));
+		placementEngine.place(rc.textToDraw, rc.width, rc.height, placedText);
+		RenderingMetrics.REGISTRY.record(RenderingMetrics.TEXT_PLACEMENT_TIME, System.currentTimeMillis() - placementStart);
+		RenderingMetrics.REGISTRY.add(RenderingMetrics.TEXT_PLACED, placedText.size());
+		RenderingMetrics.REGISTRY.add(RenderingMetrics.TEXT_REUSED, placementEngine.getReusedCount());
+
+		for (int i = 0; i < placedText.size(); i++) {
+			TextDrawInfo text = placedText.get(i);
+			// sest text size before drawing
+			float textSize = text.textSize * rc.textScale;
+			paintText.setTextSize(textSize);
+			if (text.bold && text.italic) {
+				paintText.setTypeface(boldItalicTypeface);
+			} else if (text.bold) {
+				paintText.setTypeface(boldTypeface);
+			} else if (text.italic) {
+				paintText.setTypeface(italicTypeface);
+			} else {
+				paintText.setTypeface(defaultTypeface);
+			}
+			paintText.setFakeBoldText(text.bold);
+
+			paintText.setColor(text.textColor);
+			// align center y
+			text.centerY += (-paintText.ascent());
+
+			if (text.drawOnPath != null) {
+				if (text.textShadow > 0) {
+					paintText.setColor(text.textShadowColor);
+					paintText.setStyle(Style.STROKE);
+					paintText.setStrokeWidth(2 + text.textShadow);
+					cv.drawTextOnPath(text.text, text.drawOnPath, 0,
+							text.vOffset - ( paintText.ascent()/2 + paintText.descent()), paintText);
+					// reset
+					paintText.setStyle(Style.FILL);
+					paintText.setStrokeWidth(2);
+					paintText.setColor(text.textColor);
 				}
-				paintText.setFakeBoldText(text.bold);
-				
-				paintText.setColor(text.textColor);
-				// align center y
-				text.centerY += (-paintText.ascent());
-
-				// calculate if there is intersection
-				boolean intersects = findTextIntersection(cv, rc, nonIntersectedBounds, text);
-				if (!intersects) {
-					if (text.drawOnPath != null) {
-						if (text.textShadow > 0) {
-							paintText.setColor(text.textShadowColor);
-							paintText.setStyle(Style.STROKE);
-							paintText.setStrokeWidth(2 + text.textShadow);
-							cv.drawTextOnPath(text.text, text.drawOnPath, 0, 
-									text.vOffset - ( paintText.ascent()/2 + paintText.descent()), paintText);
-							// reset
-							paintText.setStyle(Style.FILL);
-							paintText.setStrokeWidth(2);
-							paintText.setColor(text.textColor);
-						}
-						cv.drawTextOnPath(text.text, text.drawOnPath, 0, 
-								text.vOffset - ( paintText.ascent()/2 + paintText.descent()), paintText);
-					} else {
-						drawShieldIcon(rc, cv, text, text.shieldRes);
-						drawShieldIcon(rc, cv, text, text.shieldResIcon);
+				cv.drawTextOnPath(text.text, text.drawOnPath, 0,
+						text.vOffset - ( paintText.ascent()/2 + paintText.descent()), paintText);
+			} else {
+				drawShieldIcon(rc, cv, text, text.shieldRes);
+				drawShieldIcon(rc, cv, text, text.shieldResIcon);
 
-						drawWrappedText(cv, text, textSize);
-					}
-				}
+				drawWrappedText(cv, text, textSize);
 			}
 		}
+		placedText.clear();
 	}
 
 	private void drawShieldIcon(RenderingContext rc, Canvas cv, TextDrawInfo text, String sr) {
@@ -353,6 +279,7 @@ public class TextRenderer {
 		if(render.search(RenderingRulesStorage.TEXT_RULES)){
 			if(render.getFloatPropertyValue(render.ALL.R_TEXT_SIZE) > 0){
 				final TextDrawInfo text = new TextDrawInfo(name);
+				text.objectId = o.getId();
 				text.fillProperties(rc, render, xMid, yMid);
 				final String tagName2 = render.getStringPropertyValue(render.ALL.R_NAME_TAG2);
 				if (!Algorithms.isEmpty(tagName2)) {
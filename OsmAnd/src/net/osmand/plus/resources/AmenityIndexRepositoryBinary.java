@@ -13,6 +13,7 @@ import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.MapIndex;
 import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.LiveUpdatesOverlay;
 import net.osmand.data.Amenity;
 import net.osmand.osm.PoiCategory;
 import net.osmand.plus.poi.PoiUIFilter;
@@ -24,9 +25,11 @@ public class AmenityIndexRepositoryBinary implements AmenityIndexRepository {
 
 	private final static Log log = PlatformUtil.getLog(AmenityIndexRepositoryBinary.class);
 	private final BinaryMapIndexReader index;
+	private final LiveUpdatesOverlay liveUpdates;
 
-	public AmenityIndexRepositoryBinary(BinaryMapIndexReader index) {
+	public AmenityIndexRepositoryBinary(BinaryMapIndexReader index, LiveUpdatesOverlay liveUpdates) {
 		this.index = index;
+		this.liveUpdates = liveUpdates;
 	}
 
 	@Override
@@ -62,7 +65,8 @@ public class AmenityIndexRepositoryBinary implements AmenityIndexRepository {
 	public synchronized List<Amenity> searchAmenitiesByName(int x, int y, int l, int t, int r, int b, String query, ResultMatcher<Amenity> resulMatcher) {
 		long now = System.currentTimeMillis();
 		List<Amenity> amenities = Collections.emptyList();
-		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(x, y, query, l, r, t, b,resulMatcher);
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(x, y, query, l, r, t, b,
+				liveUpdates.filterAmenities(index, resulMatcher));
 		try {
 			amenities = index.searchPoiByName(req);
 			if (log.isDebugEnabled()) {
@@ -86,7 +90,7 @@ public class AmenityIndexRepositoryBinary implements AmenityIndexRepository {
 			final SearchPoiTypeFilter filter, ResultMatcher<Amenity> matcher) {
 		long now = System.currentTimeMillis();
 		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(sleft, sright, stop, sbottom, zoom,
-				filter, matcher);
+				filter, liveUpdates.filterAmenities(index, matcher));
 		List<Amenity> result = null;
 		try {
 			result = index.searchPoi(req);
@@ -100,12 +104,30 @@ public class AmenityIndexRepositoryBinary implements AmenityIndexRepository {
 		return result;
 	}
 
+	public synchronized List<Amenity> searchAmenitiesNearest(int x, int y, int k, int stop, int sleft, int sbottom,
+			int sright, SearchPoiTypeFilter filter, ResultMatcher<Amenity> matcher) {
+		long now = System.currentTimeMillis();
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiNearestRequest(x, y, sleft, sright, stop,
+				sbottom, filter, liveUpdates.filterAmenities(index, matcher));
+		List<Amenity> result = null;
+		try {
+			result = index.searchPoiNearest(req, k);
+		} catch (IOException e) {
+			log.error("Error searching amenities", e); //$NON-NLS-1$
+		}
+		if (log.isDebugEnabled() && result != null) {
+			log.debug(String.format("Search nearest %s done in %s ms found %s.", //$NON-NLS-1$
+					k, System.currentTimeMillis() - now, result.size()));
+		}
+		return result;
+	}
+
 	@Override
 	public synchronized List<Amenity> searchAmenitiesOnThePath(List<Location> locations, double radius, final SearchPoiTypeFilter filter, ResultMatcher<Amenity> matcher) {
 		long now = System.currentTimeMillis();
 		List<Amenity> result = null;
 		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(locations, radius,
-				filter, matcher );
+				filter, liveUpdates.filterAmenities(index, matcher));
 		try {
 			result = index.searchPoi(req);
 		} catch (IOException e) {
@@ -14,6 +14,7 @@ import net.osmand.ResultMatcher;
 import net.osmand.data.RotatedTileBox;
 import net.osmand.data.TransportStop;
 import net.osmand.map.ITileSource;
+import net.osmand.map.ViewportTileQueue;
 import net.osmand.map.MapTileDownloader.DownloadRequest;
 import net.osmand.map.MapTileDownloader.IMapDownloaderCallback;
 import net.osmand.plus.BusyIndicator;
@@ -31,12 +32,30 @@ import android.os.HandlerThread;
 public class AsyncLoadingThread extends Thread {
 	
 	public static final int LIMIT_TRANSPORT = 200;
+	// busy status is refreshed with this interval while something is loading (and less often when idle)
+	private static final int STATUS_UPDATE_INTERVAL = 750;
+	private static final int IDLE_STATUS_UPDATE_INTERVAL = 3000;
+	// loaded tiles are shown with this interval while queue is not empty
+	private static final int TILES_CALLBACK_INTERVAL = 250;
 	
 	private static final Log log = PlatformUtil.getLog(AsyncLoadingThread.class); 
 	
 	private Handler asyncLoadingTransport;
 	
+	// map and transport requests (newest first), thread waits on it for new requests
 	Stack<Object> requests = new Stack<Object>();
+	// tile requests ordered by distance from the centre of visible area
+	final ViewportTileQueue<TileLoadDownloadRequest> tileRequests = new ViewportTileQueue<TileLoadDownloadRequest>() {
+		@Override
+		protected DownloadRequest getRequest(TileLoadDownloadRequest element) {
+			return element;
+		}
+
+		@Override
+		protected Object getKey(TileLoadDownloadRequest element) {
+			return element.tileId;
+		}
+	};
 	TransportLoadRequest transportLoadRequest = null;
 	
 	
@@ -63,7 +82,7 @@ public class AsyncLoadingThread extends Thread {
 			progress = BusyIndicator.STATUS_ORANGE;
 		} else if (resourceManger.isSearchAmenitiesInProgress()) {
 			progress = BusyIndicator.STATUS_BLACK;
-		} else if (!requests.isEmpty()) {
+		} else if (!requests.isEmpty() || !tileRequests.isEmpty()) {
 			progress = BusyIndicator.STATUS_BLACK;
 		} else if (transportLoadRequest != null && transportLoadRequest.isRunning()) {
 			progress = BusyIndicator.STATUS_BLACK;
@@ -88,10 +107,7 @@ public class AsyncLoadingThread extends Thread {
 				}
 				while (!requests.isEmpty()) {
 					Object req = requests.pop();
-					if (req instanceof TileLoadDownloadRequest) {
-						TileLoadDownloadRequest r = (TileLoadDownloadRequest) req;
-						tileLoaded |= resourceManger.getRequestedImageTile(r) != null;
-					} else if (req instanceof TransportLoadRequest) {
+					if (req instanceof TransportLoadRequest) {
 						if (!transportLoaded) {
 							if (transportLoadRequest == null || asyncLoadingTransport == null) {
 								startTransportLoadingThread();
@@ -111,6 +127,17 @@ public class AsyncLoadingThread extends Thread {
 						}
 					}
 				}
+				long lastCallback = System.currentTimeMillis();
+				TileLoadDownloadRequest tileRequest;
+				// new map requests are processed before remaining tiles
+				while (requests.isEmpty() && (tileRequest = tileRequests.poll()) != null) {
+					tileLoaded |= resourceManger.getRequestedImageTile(tileRequest) != null;
+					if (tileLoaded && System.currentTimeMillis() - lastCallback > TILES_CALLBACK_INTERVAL) {
+						resourceManger.getMapTileDownloader().fireLoadCallback(null);
+						lastCallback = System.currentTimeMillis();
+						tileLoaded = false;
+					}
+				}
 				if (tileLoaded || amenityLoaded || transportLoaded || mapLoaded) {
 					// use downloader callback
 					resourceManger.getMapTileDownloader().fireLoadCallback(null);
@@ -123,7 +150,12 @@ public class AsyncLoadingThread extends Thread {
 						}
 					}
 				}
-				sleep(750);
+				synchronized (requests) {
+					if (requests.isEmpty() && tileRequests.isEmpty()) {
+						// new requests wake up the thread
+						requests.wait(newProgress == 0 ? IDLE_STATUS_UPDATE_INTERVAL : STATUS_UPDATE_INTERVAL);
+					}
+				}
 			} catch (InterruptedException e) {
 				log.error(e, e);
 			} catch (RuntimeException e) {
@@ -133,15 +165,33 @@ public class AsyncLoadingThread extends Thread {
 	}
 
 	public void requestToLoadImage(TileLoadDownloadRequest req) {
-		requests.push(req);
+		tileRequests.offer(req);
+		wakeUp();
 	}
 
 	public void requestToLoadMap(MapLoadRequest req) {
 		requests.push(req);
+		wakeUp();
 	}
 
 	public void requestToLoadTransport(TransportLoadRequest req) {
 		requests.push(req);
+		wakeUp();
+	}
+	
+	private void wakeUp() {
+		synchronized (requests) {
+			requests.notifyAll();
+		}
+	}
+	
+	/**
+	 * Visible tiles (coordinates are in tiles of zoom) are loaded and downloaded first, 
+	 * pending requests for tiles far from visible area are dropped
+	 */
+	public void setTilesViewport(int zoom, double centerX, double centerY, double width, double height) {
+		tileRequests.setViewport(zoom, centerX, centerY, width, height);
+		resourceManger.getMapTileDownloader().setViewport(zoom, centerX, centerY, width, height);
 	}
 	
 	public boolean isFilePendingToDownload(File fileToSave) {
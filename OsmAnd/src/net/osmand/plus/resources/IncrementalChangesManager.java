@@ -3,6 +3,7 @@ package net.osmand.plus.resources;
 import net.osmand.IndexConstants;
 import net.osmand.PlatformUtil;
 import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.IncrementalUpdatesMerger;
 import net.osmand.osm.io.NetworkUtils;
 import net.osmand.plus.R;
 import net.osmand.util.Algorithms;
@@ -15,8 +16,10 @@ import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +29,8 @@ import java.util.concurrent.ConcurrentHashMap;
 public class IncrementalChangesManager {
 
 	private static final String URL = "http://download.osmand.net/check_live.php";
+	// number of update files of region to merge them into region file
+	private static final int UPDATES_TO_MERGE = 10;
 	private static final org.apache.commons.logging.Log log = PlatformUtil.getLog(IncrementalChangesManager.class);
 	private ResourceManager resourceManager;
 	private final Map<String, RegionUpdateFiles> regions = new ConcurrentHashMap<String, IncrementalChangesManager.RegionUpdateFiles>();
@@ -118,6 +123,74 @@ public class IncrementalChangesManager {
 		return regionUpdateFiles.addUpdate(date, f, dateCreated);
 	}
 	
+	/**
+	 * @return names of regions which have too many update files (none if routing by live data is disabled:
+	 * routing parts of updates would be lost after merge)
+	 */
+	public List<String> getRegionsToMerge() {
+		List<String> list = new ArrayList<String>();
+		if (!isLiveRoutingEnabled()) {
+			return list;
+		}
+		for (RegionUpdateFiles ruf : regions.values()) {
+			if (ruf.mainFile != null && ruf.getUpdateFiles().size() >= UPDATES_TO_MERGE) {
+				list.add(ruf.nm);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return region files with their update files (the newest first)
+	 */
+	public Map<File, List<File>> getFilesWithUpdates() {
+		Map<File, List<File>> map = new LinkedHashMap<File, List<File>>();
+		for (RegionUpdateFiles ruf : regions.values()) {
+			List<File> updateFiles = ruf.getUpdateFiles();
+			if (ruf.mainFile != null && !updateFiles.isEmpty()) {
+				Collections.sort(updateFiles, Algorithms.getFileVersionComparator());
+				map.put(ruf.mainFile, updateFiles);
+			}
+		}
+		return map;
+	}
+
+	private boolean isLiveRoutingEnabled() {
+		return resourceManager.getContext().getSettings().USE_OSM_LIVE_FOR_ROUTING.get();
+	}
+
+	/**
+	 * Merges update files into the region file and deletes them (indexes should be reloaded after it)
+	 * @return true if files were merged
+	 */
+	public boolean mergeUpdates(String fileName) throws IOException {
+		RegionUpdateFiles ruf = regions.get(fileName.toLowerCase());
+		if (ruf == null || ruf.mainFile == null || !isLiveRoutingEnabled()) {
+			return false;
+		}
+		List<File> updateFiles = ruf.getUpdateFiles();
+		long size = ruf.mainFile.length();
+		IncrementalUpdatesMerger merger = new IncrementalUpdatesMerger(ruf.mainFile);
+		for (File f : updateFiles) {
+			merger.addUpdate(f);
+			size += f.length();
+		}
+		if (updateFiles.isEmpty() || ruf.mainFile.getParentFile().getFreeSpace() < size) {
+			return false;
+		}
+		// files stay opened while merged file is written, base file is replaced at once
+		merger.mergeAndReplace();
+		log.info("Merged " + updateFiles.size() + " updates into " + ruf.mainFile.getName());
+		resourceManager.closeFile(ruf.mainFile.getName());
+		for (File f : updateFiles) {
+			resourceManager.closeFile(f.getName());
+			f.delete();
+		}
+		ruf.dayUpdates.clear();
+		ruf.monthUpdates.clear();
+		return true;
+	}
+	
 	protected static String formatSize(long vl) {
 		return (vl * 1000 / (1 << 20l)) / 1000.0f + "";
 	}
@@ -147,6 +220,19 @@ public class IncrementalChangesManager {
 			this.nm = nm;
 		}
 		
+		public List<File> getUpdateFiles() {
+			List<File> files = new ArrayList<File>();
+			for (RegionUpdate ru : monthUpdates.values()) {
+				files.add(ru.file);
+			}
+			for (List<RegionUpdate> l : dayUpdates.values()) {
+				for (RegionUpdate ru : l) {
+					files.add(ru.file);
+				}
+			}
+			return files;
+		}
+		
 		public boolean addUpdate(String date, File file, long dateCreated) {
 			String monthYear = date.substring(0, 5);
 			RegionUpdate ru = new RegionUpdate();
@@ -1,6 +1,7 @@
 package net.osmand.plus.resources;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -9,6 +10,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.osmand.Collator;
 import net.osmand.CollatorStringMatcher;
@@ -19,50 +22,80 @@ import net.osmand.ResultMatcher;
 import net.osmand.binary.BinaryMapAddressReaderAdapter;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.CompactAddressIndex;
 import net.osmand.binary.GeocodingUtilities;
 import net.osmand.binary.GeocodingUtilities.GeocodingResult;
 import net.osmand.data.Building;
 import net.osmand.data.City;
 import net.osmand.data.LatLon;
 import net.osmand.data.MapObject;
-import net.osmand.data.QuadRect;
-import net.osmand.data.QuadTree;
 import net.osmand.data.Street;
 import net.osmand.plus.OsmandSettings.OsmandPreference;
-import net.osmand.util.MapUtils;
 
 import org.apache.commons.logging.Log;
 
 
 public class RegionAddressRepositoryBinary implements RegionAddressRepository {
 	private static final Log log = PlatformUtil.getLog(RegionAddressRepositoryBinary.class);
+	// saves address indexes released by clear cache
+	private static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
 	private BinaryMapIndexReader file;
 	
 	
 	private LinkedHashMap<Long, City> cities = new LinkedHashMap<Long, City>();
-	private int ZOOM_QTREE = 10;
-	private QuadTree<City> citiesQtree = new QuadTree<City>(new QuadRect(0, 0, 1 << (ZOOM_QTREE + 1),
-			1 << (ZOOM_QTREE + 1)), 8, 0.55f);
+	// cities and loaded streets, kept on low memory and persisted to indexFile
+	private CompactAddressIndex addressIndex;
+	private final File indexFile;
+	// version of obf file when it was opened (file could be replaced while it is open)
+	private final long obfLength;
+	private final long obfLastModified;
 	private final Map<String, City> postCodes;
 	private final Collator collator;
 	private String fileName;
 	private ResourceManager mgr;
 	private OsmandPreference<String> langSetting;
 	
-	public RegionAddressRepositoryBinary(ResourceManager mgr, BinaryMapIndexReader file, String fileName) {
+	public RegionAddressRepositoryBinary(ResourceManager mgr, BinaryMapIndexReader file, String fileName, File indexFile) {
 		this.mgr = mgr;
 		langSetting = mgr.getContext().getSettings().MAP_PREFERRED_LOCALE;
 		this.file = file;
 		this.fileName = fileName;
+		this.indexFile = indexFile;
+		this.obfLength = file.getFile().length();
+		this.obfLastModified = file.getFile().lastModified();
  	    this.collator = OsmAndCollator.primaryCollator();
 		this.postCodes = new TreeMap<String, City>(OsmAndCollator.primaryCollator());
 	}
 	
 	@Override
-	public void close(){
+	public synchronized void close(){
+		saveAddressIndex();
 		this.file = null;
 	}
 	
+	private CompactAddressIndex getAddressIndex() {
+		if (addressIndex == null) {
+			if (indexFile != null) {
+				addressIndex = CompactAddressIndex.readFromFile(indexFile, obfLength, obfLastModified);
+			}
+			if (addressIndex == null) {
+				addressIndex = new CompactAddressIndex(obfLength, obfLastModified);
+			}
+		}
+		return addressIndex;
+	}
+	
+	private void saveAddressIndex() {
+		if (addressIndex != null && addressIndex.isModified() && indexFile != null && file != null) {
+			try {
+				indexFile.getParentFile().mkdirs();
+				addressIndex.writeToFile(indexFile);
+			} catch (IOException e) {
+				log.error("Address index could not be saved", e); //$NON-NLS-1$
+			}
+		}
+	}
+	
 	@Override
 	public BinaryMapIndexReader getFile() {
 		return file;
@@ -82,51 +115,67 @@ public class RegionAddressRepositoryBinary implements RegionAddressRepository {
 	@Override
 	public synchronized void preloadCities(ResultMatcher<City> resultMatcher) {
 		if (cities.isEmpty()) {
-			try {
-				List<City> cs = file.getCities(BinaryMapIndexReader.buildAddressRequest(resultMatcher), 
-						BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE);
-				LinkedHashMap<Long, City> ncities = new LinkedHashMap<Long, City>();
-				for (City c : cs) {
-					ncities.put(c.getId(), c);
-					LatLon loc = c.getLocation();
-					if(loc != null) {
-						int y31 = MapUtils.get31TileNumberY(loc.getLatitude());
-						int x31 = MapUtils.get31TileNumberX(loc.getLongitude());
-						int dz = (31 - ZOOM_QTREE);
-						citiesQtree.insert(c, new QuadRect((x31 >> dz) - 1, (y31 >> dz) - 1, (x31 >> dz) + 1, (y31 >> dz) + 1));
+			CompactAddressIndex index = getAddressIndex();
+			LinkedHashMap<Long, City> ncities = new LinkedHashMap<Long, City>();
+			if (index.getCitiesCount() > 0) {
+				for (int i = 0; i < index.getCitiesCount(); i++) {
+					City c = index.createCity(i);
+					if (resultMatcher == null || resultMatcher.publish(c)) {
+						ncities.put(c.getId(), c);
 					}
 				}
-				cities = ncities;
-			} catch (IOException e) {
-				log.error("Disk operation failed", e); //$NON-NLS-1$
+			} else {
+				try {
+					List<City> all = new ArrayList<City>();
+					List<City> cs = file.getCities(BinaryMapIndexReader.buildAddressRequest(collectAll(all, resultMatcher)),
+							BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE);
+					for (City c : cs) {
+						ncities.put(c.getId(), c);
+					}
+					if (resultMatcher == null || !resultMatcher.isCancelled()) {
+						for (City c : all) {
+							index.addCity(c);
+						}
+						saveAddressIndex();
+					}
+				} catch (IOException e) {
+					log.error("Disk operation failed", e); //$NON-NLS-1$
+				}
 			}
+			cities = ncities;
 		}
 	}
 	
-	public City getClosestCity(LatLon l, List<City> cache) {
-		City closest = null;
-		if (l != null) {
-			int y31 = MapUtils.get31TileNumberY(l.getLatitude());
-			int x31 = MapUtils.get31TileNumberX(l.getLongitude());
-			int dz = (31 - ZOOM_QTREE);
-			if (cache == null) {
-				cache = new ArrayList<City>();
+	/**
+	 * Matcher which keeps all read objects in the list and publishes them to the result matcher,
+	 * so address index stores objects not filtered by the search
+	 */
+	private static <T> ResultMatcher<T> collectAll(final List<T> all, final ResultMatcher<T> resultMatcher) {
+		return new ResultMatcher<T>() {
+			@Override
+			public boolean publish(T object) {
+				all.add(object);
+				return resultMatcher == null || resultMatcher.publish(object);
 			}
-			cache.clear();
-			citiesQtree.queryInBox(new QuadRect((x31 >> dz) - 1, (y31 >> dz) - 1, (x31 >> dz) + 1, (y31 >> dz) + 1),
-					cache);
-			int min = -1;
 
-			for (City c : cache) {
-				double d = MapUtils.getDistance(l, c.getLocation());
-				if (min == -1 || d < min) {
-					min = (int) d;
-					closest = c;
-				}
+			@Override
+			public boolean isCancelled() {
+				return resultMatcher != null && resultMatcher.isCancelled();
 			}
+		};
+	}
+	
+	public synchronized City getClosestCity(LatLon l) {
+		if (l == null) {
+			return null;
 		}
-		return closest;
-
+		CompactAddressIndex index = getAddressIndex();
+		int ind = index.getClosestCity(l.getLatitude(), l.getLongitude());
+		if (ind == -1) {
+			return null;
+		}
+		City c = cities.get(index.getCityId(ind));
+		return c != null ? c : index.createCity(ind);
 	}
 
 	@Override
@@ -161,8 +210,22 @@ public class RegionAddressRepositoryBinary implements RegionAddressRepository {
 		if(!streets.isEmpty()){
 			return;
 		}
+		int cityIndex = o.getId() == null ? -1 : getAddressIndex().getCityIndex(o.getId());
+		if (cityIndex != -1 && addressIndex.isStreetsLoaded(cityIndex)) {
+			for (Street s : addressIndex.createStreets(cityIndex, o)) {
+				if (resultMatcher == null || resultMatcher.publish(s)) {
+					o.registerStreet(s);
+				}
+			}
+			return;
+		}
 		try {
-			file.preloadStreets(o, BinaryMapIndexReader.buildAddressRequest(resultMatcher));
+			List<Street> all = new ArrayList<Street>();
+			file.preloadStreets(o, BinaryMapIndexReader.buildAddressRequest(collectAll(all, resultMatcher)));
+			if (cityIndex != -1 && (resultMatcher == null || !resultMatcher.isCancelled())) {
+				// index is saved on close or clear cache, not on every loaded city
+				addressIndex.setStreets(cityIndex, all);
+			}
 		} catch (IOException e) {
 			log.error("Disk operation failed" , e); //$NON-NLS-1$
 		}
@@ -217,9 +280,10 @@ public class RegionAddressRepositoryBinary implements RegionAddressRepository {
 
 			}
 			name = name.toLowerCase();
+			CollatorStringMatcher nameMatcher = new CollatorStringMatcher(name, StringMatcherMode.CHECK_STARTS_FROM_SPACE);
 			for (City c : cities.values()) {
-				String cName = c.getName(lang); // lower case not needed, collator ensures that
-				if (CollatorStringMatcher.cmatches(collator, cName, name, StringMatcherMode.CHECK_STARTS_FROM_SPACE)) {
+				String cName = c.getName(lang); // lower case not needed, matcher folds case
+				if (nameMatcher.matches(cName)) {
 					if (resultMatcher.publish(c)) {
 						citiesToFill.add(c);
 					}
@@ -233,11 +297,10 @@ public class RegionAddressRepositoryBinary implements RegionAddressRepository {
 			if (/*name.length() >= 3 && */searchVillages) {
 				
 				List<City> foundCities = file.getCities(BinaryMapIndexReader.buildAddressRequest(new ResultMatcher<City>() {
-					List<City> cache = new ArrayList<City>();
 					@Override
 					public boolean publish(City c) {
 						if(c.getLocation() != null) {
-							City ct = getClosestCity(c.getLocation(), cache);
+							City ct = getClosestCity(c.getLocation());
 							c.setClosestCity(ct);
 						}
 						return resultMatcher.publish(c);
@@ -247,7 +310,7 @@ public class RegionAddressRepositoryBinary implements RegionAddressRepository {
 					public boolean isCancelled() {
 						return resultMatcher.isCancelled();
 					}
-				}), new CollatorStringMatcher(name,StringMatcherMode.CHECK_STARTS_FROM_SPACE), lang, 
+				}), nameMatcher, lang, 
 						BinaryMapAddressReaderAdapter.VILLAGES_TYPE);
 				
 				for (City c : foundCities) {
@@ -367,10 +430,20 @@ public class RegionAddressRepositoryBinary implements RegionAddressRepository {
 
 	@Override
 	public void clearCache() {
+		// compact index is kept, only materialized objects are released
 		cities = new LinkedHashMap<Long, City>();
-		citiesQtree.clear();
 		postCodes.clear();
-		
+		file.clearNameIndexCache();
+		if (addressIndex != null && addressIndex.isModified()) {
+			saveExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (RegionAddressRepositoryBinary.this) {
+						saveAddressIndex();
+					}
+				}
+			});
+		}
 	}
 
 	@Override
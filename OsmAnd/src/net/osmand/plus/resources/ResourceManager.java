@@ -16,18 +16,26 @@ import net.osmand.GeoidAltitudeCorrection;
 import net.osmand.IProgress;
 import net.osmand.IndexConstants;
 import net.osmand.Location;
+import net.osmand.NormalizedName;
 import net.osmand.PlatformUtil;
 import net.osmand.ResultMatcher;
 import net.osmand.binary.BinaryMapIndexReader;
 import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
 import net.osmand.binary.CachedOsmandIndexes;
+import net.osmand.binary.LiveUpdatesOverlay;
+import net.osmand.binary.NameSearchEngine;
+import net.osmand.binary.NameSearchEngine.NameSearchResult;
 import net.osmand.data.Amenity;
+import net.osmand.data.LatLon;
+import net.osmand.data.QuadRect;
 import net.osmand.data.RotatedTileBox;
 import net.osmand.data.TransportStop;
 import net.osmand.map.ITileSource;
 import net.osmand.map.MapTileDownloader;
 import net.osmand.map.MapTileDownloader.DownloadRequest;
 import net.osmand.map.OsmandRegions;
+import net.osmand.map.TileMemoryCache;
+import net.osmand.map.TileMemoryCache.CompressedTile;
 import net.osmand.osm.MapPoiTypes;
 import net.osmand.osm.PoiCategory;
 import net.osmand.plus.AppInitializer;
@@ -53,7 +61,9 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -62,11 +72,17 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Resource manager is responsible to work with all resources 
@@ -78,7 +94,11 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ResourceManager {
 
 	public static final String VECTOR_MAP = "#vector_map"; //$NON-NLS-1$
+	// headers in protobuf format, written for native library
 	private static final String INDEXES_CACHE = "ind.cache";
+	private static final String INDEXES_DIRECTORY_CACHE = "ind_dir.cache";
+	private static final int INDEXING_THREADS = 4;
+	private static final String ADDRESS_INDEXES_CACHE_DIR = "addr.cache/";
 	
 	
 	private static final Log log = PlatformUtil.getLog(ResourceManager.class);
@@ -86,12 +106,13 @@ public class ResourceManager {
 	
 	protected static ResourceManager manager = null;
 	
-	// it is not good investigated but no more than 64 (satellite images)
-	// Only 8 MB (from 16 Mb whole mem) available for images : image 64K * 128 = 8 MB (8 bit), 64 - 16 bit, 32 - 32 bit
-	// at least 3*9?
-	protected int maxImgCacheSize = 28;
-	
-	protected Map<String, Bitmap> cacheOfImages = new LinkedHashMap<String, Bitmap>();
+	// decoded tiles limited by bytes, compressed tiles are kept additionally to decode them without storage access
+	protected final TileMemoryCache<Bitmap> cacheOfImages = new TileMemoryCache<Bitmap>(28 * 256 * 256 * 4) {
+		@Override
+		protected int sizeOf(Bitmap tile) {
+			return tile.getRowBytes() * tile.getHeight();
+		}
+	};
 	protected Map<String, Boolean> imagesOnFS = new LinkedHashMap<String, Boolean>() ;
 	
 	protected File dirWithTiles ;
@@ -119,6 +140,8 @@ public class ResourceManager {
 	
 	protected final IncrementalChangesManager changesManager = new IncrementalChangesManager(this);
 	
+	protected final NameSearchEngine nameSearchEngine = new NameSearchEngine();
+	
 	protected final MapRenderRepositories renderer;
 
 	protected final MapTileDownloader tileDownloader;
@@ -144,11 +167,13 @@ public class ResourceManager {
 		WindowManager mgr = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
 		DisplayMetrics dm = new DisplayMetrics();
 		mgr.getDefaultDisplay().getMetrics(dm);
-		// Only 8 MB (from 16 Mb whole mem) available for images : image 64K * 128 = 8 MB (8 bit), 64 - 16 bit, 32 - 32 bit
-		// at least 3*9?
+		// 3 screens of 32 bit tiles, but not more than 1/4 of memory available to application
 		float tiles = (dm.widthPixels / 256 + 2) * (dm.heightPixels / 256 + 2) * 3;
-		log.info("Tiles to load in memory : " + tiles);
-		maxImgCacheSize = (int) (tiles) ;
+		long maxMemory = Runtime.getRuntime().maxMemory();
+		long tilesSize = Math.min((long) tiles * 256 * 256 * 4, maxMemory / 4);
+		log.info("Tiles to load in memory : " + tiles + " (" + (tilesSize >> 10) + " KB)");
+		cacheOfImages.setMaxSize(tilesSize);
+		cacheOfImages.setMaxCompressedSize(maxMemory / 32);
 	}
 	
 	public MapTileDownloader getMapTileDownloader() {
@@ -186,12 +211,32 @@ public class ResourceManager {
 	}
 	
 	
-	public synchronized Bitmap getTileImageFromCache(String file){
-		return cacheOfImages.get(file);
+	/**
+	 * Tiles close to the centre of visible area are loaded first, coordinates are in tiles of zoom
+	 */
+	public void setTilesViewport(int zoom, double centerX, double centerY, double width, double height) {
+		asyncLoadingThread.setTilesViewport(zoom, centerX, centerY, width, height);
+	}
+	
+	public Bitmap getTileImageFromCache(ITileSource map, int x, int y, int zoom){
+		return cacheOfImages.get(getTileKey(map, x, y, zoom));
+	}
+	
+	public void putTileInTheCache(ITileSource map, int x, int y, int zoom, Bitmap bmp) {
+		cacheOfImages.put(getTileKey(map, x, y, zoom), bmp);
 	}
 	
-	public synchronized void putTileInTheCache(String file, Bitmap bmp) {
-		cacheOfImages.put(file, bmp);
+	/**
+	 * @return key of tile in memory cache (-1 if the tile couldn't be cached)
+	 */
+	public long getTileKey(ITileSource map, int x, int y, int zoom) {
+		String source;
+		if (map == null) {
+			source = IndexConstants.TEMP_SOURCE_TO_LOAD;
+		} else {
+			source = map.getName() + (map instanceof SQLiteTileSource ? '@' : '/') + map.getTileFormat();
+		}
+		return TileMemoryCache.getTileKey(cacheOfImages.getSourceId(source), x, y, zoom);
 	}
 	
 	
@@ -203,6 +248,8 @@ public class ResourceManager {
 		if(request instanceof TileLoadDownloadRequest){
 			TileLoadDownloadRequest req = ((TileLoadDownloadRequest) request);
 			imagesOnFS.put(req.tileId, Boolean.TRUE);
+			// compressed data is outdated
+			cacheOfImages.removeCompressed(getTileKey(req.tileSource, req.xTile, req.yTile, req.zoom));
 /*			if(req.fileToSave != null && req.tileSource instanceof SQLiteTileSource){
 				try {
 					((SQLiteTileSource) req.tileSource).insertImage(req.xTile, req.yTile, req.zoom, req.fileToSave);
@@ -243,7 +290,7 @@ public class ResourceManager {
 				imagesOnFS.put(file, null);
 			}
 		}
-		return imagesOnFS.get(file) != null || cacheOfImages.get(file) != null;		
+		return imagesOnFS.get(file) != null || cacheOfImages.get(getTileKey(map, x, y, zoom)) != null;
 	}
 	
 	public void clearTileImageForMap(String file, ITileSource map, int x, int y, int zoom){
@@ -264,6 +311,13 @@ public class ResourceManager {
 	protected char[] tileId = new char[120];
 	private GeoidAltitudeCorrection geoidAltitudeCorrection;
 	private boolean searchAmenitiesInProgress;
+	private String indexingTimings = ""; //$NON-NLS-1$
+	// guarded by indexingLock: background reload (after merging live updates) could overlap another reload
+	private final CachedOsmandIndexes cachedOsmandIndexes = new CachedOsmandIndexes();
+	private final Object indexingLock = new Object();
+	private final LiveUpdatesOverlay liveUpdatesOverlay = new LiveUpdatesOverlay();
+	// overlay is built off indexing, tasks run in order so the last indexing wins (shut down on close)
+	private ExecutorService liveUpdatesExecutor;
 
 	public synchronized String calculateTileId(ITileSource map, int x, int y, int zoom) {
 		builder.setLength(0);
@@ -284,7 +338,7 @@ public class ResourceManager {
 	}
 	
 
-	protected synchronized Bitmap getTileImageForMap(String tileId, ITileSource map, int x, int y, int zoom,
+	protected Bitmap getTileImageForMap(String tileId, ITileSource map, int x, int y, int zoom,
 			boolean loadFromInternetIfNeeded, boolean sync, boolean loadFromFs, boolean deleteBefore) {
 		if (tileId == null) {
 			tileId = calculateTileId(map, x, y, zoom);
@@ -292,9 +346,9 @@ public class ResourceManager {
 				return null;
 			}
 		}
-		
+		long tileKey = getTileKey(map, x, y, zoom);
 		if(deleteBefore){
-			cacheOfImages.remove(tileId);
+			cacheOfImages.remove(tileKey);
 			if (map instanceof SQLiteTileSource) {
 				((SQLiteTileSource) map).deleteImage(x, y, zoom);
 			} else {
@@ -303,47 +357,53 @@ public class ResourceManager {
 					f.delete();
 				}
 			}
-			imagesOnFS.put(tileId, null);
+			synchronized (this) {
+				imagesOnFS.put(tileId, null);
+			}
 		}
-		
-		if (loadFromFs && cacheOfImages.get(tileId) == null && map != null) {
+		Bitmap cached = cacheOfImages.get(tileKey);
+		if (loadFromFs && cached == null && map != null) {
 			boolean locked = map instanceof SQLiteTileSource && ((SQLiteTileSource) map).isLocked();
 			if(!loadFromInternetIfNeeded && !locked && !tileExistOnFileSystem(tileId, map, x, y, zoom)){
 				return null;
 			}
-			String url = loadFromInternetIfNeeded ? map.getUrlToLoad(x, y, zoom) : null;
-			File toSave = null;
-			if (url != null) {
-				if (map instanceof SQLiteTileSource) {
-					toSave = new File(dirWithTiles, calculateTileId(((SQLiteTileSource) map).getBase(), x, y, zoom));
-				} else {
-					toSave = new File(dirWithTiles, tileId);
-				}
-			}
-			TileLoadDownloadRequest req = new TileLoadDownloadRequest(dirWithTiles, url, toSave, 
-					tileId, map, x, y, zoom, map.getReferer());
+			TileLoadDownloadRequest req = createTileRequest(tileId, map, x, y, zoom, loadFromInternetIfNeeded);
+			// async requests are made for visible area
+			req.viewportBound = !sync;
 			if(sync){
 				return getRequestedImageTile(req);
 			} else {
 				asyncLoadingThread.requestToLoadImage(req);
 			}
 		}
-		return cacheOfImages.get(tileId);
+		return cached;
 	}
 	
 	
 	
+	private TileLoadDownloadRequest createTileRequest(String tileId, ITileSource map, int x, int y, int zoom,
+			boolean loadFromInternetIfNeeded) {
+		String url = loadFromInternetIfNeeded ? map.getUrlToLoad(x, y, zoom) : null;
+		File toSave = null;
+		if (url != null) {
+			if (map instanceof SQLiteTileSource) {
+				toSave = new File(dirWithTiles, calculateTileId(((SQLiteTileSource) map).getBase(), x, y, zoom));
+			} else {
+				toSave = new File(dirWithTiles, tileId);
+			}
+		}
+		return new TileLoadDownloadRequest(dirWithTiles, url, toSave, tileId, map, x, y, zoom, map.getReferer());
+	}
+	
 	protected Bitmap getRequestedImageTile(TileLoadDownloadRequest req){
 		if(req.tileId == null || req.dirWithTiles == null){
 			return null;
 		}
-		Bitmap cacheBmp = cacheOfImages.get(req.tileId);
+		long tileKey = getTileKey(req.tileSource, req.xTile, req.yTile, req.zoom);
+		Bitmap cacheBmp = cacheOfImages.get(tileKey);
 		if (cacheBmp != null) {
 			return cacheBmp;
 		}
-		if (cacheOfImages.size() > maxImgCacheSize) {
-			clearTiles();
-		}
 		if (req.dirWithTiles.canRead() && !asyncLoadingThread.isFileCurrentlyDownloaded(req.fileToSave)
 			&& !asyncLoadingThread.isFilePendingToDownload(req.fileToSave)) {
 			long time = System.currentTimeMillis();
@@ -351,49 +411,83 @@ public class ResourceManager {
 				log.debug("Start loaded file : " + req.tileId + " " + Thread.currentThread().getName()); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 			Bitmap bmp = null;
-			if (req.tileSource instanceof SQLiteTileSource) {
-				try {
+			try {
+				CompressedTile compressed = cacheOfImages.getCompressed(tileKey);
+				byte[] data;
+				long modified;
+				if (compressed == null) {
 					long[] tm = new long[1];
-					bmp = ((SQLiteTileSource) req.tileSource).getImage(req.xTile, req.yTile, req.zoom, tm);
-					if (tm[0] != 0) {
-						int ts = req.tileSource.getExpirationTimeMillis();
-						if (ts != -1 && req.url != null && time - tm[0] > ts) {
-							asyncLoadingThread.requestToDownload(req);
-						}
-					}
-				} catch (OutOfMemoryError e) {
-					log.error("Out of memory error", e); //$NON-NLS-1$
-					clearTiles();
+					data = readTileData(req, tm);
+					modified = tm[0];
+					cacheOfImages.putCompressed(tileKey, data, modified);
+				} else {
+					data = compressed.data;
+					modified = compressed.time;
 				}
-			} else {
-				File en = new File(req.dirWithTiles, req.tileId);
-				if (en.exists()) {
-					try {
-						bmp = BitmapFactory.decodeFile(en.getAbsolutePath());
-						int ts = req.tileSource.getExpirationTimeMillis();
-						if(ts != -1 && req.url != null && time - en.lastModified() > ts) {
-							asyncLoadingThread.requestToDownload(req);
+				if (data != null) {
+					checkTileExpired(req, modified, time);
+				}
+				if (data != null) {
+					bmp = BitmapFactory.decodeByteArray(data, 0, data.length);
+					if (bmp == null) {
+						log.warn("Broken tile " + req.tileId); //$NON-NLS-1$
+						cacheOfImages.removeCompressed(tileKey);
+						if (req.tileSource instanceof SQLiteTileSource) {
+							((SQLiteTileSource) req.tileSource).deleteImage(req.xTile, req.yTile, req.zoom);
 						}
-					} catch (OutOfMemoryError e) {
-						log.error("Out of memory error", e); //$NON-NLS-1$
-						clearTiles();
 					}
 				}
+			} catch (IOException e) {
+				log.error("Tile " + req.tileId + " couldn't be read", e); //$NON-NLS-1$ //$NON-NLS-2$
+			} catch (OutOfMemoryError e) {
+				log.error("Out of memory error", e); //$NON-NLS-1$
+				clearTiles();
 			}
 
 			if (bmp != null) {
-				cacheOfImages.put(req.tileId, bmp);
+				cacheOfImages.put(tileKey, bmp);
 				if (log.isDebugEnabled()) {
 					log.debug("Loaded file : " + req.tileId + " " + -(time - System.currentTimeMillis()) + " ms " + cacheOfImages.size()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 				}
-			}
-
-			if (cacheOfImages.get(req.tileId) == null && req.url != null) {
+			} else if (req.url != null) {
 				asyncLoadingThread.requestToDownload(req);
 			}
+			return bmp;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads compressed tile from storage
+	 * @param modified receives modification time of the tile (0 if unknown)
+	 */
+	private byte[] readTileData(TileLoadDownloadRequest req, long[] modified) throws IOException {
+		if (req.tileSource instanceof SQLiteTileSource) {
+			return ((SQLiteTileSource) req.tileSource).getBytes(req.xTile, req.yTile, req.zoom, null, modified);
+		}
+		File en = new File(req.dirWithTiles, req.tileId);
+		if (!en.exists()) {
+			return null;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) en.length());
+		FileInputStream fis = new FileInputStream(en);
+		try {
+			Algorithms.streamCopy(fis, out);
+		} finally {
+			Algorithms.closeStream(fis);
+		}
+		modified[0] = en.lastModified();
+		return out.toByteArray();
+	}
 
+	/**
+	 * Requests download of the tile if it is expired (tile is still drawn until it is downloaded)
+	 */
+	private void checkTileExpired(TileLoadDownloadRequest req, long modified, long time) {
+		int ts = req.tileSource.getExpirationTimeMillis();
+		if (modified != 0 && ts != -1 && req.url != null && time - modified > ts) {
+			asyncLoadingThread.requestToDownload(req);
 		}
-		return cacheOfImages.get(req.tileId);
 	}
 
 
@@ -604,6 +698,12 @@ public class ResourceManager {
 	}
 
 	public List<String> indexingMaps(final IProgress progress) {
+		synchronized (indexingLock) {
+			return indexingMapsImpl(progress);
+		}
+	}
+
+	private List<String> indexingMapsImpl(final IProgress progress) {
 		long val = System.currentTimeMillis();
 		ArrayList<File> files = new ArrayList<File>();
 		File appPath = context.getAppPath(null);
@@ -625,8 +725,8 @@ public class ResourceManager {
 		Collections.sort(files, Algorithms.getFileVersionComparator());
 		List<String> warnings = new ArrayList<String>();
 		renderer.clearAllResources();
-		CachedOsmandIndexes cachedOsmandIndexes = new CachedOsmandIndexes();
-		File indCache = context.getAppPath(INDEXES_CACHE);
+		final File indCache = context.getAppPath(INDEXES_DIRECTORY_CACHE);
+		final boolean cacheWritable = !indCache.exists() || indCache.canWrite();
 		if (indCache.exists()) {
 			try {
 				cachedOsmandIndexes.readFromFile(indCache, CachedOsmandIndexes.VERSION);
@@ -634,13 +734,52 @@ public class ResourceManager {
 				log.error(e.getMessage(), e);
 			}
 		}
+		long cacheTime = System.currentTimeMillis();
+		// headers are read in parallel (files missing in cache are parsed fully),
+		// resources are registered in order of files
+		int threads = Math.max(1, Math.min(INDEXING_THREADS, Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<BinaryMapIndexReader>> readers = new ArrayList<Future<BinaryMapIndexReader>>(files.size());
+		for (final File f : files) {
+			readers.add(executor.submit(new Callable<BinaryMapIndexReader>() {
+				@Override
+				public BinaryMapIndexReader call() throws IOException {
+					BinaryMapIndexReader reader = cachedOsmandIndexes.getReader(f);
+					if (cacheWritable) {
+						// cache is updated after each parsed file
+						cachedOsmandIndexes.appendToFile(indCache);
+					}
+					return reader;
+				}
+			}));
+		}
+		executor.shutdown();
+		long headersTime = 0;
 		File liveDir = context.getAppPath(IndexConstants.LIVE_INDEX_DIR);
-		for (File f : files) {
+		final Map<String, BinaryMapIndexReader> liveUpdateHeaders = new HashMap<String, BinaryMapIndexReader>();
+		for (int i = 0; i < files.size(); i++) {
+			File f = files.get(i);
 			progress.startTask(context.getString(R.string.indexing_map) + " " + f.getName(), -1); //$NON-NLS-1$
 			try {
 				BinaryMapIndexReader mapReader = null;
 				try {
-					mapReader = cachedOsmandIndexes.getReader(f);
+					long waitTime = System.currentTimeMillis();
+					try {
+						mapReader = readers.get(i).get();
+					} catch (InterruptedException e) {
+						throw new IOException("Interrupted"); //$NON-NLS-1$
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof IOException) {
+							throw (IOException) e.getCause();
+						} else if (e.getCause() instanceof RuntimeException) {
+							throw (RuntimeException) e.getCause();
+						} else if (e.getCause() instanceof Error) {
+							throw (Error) e.getCause();
+						}
+						throw new IOException(e.getCause());
+					} finally {
+						headersTime += System.currentTimeMillis() - waitTime;
+					}
 					if (mapReader.getVersion() != IndexConstants.BINARY_MAP_VERSION) {
 						mapReader = null;
 					}
@@ -672,6 +811,7 @@ public class ResourceManager {
 							}
 							continue;
 						}
+						liveUpdateHeaders.put(f.getName(), mapReader);
 					} else {
 						changesManager.indexMainMap(f, dateCreated);
 						indexFileNames.put(f.getName(), dateFormat.format(dateCreated)); //$NON-NLS-1$
@@ -680,7 +820,8 @@ public class ResourceManager {
 						try {
 							RandomAccessFile raf = new RandomAccessFile(f, "r"); //$NON-NLS-1$
 							RegionAddressRepositoryBinary rarb = new RegionAddressRepositoryBinary(this,
-									new BinaryMapIndexReader(raf, mapReader), f.getName());
+									new BinaryMapIndexReader(raf, mapReader), f.getName(),
+									new File(context.getAppPath(ADDRESS_INDEXES_CACHE_DIR), f.getName() + ".cache"));
 							addressMap.put(f.getName(), rarb);
 						} catch (IOException e) {
 							log.error("Exception reading " + f.getAbsolutePath(), e); //$NON-NLS-1$
@@ -711,12 +852,20 @@ public class ResourceManager {
 					if (mapReader.containsPoiData()) {
 						try {
 							RandomAccessFile raf = new RandomAccessFile(f, "r"); //$NON-NLS-1$
-							amenityRepositories.put(f.getName(), new AmenityIndexRepositoryBinary(new BinaryMapIndexReader(raf, mapReader)));
+							amenityRepositories.put(f.getName(), new AmenityIndexRepositoryBinary(new BinaryMapIndexReader(raf, mapReader),
+									liveUpdatesOverlay));
 						} catch (IOException e) {
 							log.error("Exception reading " + f.getAbsolutePath(), e); //$NON-NLS-1$
 							warnings.add(MessageFormat.format(context.getString(R.string.version_index_is_not_supported), f.getName())); //$NON-NLS-1$
 						}
 					}
+					if (mapReader.containsPoiData() || mapReader.containsAddressData()) {
+						try {
+							nameSearchEngine.addFile(f, mapReader);
+						} catch (IOException e) {
+							log.error("Exception reading " + f.getAbsolutePath(), e); //$NON-NLS-1$
+						}
+					}
 				}
 			} catch (SQLiteException e) {
 				log.error("Exception reading " + f.getAbsolutePath(), e); //$NON-NLS-1$
@@ -726,24 +875,97 @@ public class ResourceManager {
 				warnings.add(MessageFormat.format(context.getString(R.string.version_index_is_big_for_memory), f.getName()));
 			}
 		}
-		log.debug("All map files initialized " + (System.currentTimeMillis() - val) + " ms");
-		if (files.size() > 0 && (!indCache.exists() || indCache.canWrite())) {
+		long registerTime = System.currentTimeMillis();
+		if (files.size() > 0 && cacheWritable) {
 			try {
 				cachedOsmandIndexes.writeToFile(indCache);
 			} catch (Exception e) {
 				log.error("Index file could not be written", e);
 			}
 		}
+		// current layers are used until new ones are built and swapped in
+		final Map<File, List<File>> filesWithUpdates = changesManager.getFilesWithUpdates();
+		final boolean liveRouting = context.getSettings().USE_OSM_LIVE_FOR_ROUTING.get();
+		getLiveUpdatesExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				liveUpdatesOverlay.init(filesWithUpdates, liveUpdateHeaders, liveRouting);
+			}
+		});
+		long end = System.currentTimeMillis();
+		indexingTimings = files.size() + " files in " + (end - val) + " ms (listing files and reading cache " + (cacheTime - val) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ " ms, waiting for headers " + headersTime + " ms, registering " //$NON-NLS-1$ //$NON-NLS-2$
+				+ (registerTime - cacheTime - headersTime) + " ms, cache write " + (end - registerTime) + " ms)"; //$NON-NLS-1$ //$NON-NLS-2$
+		log.debug("All map files initialized " + indexingTimings);
 		return warnings;
 	}
 
 	
 
+	private synchronized ExecutorService getLiveUpdatesExecutor() {
+		if (liveUpdatesExecutor == null) {
+			liveUpdatesExecutor = Executors.newSingleThreadExecutor();
+		}
+		return liveUpdatesExecutor;
+	}
+
+	/**
+	 * @return versions of objects of regions with live updates
+	 */
+	public LiveUpdatesOverlay getLiveUpdatesOverlay() {
+		return liveUpdatesOverlay;
+	}
+
+	/**
+	 * @return timings of last indexing of maps
+	 */
+	public String getIndexingTimings() {
+		return indexingTimings;
+	}
+
+	/**
+	 * Merges live updates into region files in background if regions have too many update files
+	 */
+	public void mergeIncrementalUpdatesAsync() {
+		final List<String> regionsToMerge = changesManager.getRegionsToMerge();
+		if (regionsToMerge.isEmpty()) {
+			return;
+		}
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				boolean merged = false;
+				for (String region : regionsToMerge) {
+					try {
+						merged |= changesManager.mergeUpdates(region);
+					} catch (IOException e) {
+						log.error("Live updates of " + region + " could not be merged", e); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+				}
+				if (merged) {
+					reloadIndexes(IProgress.EMPTY_PROGRESS, new ArrayList<String>());
+				}
+			}
+		}, "Merging live updates"); //$NON-NLS-1$
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+	}
+
 	public void initMapBoundariesCacheNative() {
-		File indCache = context.getAppPath(INDEXES_CACHE);
-		if (indCache.exists()) {
-			NativeOsmandLibrary nativeLib = NativeOsmandLibrary.getLoadedLibrary();
-			if (nativeLib != null) {
+		NativeOsmandLibrary nativeLib = NativeOsmandLibrary.getLoadedLibrary();
+		if (nativeLib != null) {
+			File indCache = context.getAppPath(INDEXES_CACHE);
+			File dirCache = context.getAppPath(INDEXES_DIRECTORY_CACHE);
+			if (!indCache.exists() || indCache.lastModified() < dirCache.lastModified()) {
+				synchronized (indexingLock) {
+					try {
+						cachedOsmandIndexes.writeStoredIndex(indCache);
+					} catch (IOException e) {
+						log.error("Index file could not be written", e); //$NON-NLS-1$
+					}
+				}
+			}
+			if (indCache.exists()) {
 				nativeLib.initCacheMapFile(indCache.getAbsolutePath());
 			}
 		}
@@ -773,6 +995,39 @@ public class ResourceManager {
 		return amenities;
 	}
 	
+	/**
+	 * @return k amenities closest to location (inside bounds) sorted by distance
+	 */
+	public List<Amenity> searchAmenitiesNearest(SearchPoiTypeFilter filter, final double lat, final double lon, int k,
+			double topLatitude, double leftLongitude, double bottomLatitude, double rightLongitude,
+			ResultMatcher<Amenity> matcher) {
+		List<Amenity> amenities = new ArrayList<Amenity>();
+		searchAmenitiesInProgress = true;
+		try {
+			int x = MapUtils.get31TileNumberX(lon);
+			int y = MapUtils.get31TileNumberY(lat);
+			for (AmenityIndexRepository index : amenityRepositories.values()) {
+				if (index instanceof AmenityIndexRepositoryBinary
+						&& index.checkContains(topLatitude, leftLongitude, bottomLatitude, rightLongitude)) {
+					List<Amenity> r = ((AmenityIndexRepositoryBinary) index).searchAmenitiesNearest(x, y, k,
+							MapUtils.get31TileNumberY(topLatitude), MapUtils.get31TileNumberX(leftLongitude),
+							MapUtils.get31TileNumberY(bottomLatitude), MapUtils.get31TileNumberX(rightLongitude),
+							filter, matcher);
+					if (r != null) {
+						amenities.addAll(r);
+					}
+				}
+			}
+		} finally {
+			searchAmenitiesInProgress = false;
+		}
+		MapUtils.sortListOfMapObject(amenities, lat, lon);
+		if (amenities.size() > k) {
+			amenities = new ArrayList<Amenity>(amenities.subList(0, k));
+		}
+		return amenities;
+	}
+	
 	public List<Amenity> searchAmenitiesOnThePath(List<Location> locations, double radius, SearchPoiTypeFilter filter,
 			ResultMatcher<Amenity> matcher) {
 		searchAmenitiesInProgress = true;
@@ -828,39 +1083,26 @@ public class ResourceManager {
 	
 	public List<Amenity> searchAmenitiesByName(String searchQuery,
 			double topLatitude, double leftLongitude, double bottomLatitude, double rightLongitude, 
-			double lat, double lon, ResultMatcher<Amenity> matcher) {
+			double lat, double lon, int limit, ResultMatcher<Amenity> matcher) {
 		List<Amenity> amenities = new ArrayList<Amenity>();
-		List<AmenityIndexRepositoryBinary> list = new ArrayList<AmenityIndexRepositoryBinary>();
-		for (AmenityIndexRepository index : amenityRepositories.values()) {
-			if (index instanceof AmenityIndexRepositoryBinary) {
-				if (index.checkContains(topLatitude, leftLongitude, bottomLatitude, rightLongitude)) {
-					if(index.checkContains(lat, lon)){
-						list.add(0, (AmenityIndexRepositoryBinary) index);
-					} else {
-						list.add((AmenityIndexRepositoryBinary) index);
+		final ResultMatcher<Amenity> amenityMatcher = matcher;
+		// all files are searched together, results are ranked by name relevance and distance
+		List<NameSearchResult> results = nameSearchEngine.search(searchQuery, new LatLon(lat, lon),
+				new QuadRect(leftLongitude, topLatitude, rightLongitude, bottomLatitude), limit, false, true,
+				new ResultMatcher<NameSearchResult>() {
+					@Override
+					public boolean publish(NameSearchResult object) {
+						return amenityMatcher == null || amenityMatcher.publish((Amenity) object.getObject());
 					}
-					
-				}
-			}
-		}
-//		int left = MapUtils.get31TileNumberX(leftLongitude);
-//		int top = MapUtils.get31TileNumberY(topLatitude);
-//		int right = MapUtils.get31TileNumberX(rightLongitude);
-//		int bottom = MapUtils.get31TileNumberY(bottomLatitude);
-		int left = 0;
-		int top = 0;
-		int right = Integer.MAX_VALUE;
-		int bottom = Integer.MAX_VALUE;
-		for (AmenityIndexRepositoryBinary index : list) {
-			if (matcher != null && matcher.isCancelled()) {
-				break;
-			}
-			List<Amenity> result = index.searchAmenitiesByName(MapUtils.get31TileNumberX(lon), MapUtils.get31TileNumberY(lat),
-					left, top, right, bottom,
-					searchQuery, matcher);
-			amenities.addAll(result);
-		}
 
+					@Override
+					public boolean isCancelled() {
+						return amenityMatcher != null && amenityMatcher.isCancelled();
+					}
+				});
+		for (NameSearchResult r : results) {
+			amenities.add((Amenity) r.getObject());
+		}
 		return amenities;
 	}
 	
@@ -961,6 +1203,7 @@ public class ResourceManager {
 				log.error(e, e);
 			}
 		}
+		nameSearchEngine.removeFile(fileName);
 		indexFileNames.remove(fileName);
 		renderer.closeConnection(fileName);
 	}
@@ -1003,6 +1246,11 @@ public class ResourceManager {
 		closeRouteFiles();
 		closeAddresses();
 		closeTransport();
+		nameSearchEngine.clear();
+		if (liveUpdatesExecutor != null) {
+			liveUpdatesExecutor.shutdownNow();
+			liveUpdatesExecutor = null;
+		}
 	}
 	
 	
@@ -1055,11 +1303,14 @@ public class ResourceManager {
 	
 	/// On low memory method ///
 	public void onLowMemory() {
-		log.info("On low memory : cleaning tiles - size = " + cacheOfImages.size()); //$NON-NLS-1$
-		clearTiles();
+		log.info("On low memory : cleaning tiles - " + cacheOfImages.getStatistics()); //$NON-NLS-1$
+		cacheOfImages.clear();
 		for(RegionAddressRepository r : addressMap.values()){
 			r.clearCache();
 		}
+		nameSearchEngine.clearCaches();
+		log.info("On low memory : cleaning names - " + NormalizedName.getStatistics()); //$NON-NLS-1$
+		NormalizedName.clearCache();
 		renderer.clearCache();
 		
 		System.gc();
@@ -1074,13 +1325,10 @@ public class ResourceManager {
 	}
 	
 	
-	protected synchronized void clearTiles() {
-		log.info("Cleaning tiles - size = " + cacheOfImages.size()); //$NON-NLS-1$
-		ArrayList<String> list = new ArrayList<String>(cacheOfImages.keySet());
-		// remove first images (as we think they are older)
-		for (int i = 0; i < list.size() / 2; i++) {
-			cacheOfImages.remove(list.get(i));
-		}
+	protected void clearTiles() {
+		log.info("Cleaning tiles - " + cacheOfImages.getStatistics()); //$NON-NLS-1$
+		// least recently used half
+		cacheOfImages.trimToSize(cacheOfImages.getSizeInBytes() / 2);
 	}
 	
 	public IncrementalChangesManager getChangesManager() {
@@ -686,6 +686,7 @@ public class RouteProvider {
 				&& precalculated == null;
 		ctx.leftSideNavigation = params.leftSide;
 		ctx.calculationProgress = params.calculationProgress;
+		ctx.liveUpdates = params.ctx.getResourceManager().getLiveUpdatesOverlay();
 		if(params.previousToRecalculate != null && params.onlyStartPointChanged) {
 			int currentRoute = params.previousToRecalculate.getCurrentRoute();
 			List<RouteSegmentResult> originalRoute = params.previousToRecalculate.getOriginalRoute();
@@ -701,6 +702,7 @@ public class RouteProvider {
 				RouteCalculationMode.COMPLEX);
 			complexCtx.calculationProgress = params.calculationProgress;
 			complexCtx.leftSideNavigation = params.leftSide;
+			complexCtx.liveUpdates = ctx.liveUpdates;
 			complexCtx.previouslyCalculatedRoute = ctx.previouslyCalculatedRoute;
 		}
 		
@@ -148,6 +148,8 @@ public class MapTileLayer extends BaseMapLayer {
 		int top = (int) Math.floor(tilesRect.top + ellipticTileCorrection);
 		int width = (int) Math.ceil(tilesRect.right - left);
 		int height = (int) Math.ceil(tilesRect.bottom + ellipticTileCorrection - top);
+		mgr.setTilesViewport(nzoom, tilesRect.centerX(), tilesRect.centerY() + ellipticTileCorrection,
+				tilesRect.width(), tilesRect.height());
 
 		boolean useInternet = OsmandPlugin.getEnabledPlugin(OsmandRasterMapsPlugin.class) != null && 
 				settings.USE_INTERNET_TO_DOWNLOAD_TILES.get() && settings.isInternetConnectionAvailable() && map.couldBeDownloadedFromInternet();
@@ -186,13 +188,13 @@ public class MapTileLayer extends BaseMapLayer {
 					int kzoom = 1;
 					for (; kzoom <= allowedScale; kzoom++) {
 						div *= 2;
-						String imgTileId = mgr.calculateTileId(map, tileX / div, tileY / div, nzoom - kzoom);
 						if (readFromCache) {
-							bmp = mgr.getTileImageFromCache(imgTileId);
+							bmp = mgr.getTileImageFromCache(map, tileX / div, tileY / div, nzoom - kzoom);
 							if (bmp != null) {
 								break;
 							}
 						} else if (loadIfExists) {
+							String imgTileId = mgr.calculateTileId(map, tileX / div, tileY / div, nzoom - kzoom);
 							if (mgr.tileExistOnFileSystem(imgTileId, map, tileX / div, tileY / div, nzoom - kzoom) 
 									|| (useInternet && nzoom - kzoom <= maxLevel)) {
 								bmp = mgr.getTileImageForMapAsync(imgTileId, map, tileX / div, tileY / div, nzoom
@@ -225,7 +227,7 @@ public class MapTileLayer extends BaseMapLayer {
 									scaledSize + 2 * margin - 1, scaledSize + 2 * margin - 1, m, true);
 							bitmapToZoom.set(0, 0, tileSize, tileSize);
 							// very expensive that's why put in the cache
-							mgr.putTileInTheCache(ordImgTile, sampled);
+							mgr.putTileInTheCache(map, tileX, tileY, nzoom, sampled);
 							canvas.drawBitmap(sampled, bitmapToZoom, bitmapToDraw, paintBitmap);
 						}
 					}
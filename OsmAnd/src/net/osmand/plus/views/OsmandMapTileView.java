@@ -52,6 +52,7 @@ import net.osmand.plus.activities.MapActivity;
 import net.osmand.plus.helpers.TwoFingerTapDetector;
 import net.osmand.plus.views.MultiTouchSupport.MultiTouchZoomListener;
 import net.osmand.plus.views.OsmandMapLayer.DrawSettings;
+import net.osmand.render.RenderingMetrics;
 import net.osmand.util.MapUtils;
 
 import org.apache.commons.logging.Log;
@@ -68,8 +69,8 @@ public class OsmandMapTileView implements IMapDownloaderCallback {
 	private static final int BASE_REFRESH_MESSAGE = OsmAndConstants.UI_HANDLER_MAP_VIEW + 3;
 	protected final static int LOWEST_ZOOM_TO_ROTATE = 9;
 	private boolean MEASURE_FPS = false;
-	private FPSMeasurement main = new FPSMeasurement();
-	private FPSMeasurement additional = new FPSMeasurement();
+	private FPSMeasurement main = new FPSMeasurement(RenderingMetrics.FRAME_TIME);
+	private FPSMeasurement additional = new FPSMeasurement(RenderingMetrics.BUFFER_FRAME_TIME);
 	private View view;
 	private Activity activity;
 	private OsmandApplication application;
@@ -83,8 +84,14 @@ public class OsmandMapTileView implements IMapDownloaderCallback {
 		int fpsMeasureMs = 0;
 		long fpsFirstMeasurement = 0;
 		float fps;
+		final String metric;
+
+		FPSMeasurement(String metric) {
+			this.metric = metric;
+		}
 
 		void calculateFPS(long start, long end) {
+			RenderingMetrics.REGISTRY.record(metric, end - start);
 			fpsMeasureMs += end - start;
 			fpsMeasureCount++;
 			if (fpsMeasureCount > 10 || (start - fpsFirstMeasurement) > 400) {